@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares searching a byte sequence with a precompiled (Boyer-Moore-Horspool) searcher to the naive search of
+ * BinaryUtils.contains. The value is not present in the data, so the whole data is searched.
+ * Run with: gradle jmh -Pjmh.includes=BinarySearchBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinarySearchBenchmark {
+
+    @Param({ "65536", "4194304" })
+    public int dataSize;
+
+    @Param({ "4", "8", "16", "64" })
+    public int valueLength;
+
+    private byte[] data;
+    private byte[] value;
+    private BinaryUtils.Searcher searcher;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        data = new byte[dataSize];
+        random.nextBytes(data);
+        value = new byte[valueLength];
+        random.nextBytes(value);
+        // Make sure the value does not occur by accident: a zero byte that never occurs in the data.
+        for (int i = 0; i < data.length; i++)
+            if (data[i] == 0)
+                data[i] = 1;
+        value[valueLength / 2] = 0;
+        searcher = BinaryUtils.compileSearch(value);
+    }
+
+    @Benchmark
+    public boolean naiveContains() {
+        return BinaryUtils.contains(data, value);
+    }
+
+    @Benchmark
+    public boolean compiledSearch() {
+        return searcher.isContainedIn(data);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.Frame;
+import eu.luminis.websocket.TextFrame;
+import eu.luminis.websocket.WebSocketClient;
+import org.apache.jmeter.samplers.SampleResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the flat, compiled filter chain with the recursive filter chain that was used before (which prepared each
+ * filter and read its properties for every frame). The former chain and text matching are copied into this class, so
+ * that it keeps measuring the old code. Frames pass all filters, so this measures the filtering overhead
+ * per received frame.
+ * Run with: gradle jmh -Pjmh.includes=FilterChainBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    private static final byte[] PAYLOAD = "{\"event\": \"price-update\", \"symbol\": \"ABC\", \"price\": 42.17, \"volume\": 1200}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({ "1", "3", "10" })
+    public int filterCount;
+
+    @Param({ "Contains", "ContainsRegex" })
+    public ComparisonType comparisonType;
+
+    private List<TextFrameFilter> filters;
+    private FilterChain chain;
+    private WebSocketClient wsClient;
+    private SampleResult result;
+
+    @Setup
+    public void setup() throws IOException {
+        filters = new ArrayList<>();
+        for (int i = 0; i < filterCount; i++) {
+            TextFrameFilter filter = new TextFrameFilter();
+            filter.setComparisonType(comparisonType);
+            filter.setMatchValue("heartbeat-" + i);
+            filters.add(filter);
+        }
+        chain = FilterChain.compile(new ArrayList<>(filters));
+        wsClient = new WebSocketClient(new URL("http://localhost")) {
+            @Override
+            public Frame receiveFrame(int readTimeout) {
+                return new TextFrame(true, PAYLOAD, PAYLOAD.length + 2);
+            }
+        };
+        result = new SampleResult();
+    }
+
+    @Benchmark
+    public Frame recursiveChain() throws IOException {
+        return receiveRecursive(filters, wsClient, 1000);
+    }
+
+    @Benchmark
+    public Frame flatChain() throws IOException {
+        return chain.receiveFrame(wsClient, 1000, result);
+    }
+
+    // The former implementation of FrameFilter.receiveFrame, minus the handling of discarded frames.
+    private static Frame receiveRecursive(List<TextFrameFilter> filterList, WebSocketClient wsClient, int readTimeout) throws IOException {
+        TextFrameFilter filter = filterList.get(0);
+        List<TextFrameFilter> remaining = filterList.subList(1, filterList.size());
+        // The former TextFrameFilter.prepareFilter
+        Pattern regex = filter.getComparisonType().isRegexComparison()? Pattern.compile(filter.getMatchValue()): null;
+        Frame receivedFrame;
+        int socketTimeout = readTimeout;
+        boolean matchesFilter;
+        do {
+            SampleResult subResult = new SampleResult();
+            subResult.sampleStart();
+            long start = System.currentTimeMillis();
+            receivedFrame = !remaining.isEmpty()? receiveRecursive(remaining, wsClient, socketTimeout): wsClient.receiveFrame(socketTimeout);
+            long timeSpent = System.currentTimeMillis() - start;
+            matchesFilter = matchesFilter(filter, regex, receivedFrame);
+            if (timeSpent < socketTimeout)
+                socketTimeout -= timeSpent;
+            else
+                throw new SocketTimeoutException("Read timed out");
+        }
+        while (matchesFilter);
+        return receivedFrame;
+    }
+
+    // The former implementation of TextFrameFilter.matchesFilter, which read the filter properties for every frame.
+    private static boolean matchesFilter(TextFrameFilter filter, Pattern regex, Frame frame) {
+        String matchValue = filter.getMatchValue();
+
+        if (frame.isText()) {
+            TextFrame receivedFrame = (TextFrame) frame;
+            String framePayload = receivedFrame.getText();
+
+            switch (filter.getComparisonType()) {
+                case IsPlain:
+                    return true;
+                case Contains:
+                    return matchValue != null && framePayload.contains(matchValue);
+                case NotContains:
+                    return matchValue != null && !framePayload.contains(matchValue);
+                case Equals:
+                    return matchValue != null && matchValue.equals(framePayload);
+                case NotEquals:
+                    return matchValue != null && !matchValue.equals(framePayload);
+                case StartsWith:
+                    return matchValue != null && framePayload.startsWith(matchValue);
+                case NotStartsWith:
+                    return matchValue != null && !framePayload.startsWith(matchValue);
+                case EndsWith:
+                    return matchValue != null && framePayload.endsWith(matchValue);
+                case NotEndsWith:
+                    return matchValue != null && !framePayload.endsWith(matchValue);
+                case ContainsRegex:
+                    return matchValue != null && regex.matcher(framePayload).find();
+                case NotContainsRegex:
+                    return matchValue != null && !regex.matcher(framePayload).find();
+                case EqualsRegex:
+                    return matchValue != null && regex.matcher(framePayload).matches();
+                case NotEqualsRegex:
+                    return matchValue != null && !regex.matcher(framePayload).matches();
+                default:
+                    throw new RuntimeException("unknown comparison type");
+            }
+        }
+        else
+            return false;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares word-at-a-time masking with the byte by byte masking that was used before.
+ * Run with: gradle jmh -Pjmh.includes=MaskingBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskingBenchmark {
+
+    private static final int MASK_KEY = 0x37fa213d;
+
+    @Param({ "16", "1024", "65536", "1048576", "16777216" })
+    public int size;
+
+    private byte[] data;
+    private byte[] maskBytes;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random().nextBytes(data);
+        maskBytes = new byte[] { 0x37, (byte) 0xfa, 0x21, 0x3d };
+        heapBuffer = ByteBuffer.allocate(size);
+        heapBuffer.put(data);
+        directBuffer = ByteBuffer.allocateDirect(size);
+        directBuffer.put(data);
+    }
+
+    @Benchmark
+    public byte[] bytewiseArray() {
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (data[i] ^ maskBytes[i % 4]);
+        return data;
+    }
+
+    @Benchmark
+    public byte[] wordwiseArray() {
+        Masking.mask(data, 0, data.length, MASK_KEY);
+        return data;
+    }
+
+    @Benchmark
+    public ByteBuffer bytewiseHeapBuffer() {
+        for (int i = 0; i < size; i++)
+            heapBuffer.put(i, (byte) (heapBuffer.get(i) ^ maskBytes[i % 4]));
+        return heapBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer wordwiseHeapBuffer() {
+        Masking.mask(heapBuffer, 0, size, MASK_KEY);
+        return heapBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer bytewiseDirectBuffer() {
+        for (int i = 0; i < size; i++)
+            directBuffer.put(i, (byte) (directBuffer.get(i) ^ maskBytes[i % 4]));
+        return directBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer wordwiseDirectBuffer() {
+        Masking.mask(directBuffer, 0, size, MASK_KEY);
+        return directBuffer;
+    }
+}
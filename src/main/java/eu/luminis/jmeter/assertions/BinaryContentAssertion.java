@@ -18,11 +18,13 @@
  */
 package eu.luminis.jmeter.assertions;
 
+import eu.luminis.jmeter.wssampler.BinaryPattern;
 import eu.luminis.jmeter.wssampler.BinaryUtils;
 import org.apache.jmeter.assertions.Assertion;
 import org.apache.jmeter.assertions.AssertionResult;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.AbstractScopedAssertion;
+import org.apache.jmeter.util.JMeterUtils;
 
 import java.util.Arrays;
 
@@ -37,48 +39,61 @@ public class BinaryContentAssertion extends AbstractScopedAssertion implements A
         NotStartsWith
     }
 
+    /**
+     * Maximum number of bytes (of the response or expected value) shown in a failure message; a negative value means no limit.
+     */
+    public static final String FAILURE_PREVIEW_SIZE_PROPERTY = "binary.assertion.failure_preview_size";
+    public static final int DEFAULT_FAILURE_PREVIEW_SIZE = 256;
+
+    private transient String compiledFrom;
+    private transient byte[] comparisonValue;
+    private transient BinaryUtils.Searcher searcher;
+    private transient BinaryPattern pattern;
+    private transient String expectedDescription;
+    private transient int previewSize;
+
     @Override
     public AssertionResult getResult(SampleResult sampleResult) {
         byte[] responseData = sampleResult.getResponseData();
-        byte[] comparisonValue = BinaryUtils.parseBinaryString(getComparisonValue());
+        compile();
 
         AssertionResult result = new AssertionResult(getName());
 
         switch (getComparisonType()) {
             case Equals:
-                boolean equal = Arrays.equals(responseData, comparisonValue);
+                boolean equal = isEqual(responseData);
                 result.setFailure(!equal);
                 if (!equal)
-                    result.setFailureMessage("Response expected to equal " + BinaryUtils.formatBinary(comparisonValue) + "\n" + "Response was: " + BinaryUtils.formatBinary(responseData));
+                    result.setFailureMessage("Response expected to equal " + expectedDescription + "\n" + "Response was: " + preview(responseData));
                 break;
             case Contains:
-                boolean contains = BinaryUtils.contains(responseData, comparisonValue);
+                boolean contains = isContained(responseData);
                 result.setFailure(!contains);
                 if (!contains)
-                    result.setFailureMessage("Response expected to contain " + BinaryUtils.formatBinary(comparisonValue) + "\n" + "Response was: " + BinaryUtils.formatBinary(responseData));
+                    result.setFailureMessage("Response expected to contain " + expectedDescription + "\n" + "Response was: " + preview(responseData));
                 break;
             case NotEquals:
-                equal = Arrays.equals(responseData, comparisonValue);
+                equal = isEqual(responseData);
                 result.setFailure(equal);
                 if (equal)
-                    result.setFailureMessage("Response expected not to equal " + BinaryUtils.formatBinary(comparisonValue) + "\n" + "Response was: " + BinaryUtils.formatBinary(responseData));
+                    result.setFailureMessage("Response expected not to equal " + expectedDescription + "\n" + "Response was: " + preview(responseData));
                 break;
             case NotContains:
-                contains = BinaryUtils.contains(responseData, comparisonValue);
+                contains = isContained(responseData);
                 result.setFailure(contains);
                 if (contains)
-                    result.setFailureMessage("Response expected not to contain " + BinaryUtils.formatBinary(comparisonValue) + "\n" + "Response was: " + BinaryUtils.formatBinary(responseData));
+                    result.setFailureMessage("Response expected not to contain " + expectedDescription + "\n" + "Response was: " + preview(responseData));
                 break;
             case StartsWith:
-                boolean startsWith = comparisonValue.length <= responseData.length && Arrays.equals(comparisonValue, Arrays.copyOf(responseData, comparisonValue.length));
+                boolean startsWith = isStartOf(responseData);
                 if (!startsWith)
-                    result.setFailureMessage("Response expected to start with " + BinaryUtils.formatBinary(comparisonValue) + "\n" + "Response was: " + BinaryUtils.formatBinary(responseData));
+                    result.setFailureMessage("Response expected to start with " + expectedDescription + "\n" + "Response was: " + preview(responseData));
                 result.setFailure(!startsWith);
                 break;
             case NotStartsWith:
-                startsWith = comparisonValue.length <= responseData.length && Arrays.equals(comparisonValue, Arrays.copyOf(responseData, comparisonValue.length));
+                startsWith = isStartOf(responseData);
                 if (startsWith)
-                    result.setFailureMessage("Response expected not to start with " + BinaryUtils.formatBinary(comparisonValue) + "\n" + "Response was: " + BinaryUtils.formatBinary(responseData));
+                    result.setFailureMessage("Response expected not to start with " + expectedDescription + "\n" + "Response was: " + preview(responseData));
                 result.setFailure(startsWith);
                 break;
             default:
@@ -88,6 +103,47 @@ public class BinaryContentAssertion extends AbstractScopedAssertion implements A
         return result;
     }
 
+    /**
+     * Parses the comparison value (and prepares searching for it) only when it has changed since the last sample.
+     */
+    private void compile() {
+        String value = getComparisonValue();
+        if (comparisonValue == null || !value.equals(compiledFrom)) {
+            int maxPreviewSize = JMeterUtils.getPropDefault(FAILURE_PREVIEW_SIZE_PROPERTY, DEFAULT_FAILURE_PREVIEW_SIZE);
+            previewSize = maxPreviewSize < 0? Integer.MAX_VALUE: maxPreviewSize;
+            if (BinaryPattern.isPattern(value)) {
+                pattern = BinaryPattern.compile(value);
+                comparisonValue = new byte[0];
+                expectedDescription = "pattern " + value.trim();
+            }
+            else {
+                pattern = null;
+                comparisonValue = BinaryUtils.parseBinaryString(value);
+                searcher = BinaryUtils.compileSearch(comparisonValue);
+                expectedDescription = preview(comparisonValue);
+            }
+            compiledFrom = value;
+        }
+    }
+
+    private boolean isEqual(byte[] responseData) {
+        return pattern != null? pattern.matchesExactly(responseData): Arrays.equals(responseData, comparisonValue);
+    }
+
+    private boolean isContained(byte[] responseData) {
+        return pattern != null? pattern.indexOf(responseData) >= 0: searcher.isContainedIn(responseData);
+    }
+
+    private boolean isStartOf(byte[] responseData) {
+        if (pattern != null)
+            return pattern.matchesStart(responseData);
+        return BinaryUtils.startsWith(responseData, comparisonValue);
+    }
+
+    private String preview(byte[] data) {
+        return BinaryUtils.formatBinary(data, previewSize, " ... (" + data.length + " bytes)");
+    }
+
     public String getComparisonValue() {
         return getPropertyAsString("compareValue");
     }
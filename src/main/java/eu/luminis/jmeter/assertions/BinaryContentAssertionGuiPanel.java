@@ -101,6 +101,7 @@ public class BinaryContentAssertionGuiPanel extends JPanel {
                 borderPanel.setLayout(new BorderLayout());
                 binaryContent = new JTextArea();
                 binaryContent.setRows(5);
+                binaryContent.setToolTipText("<html>Bytes as hex, e.g. <code>0xca 0xfe babe</code>, or a pattern with wildcards (<code>??</code>, <code>0x4?</code>),<br>masks (<code>0x40&amp;0xf0</code>) and offsets (<code>[8]=0x00ff</code>)</html>");
                 borderPanel.add(binaryContent);
             }
 
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.assertions;
+
+import eu.luminis.jmeter.wssampler.AhoCorasickMatcher;
+import org.apache.jmeter.assertions.Assertion;
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractScopedAssertion;
+import org.apache.jmeter.threads.JMeterContextService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asserts that a (text) response contains any or all of a list of literal texts. All texts are searched for in one
+ * pass over the response data, so adding more texts hardly increases the cost of the assertion.
+ * The number of responses in which each text was found is available in JMeter variables named after the assertion, see
+ * {@link AhoCorasickMatcher#exportHitCounts}.
+ */
+public class TextPatternsAssertion extends AbstractScopedAssertion implements Assertion {
+
+    public enum ComparisonType {
+        ContainsAny,
+        ContainsAll,
+        NotContainsAny,
+        NotContainsAll
+    }
+
+    private transient AhoCorasickMatcher matcher;
+    private transient String compiledFrom;
+
+    @Override
+    public AssertionResult getResult(SampleResult sampleResult) {
+        AhoCorasickMatcher matcher = getMatcher();
+        byte[] responseData = getUtf8ResponseData(sampleResult);
+        ComparisonType comparisonType = getComparisonType();
+
+        AssertionResult result = new AssertionResult(getName());
+        switch (comparisonType) {
+            case ContainsAny:
+            case NotContainsAny:
+                int index = matcher.findAny(responseData, 0, responseData.length);
+                boolean containsAny = index >= 0;
+                result.setFailure(containsAny == (comparisonType == ComparisonType.NotContainsAny));
+                if (result.isFailure()) {
+                    if (containsAny)
+                        result.setFailureMessage("Response expected not to contain any of " + quote(matcher.getPatterns()) + ", but contains '" + matcher.getPatterns().get(index) + "'");
+                    else
+                        result.setFailureMessage("Response expected to contain any of " + quote(matcher.getPatterns()));
+                }
+                break;
+            case ContainsAll:
+            case NotContainsAll:
+                boolean[] found = new boolean[matcher.getPatternCount()];
+                boolean containsAll = matcher.getPatternCount() > 0 && matcher.findAll(responseData, 0, responseData.length, found) == matcher.getPatternCount();
+                result.setFailure(containsAll == (comparisonType == ComparisonType.NotContainsAll));
+                if (result.isFailure()) {
+                    if (containsAll)
+                        result.setFailureMessage("Response expected not to contain all of " + quote(matcher.getPatterns()));
+                    else
+                        result.setFailureMessage("Response expected to contain all of " + quote(matcher.getPatterns()) + ", but does not contain " + quote(missing(matcher.getPatterns(), found)));
+                }
+                break;
+            default:
+                throw new RuntimeException("Program error");
+        }
+        matcher.exportHitCounts(JMeterContextService.getContext().getVariables(), getName());
+        return result;
+    }
+
+    /**
+     * @return the number of responses in which each text was found, in the order of the texts; note that for "contains
+     * any", only the text that was found first is counted.
+     */
+    public long[] getPatternHitCounts() {
+        AhoCorasickMatcher current = matcher;
+        return current != null? current.getHitCounts(): new long[0];
+    }
+
+    private AhoCorasickMatcher getMatcher() {
+        String patterns = getPatterns();
+        if (matcher == null || !patterns.equals(compiledFrom)) {
+            matcher = AhoCorasickMatcher.forText(AhoCorasickMatcher.parsePatternLines(patterns));
+            compiledFrom = patterns;
+        }
+        return matcher;
+    }
+
+    private static byte[] getUtf8ResponseData(SampleResult sampleResult) {
+        // Samples of this plugin are UTF-8 encoded, so the texts can be searched for in the raw response data.
+        if (StandardCharsets.UTF_8.name().equalsIgnoreCase(sampleResult.getDataEncodingWithDefault()))
+            return sampleResult.getResponseData();
+        else
+            return sampleResult.getResponseDataAsString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> missing(List<String> patterns, boolean[] found) {
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            if (!found[i])
+                missing.add(patterns.get(i));
+        }
+        return missing;
+    }
+
+    private static String quote(List<String> patterns) {
+        StringBuilder builder = new StringBuilder();
+        for (String pattern: patterns) {
+            if (builder.length() > 0)
+                builder.append(", ");
+            builder.append("'").append(pattern).append("'");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the texts to search for, one per line
+     */
+    public String getPatterns() {
+        return getPropertyAsString("patterns");
+    }
+
+    public void setPatterns(String patterns) {
+        setProperty("patterns", patterns);
+    }
+
+    public ComparisonType getComparisonType() {
+        String rawValue = getPropertyAsString("comparisonType");
+        if (rawValue.trim().length() > 0)
+            return ComparisonType.valueOf(rawValue);
+        else
+            return ComparisonType.ContainsAny;
+    }
+
+    public void setComparisonType(ComparisonType comparisonType) {
+        setProperty("comparisonType", comparisonType.toString());
+    }
+}
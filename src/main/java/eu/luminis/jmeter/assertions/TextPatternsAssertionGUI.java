@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.assertions;
+
+import org.apache.jmeter.assertions.gui.AbstractAssertionGui;
+import org.apache.jmeter.testelement.TestElement;
+
+import java.awt.BorderLayout;
+
+import static eu.luminis.jmeter.assertions.TextPatternsAssertion.ComparisonType.*;
+
+public class TextPatternsAssertionGUI extends AbstractAssertionGui {
+
+    private TextPatternsAssertionGuiPanel settingsPanel;
+
+    public TextPatternsAssertionGUI() {
+        init();
+    }
+
+    @Override
+    public void clearGui() {
+        super.clearGui();
+        settingsPanel.clearGui();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return "Multiple Texts Response Assertion";
+    }
+
+    @Override
+    public String getLabelResource() {
+        return null;
+    }
+
+    private void init() {
+        setLayout(new BorderLayout(0, 5));
+        setBorder(makeBorder());
+        add(makeTitlePanel(), BorderLayout.NORTH);
+        settingsPanel = new TextPatternsAssertionGuiPanel();
+        add(settingsPanel, BorderLayout.CENTER);
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        TextPatternsAssertion element = new TextPatternsAssertion();
+        modifyTestElement(element);
+        return element;
+    }
+
+    @Override
+    public void modifyTestElement(TestElement el) {
+        configureTestElement(el);
+        if (el instanceof TextPatternsAssertion) {
+            TextPatternsAssertion assertion = (TextPatternsAssertion) el;
+            assertion.setPatterns(settingsPanel.patterns.getText());
+            boolean does = settingsPanel.doesButton.isSelected();
+            if (settingsPanel.anyButton.isSelected())
+                assertion.setComparisonType(does? ContainsAny: NotContainsAny);
+            else
+                assertion.setComparisonType(does? ContainsAll: NotContainsAll);
+        }
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        TextPatternsAssertion assertion = (TextPatternsAssertion) element;
+        settingsPanel.patterns.setText(assertion.getPatterns());
+        TextPatternsAssertion.ComparisonType type = assertion.getComparisonType();
+        settingsPanel.setDoes(type == ContainsAny || type == ContainsAll);
+        settingsPanel.setAny(type == ContainsAny || type == NotContainsAny);
+    }
+
+}
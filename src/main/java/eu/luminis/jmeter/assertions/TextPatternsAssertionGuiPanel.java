@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.assertions;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.ButtonGroup;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.border.TitledBorder;
+import java.awt.BorderLayout;
+
+public class TextPatternsAssertionGuiPanel extends JPanel {
+
+    JTextArea patterns;
+    JRadioButton doesButton;
+    JRadioButton doesNotButton;
+    JRadioButton anyButton;
+    JRadioButton allButton;
+
+    public TextPatternsAssertionGuiPanel() {
+        init();
+    }
+
+    private void init() {
+        this.setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        JPanel settingsPanel = new JPanel();
+        {
+            settingsPanel.setLayout(new BoxLayout(settingsPanel, BoxLayout.X_AXIS));
+            settingsPanel.add(Box.createHorizontalStrut(5));
+            settingsPanel.add(new JLabel("Assert response "));
+
+            JPanel negationPanel = new JPanel();
+            {
+                negationPanel.setLayout(new BoxLayout(negationPanel, BoxLayout.Y_AXIS));
+                doesButton = new JRadioButton("does");
+                negationPanel.add(doesButton);
+                doesNotButton = new JRadioButton("does NOT");
+                negationPanel.add(doesNotButton);
+                ButtonGroup negationGroup = new ButtonGroup();
+                doesButton.setSelected(true);
+                negationGroup.add(doesButton);
+                negationGroup.add(doesNotButton);
+                negationPanel.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder(5, 5, 0, 0), BorderFactory.createEtchedBorder()));
+            }
+            settingsPanel.add(negationPanel);
+
+            settingsPanel.add(new JLabel(" contain "));
+
+            JPanel quantifierPanel = new JPanel();
+            {
+                quantifierPanel.setLayout(new BoxLayout(quantifierPanel, BoxLayout.Y_AXIS));
+                anyButton = new JRadioButton("any");
+                quantifierPanel.add(anyButton);
+                allButton = new JRadioButton("all");
+                quantifierPanel.add(allButton);
+                anyButton.setSelected(true);
+                ButtonGroup quantifierGroup = new ButtonGroup();
+                quantifierGroup.add(anyButton);
+                quantifierGroup.add(allButton);
+                quantifierPanel.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5), BorderFactory.createEtchedBorder()));
+            }
+            settingsPanel.add(quantifierPanel);
+
+            settingsPanel.add(new JLabel("of the following texts:"));
+        }
+        settingsPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+        add(settingsPanel);
+
+        JSplitPane splitter = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
+        {
+            JPanel borderPanel = new JPanel();
+            {
+                borderPanel.setBorder(BorderFactory.createTitledBorder(null, "Texts (one per line)", TitledBorder.LEFT, TitledBorder.DEFAULT_POSITION));
+                borderPanel.setLayout(new BorderLayout());
+                patterns = new JTextArea();
+                patterns.setRows(5);
+                borderPanel.add(new JScrollPane(patterns));
+            }
+
+            splitter.setBorder(null);
+            splitter.setTopComponent(borderPanel);
+            splitter.setBottomComponent(new JPanel());
+        }
+
+        splitter.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+        add(splitter);
+    }
+
+    void clearGui() {
+        patterns.setText("");
+        // Default is: "does contain any"
+        setDoes(true);
+        setAny(true);
+    }
+
+    public void setDoes(boolean value) {
+        doesButton.setSelected(value);
+        doesNotButton.setSelected(!value);
+    }
+
+    public void setAny(boolean value) {
+        anyButton.setSelected(value);
+        allButton.setSelected(!value);
+    }
+
+    public static void main(String[] args) {
+        JFrame frame = new JFrame();
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(800, 400);
+        frame.getContentPane().add(new TextPatternsAssertionGuiPanel());
+        frame.setVisible(true);
+    }
+
+}
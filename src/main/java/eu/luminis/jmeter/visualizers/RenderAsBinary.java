@@ -24,18 +24,43 @@ import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jmeter.visualizers.ResultRenderer;
 import org.apache.jmeter.visualizers.SamplerResultTab;
 
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import java.awt.FlowLayout;
 import java.awt.Font;
 
+/**
+ * Renders binary responses as a table of hex values. Large responses are shown in pages, so only the page that is
+ * displayed is formatted, which keeps the results tree responsive whatever the size of the response.
+ */
 public class RenderAsBinary extends SamplerResultTab implements ResultRenderer {
 
+    static final int ROW_LENGTH = 16;
+    static final int DEFAULT_PAGE_SIZE = 16 * 1024;
+
     private int maxDisplaySize;
+    private int pageSize;
+    private byte[] displayedData;
+    private int displayedSize;
+    private int pageOffset;
+    private final StringBuilder pageBuffer = new StringBuilder();
+    private JPanel pagePanel;
+    private JLabel pageLabel;
+    private JButton previousButton;
+    private JButton nextButton;
+    private JTextField offsetField;
 
     public RenderAsBinary() {
         maxDisplaySize = JMeterUtils.getPropDefault("view.results.tree.max_binary_size", -1);
         if (maxDisplaySize == -1)
-            maxDisplaySize = 1024 * 1024;  // 1 MB
+            maxDisplaySize = Integer.MAX_VALUE;
         else if (maxDisplaySize < 64)
             maxDisplaySize = 64;
+        pageSize = JMeterUtils.getPropDefault("view.results.tree.binary_page_size", DEFAULT_PAGE_SIZE);
+        // Pages must consist of whole rows, otherwise row addresses of subsequent pages would not be aligned.
+        pageSize = Math.max(ROW_LENGTH, pageSize - pageSize % ROW_LENGTH);
     }
 
     @Override
@@ -43,16 +68,78 @@ public class RenderAsBinary extends SamplerResultTab implements ResultRenderer {
         Font oldFont = results.getFont();
         results.setFont(new Font(Font.MONOSPACED, Font.PLAIN, oldFont.getSize()));
         results.setContentType("text/plain");
-        byte[] responseData = sampleResult.getResponseData();
-        if (responseData.length > maxDisplaySize) {
-            results.setText("Binary response is too large to display; showing first " + maxDisplaySize + " bytes.\n" +
-                    BinaryUtils.formatBinaryInTable(responseData, maxDisplaySize, 16, true, true));
+        displayedData = sampleResult.getResponseData();
+        displayedSize = Math.min(displayedData.length, maxDisplaySize);
+        if (displayedSize > pageSize) {
+            resultsScrollPane.setColumnHeaderView(getPagePanel());
+        }
+        else {
+            resultsScrollPane.setColumnHeaderView(null);
         }
-        else
-            results.setText(BinaryUtils.formatBinaryInTable(responseData,16, true, true));
+        showPage(0);
+        resultsScrollPane.setViewportView(results);
+    }
 
+    private void showPage(int offset) {
+        pageOffset = Math.max(0, Math.min(offset - offset % pageSize, lastPageOffset()));
+        pageBuffer.setLength(0);
+        if (displayedSize < displayedData.length && pageOffset == 0)
+            pageBuffer.append("Binary response is too large to display; showing first ").append(displayedSize).append(" bytes.\n");
+        appendPage(pageBuffer, displayedData, pageOffset, Math.min(pageSize, displayedSize - pageOffset));
+        results.setText(pageBuffer.toString());
         results.setCaretPosition(0);
-        resultsScrollPane.setViewportView(results);
+
+        if (pagePanel != null) {
+            int pageCount = (displayedSize + pageSize - 1) / pageSize;
+            pageLabel.setText(String.format("Page %d of %d (bytes 0x%x - 0x%x of %d)", pageOffset / pageSize + 1, pageCount,
+                    pageOffset, pageOffset + Math.min(pageSize, displayedSize - pageOffset) - 1, displayedData.length));
+            previousButton.setEnabled(pageOffset > 0);
+            nextButton.setEnabled(pageOffset < lastPageOffset());
+        }
+    }
+
+    private int lastPageOffset() {
+        return displayedSize == 0? 0: (displayedSize - 1) / pageSize * pageSize;
+    }
+
+    static void appendPage(StringBuilder builder, byte[] data, int offset, int length) {
+        BinaryUtils.appendBinaryTable(builder, data, offset, length, ROW_LENGTH, true, true);
+    }
+
+    private JPanel getPagePanel() {
+        if (pagePanel == null) {
+            JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            previousButton = new JButton("<");
+            previousButton.setToolTipText("Previous page");
+            previousButton.addActionListener(e -> showPage(pageOffset - pageSize));
+            panel.add(previousButton);
+            nextButton = new JButton(">");
+            nextButton.setToolTipText("Next page");
+            nextButton.addActionListener(e -> showPage(pageOffset + pageSize));
+            panel.add(nextButton);
+            pageLabel = new JLabel();
+            panel.add(pageLabel);
+            panel.add(new JLabel("  Go to offset:"));
+            offsetField = new JTextField(8);
+            offsetField.setToolTipText("Decimal offset, or hexadecimal when prefixed with 0x");
+            offsetField.addActionListener(e -> {
+                Integer offset = parseOffset(offsetField.getText());
+                if (offset != null)
+                    showPage(offset);
+            });
+            panel.add(offsetField);
+            pagePanel = panel;
+        }
+        return pagePanel;
+    }
+
+    static Integer parseOffset(String value) {
+        try {
+            return Integer.decode(value.trim());
+        }
+        catch (NumberFormatException invalid) {
+            return null;
+        }
     }
 
     @Override
@@ -0,0 +1,270 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * Finds a set of literal (byte) patterns in a single pass over the data, using the Aho-Corasick algorithm. The automaton
+ * is built once (when the matcher is created) as a deterministic state machine, so matching costs one table lookup per
+ * byte, regardless of the number of patterns. To keep the transition table small, bytes are mapped to classes first:
+ * all bytes that do not occur in any pattern share one class.
+ * For each pattern, the matcher counts the number of searches in which it was found (see {@link #getHitCount(int)}).
+ * These counters are plain fields, so a matcher must only be used by one thread; the JMeter elements that use a matcher
+ * are used by one thread (each thread has its own copy of the test plan) and thus create their own.
+ */
+public final class AhoCorasickMatcher {
+
+    private static final int ROOT = 0;
+
+    private final List<String> patternNames;
+    private final int matchablePatternCount;
+    private final int[] byteClass = new int[256];
+    private final int classCount;
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final long[] hitCounts;
+
+    /**
+     * Creates a matcher for the given (UTF-8 encoded) text patterns. Patterns that cannot occur in UTF-8 decoded text
+     * (i.e. that contain lone surrogates) never match.
+     */
+    public static AhoCorasickMatcher forText(List<String> patterns) {
+        List<byte[]> encoded = new ArrayList<>(patterns.size());
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        for (String pattern: patterns) {
+            try {
+                ByteBuffer bytes = encoder.encode(CharBuffer.wrap(pattern));
+                encoded.add(Arrays.copyOf(bytes.array(), bytes.limit()));
+            }
+            catch (CharacterCodingException malformed) {
+                encoded.add(null);
+            }
+        }
+        return new AhoCorasickMatcher(encoded, patterns);
+    }
+
+    /**
+     * Splits the given value into patterns, one per line; empty lines are ignored.
+     */
+    public static List<String> parsePatternLines(String value) {
+        if (value == null)
+            return Collections.emptyList();
+        List<String> patterns = new ArrayList<>();
+        for (String line: value.split("\r?\n")) {
+            if (!line.isEmpty())
+                patterns.add(line);
+        }
+        return patterns;
+    }
+
+    /**
+     * @param patterns  the byte patterns; a null or empty pattern never matches
+     * @param names     names of the patterns, used for reporting; must have the same size as patterns
+     */
+    public AhoCorasickMatcher(List<byte[]> patterns, List<String> names) {
+        if (patterns.size() != names.size())
+            throw new IllegalArgumentException("number of names does not match number of patterns");
+        patternNames = Collections.unmodifiableList(new ArrayList<>(names));
+        hitCounts = new long[patterns.size()];
+
+        // Map each byte occurring in a pattern to its own class; class 0 is for all other bytes.
+        int classes = 1;
+        int matchable = 0;
+        int maxStates = 1;
+        for (byte[] pattern: patterns) {
+            if (pattern == null || pattern.length == 0)
+                continue;
+            matchable++;
+            maxStates += pattern.length;
+            for (byte b: pattern) {
+                if (byteClass[b & 0xff] == 0)
+                    byteClass[b & 0xff] = classes++;
+            }
+        }
+        classCount = classes;
+        matchablePatternCount = matchable;
+
+        // Build the trie; -1 means "no edge" until the failure transitions are filled in.
+        int[] trie = new int[maxStates * classCount];
+        Arrays.fill(trie, -1);
+        List<List<Integer>> stateOutputs = new ArrayList<>();
+        stateOutputs.add(new ArrayList<>());
+        int stateCount = 1;
+        for (int p = 0; p < patterns.size(); p++) {
+            byte[] pattern = patterns.get(p);
+            if (pattern == null || pattern.length == 0)
+                continue;
+            int state = ROOT;
+            for (byte b: pattern) {
+                int index = state * classCount + byteClass[b & 0xff];
+                if (trie[index] < 0) {
+                    trie[index] = stateCount++;
+                    stateOutputs.add(new ArrayList<>());
+                }
+                state = trie[index];
+            }
+            stateOutputs.get(state).add(p);
+        }
+
+        // Breadth first, turn the trie into a DFA: missing edges follow the failure link, and each state also outputs
+        // the patterns of its failure state (which are suffixes of the text matched so far).
+        int[] failure = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < classCount; c++) {
+            int next = trie[c];
+            if (next < 0)
+                trie[c] = ROOT;
+            else {
+                failure[next] = ROOT;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            stateOutputs.get(state).addAll(stateOutputs.get(failure[state]));
+            for (int c = 0; c < classCount; c++) {
+                int index = state * classCount + c;
+                int next = trie[index];
+                if (next < 0)
+                    trie[index] = trie[failure[state] * classCount + c];
+                else {
+                    failure[next] = trie[failure[state] * classCount + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        transitions = Arrays.copyOf(trie, stateCount * classCount);
+        outputs = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++)
+            outputs[s] = stateOutputs.get(s).isEmpty()? null: stateOutputs.get(s).stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+
+    /**
+     * Searches the data for the first occurrence of any of the patterns; stops as soon as a pattern is found.
+     * @return the index of the pattern that was found (if more patterns end at the same position, the one that was
+     * defined first), or -1 if none of the patterns occurs in the data
+     */
+    public int findAny(byte[] data, int offset, int length) {
+        int state = ROOT;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            state = transitions[state * classCount + byteClass[data[i] & 0xff]];
+            int[] output = outputs[state];
+            if (output != null) {
+                int first = output[0];
+                for (int p: output)
+                    first = Math.min(first, p);
+                hitCounts[first]++;
+                return first;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Searches the data for all patterns; stops as soon as all patterns are found.
+     * @param found  array (of at least the number of patterns) in which the patterns that are found are marked
+     * @return the number of (distinct) patterns found
+     */
+    public int findAll(byte[] data, int offset, int length, boolean[] found) {
+        Arrays.fill(found, 0, patternNames.size(), false);
+        int foundCount = 0;
+        int state = ROOT;
+        int end = offset + length;
+        for (int i = offset; i < end && foundCount < matchablePatternCount; i++) {
+            state = transitions[state * classCount + byteClass[data[i] & 0xff]];
+            int[] output = outputs[state];
+            if (output != null) {
+                for (int p: output) {
+                    if (!found[p]) {
+                        found[p] = true;
+                        foundCount++;
+                        hitCounts[p]++;
+                    }
+                }
+            }
+        }
+        return foundCount;
+    }
+
+    public int getPatternCount() {
+        return patternNames.size();
+    }
+
+    public List<String> getPatterns() {
+        return patternNames;
+    }
+
+    /**
+     * @return the number of searches in which the pattern with the given index was found; note that {@link #findAny}
+     * stops at the first match, so it only counts the pattern that was found first.
+     */
+    public long getHitCount(int patternIndex) {
+        return hitCounts[patternIndex];
+    }
+
+    public long[] getHitCounts() {
+        return hitCounts.clone();
+    }
+
+    /**
+     * Makes the hit counts available to the test plan as JMeter variables: {@code <prefix>_hits} holds the counts of
+     * all patterns (as returned by {@link #toString()}) and {@code <prefix>_hits_<n>} the count of the n-th pattern
+     * (1-based).
+     */
+    public void exportHitCounts(JMeterVariables variables, String prefix) {
+        if (variables == null)
+            return;
+        for (int i = 0; i < hitCounts.length; i++)
+            variables.put(prefix + "_hits_" + (i + 1), Long.toString(hitCounts[i]));
+        variables.put(prefix + "_hits", toString());
+    }
+
+    int getStateCount() {
+        return outputs.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < patternNames.size(); i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append("'").append(patternNames.get(i)).append("': ").append(hitCounts[i]);
+        }
+        return builder.toString();
+    }
+}
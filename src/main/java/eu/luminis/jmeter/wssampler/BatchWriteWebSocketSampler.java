@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.*;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Sends a batch of frames per sample, all written to the connection with one write, e.g. to simulate chatty clients
+ * that send many small messages at once.
+ */
+public class BatchWriteWebSocketSampler extends WebsocketGeneralSampler {
+
+    public static final int MIN_FRAME_COUNT = 1;
+    public static final int MAX_FRAME_COUNT = 100000;
+    public static final int DEFAULT_FRAME_COUNT = 10;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+
+    public BatchWriteWebSocketSampler() {
+        super.setName("Batch Write WebSocket Sampler");
+    }
+
+    @Override
+    protected WebSocketClient prepareWebSocketClient(SampleResult result) {
+        if (getCreateNewConnection()) {
+            dispose(threadLocalCachedConnection.get());
+            try {
+                URL url = new URL(getTLS()? "https": "http", getServer(), Integer.parseInt(getPort()), getPath());   // java.net.URL does not support "ws" protocol....
+                return new WebSocketClient(url);
+            } catch (MalformedURLException e) {
+                // Impossible
+                throw new RuntimeException();
+            }
+        }
+        else {
+            WebSocketClient wsClient = threadLocalCachedConnection.get();
+            if (wsClient != null) {
+                return wsClient;
+            }
+            else {
+                log.error("Sampler '"+ getName() + "': there is no connection to re-use");
+                result.setResponseCode("Sampler error");
+                result.setResponseMessage("Sampler configured for using existing connection, but there is no connection");
+                return null;
+            }
+        }
+    }
+
+    @Override
+    protected Frame doSample(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException, SamplingAbortedException {
+        File requestDataFile = getLoadDataFromFile()? new File(getDataFile()): null;
+        sendBatch(wsClient, result, getType(), getRequestData(), requestDataFile, Integer.parseInt(getFrameCount()));
+        return null;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    protected String validateArguments() {
+        String errorMsg = null;
+        if (getCreateNewConnection()) {
+            errorMsg = validatePortNumber(getPort());
+            if (errorMsg == null)
+                errorMsg = validateConnectionTimeout(getConnectTimeout());
+        }
+        if (errorMsg == null)
+            errorMsg = validateFrameCount(getFrameCount());
+        return errorMsg;
+    }
+
+    private String validateFrameCount(String value) {
+        try {
+            int frameCount = Integer.parseInt(value);
+            if (frameCount < MIN_FRAME_COUNT || frameCount > MAX_FRAME_COUNT)
+                return "Number of frames '" + frameCount + "' is not valid; should between " + MIN_FRAME_COUNT + " and " + MAX_FRAME_COUNT;
+        } catch (NumberFormatException notAnumber) {
+            return "Number of frames '" + value + "' is not a number.";
+        }
+        return null;
+    }
+
+    public String getServer() {
+        return getPropertyAsString("server");
+    }
+
+    public void setServer(String server) {
+        setProperty("server", server);
+    }
+
+    public String getPort() {
+        return getPropertyAsString("port", "" + DEFAULT_WS_PORT).trim();
+    }
+
+    public void setPort(String port) {
+        setProperty("port", port);
+    }
+
+    public String getPath() {
+        return getPropertyAsString("path");
+    }
+
+    public void setPath(String path) {
+        setProperty("path", path);
+    }
+
+    public String getRequestData() {
+        return getPropertyAsString("requestData");
+    }
+
+    public void setRequestData(String requestData) {
+        setProperty("requestData", requestData);
+    }
+
+    /**
+     * @return the number of frames sent per sample
+     */
+    public String getFrameCount() {
+        return getPropertyAsString("frameCount", "" + DEFAULT_FRAME_COUNT).trim();
+    }
+
+    public void setFrameCount(String frameCount) {
+        setProperty("frameCount", frameCount);
+    }
+
+    public String toString() {
+        return "WS Batch Write sampler '" + getName() + "'";
+    }
+
+    public boolean getCreateNewConnection() {
+        return getPropertyAsBoolean("createNewConnection");
+    }
+
+    public void setCreateNewConnection(boolean value) {
+        setProperty("createNewConnection", value);
+    }
+
+    @Override
+    public void setReadTimeout(String readTimeout) {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean getLoadDataFromFile() {
+        return getPropertyAsBoolean("loadDataFromFile");
+    }
+
+    public void setLoadDataFromFile(boolean value) {
+        setProperty("loadDataFromFile", value);
+    }
+
+    public String getDataFile() {
+        return getPropertyAsString("dataFile");
+    }
+
+    public void setDataFile(String dataFile) {
+        setProperty("dataFile", dataFile);
+    }
+
+}
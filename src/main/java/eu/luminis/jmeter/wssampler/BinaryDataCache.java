@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the result of parsing binary request data (see {@link BinaryUtils#parseBinaryString(String)}), so request
+ * data that does not change between samples (the common case) is only parsed once. The cache is shared by all threads
+ * and keeps the most recently used values, limited in number and total size; the size of an entry includes its key,
+ * as the (hex) string takes four times as much memory as the bytes it represents.
+ * Parsed data is shared by all samples using it, so it must never be modified.
+ */
+final class BinaryDataCache {
+
+    static final int MAX_ENTRIES = 64;
+    static final int MAX_CACHED_BYTES = 4 * 1024 * 1024;
+
+    private static final BinaryDataCache sharedCache = new BinaryDataCache();
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * Parses the given data, or returns the result of a previous parse of the same data (by any thread).
+     * @throws NumberFormatException when the data is not a valid binary string
+     */
+    static byte[] parseBinaryString(String data) {
+        return sharedCache.get(data);
+    }
+
+    byte[] get(String data) {
+        synchronized (this) {
+            byte[] parsed = entries.get(data);
+            if (parsed != null)
+                return parsed;
+        }
+
+        // Parse outside the lock, so other threads are not blocked; when two threads parse the same data concurrently,
+        // the last one wins, which is harmless.
+        byte[] parsed = BinaryUtils.parseBinaryString(data);
+        long size = size(data, parsed);
+        if (size <= MAX_CACHED_BYTES) {
+            synchronized (this) {
+                byte[] replaced = entries.put(data, parsed);
+                if (replaced != null)
+                    cachedBytes -= size(data, replaced);
+                cachedBytes += size;
+                evict();
+            }
+        }
+        return parsed;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES || cachedBytes > MAX_CACHED_BYTES) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            cachedBytes -= size(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long size(String key, byte[] value) {
+        // A Java (8) string takes two bytes per character
+        return 2L * key.length() + value.length;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        cachedBytes = 0;
+    }
+}
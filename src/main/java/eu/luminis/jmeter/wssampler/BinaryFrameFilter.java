@@ -32,6 +32,8 @@ public class BinaryFrameFilter extends FrameFilter {
     ComparisonType filterType;
     Integer matchPosition;
     byte[] matchValue;
+    private BinaryUtils.Searcher searcher;
+    private BinaryPattern pattern;
 
     public BinaryFrameFilter() {
         filterType = IsPlain;
@@ -45,6 +47,8 @@ public class BinaryFrameFilter extends FrameFilter {
     @Override
     protected void prepareFilter() {
         matchValue = new byte[0];
+        searcher = null;
+        pattern = null;
         filterType = getComparisonType();
         switch (filterType) {
             case Contains:
@@ -57,10 +61,16 @@ public class BinaryFrameFilter extends FrameFilter {
             case EndsWith:
             case NotEndsWith:
                 try {
-                    matchValue = BinaryUtils.parseBinaryString(getMatchValue());
-                    if (matchValue.length == 0)
-                        log.error("Binary filter '" + getName() + "' is missing match value; will filter nothing!");
-                } catch (NumberFormatException noNumber) {
+                    if (BinaryPattern.isPattern(getMatchValue())) {
+                        pattern = BinaryPattern.compile(getMatchValue());
+                    }
+                    else {
+                        matchValue = BinaryUtils.parseBinaryString(getMatchValue());
+                        searcher = BinaryUtils.compileSearch(matchValue);
+                        if (matchValue.length == 0)
+                            log.error("Binary filter '" + getName() + "' is missing match value; will filter nothing!");
+                    }
+                } catch (IllegalArgumentException invalidValue) {
                     log.error("Binary filter '" + getName() + "' will filter nothing, because it has an invalid (non binary) match value: '" + getMatchValue() + "'");
                 }
                 break;
@@ -81,6 +91,9 @@ public class BinaryFrameFilter extends FrameFilter {
             BinaryFrame receivedFrame = (BinaryFrame) frame;
             byte[] frameBytes = receivedFrame.getBinaryData();
 
+            if (pattern != null)
+                return matchesPattern(frameBytes);
+
             switch (filterType) {
                 case IsPlain:
                     return true;
@@ -99,7 +112,7 @@ public class BinaryFrameFilter extends FrameFilter {
                         return filterType == Contains? contains: !contains;
                     }
                     else {
-                        boolean contains = BinaryUtils.contains(frameBytes, matchValue);
+                        boolean contains = searcher != null && searcher.isContainedIn(frameBytes);
                         return filterType == Contains? contains: !contains;
                     }
                 case StartsWith:
@@ -118,6 +131,29 @@ public class BinaryFrameFilter extends FrameFilter {
             return false;
     }
 
+    private boolean matchesPattern(byte[] frameBytes) {
+        switch (filterType) {
+            case Equals:
+                return pattern.matchesExactly(frameBytes);
+            case NotEquals:
+                return !pattern.matchesExactly(frameBytes);
+            case Contains:
+                return matchPosition != null? pattern.matchesAt(frameBytes, matchPosition): pattern.indexOf(frameBytes) >= 0;
+            case NotContains:
+                return matchPosition != null? !pattern.matchesAt(frameBytes, matchPosition): pattern.indexOf(frameBytes) < 0;
+            case StartsWith:
+                return pattern.matchesStart(frameBytes);
+            case NotStartsWith:
+                return !pattern.matchesStart(frameBytes);
+            case EndsWith:
+                return pattern.matchesEnd(frameBytes);
+            case NotEndsWith:
+                return !pattern.matchesEnd(frameBytes);
+            default:
+                throw new RuntimeException("unknown comparison type");
+        }
+    }
+
     @Override
     protected Logger getLogger() {
         return log;
@@ -57,6 +57,8 @@ public class BinaryFrameFilterGui extends AbstractConfigGui {
         super.configure(element);
         if (element instanceof BinaryFrameFilter) {
             BinaryFrameFilter filter = (BinaryFrameFilter) element;
+            settingsPanel.discardReportingPanel.setReporting(filter.getDiscardReporting());
+            settingsPanel.discardReportingPanel.setLimit(filter.getDiscardReportLimit());
             settingsPanel.setComparisonType(filter.getComparisonType());
             settingsPanel.matchPosition.setText("" + filter.getMatchPosition());
             settingsPanel.binaryContent.setText(filter.getMatchValue());
@@ -69,6 +71,8 @@ public class BinaryFrameFilterGui extends AbstractConfigGui {
         configureTestElement(element);
         if (element instanceof BinaryFrameFilter) {
             BinaryFrameFilter filter = (BinaryFrameFilter) element;
+            filter.setDiscardReporting(settingsPanel.discardReportingPanel.getReporting());
+            filter.setDiscardReportLimit(settingsPanel.discardReportingPanel.getLimit());
             filter.setComparisonType(settingsPanel.getComparisonType());
             filter.setMatchPosition(settingsPanel.matchPosition.getText());
             filter.setMatchValue(settingsPanel.binaryContent.getText());
@@ -39,6 +39,7 @@ public class BinaryFrameFilterGuiPanel extends JPanel {
     private JComboBox typeSelector1;
     private JComboBox typeSelector2;
     JLabel binaryDataLabel;
+    DiscardReportingPanel discardReportingPanel;
 
     public BinaryFrameFilterGuiPanel() {
         setLayout(new BoxLayout(this, Y_AXIS));
@@ -81,6 +82,7 @@ public class BinaryFrameFilterGuiPanel extends JPanel {
                     matchDataPanel.setLayout(new BorderLayout());
                     binaryContent = new JTextArea();
                     binaryContent.setRows(5);
+                    binaryContent.setToolTipText("<html>Bytes as hex, e.g. <code>0xca 0xfe babe</code>, or a pattern with wildcards (<code>??</code>, <code>0x4?</code>),<br>masks (<code>0x40&amp;0xf0</code>) and offsets (<code>[8]=0x00ff</code>)</html>");
                     binaryContent.setEnabled(false);
                     matchPanelBorder.setEnabled(false);
                     matchDataPanel.add(binaryContent);
@@ -97,6 +99,10 @@ public class BinaryFrameFilterGuiPanel extends JPanel {
                     matchPositionPanel.add(matchPosition);
                 }
                 contentPanel.add(matchPositionPanel);
+
+                discardReportingPanel = new DiscardReportingPanel();
+                discardReportingPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+                contentPanel.add(discardReportingPanel);
                 matchPositionPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
             }
 
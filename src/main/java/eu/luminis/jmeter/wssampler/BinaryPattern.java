@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled binary pattern: a sequence of bytes that may contain wildcards, bit masks and explicit offsets.
+ * The pattern is given as whitespace separated elements:
+ * <ul>
+ *     <li>bytes, written as hex digits, optionally prefixed with 0x, e.g. <code>0x01</code>, <code>cafe</code> or
+ *     <code>0x00ff</code>; a hex digit can be replaced by <code>?</code> to match any nibble, e.g. <code>0x4?</code></li>
+ *     <li><code>??</code>, matching any byte</li>
+ *     <li>bytes followed by a mask, e.g. <code>0x40&amp;0xf0</code>: the bytes match when they are equal after the
+ *     mask is applied to the data; the mask must have as many bytes as the value</li>
+ *     <li>any of the above prefixed with an offset, e.g. <code>[8]=0x00ff</code>: the bytes are matched at the given
+ *     offset (relative to the start of the pattern) and the following elements continue after them</li>
+ * </ul>
+ * For example, <code>0x01 ?? 0x4? [8]=0x00ff&amp;0x0fff</code> matches data starting with 0x01, any byte, a byte with
+ * upper nibble 4, and with bytes 8 and 9 being 0x?0 and 0xff.
+ * The pattern is compiled into flat arrays of (offset, value, mask), so matching at a position is a single loop
+ * without any allocation. To find the pattern, the longest run of literal bytes in it (if any) is searched for first,
+ * so the full pattern is only checked at positions where that run occurs.
+ * Patterns are immutable and thus can be shared between threads.
+ */
+public final class BinaryPattern {
+
+    private static final Pattern ELEMENT = Pattern.compile("(?:\\[(\\d+)\\]=)?((?:0[xX])?[0-9a-fA-F?]+)(?:&((?:0[xX])?[0-9a-fA-F]+))?");
+
+    private final int[] offsets;
+    private final byte[] values;
+    private final byte[] masks;
+    private final int length;
+    private final boolean literal;
+    // Longest run of literal bytes (at consecutive offsets) in the pattern, or null if it has no literal bytes
+    private final BinaryUtils.Searcher anchorSearcher;
+    private final int anchorOffset;
+    private final int anchorLength;
+
+    private BinaryPattern(int[] offsets, byte[] values, byte[] masks, int length, boolean literal) {
+        this.offsets = offsets;
+        this.values = values;
+        this.masks = masks;
+        this.length = length;
+        this.literal = literal;
+
+        int bestStart = -1;
+        int bestLength = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (masks[i] != (byte) 0xff)
+                continue;
+            int end = i + 1;
+            while (end < offsets.length && masks[end] == (byte) 0xff && offsets[end] == offsets[end - 1] + 1)
+                end++;
+            if (end - i > bestLength) {
+                bestStart = i;
+                bestLength = end - i;
+            }
+            i = end - 1;
+        }
+        anchorSearcher = bestStart >= 0? BinaryUtils.compileSearch(Arrays.copyOfRange(values, bestStart, bestStart + bestLength)): null;
+        anchorOffset = bestStart >= 0? offsets[bestStart]: 0;
+        anchorLength = bestLength;
+    }
+
+    /**
+     * @return whether the value uses pattern syntax (wildcards, masks or offsets); if not, it is a plain binary value
+     * that can be parsed with {@link BinaryUtils#parseBinaryString(String)}.
+     */
+    public static boolean isPattern(String value) {
+        return value != null && (value.indexOf('?') >= 0 || value.indexOf('&') >= 0 || value.indexOf('[') >= 0);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the value is not a valid pattern
+     */
+    public static BinaryPattern compile(String value) {
+        List<int[]> elements = new ArrayList<>();
+        int position = 0;
+        int length = 0;
+        boolean literal = true;
+        for (String token: value.trim().split("\\s+")) {
+            if (token.isEmpty())
+                continue;
+            Matcher matcher = ELEMENT.matcher(token);
+            if (!matcher.matches())
+                throw new IllegalArgumentException("invalid binary pattern element '" + token + "'");
+            if (matcher.group(1) != null) {
+                // At most 10 digits, so it can be parsed as long; whether it fits in an int is checked below
+                position = matcher.group(1).length() <= 10? (int) Math.min(Long.parseLong(matcher.group(1)), Integer.MAX_VALUE): Integer.MAX_VALUE;
+                literal = false;
+            }
+            String digits = stripPrefix(matcher.group(2));
+            String maskDigits = matcher.group(3) != null? stripPrefix(matcher.group(3)): null;
+            if (digits.length() > 1 && digits.length() % 2 != 0)
+                throw new IllegalArgumentException("odd number of hex digits in binary pattern element '" + token + "'");
+            int byteCount = Math.max(1, digits.length() / 2);
+            if (maskDigits != null && (maskDigits.length() > 1 && maskDigits.length() % 2 != 0 || Math.max(1, maskDigits.length() / 2) != byteCount))
+                throw new IllegalArgumentException("mask in binary pattern element '" + token + "' must have the same number of bytes as the value");
+            if (position > Integer.MAX_VALUE - byteCount)
+                throw new IllegalArgumentException("offset of binary pattern element '" + token + "' is too large");
+
+            for (int i = 0; i < byteCount; i++) {
+                String byteDigits = digits.length() == 1? "0" + digits: digits.substring(2 * i, 2 * i + 2);
+                int byteValue = 0;
+                int byteMask = 0;
+                for (char digit: byteDigits.toCharArray()) {
+                    byteValue <<= 4;
+                    byteMask <<= 4;
+                    if (digit != '?') {
+                        byteValue |= Character.digit(digit, 16);
+                        byteMask |= 0xf;
+                    }
+                }
+                if (maskDigits != null) {
+                    String maskByte = maskDigits.length() == 1? "0" + maskDigits: maskDigits.substring(2 * i, 2 * i + 2);
+                    byteMask &= Integer.parseInt(maskByte, 16);
+                }
+                if (byteMask != 0xff)
+                    literal = false;
+                // A byte that is completely masked out matches anything, so it does not need to be checked at all.
+                if (byteMask != 0)
+                    elements.add(new int[] { position, byteValue & byteMask, byteMask });
+                position++;
+            }
+            length = Math.max(length, position);
+        }
+
+        int[] offsets = new int[elements.size()];
+        byte[] values = new byte[elements.size()];
+        byte[] masks = new byte[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            offsets[i] = elements.get(i)[0];
+            values[i] = (byte) elements.get(i)[1];
+            masks[i] = (byte) elements.get(i)[2];
+        }
+        return new BinaryPattern(offsets, values, masks, length, literal && elements.size() == length);
+    }
+
+    private static String stripPrefix(String hex) {
+        return hex.startsWith("0x") || hex.startsWith("0X")? hex.substring(2): hex;
+    }
+
+    /**
+     * @return the number of bytes the pattern spans
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return whether the pattern does not contain any wildcards, masks or offsets, i.e. just is a sequence of bytes
+     */
+    public boolean isLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return whether the pattern matches the data at the given position
+     */
+    public boolean matchesAt(byte[] data, int position) {
+        if (position < 0 || position > data.length - length)
+            return false;
+        for (int i = 0; i < offsets.length; i++) {
+            if ((byte) (data[position + offsets[i]] & masks[i]) != values[i])
+                return false;
+        }
+        return true;
+    }
+
+    public boolean matchesStart(byte[] data) {
+        return matchesAt(data, 0);
+    }
+
+    public boolean matchesEnd(byte[] data) {
+        return matchesAt(data, data.length - length);
+    }
+
+    public boolean matchesExactly(byte[] data) {
+        return data.length == length && matchesAt(data, 0);
+    }
+
+    /**
+     * @return the first position at which the pattern matches the data, or -1 if it does not match anywhere
+     */
+    public int indexOf(byte[] data) {
+        if (length == 0 || length > data.length)
+            return -1;
+        int lastStart = data.length - length;
+        if (anchorSearcher == null) {
+            for (int position = 0; position <= lastStart; position++) {
+                if (matchesAt(data, position))
+                    return position;
+            }
+            return -1;
+        }
+        int from = anchorOffset;
+        int to = lastStart + anchorOffset + anchorLength;
+        while (true) {
+            int found = anchorSearcher.indexOf(data, from, to);
+            if (found < 0)
+                return -1;
+            if (matchesAt(data, found - anchorOffset))
+                return found - anchorOffset;
+            from = found + 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < offsets.length; i++) {
+            if (i > 0)
+                builder.append(' ');
+            builder.append('[').append(offsets[i]).append("]=").append(String.format("0x%02x", values[i]));
+            if (masks[i] != (byte) 0xff)
+                builder.append(String.format("&0x%02x", masks[i]));
+        }
+        return builder.toString();
+    }
+}
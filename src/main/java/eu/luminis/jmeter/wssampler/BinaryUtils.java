@@ -19,36 +19,82 @@
 package eu.luminis.jmeter.wssampler;
 
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 public class BinaryUtils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    // The character shown for each byte value in the "ascii" column of a binary table
+    private static final char[] PRINTABLE_CHARS = new char[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            char c = (char) (byte) i;  // Note that the byte is sign extended, e.g. 0xca becomes \uffca
+            PRINTABLE_CHARS[i] = isPrintableChar(c)? c: '.';
+        }
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES["0123456789abcdef".charAt(i)] = (byte) i;
+            HEX_VALUES["0123456789ABCDEF".charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * Parses a binary string: whitespace separated elements that are either a hex number prefixed with 0x (of which
+     * only the lowest byte is used, e.g. 0x1 or 0x12), or a sequence of hex digit pairs (e.g. cafebabe); a trailing
+     * single digit counts as a byte.
+     * @throws NumberFormatException when the data contains anything else
+     */
     public static byte[] parseBinaryString(String data) {
-        if (data.trim().length() > 0) {
-            String[] bytes = data.split(" ");
-            List<Byte> result = new ArrayList<>();
-            for (String element : bytes) {
-                if (element.startsWith("0x"))
-                    result.add(Integer.decode(element).byteValue());
-                else {
-                    for (int i = 0; i < element.length(); i += 2) {
-                        String hexByte = element.substring(i, Math.min(element.length(), i+2));
-                        result.add((byte) Integer.parseInt(hexByte, 16));
-                    }
+        int length = data.length();
+        // Each byte takes at least two characters (two digits, or one digit and a separator), so this is large enough.
+        byte[] result = new byte[(length + 1) / 2];
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            char c = data.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < length && !Character.isWhitespace(data.charAt(end)))
+                end++;
+            if (end - i >= 2 && c == '0' && (data.charAt(i + 1) == 'x' || data.charAt(i + 1) == 'X')) {
+                // Like Integer.decode: at most 8 hex digits, only the lowest byte is retained.
+                int digits = end - i - 2;
+                if (digits == 0 || digits > 8)
+                    throw new NumberFormatException("For input string: \"" + data.substring(i, end) + "\"");
+                int value = 0;
+                for (int d = i + 2; d < end; d++)
+                    value = value << 4 | hexValue(data, d, i, end);
+                result[count++] = (byte) value;
+            }
+            else {
+                for (int d = i; d < end; d += 2) {
+                    if (d + 1 < end)
+                        result[count++] = (byte) (hexValue(data, d, i, end) << 4 | hexValue(data, d + 1, i, end));
+                    else
+                        result[count++] = (byte) hexValue(data, d, i, end);
                 }
             }
-            return toByteArray(result);
+            i = end;
         }
-        else
-            return new byte[0];
+        return count == result.length? result: Arrays.copyOf(result, count);
+    }
+
+    private static int hexValue(String data, int index, int elementStart, int elementEnd) {
+        char c = data.charAt(index);
+        int value = c < 128? HEX_VALUES[c]: -1;
+        if (value < 0)
+            throw new NumberFormatException("For input string: \"" + data.substring(elementStart, elementEnd) + "\"");
+        return value;
     }
 
     public static String formatBinary(byte[] data) {
-        StringBuilder builder = new StringBuilder();
-        for (byte b: data)
-            builder.append(String.format("%#04x ", b));  // # defines the leading 0x, which takes 2 chars, hence width is 2 + 2 = 4
-        return builder.toString().trim();
+        return formatBinary(data, data.length, "");
     }
 
     public static String formatBinaryInTable(byte[] data, int rowLength, boolean showRowAddress, boolean showAscii) {
@@ -56,65 +102,83 @@ public class BinaryUtils {
     }
 
     public static String formatBinaryInTable(byte[] data, int dataSize, int rowLength, boolean showRowAddress, boolean showAscii) {
-        StringBuilder builder = new StringBuilder();
-        int i;
-        for (i = 0; i < dataSize; i++) {
-            if (showRowAddress && i % rowLength == 0)
-                builder.append(String.format("%04x  ", i));
-            builder.append(String.format("%02x", data[i]));
-            if ((i + 1) % rowLength == 0) {
-                if (showAscii) {
-                    builder.append("  ");
-                    for (int j = i + 1 - rowLength; j <= i; j++) {
-                        if (isPrintableChar((char) data[j]))
-                            builder.append((char) data[j]);
-                        else
-                            builder.append(".");
-                        if ((j + 1) % rowLength % 8 == 0 && (j + 1) % rowLength != 0)
-                            builder.append(" ");
-                    }
-                }
-                builder.append("\n");
-            } else if ((i + 1) % rowLength % 8 == 0)
+        StringBuilder builder = new StringBuilder(estimateTableSize(dataSize, rowLength, showRowAddress, showAscii));
+        appendBinaryTable(builder, data, 0, dataSize, rowLength, showRowAddress, showAscii);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the given part of the data to the builder as a table of hex values (with an extra space after every 8
+     * bytes), optionally preceded by the address (offset in data) of each row and followed by the printable characters.
+     * Rows start at the given offset, so when formatting a large array in parts, offset should be a multiple of rowLength.
+     * Uses lookup tables only, so this is cheap enough to format large data.
+     */
+    public static void appendBinaryTable(StringBuilder builder, byte[] data, int offset, int length, int rowLength, boolean showRowAddress, boolean showAscii) {
+        int end = offset + length;
+        for (int rowStart = offset; rowStart < end; rowStart += rowLength) {
+            int rowEnd = Math.min(rowStart + rowLength, end);
+            if (showRowAddress) {
+                appendHex(builder, rowStart, 4);
                 builder.append("  ");
-            else if (i != dataSize - 1)
-                builder.append(" ");
-            else {
-                if (showAscii) {
-                    for (int j = i + 1; j % rowLength != 0; j++) {
-                        builder.append("   ");
-                        if (j % rowLength % 8 == 0)
-                            builder.append(" ");
-                    }
-                    builder.append("  ");
-                    int j;
-                    for (j = i - (i % rowLength); j <= i; j++) {
-                        if (isPrintableChar((char) data[j]))
-                            builder.append((char) data[j]);
-                        else
-                            builder.append(".");
-                        if ((j + 1) % rowLength % 8 == 0 && (j + 1) % rowLength != 0)
-                            builder.append(" ");
-                    }
+            }
+            for (int i = rowStart; i < rowEnd; i++) {
+                if (i > rowStart)
+                    builder.append((i - rowStart) % 8 == 0? "  ": " ");
+                builder.append(HEX_DIGITS[(data[i] >> 4) & 0x0f]).append(HEX_DIGITS[data[i] & 0x0f]);
+            }
+            if (showAscii) {
+                for (int padding = hexCellsWidth(rowLength) - hexCellsWidth(rowEnd - rowStart); padding > 0; padding--)
+                    builder.append(' ');
+                builder.append("  ");
+                for (int i = rowStart; i < rowEnd; i++) {
+                    if (i > rowStart && (i - rowStart) % 8 == 0)
+                        builder.append(' ');
+                    builder.append(PRINTABLE_CHARS[data[i] & 0xff]);
                 }
-                builder.append("\n");
             }
+            builder.append('\n');
         }
+    }
 
-        return builder.toString();
+    private static int hexCellsWidth(int byteCount) {
+        return byteCount == 0? 0: byteCount * 3 - 1 + (byteCount - 1) / 8;
+    }
+
+    private static int estimateTableSize(int dataSize, int rowLength, boolean showRowAddress, boolean showAscii) {
+        int rows = (dataSize + rowLength - 1) / Math.max(1, rowLength);
+        return rows * ((showRowAddress? 6: 0) + hexCellsWidth(rowLength) + (showAscii? 2 + rowLength + rowLength / 8: 0) + 1);
+    }
+
+    private static void appendHex(StringBuilder builder, int value, int minDigits) {
+        int digits = Math.max(minDigits, (35 - Integer.numberOfLeadingZeros(value)) / 4);
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4)
+            builder.append(HEX_DIGITS[(value >>> shift) & 0x0f]);
     }
 
     public static String formatBinary(byte[] data, int maxBytes, String truncationSuffix) {
-        StringBuilder builder = new StringBuilder();
         int byteCount = Math.min(data.length, maxBytes);
-        for (int i = 0; i < byteCount; i++)
-            builder.append(String.format("%#04x ", data[i]));  // # defines the leading 0x, which takes 2 chars, hence width is 2 + 2 = 4
+        if (byteCount <= 0)
+            return byteCount < data.length? truncationSuffix: "";
+        char[] chars = new char[byteCount * 5 - 1];
+        for (int i = 0; i < byteCount; i++) {
+            int position = i * 5;
+            if (i > 0)
+                chars[position - 1] = ' ';
+            chars[position] = '0';
+            chars[position + 1] = 'x';
+            chars[position + 2] = HEX_DIGITS[(data[i] >> 4) & 0x0f];
+            chars[position + 3] = HEX_DIGITS[data[i] & 0x0f];
+        }
         if (byteCount < data.length)
-            return builder.toString().trim() + truncationSuffix;
+            return new String(chars) + truncationSuffix;
         else
-            return builder.toString().trim();
+            return new String(chars);
     }
 
+    /**
+     * Checks whether source contains value, without any preprocessing; for searching the same value repeatedly (or
+     * in large data), use a {@link Searcher}.
+     */
     public static boolean contains(byte[] source, byte[] value) {
         if (value.length == 0)
             return false;
@@ -133,11 +197,17 @@ public class BinaryUtils {
         return false;
     }
 
-    private static byte[] toByteArray(List<Byte> bytes) {
-        byte[] result = new byte[bytes.size()];
-        for (int i = 0; i < bytes.size(); i++)
-            result[i] = bytes.get(i);
-        return result;
+    /**
+     * @return whether data starts with the given value (compared in place, i.e. without copying)
+     */
+    public static boolean startsWith(byte[] data, byte[] value) {
+        if (value.length > data.length)
+            return false;
+        for (int i = 0; i < value.length; i++) {
+            if (data[i] != value[i])
+                return false;
+        }
+        return true;
     }
 
     public static boolean isPrintableChar( char c ) {
@@ -147,4 +217,92 @@ public class BinaryUtils {
                 block != null &&
                 block != Character.UnicodeBlock.SPECIALS;
     }
+
+    /**
+     * Creates a searcher for the given value, which can be reused for searching any number of byte arrays.
+     */
+    public static Searcher compileSearch(byte[] value) {
+        return new Searcher(value);
+    }
+
+    /**
+     * Searches for a byte sequence using the Boyer-Moore-Horspool algorithm: the shift table is computed once (when
+     * the searcher is created), after which a search can skip up to the length of the value at each mismatch, so
+     * longer values are found faster. For short values, the skips are too small to pay off, so these are searched
+     * by scanning for the first byte. Searchers are immutable and thus can be shared between threads.
+     */
+    public static final class Searcher {
+
+        static final int MIN_SKIP_SEARCH_LENGTH = 8;
+
+        private final byte[] value;
+        private final int[] shift;
+
+        private Searcher(byte[] value) {
+            this.value = value.clone();
+            shift = new int[256];
+            int length = value.length;
+            Arrays.fill(shift, length);
+            for (int i = 0; i < length - 1; i++)
+                shift[value[i] & 0xff] = length - 1 - i;
+        }
+
+        /**
+         * @return the index of the first occurrence of the value in data, or -1 if data does not contain it (or when the
+         * value is empty)
+         */
+        public int indexOf(byte[] data) {
+            return indexOf(data, 0, data.length);
+        }
+
+        /**
+         * @return the index of the first occurrence of the value in data between from (inclusive) and to (exclusive), or
+         * -1 if that range does not contain the value (or when the value is empty)
+         */
+        public int indexOf(byte[] data, int from, int to) {
+            int length = value.length;
+            if (length == 0)
+                return -1;
+            if (length < MIN_SKIP_SEARCH_LENGTH)
+                return scanIndexOf(data, from, to);
+            int last = length - 1;
+            byte lastByte = value[last];
+            int position = from;
+            while (position <= to - length) {
+                byte current = data[position + last];
+                if (current == lastByte) {
+                    int i = last - 1;
+                    while (i >= 0 && data[position + i] == value[i])
+                        i--;
+                    if (i < 0)
+                        return position;
+                }
+                position += shift[current & 0xff];
+            }
+            return -1;
+        }
+
+        private int scanIndexOf(byte[] data, int from, int to) {
+            byte first = value[0];
+            int lastStart = to - value.length;
+            for (int position = from; position <= lastStart; position++) {
+                if (data[position] == first) {
+                    int i = 1;
+                    while (i < value.length && data[position + i] == value[i])
+                        i++;
+                    if (i == value.length)
+                        return position;
+                }
+            }
+            return -1;
+        }
+
+        public boolean isContainedIn(byte[] data) {
+            return indexOf(data) >= 0;
+        }
+
+        public int getLength() {
+            return value.length;
+        }
+    }
 }
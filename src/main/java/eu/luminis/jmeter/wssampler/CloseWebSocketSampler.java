@@ -55,12 +55,7 @@ public class CloseWebSocketSampler extends WebsocketSampler {
         Frame frameSent = wsClient.sendClose(closeStatus, reason);
         result.setSentBytes(frameSent.getSize());
 
-        Frame receivedFrame = null;
-        if (!frameFilters.isEmpty()) {
-            receivedFrame = frameFilters.get(0).receiveFrame(frameFilters.subList(1, frameFilters.size()), wsClient, readTimeout, result);
-        }
-        else
-            receivedFrame = wsClient.receiveFrame(readTimeout);
+        Frame receivedFrame = readFrame(wsClient, result);
 
         if (receivedFrame.isClose())
             return receivedFrame;
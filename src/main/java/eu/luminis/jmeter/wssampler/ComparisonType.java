@@ -32,9 +32,20 @@ public enum ComparisonType {
     NotContains,
     NotContainsRegex,
     NotStartsWith,
-    NotEndsWith;
+    NotEndsWith,
+    ContainsAny,
+    ContainsAll,
+    NotContainsAny,
+    NotContainsAll;
 
     public boolean isRegexComparison() {
         return this == EqualsRegex || this == ContainsRegex || this == NotContainsRegex || this == NotEqualsRegex;
     }
+
+    /**
+     * @return whether the match value is a list of (literal) patterns, one per line
+     */
+    public boolean isMultiPatternComparison() {
+        return this == ContainsAny || this == ContainsAll || this == NotContainsAny || this == NotContainsAll;
+    }
 }
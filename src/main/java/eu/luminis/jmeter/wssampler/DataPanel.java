@@ -59,6 +59,8 @@ public class DataPanel extends JPanel {
     private final JTextField filePathField;
     private final JButton browseButton;
     private final JCheckBox enableFile;
+    private final JTextField fragmentSizeField;
+    private final JPanel fragmentPanel;
 
     public DataPanel() {
 
@@ -156,6 +158,27 @@ public class DataPanel extends JPanel {
         }
         filePathPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
         add(filePathPanel);
+
+        add(Box.createVerticalStrut(5));
+        fragmentPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        {
+            fragmentPanel.add(Box.createHorizontalStrut(5));
+            fragmentPanel.add(new JLabel("Send in fragments of "));
+            fragmentSizeField = new JTextField();
+            fragmentSizeField.setColumns(8);
+            fragmentSizeField.setToolTipText("Fragment size in bytes; leave empty to send the request data in one frame");
+            fragmentPanel.add(fragmentSizeField);
+            fragmentPanel.add(new JLabel(" bytes (leave empty for a single frame)"));
+        }
+        fragmentPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+        add(fragmentPanel);
+    }
+
+    /**
+     * Shows or hides the fragment size option, for samplers that do not support sending in fragments.
+     */
+    void setFragmentOptionVisible(boolean visible) {
+        fragmentPanel.setVisible(visible);
     }
 
     void enableSelectFileOption(boolean enable) {
@@ -171,6 +194,7 @@ public class DataPanel extends JPanel {
         requestDataField.setText("");
         messageField.setText("");
         enableFile.setSelected(false);
+        fragmentSizeField.setText("");
     }
 
     public String getRequestData() {
@@ -223,6 +247,14 @@ public class DataPanel extends JPanel {
         return filePathField.getText();
     }
 
+    public String getFragmentSize() {
+        return fragmentSizeField.getText();
+    }
+
+    public void setFragmentSize(String fragmentSize) {
+        fragmentSizeField.setText(fragmentSize);
+    }
+
     public void setDataFile(String file) {
         filePathField.setText(file);
     }
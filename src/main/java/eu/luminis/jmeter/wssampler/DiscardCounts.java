@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.Frame;
+
+/**
+ * Counts frames (and bytes) discarded by a filter during one receive, per frame type. Counting does not allocate, so
+ * counting frames on a busy connection is cheap.
+ */
+final class DiscardCounts {
+
+    private static final String[] TYPE_NAMES = { "text", "binary", "ping", "pong", "close" };
+
+    private final long[] frameCounts = new long[TYPE_NAMES.length];
+    private final long[] payloadBytes = new long[TYPE_NAMES.length];
+    private long headerBytes;
+    private long sentBytes;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private int reported;
+
+    void reset() {
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            frameCounts[i] = 0;
+            payloadBytes[i] = 0;
+        }
+        headerBytes = 0;
+        sentBytes = 0;
+        firstTimestamp = 0;
+        lastTimestamp = 0;
+        reported = 0;
+    }
+
+    /**
+     * @return the number of discarded frames that were reported individually (i.e. as a full sub result)
+     */
+    int getReported() {
+        return reported;
+    }
+
+    void incrementReported() {
+        reported++;
+    }
+
+    void count(Frame frame, long start, long end, int sent) {
+        int type = typeIndex(frame);
+        frameCounts[type]++;
+        long payloadSize = frame.getPayloadSizeAsLong();
+        payloadBytes[type] += payloadSize;
+        headerBytes += frame.getSizeAsLong() - payloadSize;
+        sentBytes += sent;
+        if (firstTimestamp == 0)
+            firstTimestamp = start;
+        lastTimestamp = end;
+    }
+
+    long getFrameCount() {
+        long total = 0;
+        for (long count: frameCounts)
+            total += count;
+        return total;
+    }
+
+    long getPayloadBytes() {
+        long total = 0;
+        for (long bytes: payloadBytes)
+            total += bytes;
+        return total;
+    }
+
+    long getHeaderBytes() {
+        return headerBytes;
+    }
+
+    long getSentBytes() {
+        return sentBytes;
+    }
+
+    long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * @return summary like "12 text frames (3400 bytes), 2 ping frames (0 bytes)"
+     */
+    String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (frameCounts[i] > 0) {
+                if (summary.length() > 0)
+                    summary.append(", ");
+                summary.append(frameCounts[i]).append(' ').append(TYPE_NAMES[i]).append(frameCounts[i] == 1? " frame": " frames")
+                        .append(" (").append(payloadBytes[i]).append(" bytes)");
+            }
+        }
+        return summary.toString();
+    }
+
+    private static int typeIndex(Frame frame) {
+        if (frame.isText())
+            return 0;
+        else if (frame.isBinary())
+            return 1;
+        else if (frame.isPing())
+            return 2;
+        else if (frame.isPong())
+            return 3;
+        else
+            return 4;
+    }
+}
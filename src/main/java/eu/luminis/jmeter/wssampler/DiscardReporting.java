@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+/**
+ * Determines how frames discarded by a filter are reported in the sample result.
+ */
+public enum DiscardReporting {
+
+    /** Each discarded frame is reported as a sub result, including its payload. */
+    Full,
+    /** The first N discarded frames (per sample) are reported as sub result, the others are only counted. */
+    FirstN,
+    /** Discarded frames are only counted; one summary sub result reports number of frames and bytes per frame type. */
+    CountsOnly,
+    /** Discarded frames are not reported at all. */
+    None
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Panel for selecting how frames discarded by a filter are reported in the sample result, used by the frame filters.
+ */
+public class DiscardReportingPanel extends JPanel {
+
+    private static final String[] OPTIONS = {
+            "each frame as sub result (full)",
+            "the first frames as sub result, count the rest",
+            "counts only (one summary sub result)",
+            "nothing" };
+    private static final DiscardReporting[] VALUES = {
+            DiscardReporting.Full, DiscardReporting.FirstN, DiscardReporting.CountsOnly, DiscardReporting.None };
+
+    private final JComboBox<String> reportingSelector;
+    JTextField limitField;
+
+    public DiscardReportingPanel() {
+        setLayout(new FlowLayout(FlowLayout.LEFT));
+        add(new JLabel("Report discarded frames: "));
+        reportingSelector = new JComboBox<>(OPTIONS);
+        add(reportingSelector);
+        add(new JLabel("number of frames: "));
+        limitField = new JTextField();
+        limitField.setColumns(5);
+        limitField.setToolTipText("Maximum number of discarded frames (per sample) that are reported as sub result");
+        add(limitField);
+
+        reportingSelector.addActionListener(e -> limitField.setEnabled(getReporting() == DiscardReporting.FirstN));
+        setReporting(DiscardReporting.Full);
+        limitField.setText("" + FrameFilter.DEFAULT_DISCARD_REPORT_LIMIT);
+    }
+
+    public DiscardReporting getReporting() {
+        int index = reportingSelector.getSelectedIndex();
+        return index >= 0? VALUES[index]: DiscardReporting.Full;
+    }
+
+    public void setReporting(DiscardReporting reporting) {
+        reportingSelector.setSelectedIndex(reporting.ordinal());
+        limitField.setEnabled(reporting == DiscardReporting.FirstN);
+    }
+
+    public String getLimit() {
+        return limitField.getText();
+    }
+
+    public void setLimit(String limit) {
+        limitField.setText(limit);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.Frame;
+import eu.luminis.websocket.WebSocketClient;
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+/**
+ * Immutable chain of compiled frame filters. Frames are received in one loop that applies all filters until a frame
+ * is found that is not discarded by any of them, within one deadline (the read timeout).
+ * Filters are applied in reverse order of the list, i.e. the last filter added to a sampler sees a frame first. This
+ * is the same order in which the (formerly nested) filters were applied.
+ */
+final class FilterChain {
+
+    static final FilterChain EMPTY = new FilterChain(new FrameFilter.CompiledFilter[0]);
+
+    private final FrameFilter.CompiledFilter[] filters;
+
+    private FilterChain(FrameFilter.CompiledFilter[] filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Compiles the given filters into a chain; filters whose properties did not change since their last compilation
+     * are not compiled again.
+     */
+    static FilterChain compile(List<FrameFilter> filterList) {
+        if (filterList.isEmpty())
+            return EMPTY;
+        FrameFilter.CompiledFilter[] filters = new FrameFilter.CompiledFilter[filterList.size()];
+        for (int i = 0; i < filters.length; i++)
+            filters[i] = filterList.get(filters.length - 1 - i).compile();
+        return new FilterChain(filters);
+    }
+
+    int size() {
+        return filters.length;
+    }
+
+    Frame receiveFrame(WebSocketClient wsClient, int readTimeout, SampleResult result) throws IOException {
+        if (filters.length == 0)
+            return wsClient.receiveFrame(readTimeout);
+
+        for (FrameFilter.CompiledFilter filter: filters)
+            filter.startReceive();
+        try {
+            long deadline = System.currentTimeMillis() + readTimeout;
+            int socketTimeout = readTimeout;
+            while (true) {
+                long receiveStart = System.currentTimeMillis();
+                Frame receivedFrame = wsClient.receiveFrame(socketTimeout);
+
+                FrameFilter.CompiledFilter discardingFilter = null;
+                for (FrameFilter.CompiledFilter filter: filters) {
+                    if (filter.matches(receivedFrame)) {
+                        discardingFilter = filter;
+                        break;
+                    }
+                }
+                if (discardingFilter == null)
+                    return receivedFrame;
+
+                discardingFilter.discard(receivedFrame, wsClient, result, receiveStart);
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0)
+                    socketTimeout = (int) remaining;
+                else {
+                    // Time spent waiting for a valid frame (one that passed the filters) is now equal to original read timeout, so do not wait any longer.
+                    throw new SocketTimeoutException("Read timed out");
+                }
+            }
+        }
+        finally {
+            for (FrameFilter.CompiledFilter filter: filters)
+                filter.endReceive(result);
+        }
+    }
+}
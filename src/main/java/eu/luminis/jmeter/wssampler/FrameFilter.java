@@ -21,13 +21,16 @@ package eu.luminis.jmeter.wssampler;
 import eu.luminis.websocket.*;
 import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.log.Logger;
 
 import java.io.IOException;
-import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Base class for frame filters.
@@ -37,9 +40,14 @@ import java.util.List;
 public abstract class FrameFilter extends ConfigTestElement {
 
     public final static String RESULT_SIZE_INCLUDES_FILTERED_FRAMES = "websocket.result.size_includes_filtered_frames";
+    public final static int DEFAULT_DISCARD_REPORT_LIMIT = 10;
 
     private static boolean includeFilteredFramesInSize;
 
+    private CompiledFilter compiledFilter;
+    // Names and values of the properties the compiled filter was created from: name, value, name, value, ...
+    private String[] compiledFrom;
+
     static {
         initStaticFilterOptions();
     }
@@ -53,63 +61,124 @@ public abstract class FrameFilter extends ConfigTestElement {
     }
 
     public Frame receiveFrame(List<FrameFilter> filterList, WebSocketClient wsClient, int readTimeout, SampleResult result) throws IOException {
+        List<FrameFilter> chain = new ArrayList<>();
+        chain.add(this);
+        chain.addAll(filterList);
+        return FilterChain.compile(chain).receiveFrame(wsClient, readTimeout, result);
+    }
+
+    /**
+     * Compiles this filter into a predicate that does not need to access the (JMeter) properties of this filter.
+     * The compiled filter is cached and reused as long as the property values do not change; checking this compares
+     * the current values with the ones the filter was compiled from, so nothing is built for an unchanged filter.
+     */
+    final CompiledFilter compile() {
+        if (compiledFilter == null || propertiesChanged()) {
+            compiledFilter = new CompiledFilter(this, createMatcher(), getDiscardReporting(), getDiscardReportLimitAsInt());
+            compiledFrom = getPropertyValues();
+        }
+        return compiledFilter;
+    }
+
+    private boolean propertiesChanged() {
+        PropertyIterator iterator = propertyIterator();
+        int index = 0;
+        while (iterator.hasNext()) {
+            JMeterProperty property = iterator.next();
+            if (index + 1 >= compiledFrom.length
+                    || !property.getName().equals(compiledFrom[index])
+                    || !property.getStringValue().equals(compiledFrom[index + 1]))
+                return true;
+            index += 2;
+        }
+        return index != compiledFrom.length;
+    }
+
+    private String[] getPropertyValues() {
+        List<String> values = new ArrayList<>();
+        PropertyIterator iterator = propertyIterator();
+        while (iterator.hasNext()) {
+            JMeterProperty property = iterator.next();
+            values.add(property.getName());
+            values.add(property.getStringValue());
+        }
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * Creates the predicate that determines whether a frame is discarded by this filter. Subclasses that depend on
+     * properties should read them here (once), instead of for every frame.
+     */
+    protected Predicate<Frame> createMatcher() {
         prepareFilter();
+        return this::matchesFilter;
+    }
 
-        Frame receivedFrame;
-        int socketTimeout = readTimeout;
-        boolean matchesFilter;
-        do {
+    /**
+     * @return the predicate of the compiled filter, or null when this filter has not been compiled yet
+     */
+    protected Predicate<Frame> getCompiledMatcher() {
+        return compiledFilter != null? compiledFilter.matcher: null;
+    }
+
+    private void discard(Frame receivedFrame, WebSocketClient wsClient, SampleResult result, long receiveStart, int reportLimit, DiscardCounts counts) throws IOException {
+        if (getLogger().isDebugEnabled())
+            getLogger().debug("Filter discards " + receivedFrame);
+        Frame sentFrame = performReplyAction(wsClient, receivedFrame);
+        long end = System.currentTimeMillis();
+
+        if (includeFilteredFramesInSize) {
+            result.setHeadersSize(result.getHeadersSize() + (int) (receivedFrame.getSizeAsLong() - receivedFrame.getPayloadSizeAsLong()));
+            result.setBodySize(result.getBodySizeAsLong() + receivedFrame.getPayloadSizeAsLong());
+            if (sentFrame != null)
+                result.setSentBytes(result.getSentBytes() + sentFrame.getSize());
+        }
+
+        if (counts.getReported() < reportLimit) {
+            counts.incrementReported();
             SampleResult subResult = new SampleResult();
-            subResult.sampleStart();
-            long start = System.currentTimeMillis();
-
-            receivedFrame =
-                    !filterList.isEmpty()?
-                            filterList.get(0).receiveFrame(filterList.subList(1, filterList.size()), wsClient, socketTimeout, result):
-                            wsClient.receiveFrame(socketTimeout);
-            long timeSpent = System.currentTimeMillis() - start;
-
-            matchesFilter = matchesFilter(receivedFrame);
-            if (matchesFilter) {
-                subResult.sampleEnd();
-                getLogger().debug("Filter discards " + receivedFrame);
-                Frame sentFrame = performReplyAction(wsClient, receivedFrame);
-
-                subResult.setSampleLabel("Discarded " + receivedFrame.getTypeAsString() + " frame (by filter '" + getName() + "')");
-                subResult.setSuccessful(true);
-                subResult.setResponseMessage("Received " + receivedFrame);
-                subResult.setHeadersSize(receivedFrame.getSize() - receivedFrame.getPayloadSize());
-                subResult.setBodySize(receivedFrame.getPayloadSize());
-                if (sentFrame != null)
-                    subResult.setSentBytes(sentFrame.getSize());
-                if (includeFilteredFramesInSize) {
-                    result.setHeadersSize(result.getHeadersSize() + receivedFrame.getSize() - receivedFrame.getPayloadSize());
-                    result.setBodySize(result.getBodySize() + receivedFrame.getPayloadSize());
-                    if (sentFrame != null)
-                        result.setSentBytes(result.getSentBytes() + sentFrame.getSize());
-                }
-                if (receivedFrame.isText())
-                    subResult.setResponseData(((TextFrame) receivedFrame).getText(), null);
-                else if (receivedFrame.isBinary())
-                    subResult.setResponseData(((BinaryFrame) receivedFrame).getBinaryData());
-
-                result.addRawSubResult(subResult);
-            }
+            subResult.setStampAndTime(receiveStart, end - receiveStart);
+            subResult.setSampleLabel("Discarded " + receivedFrame.getTypeAsString() + " frame (by filter '" + getName() + "')");
+            subResult.setSuccessful(true);
+            subResult.setResponseMessage("Received " + receivedFrame);
+            subResult.setHeadersSize((int) (receivedFrame.getSizeAsLong() - receivedFrame.getPayloadSizeAsLong()));
+            subResult.setBodySize(receivedFrame.getPayloadSizeAsLong());
+            if (sentFrame != null)
+                subResult.setSentBytes(sentFrame.getSize());
+            if (receivedFrame.isText())
+                subResult.setResponseData(((TextFrame) receivedFrame).getText(), null);
+            else if (receivedFrame.isBinary())
+                subResult.setResponseData(((BinaryFrame) receivedFrame).getBinaryData());
 
-            if (timeSpent < socketTimeout)
-                socketTimeout -= timeSpent;
-            else {
-                // Time spent waiting for a valid frame (one that passed the filter) is now equal to original read timeout, so do not wait any longer.
-                throw new SocketTimeoutException("Read timed out");
-            }
+            result.addRawSubResult(subResult);
         }
-        while (matchesFilter);
+        else {
+            counts.count(receivedFrame, receiveStart, end, sentFrame != null? sentFrame.getSize(): 0);
+        }
+    }
 
-        return receivedFrame;
+    private void reportDiscardCounts(SampleResult result, DiscardCounts counts) {
+        long frameCount = counts.getFrameCount();
+        if (frameCount > 0) {
+            SampleResult summary = new SampleResult();
+            summary.setStampAndTime(counts.getFirstTimestamp(), counts.getLastTimestamp() - counts.getFirstTimestamp());
+            summary.setSampleLabel("Discarded " + (counts.getReported() > 0? frameCount + " more": frameCount) + (frameCount == 1? " frame": " frames") + " (by filter '" + getName() + "')");
+            summary.setSuccessful(true);
+            summary.setResponseMessage("Discarded " + counts.getSummary());
+            summary.setHeadersSize((int) Math.min(counts.getHeaderBytes(), Integer.MAX_VALUE));
+            summary.setBodySize(counts.getPayloadBytes());
+            summary.setSentBytes(counts.getSentBytes());
+            result.addRawSubResult(summary);
+        }
     }
 
     protected void prepareFilter() {}
 
+    /**
+     * Called when a sampler is done receiving through this filter, i.e. once per sample.
+     */
+    protected void receiveEnded(SampleResult result) {}
+
     abstract protected boolean matchesFilter(Frame receivedFrame);
 
     protected Frame performReplyAction(WebSocketClient wsClient, Frame receivedFrame) throws IOException {
@@ -128,6 +197,81 @@ public abstract class FrameFilter extends ConfigTestElement {
         return "Frame Filter '" + getName() + "'";
     }
 
+    /**
+     * A filter compiled into a predicate; used by the FilterChain.
+     */
+    static final class CompiledFilter {
+        private final FrameFilter filter;
+        private final Predicate<Frame> matcher;
+        private final DiscardReporting reporting;
+        private final int reportLimit;
+        private final DiscardCounts counts = new DiscardCounts();
+
+        private CompiledFilter(FrameFilter filter, Predicate<Frame> matcher, DiscardReporting reporting, int reportLimit) {
+            this.filter = filter;
+            this.matcher = matcher;
+            this.reporting = reporting;
+            switch (reporting) {
+                case Full:
+                    this.reportLimit = Integer.MAX_VALUE;
+                    break;
+                case FirstN:
+                    this.reportLimit = reportLimit;
+                    break;
+                default:
+                    this.reportLimit = 0;
+            }
+        }
+
+        boolean matches(Frame frame) {
+            return matcher.test(frame);
+        }
+
+        void startReceive() {
+            counts.reset();
+        }
+
+        void discard(Frame receivedFrame, WebSocketClient wsClient, SampleResult result, long receiveStart) throws IOException {
+            filter.discard(receivedFrame, wsClient, result, receiveStart, reportLimit, counts);
+        }
+
+        void endReceive(SampleResult result) {
+            if (reporting != DiscardReporting.None)
+                filter.reportDiscardCounts(result, counts);
+            filter.receiveEnded(result);
+        }
+
+        FrameFilter getFilter() {
+            return filter;
+        }
+    }
+
+    public DiscardReporting getDiscardReporting() {
+        return DiscardReporting.valueOf(getPropertyAsString("discardReporting", DiscardReporting.Full.name()));
+    }
+
+    public void setDiscardReporting(DiscardReporting reporting) {
+        setProperty("discardReporting", reporting.name());
+    }
+
+    public String getDiscardReportLimit() {
+        return getPropertyAsString("discardReportLimit", "" + DEFAULT_DISCARD_REPORT_LIMIT);
+    }
+
+    public void setDiscardReportLimit(String limit) {
+        setProperty("discardReportLimit", limit);
+    }
+
+    private int getDiscardReportLimitAsInt() {
+        try {
+            return Math.max(0, Integer.parseInt(getDiscardReportLimit().trim()));
+        }
+        catch (NumberFormatException e) {
+            getLogger().error("Invalid discard report limit '" + getDiscardReportLimit() + "' for filter '" + getName() + "'; using " + DEFAULT_DISCARD_REPORT_LIMIT);
+            return DEFAULT_DISCARD_REPORT_LIMIT;
+        }
+    }
+
     static void initStaticFilterOptions() {
         includeFilteredFramesInSize = Boolean.parseBoolean(JMeterUtils.getPropDefault(RESULT_SIZE_INCLUDES_FILTERED_FRAMES, "false"));
     }
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.LargePayloadPolicy;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+
+/**
+ * Panel with the settings for streaming large payloads (instead of reading them into memory), used by the read samplers.
+ */
+public class LargePayloadPanel extends JPanel {
+
+    public static final String SPOOL = "Write payload to temporary file";
+    public static final String DISCARD = "Discard payload";
+
+    JTextField thresholdField;
+    private final JComboBox<String> modeSelector;
+    private final JComboBox<String> digestSelector;
+    private final JLabel errorLabel;
+
+    public LargePayloadPanel() {
+        setLayout(new FlowLayout(FlowLayout.LEFT));
+        add(new JLabel("Stream payloads larger than (bytes): "));
+        thresholdField = new JTextField();
+        thresholdField.setColumns(10);
+        thresholdField.setToolTipText("Leave empty to always read payload into memory");
+        add(thresholdField);
+        modeSelector = new JComboBox<>(new String[] { DISCARD, SPOOL });
+        add(modeSelector);
+        add(new JLabel("digest: "));
+        digestSelector = new JComboBox<>(new String[] { LargePayloadPolicy.CRC32, LargePayloadPolicy.SHA256 });
+        add(digestSelector);
+        errorLabel = new JLabel();
+        errorLabel.setForeground(GuiUtils.getLookAndFeelColor("TextField.errorForeground"));
+        add(errorLabel);
+
+        thresholdField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                checkThreshold();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                checkThreshold();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                checkThreshold();
+            }
+        });
+    }
+
+    private void checkThreshold() {
+        String value = thresholdField.getText().trim();
+        boolean valid = true;
+        if (!value.isEmpty() && JMeterUtils.stripJMeterVariables(value).equals(value)) {
+            try {
+                valid = Long.parseLong(value) >= 0;
+            }
+            catch (NumberFormatException notANumber) {
+                valid = false;
+            }
+        }
+        errorLabel.setText(valid? "": "Threshold must be a non-negative number");
+    }
+
+    void clearGui() {
+        thresholdField.setText("");
+        modeSelector.setSelectedItem(DISCARD);
+        digestSelector.setSelectedItem(LargePayloadPolicy.CRC32);
+    }
+
+    public String getThreshold() {
+        return thresholdField.getText();
+    }
+
+    public void setThreshold(String threshold) {
+        thresholdField.setText(threshold);
+    }
+
+    public LargePayloadPolicy.Mode getMode() {
+        return SPOOL.equals(modeSelector.getSelectedItem())? LargePayloadPolicy.Mode.Spool: LargePayloadPolicy.Mode.Discard;
+    }
+
+    public void setMode(LargePayloadPolicy.Mode mode) {
+        modeSelector.setSelectedItem(mode == LargePayloadPolicy.Mode.Spool? SPOOL: DISCARD);
+    }
+
+    public String getDigest() {
+        return (String) digestSelector.getSelectedItem();
+    }
+
+    public void setDigest(String digest) {
+        digestSelector.setSelectedItem(digest);
+    }
+}
@@ -25,6 +25,7 @@ import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
 import java.io.IOException;
+import java.util.function.Predicate;
 
 public class PingFrameFilter extends FrameFilter {
 
@@ -36,19 +37,31 @@ public class PingFrameFilter extends FrameFilter {
 
     private static Logger log = LoggingManager.getLoggerForClass();
 
+    private static final Predicate<Frame> PING_OR_PONG = receivedFrame -> receivedFrame.isPing() || receivedFrame.isPong();
+    private static final Predicate<Frame> PING = Frame::isPing;
+    private static final Predicate<Frame> PONG = Frame::isPong;
+
+    @Override
+    protected Predicate<Frame> createMatcher() {
+        return getMatcher(getFilterType());
+    }
+
     @Override
     protected boolean matchesFilter(Frame receivedFrame) {
-        switch (getFilterType()) {
+        return getMatcher(getFilterType()).test(receivedFrame);
+    }
+
+    private static Predicate<Frame> getMatcher(PingFilterType filterType) {
+        switch (filterType) {
             case FilterAll:
-                return receivedFrame.isPing() || receivedFrame.isPong();
+                return PING_OR_PONG;
             case FilterPingOnly:
-                return receivedFrame.isPing();
+                return PING;
             case FilterPongOnly:
-                return receivedFrame.isPong();
+                return PONG;
             default:
                 throw new RuntimeException("Unknown filter type");
         }
-
     }
 
     @Override
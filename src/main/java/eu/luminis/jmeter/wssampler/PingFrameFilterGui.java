@@ -57,6 +57,8 @@ public class PingFrameFilterGui extends AbstractConfigGui {
         super.configure(element);
         if (element instanceof PingFrameFilter) {
             PingFrameFilter filter = (PingFrameFilter) element;
+            settingsPanel.discardReportingPanel.setReporting(filter.getDiscardReporting());
+            settingsPanel.discardReportingPanel.setLimit(filter.getDiscardReportLimit());
             settingsPanel.replyToPing.setSelected(filter.getReplyToPing());
             settingsPanel.setFilterType(filter.getFilterType());
         }
@@ -68,6 +70,8 @@ public class PingFrameFilterGui extends AbstractConfigGui {
         configureTestElement(element);
         if (element instanceof PingFrameFilter) {
             PingFrameFilter filter = (PingFrameFilter) element;
+            filter.setDiscardReporting(settingsPanel.discardReportingPanel.getReporting());
+            filter.setDiscardReportLimit(settingsPanel.discardReportingPanel.getLimit());
             filter.setReplyToPing(settingsPanel.replyToPing.isSelected());
             filter.setFilterType(settingsPanel.getFilterType());
         }
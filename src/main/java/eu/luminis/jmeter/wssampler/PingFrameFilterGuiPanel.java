@@ -30,6 +30,7 @@ public class PingFrameFilterGuiPanel extends JPanel {
     private final JRadioButton onlyPing;
     private final JRadioButton onlyPong;
     JCheckBox replyToPing;
+    DiscardReportingPanel discardReportingPanel;
 
     public PingFrameFilterGuiPanel() {
         setLayout(new BoxLayout(this, Y_AXIS));
@@ -70,6 +71,10 @@ public class PingFrameFilterGuiPanel extends JPanel {
             contentPanel.add(replyToPing);
             replyToPing.setAlignmentX(JComponent.LEFT_ALIGNMENT);
 
+            discardReportingPanel = new DiscardReportingPanel();
+            discardReportingPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+            contentPanel.add(discardReportingPanel);
+
             add(contentPanel);
         }
         JPanel aboutPanel = WebSocketSamplerGuiPanel.createAboutPanel(this);
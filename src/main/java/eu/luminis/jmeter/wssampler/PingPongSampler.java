@@ -57,8 +57,8 @@ public class PingPongSampler extends WebsocketSampler {
             result.setSentBytes(sentFrame.getSize());
 
             Frame receivedFrame;
-            if (!frameFilters.isEmpty()) {
-                receivedFrame = frameFilters.get(0).receiveFrame(frameFilters.subList(1, frameFilters.size()), wsClient, readTimeout, result);
+            if (hasFrameFilters()) {
+                receivedFrame = readFrame(wsClient, result);
                 if (receivedFrame.isPong())
                     return receivedFrame;
                 else
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.BinaryFrame;
+import eu.luminis.websocket.DataFrame;
+import eu.luminis.websocket.PreEncodedFrame;
+import eu.luminis.websocket.TextFrame;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caches pre-encoded frames for request data that does not change between samples, so sending such a frame is just
+ * a write of ready made bytes (see {@link PreEncodedFrame}). Each thread has its own cache (and thus its own position
+ * in the mask key pools), so no synchronization is needed; a cache keeps the most recently used frames, limited in
+ * number and total size (shared by text and binary frames). Payloads that are too large to be worth pre-encoding, or
+ * whose pool would not fit in the cache at all, are not cached.
+ */
+final class PreEncodedFrameCache {
+
+    static final int MAX_ENTRIES = 16;
+    static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+    static final int MAX_CACHED_BYTES = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<PreEncodedFrameCache> perThreadCache = ThreadLocal.withInitial(PreEncodedFrameCache::new);
+
+    private final LinkedHashMap<String, PreEncodedFrame> textFrames = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+    private final LinkedHashMap<String, PreEncodedFrame> binaryFrames = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+    private int cachedBytes;
+
+    static PreEncodedFrameCache getThreadCache() {
+        return perThreadCache.get();
+    }
+
+    /**
+     * @return the pre-encoded text frame for the given text, or null if the text is too large to pre-encode
+     */
+    PreEncodedFrame getTextFrame(String text, int poolSize) {
+        // Quick check on string length, as an UTF-8 encoded char takes at least 1 byte
+        if (text.length() > MAX_PAYLOAD_SIZE)
+            return null;
+        return get(textFrames, binaryFrames, text, poolSize, TextFrame::new);
+    }
+
+    /**
+     * @return the pre-encoded binary frame for the given binary string, or null if the data is too large to pre-encode
+     * @throws NumberFormatException when the data is not a valid binary string
+     */
+    PreEncodedFrame getBinaryFrame(String data, int poolSize) {
+        return get(binaryFrames, textFrames, data, poolSize, binaryData -> new BinaryFrame(BinaryDataCache.parseBinaryString(binaryData)));
+    }
+
+    private PreEncodedFrame get(LinkedHashMap<String, PreEncodedFrame> frames, LinkedHashMap<String, PreEncodedFrame> otherFrames,
+                                String data, int poolSize, Function<String, ? extends DataFrame> frameCreator) {
+        PreEncodedFrame frame = frames.get(data);
+        if (frame == null || frame.getPoolSize() != poolSize) {
+            DataFrame dataFrame = frameCreator.apply(data);
+            if (dataFrame.getPayloadSize() > MAX_PAYLOAD_SIZE || PreEncodedFrame.requiredBytes(dataFrame, poolSize) > MAX_CACHED_BYTES)
+                return null;
+            frame = new PreEncodedFrame(dataFrame, poolSize);
+            PreEncodedFrame replaced = frames.put(data, frame);
+            if (replaced != null)
+                cachedBytes -= size(replaced);
+            cachedBytes += size(frame);
+            evict(frames, otherFrames);
+        }
+        return frame;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within bounds; as the total size is shared, entries of the
+     * other kind are evicted first. The entry just added always fits on its own, so it is never evicted.
+     */
+    private void evict(LinkedHashMap<String, PreEncodedFrame> frames, LinkedHashMap<String, PreEncodedFrame> otherFrames) {
+        Iterator<Map.Entry<String, PreEncodedFrame>> iterator = frames.entrySet().iterator();
+        while (frames.size() > MAX_ENTRIES)
+            remove(iterator);
+        Iterator<Map.Entry<String, PreEncodedFrame>> otherIterator = otherFrames.entrySet().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES)
+            remove(otherIterator.hasNext()? otherIterator: iterator);
+    }
+
+    private void remove(Iterator<Map.Entry<String, PreEncodedFrame>> iterator) {
+        cachedBytes -= size(iterator.next().getValue());
+        iterator.remove();
+    }
+
+    private static int size(PreEncodedFrame frame) {
+        return frame.getFrameSize() * frame.getPoolSize();
+    }
+
+    int size() {
+        return textFrames.size() + binaryFrames.size();
+    }
+
+    int getCachedBytes() {
+        return cachedBytes;
+    }
+
+    void clear() {
+        textFrames.clear();
+        binaryFrames.clear();
+        cachedBytes = 0;
+    }
+}
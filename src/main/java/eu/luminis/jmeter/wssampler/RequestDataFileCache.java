@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the content of request data files, so a file that is sent over and over again (by many threads) is only read
+ * once. The cache is shared by all threads; entries are keyed by (absolute) path and are only used as long as the file's
+ * modification time and size have not changed. Small files are read into memory, which is limited to a maximum total
+ * size (least recently used entries are evicted first); large files are memory mapped (read-only) and thus do not
+ * occupy heap at all. Text decoded from a file (see {@link #getText(Path)}) is cached as well and counts against the
+ * same maximum. Cache statistics are logged (on info level) periodically.
+ * Cached content is shared by all samples using it, so it must never be modified.
+ */
+final class RequestDataFileCache {
+
+    public static final String CACHE_SIZE_PROPERTY = "websocket.datafile.cache.size";
+    public static final String MAP_THRESHOLD_PROPERTY = "websocket.datafile.map_threshold";
+    public static final String REPORT_INTERVAL_PROPERTY = "websocket.datafile.cache.report_interval";
+
+    static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+    static final long DEFAULT_MAP_THRESHOLD = 1024 * 1024;
+    static final int MAX_ENTRIES = 256;
+    static final long DEFAULT_REPORT_INTERVAL = 60;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static volatile RequestDataFileCache instance;
+
+    private final long maxHeapBytes;
+    private final long mapThreshold;
+    private final long reportIntervalMillis;
+    private final LinkedHashMap<Path, FileData> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long heapBytes;
+    private long mappedBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+
+    RequestDataFileCache(long maxHeapBytes, long mapThreshold) {
+        this(maxHeapBytes, mapThreshold, 0);
+    }
+
+    /**
+     * @param reportInterval interval (in seconds) for logging the cache statistics; 0 (or less) disables logging
+     */
+    RequestDataFileCache(long maxHeapBytes, long mapThreshold, long reportInterval) {
+        this.maxHeapBytes = maxHeapBytes;
+        this.mapThreshold = mapThreshold;
+        this.reportIntervalMillis = reportInterval * 1000;
+    }
+
+    static RequestDataFileCache getInstance() {
+        if (instance == null) {
+            synchronized (RequestDataFileCache.class) {
+                if (instance == null) {
+                    instance = new RequestDataFileCache(
+                            JMeterUtils.getPropDefault(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE),
+                            JMeterUtils.getPropDefault(MAP_THRESHOLD_PROPERTY, DEFAULT_MAP_THRESHOLD),
+                            JMeterUtils.getPropDefault(REPORT_INTERVAL_PROPERTY, DEFAULT_REPORT_INTERVAL));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the content of the given file, from cache if the file did not change since it was cached.
+     * @throws IOException when the file cannot be read (e.g. NoSuchFileException or AccessDeniedException)
+     */
+    FileData get(Path file) throws IOException {
+        return lookup(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Returns the content of the given file decoded as UTF-8. The text is decoded only once (as long as the file does
+     * not change); when it is retained, its size counts against the maximum heap size of the cache, just like the
+     * content itself.
+     * @throws IOException when the file cannot be read (e.g. NoSuchFileException or AccessDeniedException)
+     */
+    String getText(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        FileData data = lookup(key);
+        String text = data.getText();
+        if (data.text == null) {
+            synchronized (this) {
+                // Only retain the text when the entry is still in the cache, otherwise it would never be accounted for
+                if (data.text == null && FileData.textSize(text) <= maxHeapBytes && entries.get(key) == data) {
+                    data.text = text;
+                    heapBytes += FileData.textSize(text);
+                    evict();
+                }
+            }
+        }
+        return text;
+    }
+
+    private FileData lookup(Path key) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        synchronized (this) {
+            FileData cached = entries.get(key);
+            if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+                hits.incrementAndGet();
+                reportIfDue();
+                return cached;
+            }
+        }
+
+        // Load outside the lock, so other threads are not blocked by the I/O; when two threads load the same file
+        // concurrently, the last one wins, which is harmless.
+        misses.incrementAndGet();
+        reportIfDue();
+        FileData loaded = load(key, lastModified, size);
+        if (loaded.isMapped() || size <= maxHeapBytes) {
+            synchronized (this) {
+                remove(entries.put(key, loaded));
+                if (loaded.isMapped())
+                    mappedBytes += size;
+                heapBytes += loaded.heapSize();
+                evict();
+            }
+            if (log.isDebugEnabled())
+                log.debug("Cached request data file " + key + " (" + size + " bytes" + (loaded.isMapped()? ", memory mapped": "") + "); " + this);
+        }
+        return loaded;
+    }
+
+    private FileData load(Path file, long lastModified, long size) throws IOException {
+        if (size > mapThreshold) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                return new FileData(lastModified, size, null, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+        }
+        else {
+            byte[] content = Files.readAllBytes(file);
+            // When the file changed in between, the size is the only reliable property; the modification time is
+            // at worst too old, which only leads to a reload next time.
+            return new FileData(lastModified, content.length, content, null);
+        }
+    }
+
+    private void remove(FileData removed) {
+        if (removed != null) {
+            if (removed.isMapped())
+                mappedBytes -= removed.size;
+            heapBytes -= removed.heapSize();
+        }
+    }
+
+    private void reportIfDue() {
+        if (reportIntervalMillis > 0) {
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            // Only the thread that succeeds in updating the timestamp reports
+            if (now - last >= reportIntervalMillis && lastReport.compareAndSet(last, now))
+                log.info(toString());
+        }
+    }
+
+    private void evict() {
+        Iterator<FileData> iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > MAX_ENTRIES || heapBytes > maxHeapBytes)) {
+            FileData eldest = iterator.next();
+            // Mapped entries without decoded text do not occupy heap, so only evict them to limit the number of entries
+            if (entries.size() > MAX_ENTRIES || eldest.heapSize() > 0) {
+                remove(eldest);
+                iterator.remove();
+            }
+        }
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    synchronized long getHeapBytes() {
+        return heapBytes;
+    }
+
+    synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        heapBytes = 0;
+        mappedBytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "request data file cache: " + entries.size() + " files, " + heapBytes + " bytes in memory, "
+                + mappedBytes + " bytes mapped, " + hits.get() + " hits, " + misses.get() + " misses";
+    }
+
+    /**
+     * Content of a request data file, either in memory or memory mapped.
+     */
+    static final class FileData {
+
+        private final long lastModified;
+        private final long size;
+        private final byte[] content;
+        private final ByteBuffer mappedContent;
+        // Only set by the cache (while holding its lock), so the cache can account for its size
+        private volatile String text;
+
+        FileData(long lastModified, long size, byte[] content, ByteBuffer mappedContent) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.content = content;
+            this.mappedContent = mappedContent;
+        }
+
+        boolean isMapped() {
+            return mappedContent != null;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the content, or null when the content is memory mapped
+         */
+        byte[] getBytes() {
+            return content;
+        }
+
+        /**
+         * @return a read-only buffer with the content, which is not copied for a memory mapped file
+         */
+        ByteBuffer getBuffer() {
+            return isMapped()? mappedContent.asReadOnlyBuffer(): ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
+        /**
+         * @return (at most) the first count bytes of the content
+         */
+        byte[] getHead(int count) {
+            byte[] head = new byte[(int) Math.min(count, size)];
+            getBuffer().get(head);
+            return head;
+        }
+
+        /**
+         * @return the content decoded as UTF-8; the text is only decoded once when retained by the cache, see
+         * {@link RequestDataFileCache#getText(Path)}.
+         */
+        String getText() {
+            String decoded = text;
+            if (decoded != null)
+                return decoded;
+            return isMapped()? StandardCharsets.UTF_8.decode(getBuffer()).toString(): new String(content, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the number of heap bytes occupied by the content and the retained text
+         */
+        long heapSize() {
+            return (isMapped()? 0: size) + (text != null? textSize(text): 0);
+        }
+
+        static long textSize(String text) {
+            // A Java (8) string takes two bytes per character
+            return 2L * text.length();
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -68,8 +67,11 @@ public class RequestResponseWebSocketSampler extends WebsocketGeneralSampler {
 
     @Override
     protected Frame doSample(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException, SamplingAbortedException {
-        sendFrame(wsClient, result, getType(), getRequestData(), getLoadDataFromFile()? new File(getDataFile()): null);
-        return readFrame(wsClient, result, getType());
+        sendRequestData(wsClient, result);
+        if (getReadWholeMessage())
+            return readMessage(wsClient, result, getType());
+        else
+            return readFrame(wsClient, result, getType());
     }
 
     @Override
@@ -77,6 +79,11 @@ public class RequestResponseWebSocketSampler extends WebsocketGeneralSampler {
         processDefaultReadResponse((DataFrame) response, getType(), result);
     }
 
+    @Override
+    protected LargePayloadPolicy getLargePayloadPolicy() {
+        return createLargePayloadPolicy();
+    }
+
     @Override
     protected Logger getLogger() {
         return log;
@@ -89,8 +96,12 @@ public class RequestResponseWebSocketSampler extends WebsocketGeneralSampler {
             if (errorMsg == null)
                 errorMsg = validateConnectionTimeout(getConnectTimeout());
         }
+        if (errorMsg == null)
+            errorMsg = validateFragmentSize(getFragmentSize());
         if (errorMsg == null)
             errorMsg = validateReadTimeout(getReadTimeout());
+        if (errorMsg == null)
+            errorMsg = validateLargePayloadPolicy();
 
         return errorMsg;
     }
@@ -77,8 +77,13 @@ public class RequestResponseWebSocketSamplerGui extends AbstractSamplerGui {
             settingsPanel.setType(sampler.getType());
             settingsPanel.setRequestData(sampler.getRequestData());
             settingsPanel.readTimeoutField.setText(sampler.getReadTimeout());
+            settingsPanel.largePayloadPanel.setThreshold(sampler.getLargePayloadThreshold());
+            settingsPanel.largePayloadPanel.setMode(sampler.getLargePayloadMode());
+            settingsPanel.largePayloadPanel.setDigest(sampler.getLargePayloadDigest());
+            settingsPanel.readWholeMessage.setSelected(sampler.getReadWholeMessage());
             settingsPanel.setReadDataFromFile(sampler.getLoadDataFromFile());
             settingsPanel.setDataFile(sampler.getDataFile());
+            settingsPanel.setFragmentSize(sampler.getFragmentSize());
         }
     }
 
@@ -96,8 +101,13 @@ public class RequestResponseWebSocketSamplerGui extends AbstractSamplerGui {
             sampler.setRequestData(settingsPanel.getRequestData());
             sampler.setCreateNewConnection(settingsPanel.newConnection.isSelected());
             sampler.setReadTimeout(settingsPanel.readTimeoutField.getText());
+            sampler.setLargePayloadThreshold(settingsPanel.largePayloadPanel.getThreshold());
+            sampler.setLargePayloadMode(settingsPanel.largePayloadPanel.getMode());
+            sampler.setLargePayloadDigest(settingsPanel.largePayloadPanel.getDigest());
+            sampler.setReadWholeMessage(settingsPanel.readWholeMessage.isSelected());
             sampler.setLoadDataFromFile(settingsPanel.getReadDataFromFile());
             sampler.setDataFile(settingsPanel.getDataFile());
+            sampler.setFragmentSize(settingsPanel.getFragmentSize());
         }
     }
 
@@ -27,6 +27,8 @@ import static javax.swing.BoxLayout.Y_AXIS;
 public class RequestResponseWebSocketSamplerGuiPanel extends WebSocketSamplerGuiPanel {
 
     private DataPanel dataPanel;
+    LargePayloadPanel largePayloadPanel;
+    JCheckBox readWholeMessage;
 
     public RequestResponseWebSocketSamplerGuiPanel() {
         init();
@@ -53,9 +55,15 @@ public class RequestResponseWebSocketSamplerGuiPanel extends WebSocketSamplerGui
                 addIntegerRangeCheck(readTimeoutField, MIN_READ_TIMEOUT, MAX_READ_TIMEOUT, readTimeoutErrorField);
                 requestSettingsPanel.add(readTimeoutField);
                 requestSettingsPanel.add(readTimeoutErrorField);
+                readWholeMessage = new JCheckBox("Read whole message (all fragments)");
+                readWholeMessage.setToolTipText("Latency is time to first fragment, elapsed time is time to last fragment");
+                requestSettingsPanel.add(readWholeMessage);
             }
             requestSettingsPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
             dataPanel.add(requestSettingsPanel);
+            largePayloadPanel = new LargePayloadPanel();
+            largePayloadPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+            dataPanel.add(largePayloadPanel);
 
             splitter.setTopComponent(dataPanel);
             splitter.setBottomComponent(createAboutPanel(this));
@@ -72,6 +80,8 @@ public class RequestResponseWebSocketSamplerGuiPanel extends WebSocketSamplerGui
     void clearGui() {
         super.clearGui();
         dataPanel.clearGui();
+        largePayloadPanel.clearGui();
+        readWholeMessage.setSelected(false);
         setCreateNewConnection(true);
     }
 
@@ -107,6 +117,14 @@ public class RequestResponseWebSocketSamplerGuiPanel extends WebSocketSamplerGui
         dataPanel.setDataFile(file);
     }
 
+    public String getFragmentSize() {
+        return dataPanel.getFragmentSize();
+    }
+
+    public void setFragmentSize(String fragmentSize) {
+        dataPanel.setFragmentSize(fragmentSize);
+    }
+
 
     public static void main(String[] args) {
         JFrame frame = new JFrame();
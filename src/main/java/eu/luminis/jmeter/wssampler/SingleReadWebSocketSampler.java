@@ -68,9 +68,16 @@ public class SingleReadWebSocketSampler extends WebsocketSampler {
     @Override
     protected Frame doSample(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException, SamplingAbortedException {
         try {
-            return readFrame(wsClient, result);
+            if (getReadWholeMessage())
+                return checkDataType(readMessage(wsClient, result).toFrame());
+            else
+                return readFrame(wsClient, result);
         }
         catch (SocketTimeoutException readTimeout) {
+            int fragments = wsClient.getPartialMessageFragmentCount();
+            if (fragments > 0)
+                result.setSamplerData(result.getSamplerData() + "\nRead timeout after " + fragments
+                        + (fragments == 1? " fragment": " fragments") + " of a message; next read continues the message\n");
             if (getOptional())
                 return null;
             else
@@ -80,8 +87,10 @@ public class SingleReadWebSocketSampler extends WebsocketSampler {
 
     @Override
     protected Frame readFrame(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException {
-        Frame receivedFrame = super.readFrame(wsClient, result);
+        return checkDataType(super.readFrame(wsClient, result));
+    }
 
+    private Frame checkDataType(Frame receivedFrame) throws UnexpectedFrameException {
         boolean gotExpectedFrameType;
         switch (getDataType()) {
             case Text:
@@ -120,6 +129,11 @@ public class SingleReadWebSocketSampler extends WebsocketSampler {
     }
 
 
+    @Override
+    protected LargePayloadPolicy getLargePayloadPolicy() {
+        return createLargePayloadPolicy();
+    }
+
     @Override
     protected Logger getLogger() {
         return log;
@@ -135,6 +149,8 @@ public class SingleReadWebSocketSampler extends WebsocketSampler {
         }
         if (errorMsg == null)
             errorMsg = validateReadTimeout(getReadTimeout());
+        if (errorMsg == null)
+            errorMsg = validateLargePayloadPolicy();
 
         return errorMsg;
     }
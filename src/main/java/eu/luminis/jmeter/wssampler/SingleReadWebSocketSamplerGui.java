@@ -75,6 +75,10 @@ public class SingleReadWebSocketSamplerGui extends AbstractSamplerGui {
             settingsPanel.connectionTimeoutField.setText(sampler.getConnectTimeout());
             settingsPanel.setType(sampler.getDataType());
             settingsPanel.readTimeoutField.setText(sampler.getReadTimeout());
+            settingsPanel.largePayloadPanel.setThreshold(sampler.getLargePayloadThreshold());
+            settingsPanel.largePayloadPanel.setMode(sampler.getLargePayloadMode());
+            settingsPanel.largePayloadPanel.setDigest(sampler.getLargePayloadDigest());
+            settingsPanel.readWholeMessage.setSelected(sampler.getReadWholeMessage());
             settingsPanel.optionalSampler.setSelected(sampler.getOptional());
         }
     }
@@ -92,6 +96,10 @@ public class SingleReadWebSocketSamplerGui extends AbstractSamplerGui {
             sampler.setDataType(settingsPanel.getType());
             sampler.setCreateNewConnection(settingsPanel.newConnection.isSelected());
             sampler.setReadTimeout(settingsPanel.readTimeoutField.getText());
+            sampler.setLargePayloadThreshold(settingsPanel.largePayloadPanel.getThreshold());
+            sampler.setLargePayloadMode(settingsPanel.largePayloadPanel.getMode());
+            sampler.setLargePayloadDigest(settingsPanel.largePayloadPanel.getDigest());
+            sampler.setReadWholeMessage(settingsPanel.readWholeMessage.isSelected());
             sampler.setOptional(settingsPanel.optionalSampler.isSelected());
         }
     }
@@ -32,6 +32,8 @@ public class SingleReadWebSocketSamplerGuiPanel extends WebSocketSamplerGuiPanel
 
     JComboBox typeSelector;
     JCheckBox optionalSampler;
+    JCheckBox readWholeMessage;
+    LargePayloadPanel largePayloadPanel;
 
     public SingleReadWebSocketSamplerGuiPanel() {
         init();
@@ -80,9 +82,15 @@ public class SingleReadWebSocketSamplerGuiPanel extends WebSocketSamplerGuiPanel
             {
                 optionalSampler = new JCheckBox("Optional read (read timeout will not lead to sampler error)");
                 optionalSettingsPanel.add(optionalSampler);
+                readWholeMessage = new JCheckBox("Read whole message (all fragments)");
+                readWholeMessage.setToolTipText("Latency is time to first fragment, elapsed time is time to last fragment");
+                optionalSettingsPanel.add(readWholeMessage);
             }
 
             dataPanel.add(optionalSettingsPanel);
+
+            largePayloadPanel = new LargePayloadPanel();
+            dataPanel.add(largePayloadPanel);
         }
         boxPanel.add(dataPanel);
         boxPanel.add(createAboutPanel(this));
@@ -95,6 +103,8 @@ public class SingleReadWebSocketSamplerGuiPanel extends WebSocketSamplerGuiPanel
         serverField.setText("");
         portField.setText("");
         pathField.setText("");
+        readWholeMessage.setSelected(false);
+        largePayloadPanel.clearGui();
         setCreateNewConnection(false);
     }
 
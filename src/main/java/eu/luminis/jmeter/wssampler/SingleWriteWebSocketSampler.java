@@ -23,7 +23,6 @@ import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -65,7 +64,7 @@ public class SingleWriteWebSocketSampler extends WebsocketGeneralSampler {
 
     @Override
     protected Frame doSample(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException, SamplingAbortedException {
-        sendFrame(wsClient, result, getType(), getRequestData(), getLoadDataFromFile()? new File(getDataFile()): null);
+        sendRequestData(wsClient, result);
         return null;
     }
 
@@ -81,6 +80,8 @@ public class SingleWriteWebSocketSampler extends WebsocketGeneralSampler {
             if (errorMsg == null)
                 errorMsg = validateConnectionTimeout(getConnectTimeout());
         }
+        if (errorMsg == null)
+            errorMsg = validateFragmentSize(getFragmentSize());
         return errorMsg;
     }
 
@@ -74,6 +74,7 @@ public class SingleWriteWebSocketSamplerGui extends AbstractSamplerGui {
             settingsPanel.setRequestData(sampler.getRequestData());
             settingsPanel.setReadDataFromFile(sampler.getLoadDataFromFile());
             settingsPanel.setDataFile(sampler.getDataFile());
+            settingsPanel.setFragmentSize(sampler.getFragmentSize());
         }
     }
 
@@ -92,6 +93,7 @@ public class SingleWriteWebSocketSamplerGui extends AbstractSamplerGui {
             sampler.setCreateNewConnection(settingsPanel.newConnection.isSelected());
             sampler.setLoadDataFromFile(settingsPanel.getReadDataFromFile());
             sampler.setDataFile(settingsPanel.getDataFile());
+            sampler.setFragmentSize(settingsPanel.getFragmentSize());
         }
     }
 
@@ -93,6 +93,14 @@ public class SingleWriteWebSocketSamplerGuiPanel extends WebSocketSamplerGuiPane
         dataPanel.setDataFile(file);
     }
 
+    public String getFragmentSize() {
+        return dataPanel.getFragmentSize();
+    }
+
+    public void setFragmentSize(String fragmentSize) {
+        dataPanel.setFragmentSize(fragmentSize);
+    }
+
 
     public static void main(String[] args) {
         JFrame frame = new JFrame();
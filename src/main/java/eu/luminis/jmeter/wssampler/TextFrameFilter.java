@@ -20,9 +20,13 @@ package eu.luminis.jmeter.wssampler;
 
 import eu.luminis.websocket.Frame;
 import eu.luminis.websocket.TextFrame;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import static eu.luminis.jmeter.wssampler.ComparisonType.IsPlain;
@@ -31,54 +35,126 @@ public class TextFrameFilter extends FrameFilter {
 
     private static Logger log = LoggingManager.getLoggerForClass();
 
-    private Pattern regex = null;
-
     public TextFrameFilter() {
         setComparisonType(IsPlain);
     }
 
     @Override
-    protected void prepareFilter() {
-        if (getComparisonType().isRegexComparison()) {
-            regex = Pattern.compile(getMatchValue());
-        }
+    protected Predicate<Frame> createMatcher() {
+        ComparisonType comparisonType = getComparisonType();
+        String matchValue = getMatchValue();
+        if (comparisonType.isMultiPatternComparison())
+            return new PatternsMatcher(comparisonType, createPatternMatcher(matchValue));
+        Pattern regex = comparisonType.isRegexComparison() && matchValue != null? Pattern.compile(matchValue): null;
+        // Encode the match value once, instead of for every frame that is compared
+        byte[] utf8MatchValue = matchValue != null? TextFrame.encodeForMatching(matchValue): null;
+        return frame -> matches(frame, comparisonType, matchValue, utf8MatchValue, regex);
     }
 
     @Override
     protected boolean matchesFilter(Frame frame) {
-        String matchValue = getMatchValue();
+        return compile().matches(frame);
+    }
+
+    /**
+     * Exposes the pattern hit counts as JMeter variables, named after this filter, see
+     * {@link AhoCorasickMatcher#exportHitCounts}.
+     */
+    @Override
+    protected void receiveEnded(SampleResult result) {
+        Predicate<Frame> matcher = getCompiledMatcher();
+        if (matcher instanceof PatternsMatcher)
+            ((PatternsMatcher) matcher).matcher.exportHitCounts(JMeterContextService.getContext().getVariables(), getName());
+    }
+
+    /**
+     * @return the number of frames in which each pattern was found, in the order of the patterns (the lines of the match
+     * value), or an empty array if this filter does not match multiple patterns or has not received any frames
+     */
+    public long[] getPatternHitCounts() {
+        Predicate<Frame> matcher = getCompiledMatcher();
+        return matcher instanceof PatternsMatcher? ((PatternsMatcher) matcher).matcher.getHitCounts(): new long[0];
+    }
+
+    static AhoCorasickMatcher createPatternMatcher(String matchValue) {
+        return AhoCorasickMatcher.forText(AhoCorasickMatcher.parsePatternLines(matchValue));
+    }
+
+    private static boolean containsReplacementChar(AhoCorasickMatcher matcher) {
+        return matcher.getPatterns().stream().anyMatch(pattern -> pattern.indexOf('\uFFFD') >= 0);
+    }
+
+    private static boolean matchesPatterns(TextFrame frame, ComparisonType comparisonType, AhoCorasickMatcher matcher, boolean[] found, boolean decodeFirst) {
+        // Matching the raw UTF-8 bytes is equivalent to matching the decoded text, except for the replacement character
+        // that decoding substitutes for malformed input; only if that is searched for, the text must be decoded first.
+        byte[] utf8 = decodeFirst? frame.getText().getBytes(StandardCharsets.UTF_8): frame.getUtf8Text();
+        switch (comparisonType) {
+            case ContainsAny:
+                return matcher.findAny(utf8, 0, utf8.length) >= 0;
+            case NotContainsAny:
+                return matcher.findAny(utf8, 0, utf8.length) < 0;
+            case ContainsAll:
+                return matcher.getPatternCount() > 0 && matcher.findAll(utf8, 0, utf8.length, found) == matcher.getPatternCount();
+            case NotContainsAll:
+                return matcher.findAll(utf8, 0, utf8.length, found) < matcher.getPatternCount();
+            default:
+                throw new RuntimeException("unknown comparison type");
+        }
+    }
+
+    /**
+     * Matches multiple patterns at once; the automaton, that also keeps the hit counts, is built once per compiled filter.
+     */
+    private static final class PatternsMatcher implements Predicate<Frame> {
+        private final ComparisonType comparisonType;
+        private final AhoCorasickMatcher matcher;
+        private final boolean[] found;
+        private final boolean decodeFirst;
+
+        PatternsMatcher(ComparisonType comparisonType, AhoCorasickMatcher matcher) {
+            this.comparisonType = comparisonType;
+            this.matcher = matcher;
+            found = new boolean[matcher.getPatternCount()];
+            decodeFirst = containsReplacementChar(matcher);
+        }
+
+        @Override
+        public boolean test(Frame frame) {
+            return frame.isText() && matchesPatterns((TextFrame) frame, comparisonType, matcher, found, decodeFirst);
+        }
+    }
 
+    private static boolean matches(Frame frame, ComparisonType comparisonType, String matchValue, byte[] utf8MatchValue, Pattern regex) {
         if (frame.isText()) {
             TextFrame receivedFrame = (TextFrame) frame;
-            String framePayload = receivedFrame.getText();
 
-            switch (getComparisonType()) {
+            switch (comparisonType) {
                 case IsPlain:
                     return true;
                 case Contains:
-                    return matchValue != null && framePayload.contains(matchValue);
+                    return matchValue != null && receivedFrame.textContains(matchValue, utf8MatchValue);
                 case NotContains:
-                    return matchValue != null && !framePayload.contains(matchValue);
+                    return matchValue != null && !receivedFrame.textContains(matchValue, utf8MatchValue);
                 case Equals:
-                    return matchValue != null && matchValue.equals(framePayload);
+                    return matchValue != null && receivedFrame.textEquals(matchValue, utf8MatchValue);
                 case NotEquals:
-                    return matchValue != null && !matchValue.equals(framePayload);
+                    return matchValue != null && !receivedFrame.textEquals(matchValue, utf8MatchValue);
                 case StartsWith:
-                    return matchValue != null && framePayload.startsWith(matchValue);
+                    return matchValue != null && receivedFrame.textStartsWith(matchValue, utf8MatchValue);
                 case NotStartsWith:
-                    return matchValue != null && !framePayload.startsWith(matchValue);
+                    return matchValue != null && !receivedFrame.textStartsWith(matchValue, utf8MatchValue);
                 case EndsWith:
-                    return matchValue != null && framePayload.endsWith(matchValue);
+                    return matchValue != null && receivedFrame.textEndsWith(matchValue, utf8MatchValue);
                 case NotEndsWith:
-                    return matchValue != null && !framePayload.endsWith(matchValue);
+                    return matchValue != null && !receivedFrame.textEndsWith(matchValue, utf8MatchValue);
                 case ContainsRegex:
-                    return matchValue != null && regex.matcher(framePayload).find();
+                    return matchValue != null && regex.matcher(receivedFrame.getText()).find();
                 case NotContainsRegex:
-                    return matchValue != null && !regex.matcher(framePayload).find();
+                    return matchValue != null && !regex.matcher(receivedFrame.getText()).find();
                 case EqualsRegex:
-                    return matchValue != null && regex.matcher(framePayload).matches();
+                    return matchValue != null && regex.matcher(receivedFrame.getText()).matches();
                 case NotEqualsRegex:
-                    return matchValue != null && !regex.matcher(framePayload).matches();
+                    return matchValue != null && !regex.matcher(receivedFrame.getText()).matches();
                 default:
                     throw new RuntimeException("unknown comparison type");
             }
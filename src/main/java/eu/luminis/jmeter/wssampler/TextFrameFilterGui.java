@@ -57,6 +57,8 @@ public class TextFrameFilterGui extends AbstractConfigGui {
         super.configure(element);
         if (element instanceof TextFrameFilter) {
             TextFrameFilter filter = (TextFrameFilter) element;
+            settingsPanel.discardReportingPanel.setReporting(filter.getDiscardReporting());
+            settingsPanel.discardReportingPanel.setLimit(filter.getDiscardReportLimit());
             settingsPanel.setComparisonType(filter.getComparisonType());
             settingsPanel.matchValue.setText(filter.getMatchValue());
         }
@@ -68,6 +70,8 @@ public class TextFrameFilterGui extends AbstractConfigGui {
         configureTestElement(element);
         if (element instanceof TextFrameFilter) {
             TextFrameFilter filter = (TextFrameFilter) element;
+            filter.setDiscardReporting(settingsPanel.discardReportingPanel.getReporting());
+            filter.setDiscardReportLimit(settingsPanel.discardReportingPanel.getLimit());
             filter.setComparisonType(settingsPanel.getComparisonType());
             filter.setMatchValue(settingsPanel.matchValue.getText());
         }
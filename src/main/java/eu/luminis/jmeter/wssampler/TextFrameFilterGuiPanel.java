@@ -41,6 +41,7 @@ public class TextFrameFilterGuiPanel extends JPanel {
     private JComboBox typeSelector3;
     private boolean useRegex;
     private DynamicTitledBorder matchPanelPanelBorder;
+    DiscardReportingPanel discardReportingPanel;
 
     public TextFrameFilterGuiPanel() {
         setLayout(new BoxLayout(this, Y_AXIS));
@@ -110,6 +111,10 @@ public class TextFrameFilterGuiPanel extends JPanel {
                 }
                 matchPositionPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
                 contentPanel.add(matchPositionPanel);
+
+                discardReportingPanel = new DiscardReportingPanel();
+                discardReportingPanel.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+                contentPanel.add(discardReportingPanel);
             }
 
             splitter.setBorder(null);
@@ -155,13 +160,18 @@ public class TextFrameFilterGuiPanel extends JPanel {
             else {
                 typeSelector3.addItem("text");
                 typeSelector3.addItem("regular expression");
-                if (previousSelection != -1)
+                if (typeSelector2.getSelectedIndex() == 0) {
+                    typeSelector3.addItem("any of the lines");
+                    typeSelector3.addItem("all of the lines");
+                }
+                if (previousSelection != -1 && previousSelection < typeSelector3.getItemCount())
                     typeSelector3.setSelectedIndex(previousSelection);
             }
         });
         typeSelector3.addActionListener(e -> {
             useRegex = typeSelector3.getSelectedIndex() == 1;
-            matchPanelPanelBorder.setTitle(useRegex ? "Regular expression": "Text");
+            boolean multiplePatterns = typeSelector3.getSelectedIndex() > 1;
+            matchPanelPanelBorder.setTitle(useRegex ? "Regular expression": multiplePatterns? "Texts (one per line)": "Text");
             testRegexButton.setEnabled(useRegex);
             matchPanel.repaint();
 
@@ -217,12 +227,16 @@ public class TextFrameFilterGuiPanel extends JPanel {
             case 0:   return IsPlain;
             case 100: return Contains;
             case 101: return ContainsRegex;
+            case 102: return ContainsAny;
+            case 103: return ContainsAll;
             case 110: return StartsWith;
             case 120: return Equals;
             case 121: return EqualsRegex;
             case 130: return EndsWith;
             case 200: return NotContains;
             case 201: return NotContainsRegex;
+            case 202: return NotContainsAny;
+            case 203: return NotContainsAll;
             case 210: return NotStartsWith;
             case 220: return NotEquals;
             case 221: return NotEqualsRegex;
@@ -240,6 +254,10 @@ public class TextFrameFilterGuiPanel extends JPanel {
                 break;
             case ContainsRegex: typeSelector1.setSelectedIndex(1); typeSelector2.setSelectedIndex(0); typeSelector3.setSelectedIndex(1);
                 break;
+            case ContainsAny: typeSelector1.setSelectedIndex(1); typeSelector2.setSelectedIndex(0); typeSelector3.setSelectedIndex(2);
+                break;
+            case ContainsAll: typeSelector1.setSelectedIndex(1); typeSelector2.setSelectedIndex(0); typeSelector3.setSelectedIndex(3);
+                break;
             case StartsWith: typeSelector1.setSelectedIndex(1); typeSelector2.setSelectedIndex(1); typeSelector3.setSelectedIndex(0);
                 break;
             case Equals: typeSelector1.setSelectedIndex(1); typeSelector2.setSelectedIndex(2); typeSelector3.setSelectedIndex(0);
@@ -252,6 +270,10 @@ public class TextFrameFilterGuiPanel extends JPanel {
                 break;
             case NotContainsRegex: typeSelector1.setSelectedIndex(2); typeSelector2.setSelectedIndex(0); typeSelector3.setSelectedIndex(1);
                 break;
+            case NotContainsAny: typeSelector1.setSelectedIndex(2); typeSelector2.setSelectedIndex(0); typeSelector3.setSelectedIndex(2);
+                break;
+            case NotContainsAll: typeSelector1.setSelectedIndex(2); typeSelector2.setSelectedIndex(0); typeSelector3.setSelectedIndex(3);
+                break;
             case NotStartsWith: typeSelector1.setSelectedIndex(2); typeSelector2.setSelectedIndex(1); typeSelector3.setSelectedIndex(0);
                 break;
             case NotEquals: typeSelector1.setSelectedIndex(2); typeSelector2.setSelectedIndex(2); typeSelector3.setSelectedIndex(0);
@@ -1,8 +1,13 @@
 package eu.luminis.jmeter.wssampler;
 
+import eu.luminis.websocket.WebSocketClient;
+import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.property.JMeterProperty;
 import org.apache.jmeter.testelement.property.NullProperty;
 
+import java.io.File;
+import java.io.IOException;
+
 public abstract class WebsocketGeneralSampler extends WebsocketSampler {
 
     private static final String PROPERTY_PAYLOAD = "payloadType";
@@ -36,4 +41,29 @@ public abstract class WebsocketGeneralSampler extends WebsocketSampler {
     public void setType(final DataPayloadType type) {
         setProperty(PROPERTY_PAYLOAD, type.name());
     }
+
+    /**
+     * @return the fragment size (in bytes) for sending the request data in fragments; empty for sending it in one frame
+     */
+    public String getFragmentSize() {
+        return getPropertyAsString("fragmentSize").trim();
+    }
+
+    public void setFragmentSize(String fragmentSize) {
+        setProperty("fragmentSize", fragmentSize, "");
+    }
+
+    protected void sendRequestData(WebSocketClient wsClient, SampleResult result) throws IOException, SamplingAbortedException {
+        File requestDataFile = getLoadDataFromFile()? new File(getDataFile()): null;
+        if (getFragmentSize().isEmpty())
+            sendFrame(wsClient, result, getType(), getRequestData(), requestDataFile);
+        else
+            sendFragmented(wsClient, result, getType(), getRequestData(), requestDataFile, Integer.parseInt(getFragmentSize()));
+    }
+
+    abstract public String getRequestData();
+
+    abstract public boolean getLoadDataFromFile();
+
+    abstract public String getDataFile();
 }
@@ -37,12 +37,15 @@ import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
 import javax.swing.*;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.util.Arrays;
@@ -50,6 +53,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -68,11 +73,25 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
     enum ThreadStopPolicy { NONE, TCPCLOSE, WSCLOSE };
 
     public static final String WS_THREAD_STOP_POLICY_PROPERTY = "websocket.thread.stop.policy";
+    public static final String WS_NIO_ENABLED_PROPERTY = "websocket.nio.enabled";
+    public static final String WS_NIO_THREADS_PROPERTY = "websocket.nio.threads";
+    public static final String WS_MASK_KEY_RING_SIZE_PROPERTY = "websocket.mask.keyring.size";
+    public static final String WS_SPOOL_DIRECTORY_PROPERTY = "websocket.spool.dir";
+    public static final String WS_PRE_ENCODED_POOL_SIZE_PROPERTY = "websocket.preencoded.pool.size";
+    public static final String WS_FILE_STREAMING_THRESHOLD_PROPERTY = "websocket.datafile.stream_threshold";
+    public static final String WS_FILE_ZERO_MASK_KEY_PROPERTY = "websocket.datafile.zero_mask_key";
 
     public static final int MIN_CONNECTION_TIMEOUT = 1;
     public static final int MAX_CONNECTION_TIMEOUT = 999999;
     public static final int MIN_READ_TIMEOUT = 0;
     public static final int MAX_READ_TIMEOUT = 9999999;
+
+    private static final int MAX_LOGGED_BINARY_SIZE = 1024;
+    static final int MAX_REPORTED_FRAGMENTS = 100;
+    public static final String BATCH_FRAME_NUMBER_PLACEHOLDER = "{{frame}}";
+    // A batch is encoded into one buffer, so its size must be limited
+    static final long MAX_BATCH_SIZE = 256 * 1024 * 1024;
+    private static final int MAX_FRAME_HEADER_SIZE = 14;
     public static final int DEFAULT_WS_PORT = 80;
 
     // Control reuse of cached SSL Context in subsequent connections on the same thread
@@ -83,6 +102,7 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
     protected HeaderManager headerManager;
     protected CookieManager cookieManager;
     protected List<FrameFilter> frameFilters = new ArrayList<>();
+    private FilterChain filterChain;
     protected int readTimeout;
     protected int connectTimeout;
 
@@ -97,6 +117,20 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
     // Thread stop policy: what to do with connection when thread ends?
     private  static ThreadStopPolicy threadStopPolicy = ThreadStopPolicy.NONE;
 
+    // Non-blocking I/O: when enabled, all connections share one (lazily created) engine.
+    private static boolean useNioEngine;
+    private static NioEngine nioEngine;
+
+    // Pre-generated mask keys (for benchmark runs); null means (default) random keys are generated for each frame.
+    private static KeyRingMaskKeySource maskKeyRing;
+    private static int preEncodedPoolSize;
+    private static long fileStreamingThreshold;
+    private static boolean useZeroMaskKeyForFiles;
+
+    // Large payload policy, rebuilt only when one of the (streaming) properties changes
+    private LargePayloadPolicy largePayloadPolicy;
+    private String largePayloadPolicySpoolDirectory;
+
     abstract protected String validateArguments();
 
     abstract protected WebSocketClient prepareWebSocketClient(SampleResult result);
@@ -109,10 +143,15 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
         initProxyConfiguration();
         checkForOtherWebsocketPlugins();
         initThreadStopPolicy();
+        initNioConfiguration();
+        initMaskKeyConfiguration();
+        initPreEncodingConfiguration();
+        initFileStreamingConfiguration();
     }
 
     public void clearTestElementChildren() {
         frameFilters.clear();
+        filterChain = null;
     }
 
     @Override
@@ -130,6 +169,8 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
 
         readTimeout = Integer.parseInt(getReadTimeout());
         connectTimeout = Integer.parseInt(getConnectTimeout());
+        // Compile filters once per iteration (and only recompile filters whose properties did change)
+        filterChain = FilterChain.compile(frameFilters);
 
         WebSocketClient wsClient = prepareWebSocketClient(result);
         if (wsClient == null)
@@ -155,6 +196,10 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
                     ((JsseSSLManager) SSLManager.getInstance()).resetContext();
                 if (useProxy(wsClient.getConnectUrl().getHost()))
                     wsClient.useProxy(proxyHost, proxyPort, proxyUsername, proxyPassword);
+                if (useNioEngine)
+                    wsClient.useNioEngine(getNioEngine());
+                if (maskKeyRing != null)
+                    wsClient.setMaskKeySource(maskKeyRing.forConnection());
 
                 result.setSamplerData("Connect URL:\n" + getConnectUrl(wsClient.getConnectUrl()) + "\n");  // Ensure connect URL is reported in case of a connect error.
 
@@ -164,15 +209,19 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
                 result.setHeadersSize(httpResult.responseSize);
                 result.setSentBytes(httpResult.requestSize);
                 gotNewConnection = true;
+                String negotiatedCompression = wsClient.getNegotiatedCompression();
+                if (negotiatedCompression != null)
+                    result.setSamplerData(result.getSamplerData() + "Compression: " + negotiatedCompression + "\nInflater pool: " + WebSocketInflater.getPoolStatistics() + "\n");
             }
             else {
                 result.setSamplerData("Connect URL:\n" + getConnectUrl(wsClient.getConnectUrl()) + "\n(using existing connection)\n");
             }
+            wsClient.setLargePayloadPolicy(getLargePayloadPolicy());
             Frame response = doSample(wsClient, result);
             result.sampleEnd(); // End timimg
             if (response != null) {
-                result.setHeadersSize(result.getHeadersSize() + response.getSize() - response.getPayloadSize());
-                result.setBodySize(result.getBodySize() + response.getPayloadSize());
+                result.setHeadersSize(result.getHeadersSize() + (int) (response.getSizeAsLong() - response.getPayloadSizeAsLong()));
+                result.setBodySize(result.getBodySizeAsLong() + response.getPayloadSizeAsLong());
             }
 
             if (gotNewConnection) {
@@ -247,20 +296,33 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
 
         try {
             if (requestDataFile != null) {
-                binRequestData = Files.readAllBytes(requestDataFile.toPath());
-                printableRequestData = BinaryUtils.formatBinary(binRequestData, 100, "...");
+                long fileSize = Files.size(requestDataFile.toPath());
+                if (fileStreamingThreshold >= 0 && fileSize > fileStreamingThreshold) {
+                    result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + fileSize + " bytes streamed from file " + requestDataFile + "\n");
+                    return wsClient.sendBinaryFile(requestDataFile.toPath(), useZeroMaskKeyForFiles);
+                }
+                RequestDataFileCache.FileData fileData = RequestDataFileCache.getInstance().get(requestDataFile.toPath());
+                printableRequestData = BinaryUtils.formatBinary(fileData.getHead(101), 100, "...");
+                result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + printableRequestData + "\n");
+                if (fileData.isMapped())
+                    return wsClient.sendBinaryFrame(fileData.getBuffer());
+                else
+                    return wsClient.sendBinaryFrame(fileData.getBytes());
             } else {
-                binRequestData = BinaryUtils.parseBinaryString(requestData);
+                if (preEncodedPoolSize > 0) {
+                    PreEncodedFrame preEncodedFrame = PreEncodedFrameCache.getThreadCache().getBinaryFrame(requestData, preEncodedPoolSize);
+                    if (preEncodedFrame != null) {
+                        result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + requestData + "\n");
+                        return wsClient.sendPreEncodedFrame(preEncodedFrame);
+                    }
+                }
+                binRequestData = BinaryDataCache.parseBinaryString(requestData);
                 printableRequestData = requestData;
             }
         }
         catch (NumberFormatException noNumber) {
-            // Thrown by BinaryUtils.parseBinaryString
-            result.sampleEnd(); // End timimg
-            getLogger().error("Sampler '" + getName() + "': request data is not binary: " + requestData);
-            result.setResponseCode("Sampler Error");
-            result.setResponseMessage("Request data is not binary: " + requestData);
-            throw new SamplingAbortedException();
+            // Thrown by BinaryDataCache.parseBinaryString
+            throw reportInvalidBinaryData(result, requestData);
         }
         // If the sendBinaryFrame method throws an IOException, some data may have been send, so we'd better register all request data
         result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + printableRequestData + "\n");
@@ -270,12 +332,17 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
     protected Frame sendTextFrame(WebSocketClient wsClient, SampleResult result, String requestData, File requestDataFile, Function<String, String> requestPreprocessor) throws IOException {
         final String rawRequestData;
         if (requestDataFile != null) {
-            rawRequestData = new String(Files.readAllBytes(requestDataFile.toPath()), StandardCharsets.UTF_8);
+            rawRequestData = RequestDataFileCache.getInstance().getText(requestDataFile.toPath());
         } else {
             rawRequestData = requestData;
         }
         final String processedRequestData = requestPreprocessor == null ? rawRequestData : requestPreprocessor.apply(rawRequestData);
         result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + processedRequestData + "\n");
+        if (preEncodedPoolSize > 0) {
+            PreEncodedFrame preEncodedFrame = PreEncodedFrameCache.getThreadCache().getTextFrame(processedRequestData, preEncodedPoolSize);
+            if (preEncodedFrame != null)
+                return wsClient.sendPreEncodedFrame(preEncodedFrame);
+        }
         return wsClient.sendTextFrame(processedRequestData);
     }
 
@@ -296,24 +363,186 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
                     sentFrame = sendTextFrame(wsClient, result, requestData, requestDataFile, PREPROCESSOR_NOOP);
             }
             result.setSentBytes(sentFrame.getSize());
+            CompressionStatistics compressionStatistics = wsClient.getLastCompressionStatistics();
+            if (compressionStatistics != null)
+                result.setSamplerData(result.getSamplerData() + "\nCompression: " + compressionStatistics + "\n");
         }
         catch (NoSuchFileException | AccessDeniedException fileError) {
-            // Thrown by Files.readAllBytes
-            result.sampleEnd(); // End timimg
-            String rootCause = "";
-            if (fileError instanceof NoSuchFileException)
-                rootCause = "file '" + fileError.getFile() + "' not found";
-            else if (fileError instanceof AccessDeniedException)
-                rootCause = "file '" + fileError.getFile() + "' not readable";
-            getLogger().error("Sampler '" + getName() + "': can't load request data; " + rootCause);
-            result.setResponseCode("Sampler Error");
-            result.setResponseMessage("Request data cannot be loaded, " + rootCause);
-            throw new SamplingAbortedException();
+            // Thrown by Files.size or RequestDataFileCache.get
+            throw reportFileError(result, fileError);
+        }
+    }
+
+    /**
+     * Sends the request data as a fragmented message: the data is sent in frames of (at most) fragmentSize bytes,
+     * each frame being sent as soon as its data is read. Request data files are streamed, so they need not fit in
+     * memory (except for STOMP text, which must be preprocessed as a whole). The sending of each fragment is
+     * reported as a sub result (up to a maximum number of fragments).
+     */
+    protected void sendFragmented(WebSocketClient wsClient, SampleResult result, DataPayloadType type, String requestData, File requestDataFile, int fragmentSize) throws SamplingAbortedException, IOException {
+        try (InputStream payload = openRequestData(result, type, requestData, requestDataFile)) {
+            FragmentReporter reporter = new FragmentReporter(result);
+            int count = wsClient.sendFragmentedMessage(type != DataPayloadType.Binary, payload, fragmentSize, reporter);
+            result.setSentBytes((int) Math.min(reporter.sentBytes, Integer.MAX_VALUE));
+            result.setSamplerData(result.getSamplerData() + "\nSent in " + count + (count == 1? " fragment": " fragments") + " of (at most) " + fragmentSize + " bytes\n");
+            CompressionStatistics compressionStatistics = wsClient.getLastCompressionStatistics();
+            if (compressionStatistics != null)
+                result.setSamplerData(result.getSamplerData() + "\nCompression: " + compressionStatistics + "\n");
+        }
+        catch (NoSuchFileException | AccessDeniedException fileError) {
+            // Thrown by Files.newInputStream or RequestDataFileCache.get
+            throw reportFileError(result, fileError);
+        }
+    }
+
+    /**
+     * Sends the request data count times, as a batch of frames that is written to the connection with one write. In
+     * text request data, each occurrence of {@link #BATCH_FRAME_NUMBER_PLACEHOLDER} is replaced by the (1-based) number
+     * of the frame in the batch; text without placeholder and binary data are encoded (to UTF-8 or from hex) only once.
+     * As the batch is encoded into one buffer, its total size is limited to {@link #MAX_BATCH_SIZE}.
+     */
+    protected void sendBatch(WebSocketClient wsClient, SampleResult result, DataPayloadType type, String requestData, File requestDataFile, int count) throws SamplingAbortedException, IOException {
+        try {
+            List<DataFrame> frames = new ArrayList<>(count);
+            if (type == DataPayloadType.Binary) {
+                BinaryFrame frame;
+                if (requestDataFile != null) {
+                    RequestDataFileCache.FileData fileData = RequestDataFileCache.getInstance().get(requestDataFile.toPath());
+                    result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + BinaryUtils.formatBinary(fileData.getHead(101), 100, "...") + "\n");
+                    frame = fileData.isMapped()? new BinaryFrame(fileData.getBuffer()): new BinaryFrame(fileData.getBytes());
+                }
+                else {
+                    try {
+                        frame = new BinaryFrame(BinaryDataCache.parseBinaryString(requestData));
+                    }
+                    catch (NumberFormatException noNumber) {
+                        throw reportInvalidBinaryData(result, requestData);
+                    }
+                    result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + requestData + "\n");
+                }
+                for (int i = 0; i < count; i++)
+                    frames.add(frame);
+            }
+            else {
+                String rawRequestData = requestDataFile != null? RequestDataFileCache.getInstance().getText(requestDataFile.toPath()): requestData;
+                String template = (type == DataPayloadType.TextStomp? PREPROCESSOR_STOMP: PREPROCESSOR_NOOP).apply(rawRequestData);
+                result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + template + "\n");
+                if (template.contains(BATCH_FRAME_NUMBER_PLACEHOLDER)) {
+                    for (int i = 1; i <= count; i++)
+                        frames.add(new TextFrame(template.replace(BATCH_FRAME_NUMBER_PLACEHOLDER, Integer.toString(i))));
+                }
+                else {
+                    TextFrame frame = new TextFrame(true, template.getBytes(StandardCharsets.UTF_8), 0);
+                    for (int i = 0; i < count; i++)
+                        frames.add(frame);
+                }
+            }
+            long batchSize = 0;
+            for (DataFrame frame: frames)
+                batchSize += MAX_FRAME_HEADER_SIZE + frame.getPayloadSize();
+            if (batchSize > MAX_BATCH_SIZE)
+                throw reportBatchTooLarge(result, count, batchSize);
+            long sentBytes = wsClient.sendFrames(frames);
+            result.setSentBytes((int) Math.min(sentBytes, Integer.MAX_VALUE));
+            result.setSamplerData(result.getSamplerData() + "\nSent " + count + (count == 1? " frame": " frames") + " (" + sentBytes + " bytes) with one write\n");
+            CompressionStatistics compressionStatistics = wsClient.getLastCompressionStatistics();
+            if (compressionStatistics != null)
+                result.setSamplerData(result.getSamplerData() + "\nCompression: " + compressionStatistics + "\n");
+        }
+        catch (NoSuchFileException | AccessDeniedException fileError) {
+            // Thrown by RequestDataFileCache.get
+            throw reportFileError(result, fileError);
+        }
+    }
+
+    private InputStream openRequestData(SampleResult result, DataPayloadType type, String requestData, File requestDataFile) throws IOException, SamplingAbortedException {
+        if (requestDataFile != null && type != DataPayloadType.TextStomp) {
+            result.setSamplerData(result.getSamplerData() + "\nRequest data:\nstreamed from file " + requestDataFile + "\n");
+            return Files.newInputStream(requestDataFile.toPath());
+        }
+        if (type == DataPayloadType.Binary) {
+            try {
+                byte[] binRequestData = BinaryDataCache.parseBinaryString(requestData);
+                result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + requestData + "\n");
+                return new ByteArrayInputStream(binRequestData);
+            }
+            catch (NumberFormatException noNumber) {
+                throw reportInvalidBinaryData(result, requestData);
+            }
+        }
+        String rawRequestData = requestDataFile != null? RequestDataFileCache.getInstance().getText(requestDataFile.toPath()): requestData;
+        String processedRequestData = (type == DataPayloadType.TextStomp? PREPROCESSOR_STOMP: PREPROCESSOR_NOOP).apply(rawRequestData);
+        result.setSamplerData(result.getSamplerData() + "\nRequest data:\n" + processedRequestData + "\n");
+        return new ByteArrayInputStream(processedRequestData.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SamplingAbortedException reportInvalidBinaryData(SampleResult result, String requestData) {
+        result.sampleEnd(); // End timimg
+        getLogger().error("Sampler '" + getName() + "': request data is not binary: " + requestData);
+        result.setResponseCode("Sampler Error");
+        result.setResponseMessage("Request data is not binary: " + requestData);
+        return new SamplingAbortedException();
+    }
+
+    private SamplingAbortedException reportBatchTooLarge(SampleResult result, int count, long batchSize) {
+        result.sampleEnd(); // End timimg
+        String message = "Batch of " + count + " frames is too large: " + batchSize + " bytes exceeds the maximum of " + MAX_BATCH_SIZE + " bytes";
+        getLogger().error("Sampler '" + getName() + "': " + message);
+        result.setResponseCode("Sampler Error");
+        result.setResponseMessage(message);
+        return new SamplingAbortedException();
+    }
+
+    private SamplingAbortedException reportFileError(SampleResult result, FileSystemException fileError) {
+        result.sampleEnd(); // End timimg
+        String rootCause = "";
+        if (fileError instanceof NoSuchFileException)
+            rootCause = "file '" + fileError.getFile() + "' not found";
+        else if (fileError instanceof AccessDeniedException)
+            rootCause = "file '" + fileError.getFile() + "' not readable";
+        getLogger().error("Sampler '" + getName() + "': can't load request data; " + rootCause);
+        result.setResponseCode("Sampler Error");
+        result.setResponseMessage("Request data cannot be loaded, " + rootCause);
+        return new SamplingAbortedException();
+    }
+
+    /**
+     * Reports each fragment sent as a sub result, whose time is the time it took to read and send the fragment.
+     */
+    private static class FragmentReporter implements Consumer<DataFrame> {
+        private final SampleResult result;
+        private long previousEnd;
+        private int count;
+        private long sentBytes;
+
+        FragmentReporter(SampleResult result) {
+            this.result = result;
+            previousEnd = System.currentTimeMillis();
+        }
+
+        @Override
+        public void accept(DataFrame fragment) {
+            long end = System.currentTimeMillis();
+            count++;
+            sentBytes += fragment.getSize();
+            if (count <= MAX_REPORTED_FRAGMENTS) {
+                SampleResult subResult = new SampleResult();
+                subResult.setStampAndTime(previousEnd, end - previousEnd);
+                subResult.setSampleLabel(result.getSampleLabel() + " - fragment " + count);
+                subResult.setSuccessful(true);
+                subResult.setResponseMessage("Sent " + fragment.getTypeAsString() + " frame with payload of " + fragment.getPayloadSize() + " bytes");
+                subResult.setSentBytes(fragment.getSize());
+                result.addRawSubResult(subResult);
+            }
+            previousEnd = end;
         }
     }
 
     protected Frame readFrame(WebSocketClient wsClient, SampleResult result, DataPayloadType type) throws IOException, UnexpectedFrameException {
-        final Frame receivedFrame = readFrame(wsClient, result);
+        return checkPayloadType(readFrame(wsClient, result), type);
+    }
+
+    private Frame checkPayloadType(Frame receivedFrame, DataPayloadType type) throws UnexpectedFrameException {
         switch (type) {
             case Binary:
                 if (!receivedFrame.isBinary()) {
@@ -338,12 +567,56 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
     }
 
     protected Frame readFrame(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException {
-        Frame receivedFrame;
-        if (! frameFilters.isEmpty())
-            receivedFrame = frameFilters.get(0).receiveFrame(frameFilters.subList(1, frameFilters.size()), wsClient, readTimeout, result);
-        else
-            receivedFrame = wsClient.receiveFrame(readTimeout);
-        return receivedFrame;
+        return getFilterChain().receiveFrame(wsClient, readTimeout, result);
+    }
+
+    protected Frame readMessage(WebSocketClient wsClient, SampleResult result, DataPayloadType type) throws IOException, UnexpectedFrameException {
+        return checkPayloadType(readMessage(wsClient, result).toFrame(), type);
+    }
+
+    /**
+     * Reads a complete (possibly fragmented) message, applying the frame filters to each frame read; the read timeout
+     * applies to each fragment. The latency of the result is set to the time the first fragment was received, so
+     * latency and elapsed time report time to first and to last fragment. When the message consists of more than one
+     * fragment, each fragment is reported as a sub result (up to a maximum number of fragments).
+     */
+    protected Message readMessage(WebSocketClient wsClient, SampleResult result) throws IOException, UnexpectedFrameException {
+        int earlierFragments = wsClient.getPartialMessageFragmentCount();
+        Message message = wsClient.receiveMessage(() -> getFilterChain().receiveFrame(wsClient, readTimeout, result));
+        // When an earlier sample received the first fragments of this message, they are reported as taking no time
+        result.setLatency(Math.max(message.getFirstFragmentTime() - result.getStartTime(), 0));
+        int count = message.getFragmentCount();
+        if (count > 1) {
+            long previousEnd = result.getStartTime();
+            for (int i = 0; i < Math.min(count, MAX_REPORTED_FRAGMENTS); i++) {
+                DataFrame fragment = message.getFragments().get(i);
+                long end = Math.max(message.getReceiveTime(i), previousEnd);
+                SampleResult subResult = new SampleResult();
+                subResult.setStampAndTime(previousEnd, end - previousEnd);
+                subResult.setSampleLabel(result.getSampleLabel() + " - fragment " + (i + 1));
+                subResult.setSuccessful(true);
+                subResult.setResponseMessage("Received " + fragment.getTypeAsString() + " frame with payload of " + fragment.getPayloadSizeAsLong() + " bytes");
+                subResult.setBodySize(fragment.getPayloadSizeAsLong());
+                subResult.setHeadersSize((int) (fragment.getSizeAsLong() - fragment.getPayloadSizeAsLong()));
+                result.addRawSubResult(subResult);
+                previousEnd = end;
+            }
+        }
+        result.setSamplerData(result.getSamplerData() + "\nReceived message in " + count + (count == 1? " fragment": " fragments")
+                + (earlierFragments > 0? " (of which " + earlierFragments + " by an earlier sample)": "")
+                + "; first after " + result.getLatency() + " ms, last after " + (message.getLastFragmentTime() - result.getStartTime()) + " ms\n");
+        getLogger().debug("Sampler '" + getName() + "' received " + message);
+        return message;
+    }
+
+    protected boolean hasFrameFilters() {
+        return !frameFilters.isEmpty();
+    }
+
+    private FilterChain getFilterChain() {
+        if (filterChain == null || filterChain.size() != frameFilters.size())
+            filterChain = FilterChain.compile(frameFilters);
+        return filterChain;
     }
 
     public void addTestElement(TestElement element) {
@@ -354,6 +627,7 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
         } else if (element instanceof FrameFilter) {
             if (! frameFilters.contains(element)) {
                 frameFilters.add((FrameFilter) element);
+                filterChain = null;
                 getLogger().debug("Added filter " + element + " to sampler " + this + "; filter list is now " + frameFilters);
             }
             else {
@@ -434,12 +708,22 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
     }
 
     protected void processDefaultReadResponse(DataFrame response, DataPayloadType type, SampleResult result) {
+        if (response.isStreamed()) {
+            // Payload is not in memory; response only contains size and digest
+            StreamedPayload streamedPayload = response.getStreamedPayload();
+            result.setResponseData(streamedPayload.toString(), StandardCharsets.UTF_8.name());
+            result.setDataType(SampleResult.TEXT);
+            getLogger().debug("Sampler '" + getName() + "' received " + response.getTypeAsString() + " frame with streamed payload: " + streamedPayload);
+            JMeterContextService.getContext().getVariables().put(VAR_WEBSOCKET_LAST_FRAME_FINAL, String.valueOf(response.isFinalFragment()));
+            return;
+        }
         switch (type) {
             case Binary:
                 byte[] responseData = ((BinaryFrame) response).getBinaryData();
                 result.setResponseData(responseData);
                 if (getLogger().isDebugEnabled()) {
-                    getLogger().debug("Sampler '" + getName() + "' received " + response.getTypeAsString() + " frame with data: " + BinaryUtils.formatBinary(responseData));
+                    getLogger().debug("Sampler '" + getName() + "' received " + response.getTypeAsString() + " frame with data: "
+                            + BinaryUtils.formatBinary(responseData, MAX_LOGGED_BINARY_SIZE, " ... (" + responseData.length + " bytes)"));
                 }
                 result.setDataType(SampleResult.BINARY);
                 break;
@@ -482,6 +766,49 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
         return null;
     }
 
+    protected String validateFragmentSize(String value) {
+        if (value.isEmpty())
+            return null;
+        try {
+            if (Integer.parseInt(value) < 1)
+                return "Fragment size '" + value + "' is not valid; should be positive";
+        }
+        catch (NumberFormatException notAnumber) {
+            return "Fragment size '" + value + "' is not a number.";
+        }
+        return null;
+    }
+
+    protected String validateLargePayloadThreshold(String value) {
+        if (value.isEmpty())
+            return null;
+        try {
+            if (Long.parseLong(value) < 0)
+                return "Streaming threshold '" + value + "' is not valid; should not be negative";
+        }
+        catch (NumberFormatException notAnumber) {
+            return "Streaming threshold '" + value + "' is not a number.";
+        }
+        return null;
+    }
+
+    /**
+     * Validates the streaming properties, including the digest algorithm; as the policy is created (and cached) in the
+     * process, this is only expensive when a property has changed.
+     */
+    protected String validateLargePayloadPolicy() {
+        String errorMsg = validateLargePayloadThreshold(getLargePayloadThreshold());
+        if (errorMsg == null) {
+            try {
+                createLargePayloadPolicy();
+            }
+            catch (IllegalArgumentException unsupportedDigest) {
+                return "Digest algorithm '" + getLargePayloadDigest() + "' is not supported.";
+            }
+        }
+        return errorMsg;
+    }
+
     protected String validateReadTimeout(String value) {
         try {
             int readTimeout = Integer.parseInt(value);
@@ -550,6 +877,33 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
         }
     }
 
+    static void initNioConfiguration() {
+        useNioEngine = JMeterUtils.getPropDefault(WS_NIO_ENABLED_PROPERTY, false);
+    }
+
+    static void initMaskKeyConfiguration() {
+        int keyRingSize = JMeterUtils.getPropDefault(WS_MASK_KEY_RING_SIZE_PROPERTY, 0);
+        maskKeyRing = keyRingSize > 0? new KeyRingMaskKeySource(keyRingSize): null;
+    }
+
+    static void initPreEncodingConfiguration() {
+        preEncodedPoolSize = Math.max(0, JMeterUtils.getPropDefault(WS_PRE_ENCODED_POOL_SIZE_PROPERTY, 0));
+    }
+
+    static void initFileStreamingConfiguration() {
+        fileStreamingThreshold = JMeterUtils.getPropDefault(WS_FILE_STREAMING_THRESHOLD_PROPERTY, 16 * 1024 * 1024L);
+        useZeroMaskKeyForFiles = JMeterUtils.getPropDefault(WS_FILE_ZERO_MASK_KEY_PROPERTY, false);
+    }
+
+    // The engine (and thus the number of event loop threads) is created once and kept for the lifetime of the JVM.
+    private static synchronized NioEngine getNioEngine() throws IOException {
+        if (nioEngine == null) {
+            int nrOfThreads = JMeterUtils.getPropDefault(WS_NIO_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            nioEngine = new NioEngine(Math.max(1, nrOfThreads));
+        }
+        return nioEngine;
+    }
+
     protected boolean useTLS() {
         return getTLS();
     }
@@ -562,6 +916,72 @@ abstract public class WebsocketSampler extends AbstractSampler implements Thread
         setProperty("connectTimeout", connectTimeout);
     }
 
+    /**
+     * @return the policy for streaming large payloads, or null if payloads should always be read into memory. By default
+     * null, read samplers that support streaming large payloads override this method.
+     */
+    protected LargePayloadPolicy getLargePayloadPolicy() {
+        return null;
+    }
+
+    /**
+     * Creates the large payload policy from the (common) streaming properties. The policy is cached and only created
+     * again when one of the properties changed.
+     * @throws IllegalArgumentException when the digest algorithm is not supported
+     */
+    protected LargePayloadPolicy createLargePayloadPolicy() {
+        String threshold = getLargePayloadThreshold();
+        if (threshold.isEmpty())
+            return null;
+        long thresholdValue = Long.parseLong(threshold);
+        LargePayloadPolicy.Mode mode = getLargePayloadMode();
+        String digest = getLargePayloadDigest();
+        String spoolDirectory = JMeterUtils.getPropDefault(WS_SPOOL_DIRECTORY_PROPERTY, null);
+        LargePayloadPolicy policy = largePayloadPolicy;
+        if (policy == null || policy.getThreshold() != thresholdValue || policy.getMode() != mode
+                || !policy.getDigestAlgorithm().equals(digest) || !Objects.equals(spoolDirectory, largePayloadPolicySpoolDirectory)) {
+            policy = new LargePayloadPolicy(thresholdValue, mode, digest, spoolDirectory != null? new File(spoolDirectory): null);
+            largePayloadPolicy = policy;
+            largePayloadPolicySpoolDirectory = spoolDirectory;
+        }
+        return policy;
+    }
+
+    public String getLargePayloadThreshold() {
+        return getPropertyAsString("largePayloadThreshold", "").trim();
+    }
+
+    public void setLargePayloadThreshold(String threshold) {
+        setProperty("largePayloadThreshold", threshold);
+    }
+
+    public LargePayloadPolicy.Mode getLargePayloadMode() {
+        return LargePayloadPolicy.Mode.valueOf(getPropertyAsString("largePayloadMode", LargePayloadPolicy.Mode.Discard.name()));
+    }
+
+    public void setLargePayloadMode(LargePayloadPolicy.Mode mode) {
+        setProperty("largePayloadMode", mode.name());
+    }
+
+    public String getLargePayloadDigest() {
+        return getPropertyAsString("largePayloadDigest", LargePayloadPolicy.CRC32);
+    }
+
+    public void setLargePayloadDigest(String algorithm) {
+        setProperty("largePayloadDigest", algorithm);
+    }
+
+    /**
+     * @return whether read samplers should read a complete message (i.e. all fragments), instead of a single frame
+     */
+    public boolean getReadWholeMessage() {
+        return getPropertyAsBoolean("readWholeMessage");
+    }
+
+    public void setReadWholeMessage(boolean value) {
+        setProperty("readWholeMessage", value);
+    }
+
     public String getReadTimeout() {
         return getPropertyAsString("readTimeout", "" + WebSocketClient.DEFAULT_READ_TIMEOUT).trim();
     }
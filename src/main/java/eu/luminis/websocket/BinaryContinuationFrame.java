@@ -29,6 +29,10 @@ public class BinaryContinuationFrame extends BinaryFrame {
         super(fin, payload, size, compressed);
     }
 
+    public BinaryContinuationFrame(boolean fin, StreamedPayload streamedPayload, int headerSize) {
+        super(fin, streamedPayload, headerSize);
+    }
+
     @Override
     public String getTypeAsString() {
         if (isFinalFragment())
@@ -41,4 +45,9 @@ public class BinaryContinuationFrame extends BinaryFrame {
     public boolean isContinuationFrame() {
         return true;
     }
+
+    @Override
+    protected byte getOpCode() {
+        return OPCODE_CONT;
+    }
 }
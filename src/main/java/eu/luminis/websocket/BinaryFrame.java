@@ -20,16 +20,26 @@ package eu.luminis.websocket;
 
 import eu.luminis.jmeter.wssampler.BinaryUtils;
 
+import java.nio.ByteBuffer;
 
 public class BinaryFrame extends DataFrame {
 
     private byte[] data;
+    private ByteBuffer dataBuffer;
     int nrBytesPrintedInToString = 16;
 
     public BinaryFrame(byte[] payload) {
         data = payload;
     }
 
+    /**
+     * Creates a frame whose payload is the content of the given buffer (between position and limit), e.g. a memory
+     * mapped file. The buffer is not modified when the frame is sent.
+     */
+    public BinaryFrame(ByteBuffer payload) {
+        dataBuffer = payload.duplicate();
+    }
+
     public BinaryFrame(boolean fin, byte[] payload, int size) {
         super(fin, size);
         data = payload;
@@ -40,13 +50,32 @@ public class BinaryFrame extends DataFrame {
         data = payload;
     }
 
+    public BinaryFrame(boolean fin, StreamedPayload streamedPayload, int headerSize) {
+        super(fin, streamedPayload, headerSize);
+        data = new byte[0];
+    }
+
+    /**
+     * @return the payload; for a frame created with a buffer, the payload is copied (once) into an array.
+     */
     public byte[] getBinaryData() {
+        if (data == null) {
+            data = new byte[dataBuffer.remaining()];
+            dataBuffer.duplicate().get(data);
+        }
         return data;
     }
 
     @Override
     public Object getData() {
-        return data;
+        return getBinaryData();
+    }
+
+    /**
+     * @return the payload buffer, if this frame was created with a buffer, otherwise null
+     */
+    ByteBuffer getPayloadBuffer() {
+        return dataBuffer != null? dataBuffer.duplicate(): null;
     }
 
     @Override
@@ -56,15 +85,25 @@ public class BinaryFrame extends DataFrame {
 
     @Override
     public String toString() {
-        if (data.length > 0)
+        if (isStreamed())
+            return "Binary frame, streamed payload (" + streamedPayload + ")";
+        else if (dataBuffer != null && dataBuffer.hasRemaining())
+            return "Binary frame, payload (length " + dataBuffer.remaining() + "): " + BinaryUtils.formatBinary(head(dataBuffer, nrBytesPrintedInToString + 1), nrBytesPrintedInToString, " ...");
+        else if (dataBuffer == null && data.length > 0)
             return "Binary frame, payload (length " + data.length + "): " + BinaryUtils.formatBinary(data, nrBytesPrintedInToString, " ...");
         else
             return "Binary frame, empty payload";
     }
 
+    private static byte[] head(ByteBuffer buffer, int count) {
+        byte[] head = new byte[Math.min(count, buffer.remaining())];
+        buffer.duplicate().get(head);
+        return head;
+    }
+
     @Override
     protected byte[] getPayload() {
-        return data;
+        return getBinaryData();
     }
 
     @Override
@@ -82,7 +121,7 @@ public class BinaryFrame extends DataFrame {
 
     @Override
     public int getPayloadSize() {
-        return data.length;
+        return isStreamed()? getStreamedPayloadSize(): dataBuffer != null? dataBuffer.remaining(): data.length;
     }
 
 }
@@ -29,7 +29,7 @@ public class CloseFrame extends ControlFrame {
     public CloseFrame(int status, String requestData) {
         closeStatus = status;
         closeReason = requestData;
-        payloadSize = requestData.getBytes().length;
+        payloadSize = 2 + FrameEncoder.utf8Length(requestData);
     }
 
     public CloseFrame(){}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.util.Locale;
+
+/**
+ * Statistics of compressing one (outgoing) message.
+ */
+public class CompressionStatistics {
+
+    private final long uncompressedSize;
+    private final long compressedSize;
+    private final long deflateTimeNanos;
+
+    public CompressionStatistics(long uncompressedSize, long compressedSize, long deflateTimeNanos) {
+        this.uncompressedSize = uncompressedSize;
+        this.compressedSize = compressedSize;
+        this.deflateTimeNanos = deflateTimeNanos;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return compressed size divided by uncompressed size (so smaller is better)
+     */
+    public double getCompressionRatio() {
+        return uncompressedSize > 0? (double) compressedSize / uncompressedSize: 1.0;
+    }
+
+    public long getDeflateTimeNanos() {
+        return deflateTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d bytes compressed to %d bytes (ratio %.3f), deflate time %d \u00b5s",
+                uncompressedSize, compressedSize, getCompressionRatio(), deflateTimeNanos / 1000);
+    }
+}
@@ -22,22 +22,41 @@ public abstract class DataFrame extends Frame {
 
     protected final boolean compressed;
     protected boolean finalFragment = true;
+    protected final StreamedPayload streamedPayload;
+    private final int headerSize;
 
     public DataFrame() {
         super(0);
         compressed = false;
+        streamedPayload = null;
+        headerSize = 0;
     }
 
     public DataFrame(boolean fin, int size) {
         super(size);
         finalFragment = fin;
         compressed = false;
+        streamedPayload = null;
+        headerSize = 0;
     }
 
     public DataFrame(boolean fin, int size, boolean compressed) {
         super(size);
         finalFragment = fin;
         this.compressed = compressed;
+        streamedPayload = null;
+        headerSize = 0;
+    }
+
+    /**
+     * Creates a frame whose payload was not read into memory, but streamed.
+     */
+    public DataFrame(boolean fin, StreamedPayload streamedPayload, int headerSize) {
+        super((int) Math.min(headerSize + streamedPayload.getSize(), Integer.MAX_VALUE));
+        finalFragment = fin;
+        compressed = false;
+        this.streamedPayload = streamedPayload;
+        this.headerSize = headerSize;
     }
 
     public abstract Object getData();
@@ -53,4 +72,33 @@ public abstract class DataFrame extends Frame {
     public boolean isCompressed() {
         return compressed;
     }
+
+    /**
+     * @return whether the payload of this frame was streamed (to file or discarded) instead of read into memory; if so,
+     * the frame data is empty and the payload is described by {@link #getStreamedPayload()}.
+     */
+    public boolean isStreamed() {
+        return streamedPayload != null;
+    }
+
+    public StreamedPayload getStreamedPayload() {
+        return streamedPayload;
+    }
+
+    @Override
+    public long getSizeAsLong() {
+        return streamedPayload != null? headerSize + streamedPayload.getSize(): super.getSizeAsLong();
+    }
+
+    @Override
+    public long getPayloadSizeAsLong() {
+        return streamedPayload != null? streamedPayload.getSize(): super.getPayloadSizeAsLong();
+    }
+
+    /**
+     * @return size of the streamed payload, limited to max int.
+     */
+    protected int getStreamedPayloadSize() {
+        return (int) Math.min(streamedPayload.getSize(), Integer.MAX_VALUE);
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of (raw, i.e. "nowrap") Deflater instances, shared by all connections. Creating a Deflater is relatively
+ * expensive (it allocates native memory for the compression window and state), so they are reused instead.
+ * Deflaters that do not fit in the pool are ended (which releases the native memory immediately).
+ */
+class DeflaterPool {
+
+    static final int MAX_POOLED_DEFLATERS = 256;
+
+    private static final DeflaterPool sharedPool = new DeflaterPool(MAX_POOLED_DEFLATERS);
+
+    private final ArrayBlockingQueue<Deflater> pool;
+
+    DeflaterPool(int capacity) {
+        pool = new ArrayBlockingQueue<>(capacity);
+    }
+
+    static DeflaterPool getSharedPool() {
+        return sharedPool;
+    }
+
+    Deflater borrow() {
+        Deflater deflater = pool.poll();
+        return deflater != null? deflater: new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    /**
+     * Returns the deflater to the pool; the deflater is reset, so the next user will not use the compression context.
+     */
+    void release(Deflater deflater) {
+        deflater.reset();
+        if (!pool.offer(deflater))
+            deflater.end();
+    }
+
+    int size() {
+        return pool.size();
+    }
+}
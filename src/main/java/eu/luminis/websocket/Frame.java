@@ -22,11 +22,8 @@ import org.apache.log.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.ProtocolException;
 import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 public abstract class Frame {
 
@@ -42,183 +39,38 @@ public abstract class Frame {
     public static final int OPCODE_PING = 0x09;
     public static final int OPCODE_PONG = 0x0a;
     public static final int FIN_BIT_ON = 0x80;
+    public static final int RSV1_BIT_ON = 0x40;
     public static final int MASK_BIT_MASKED = 0x80;
 
-    static private Random randomGenerator = new Random();
-
     private int frameSize;
 
     static Frame parseFrame(DataFrameType previousDataFrameType, InputStream istream, Logger log) throws IOException {
         return parseFrame(previousDataFrameType, istream, null, false, log);
     }
 
+    /**
+     * Parses one frame with a new (stateless) decoder. Bytes read before a socket timeout are lost; to read from a
+     * stream that may time out, use a (connection owned) {@link FrameDecoder}.
+     */
     static Frame parseFrame(DataFrameType previousDataFrameType, InputStream istream, WebSocketInflater webSocketInflater, boolean currentMessageIsCompressed, Logger log) throws IOException {
-        boolean markSupported = istream.markSupported();
-        if (! markSupported) {
-            throw new IllegalStateException("readFromStream should be called with an InputStream that supports mark/reset");
-        }
-
-        try {
-            istream.mark(2 + 8);  // Extended payload length is 8 bytes, 2 bytes for opcode and payload len.
-            int byte1 = istream.read();
-            if (byte1 == -1)
-                throw new EndOfStreamException("end of stream");
-            int byte2 = istream.read();
-            if (byte2 == -1)
-                throw new EndOfStreamException("end of stream");
-
-            boolean fin = (byte1 & 0x80) != 0;
-            boolean rsv1 = (byte1 & 0x40) != 0; // RSV1 flag (bit 6) → 1 means compressed
-            int opCode = byte1 & 0x0f;
-            int firstLengthByte = byte2 & 0x7f;
-            int length;
-            int nrOfLenghtBytes = 0;
-            if (firstLengthByte < 126) {
-                length = firstLengthByte;
-                updateMarkLimit(2 + length, istream, 2);
-            }
-            else if (firstLengthByte == 126) {
-                byte1 = istream.read();
-                if (byte1 == -1)
-                    throw new EndOfStreamException("end of stream");
-                byte2 = istream.read();
-                if (byte2 == -1)
-                    throw new EndOfStreamException("end of stream");
-                length = ((byte1 & 0xff) << 8) | (byte2 & 0xff);
-                updateMarkLimit(2 + 2 + length, istream, 4);
-                nrOfLenghtBytes = 2;
-            }
-            else {
-                byte[] lengthBytes = new byte[8];
-                int bytesRead = readFromStream(istream, lengthBytes, log);
-                if (bytesRead != lengthBytes.length)
-                    throw new EndOfStreamException("WebSocket protocol error: expected " + lengthBytes.length + " length bytes, but can only read " + bytesRead + " bytes");
-                // If most signicifant word (32 bytes) of length are non-zero, it results in an unsupported length (must fit in a Java int)
-                if (lengthBytes[0] != 0 || lengthBytes[1] != 0 || lengthBytes[2] != 0 || lengthBytes[3] != 0)
-                    throw new RuntimeException("Frame too large; Java does not support arrays longer than 2147483647 bytes.");
-                // Must check for most significant bit on least significant word set to avoid negative array size
-                if ((lengthBytes[4] & 0x80) == 128)
-                    throw new RuntimeException("Frame too large; Java does not support arrays longer than 2147483647 bytes.");
-                length = ((lengthBytes[4] & 0xff) << 24) | ((lengthBytes[5] & 0xff) << 16) | ((lengthBytes[6] & 0xff) << 8) | ((lengthBytes[7] & 0xff) << 0);
-                nrOfLenghtBytes = 8;
-                updateMarkLimit(2 + 8 + length, istream, 10);
-            }
-            byte[] payload = new byte[length];  // Note that this can still throw an OutOfMem, as the max array size is JVM dependent.
-            int bytesRead = readFromStream(istream, payload, log);
-
-            boolean compressed = (rsv1 && (opCode == OPCODE_TEXT || opCode == OPCODE_BINARY))
-                    || (currentMessageIsCompressed && opCode == OPCODE_CONT);
-            if (compressed) {
-                // collect the compressed frames data (necessary for fragemented messages)
-                webSocketInflater.appendCompressedData(payload, fin, log);
-                if (fin) {
-                    // message payload is complete and can now be decompressed
-                    payload = webSocketInflater.decompressNextMessage(log);
-                }
-                else {
-                    if (opCode == OPCODE_TEXT || previousDataFrameType == DataFrameType.TEXT) {
-                        payload = "<not showing response data, because it is compressed and at this stage incomplete>".getBytes(StandardCharsets.UTF_8);
-                    }
-                    else {
-                        payload = "".getBytes(StandardCharsets.UTF_8);
-                    }
-                }
-            }
-
-            if (bytesRead == -1)
-                throw new EndOfStreamException("end of stream");
-            if (bytesRead != length)
-                throw new EndOfStreamException("WebSocket protocol error: expected payload of length " + length + ", but can only read " + bytesRead + " bytes");
-            switch (opCode) {
-                case OPCODE_CONT:
-                    if (previousDataFrameType == DataFrameType.TEXT)
-                        return new TextContinuationFrame(fin, payload, 2 + nrOfLenghtBytes + length, compressed);
-                    else if (previousDataFrameType == DataFrameType.BIN)
-                        return new BinaryContinuationFrame(fin, payload, 2 + nrOfLenghtBytes + length, compressed);
-                    else
-                        throw new ProtocolException("no continuation frame expected");
-                case OPCODE_TEXT:
-                    return new TextFrame(fin, payload, 2 + nrOfLenghtBytes + length, compressed);
-                case OPCODE_BINARY:
-                    return new BinaryFrame(fin, payload, 2 + nrOfLenghtBytes + length, compressed);
-                case OPCODE_CLOSE:
-                    return new CloseFrame(payload, 2 + nrOfLenghtBytes + length);
-                case OPCODE_PING:
-                    return new PingFrame(payload, 2 + nrOfLenghtBytes + length);
-                case OPCODE_PONG:
-                    return new PongFrame(payload, 2 + nrOfLenghtBytes + length);
-                default:
-                    throw new RuntimeException("unsupported frame type: " + opCode);
-            }
-        }
-        catch (SocketTimeoutException timeout) {
-            // Reset the stream to the start of the frame, so a next call might succesfully read the complete frame.
-            istream.reset();
-            // Rethrow, because caller must know there was a socket timeout
-            throw timeout;
-        }
+        return new FrameDecoder().decode(istream, previousDataFrameType, webSocketInflater, currentMessageIsCompressed, log);
     }
 
-    private static void updateMarkLimit(int readLimit, InputStream stream, int bytesRead) throws IOException {
-        // Reset the stream to the original mark, so we can mark again.
-        stream.reset();
-        // Mark with the updated read limit
-        stream.mark(readLimit);
-        // Reread (and discard) the number of bytes read (and processed) already.
-        stream.read(new byte[bytesRead]);
-    }
+    // Encoder for getFrameBytes; its buffer is reused, so each thread needs its own
+    private static final ThreadLocal<FrameEncoder> threadEncoder = ThreadLocal.withInitial(() -> new FrameEncoder(false));
 
     protected Frame(int size) {
         frameSize = size;
     }
 
+    /**
+     * @return the complete (masked) frame, as it would be sent by a client
+     */
     public byte[] getFrameBytes() {
-        // Generate mask
-        byte[] mask = new byte[4];
-        randomGenerator.nextBytes(mask);
-        // Mask payload
-        byte[] payload = getPayload();
-        byte[] lengthBytes;
-        if (payload.length <= 125) {
-            lengthBytes = new byte[1];
-            lengthBytes[0] = (byte) payload.length;
-        }
-        else if (payload.length < 65536) {  // 2 ^ 16 = 65536
-            lengthBytes = new byte[3];
-            lengthBytes[0] = (byte) 126;
-            lengthBytes[1] = (byte) (payload.length >> 8);
-            lengthBytes[2] = (byte) (payload.length >> 0);
-        }
-        else {
-            // In Java, a byte[] cannot be larger than max-int (which is 2 ^ 31 - 1), which fits in 4 bytes
-            // So, the most significant 4 bytes in the 8-byte length are never used.
-            lengthBytes = new byte[9];
-            lengthBytes[0] = (byte) 127;
-            lengthBytes[1] = 0;
-            lengthBytes[2] = 0;
-            lengthBytes[3] = 0;
-            lengthBytes[4] = 0;
-            lengthBytes[5] = (byte) (payload.length >> 24);
-            lengthBytes[6] = (byte) (payload.length >> 16);
-            lengthBytes[7] = (byte) (payload.length >> 8);
-            lengthBytes[8] = (byte) (payload.length >> 0);
-        }
-
-        byte[] masked = new byte[payload.length];
-        for (int i = 0; i < payload.length; i++) {
-            masked[i] = (byte) (payload[i] ^ mask[i%4]);
-        }
-        // Create frame bytes
-        byte[] frame = new byte[1 + lengthBytes.length + 4 + payload.length];
-        frame[0] = (byte) (FIN_BIT_ON | getOpCode());
-        frame[1] = (byte) (MASK_BIT_MASKED | lengthBytes[0]);
-        System.arraycopy(lengthBytes, 1, frame, 2, lengthBytes.length - 1);
-        System.arraycopy(mask, 0, frame, 1 + lengthBytes.length, 4);
-        System.arraycopy(masked, 0, frame, 1 + lengthBytes.length + 4, payload.length);
-        // Store frame size for later use
-        frameSize = frame.length;
-
-        return frame;
+        ByteBuffer encoded = threadEncoder.get().encode(this);
+        byte[] frameBytes = new byte[encoded.remaining()];
+        encoded.get(frameBytes);
+        return frameBytes;
     }
 
     protected static int readFromStream(InputStream stream, byte[] buffer) throws IOException {
@@ -334,10 +186,30 @@ public abstract class Frame {
 
     public int getSize() {
         if (frameSize == 0)
-            frameSize = getFrameBytes().length;
+            frameSize = FrameEncoder.encodedSize(getPayloadSize());
         return frameSize;
     }
 
+    void setSize(int size) {
+        frameSize = size;
+    }
+
     public abstract int getPayloadSize();
 
+    /**
+     * @return the frame size, which (in contrast to {@link #getSize()}) is also correct for frames with a payload
+     * larger than 2 GB (which can only be received as streamed payload).
+     */
+    public long getSizeAsLong() {
+        return getSize();
+    }
+
+    /**
+     * @return the payload size, which (in contrast to {@link #getPayloadSize()}) is also correct for payloads larger
+     * than 2 GB (which can only be received as streamed payload).
+     */
+    public long getPayloadSizeAsLong() {
+        return getPayloadSize();
+    }
+
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import eu.luminis.websocket.Frame.DataFrameType;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+
+import static eu.luminis.websocket.Frame.*;
+
+/**
+ * Incremental frame decoder. The decoder keeps the state of a partially read frame (header bytes and payload read so
+ * far), so when reading is interrupted by a socket timeout, the next call to decode will simply continue where the
+ * previous one stopped. Hence, the stream does not need to support mark/reset and no byte is ever read twice, whatever
+ * the size of the frame.
+ * A decoder is meant to be owned by one connection (and thus is not thread safe).
+ */
+class FrameDecoder {
+
+    private static final int MAX_HEADER_SIZE = 2 + 8 + 4;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] header = new byte[MAX_HEADER_SIZE];
+    private int headerBytesRead;
+    private byte[] payload;
+    private int payloadBytesRead;
+    // State for streaming a large payload
+    private PayloadSpooler spooler;
+    private long streamedPayloadLength;
+    private byte[] streamBuffer;
+
+    Frame decode(InputStream istream, DataFrameType previousDataFrameType, WebSocketInflater webSocketInflater, boolean currentMessageIsCompressed, Logger log) throws IOException {
+        return decode(istream, previousDataFrameType, webSocketInflater, currentMessageIsCompressed, null, log);
+    }
+
+    /**
+     * Decodes the next frame from the given stream; blocks until the frame is read completely.
+     * @param largePayloadPolicy determines whether large payloads are streamed instead of read into memory; null means
+     *                           payloads are always read into memory
+     * @throws SocketTimeoutException when the stream times out; the part of the frame read so far is retained and
+     * a next call will continue reading the same frame
+     */
+    Frame decode(InputStream istream, DataFrameType previousDataFrameType, WebSocketInflater webSocketInflater, boolean currentMessageIsCompressed, LargePayloadPolicy largePayloadPolicy, Logger log) throws IOException {
+        try {
+            readHeaderBytes(istream, 2);
+            int firstLengthByte = header[1] & 0x7f;
+            int nrOfLengthBytes = firstLengthByte < 126? 0: firstLengthByte == 126? 2: 8;
+            readHeaderBytes(istream, 2 + nrOfLengthBytes);
+            // Servers must not mask frames, but when they do (or when decoding frames sent by a client), just unmask.
+            boolean masked = (header[1] & MASK_BIT_MASKED) != 0;
+            int headerSize = 2 + nrOfLengthBytes + (masked? 4: 0);
+            readHeaderBytes(istream, headerSize);
+            int maskKey = masked? Masking.toMaskKey(header, 2 + nrOfLengthBytes): 0;
+
+            if (payload == null && spooler == null) {
+                long length = parseLength(firstLengthByte, nrOfLengthBytes);
+                if (largePayloadPolicy != null && length > largePayloadPolicy.getThreshold() && isStreamable(currentMessageIsCompressed)) {
+                    spooler = new PayloadSpooler(largePayloadPolicy);
+                    streamedPayloadLength = length;
+                }
+                else {
+                    if (length > Integer.MAX_VALUE)
+                        throw new RuntimeException("Frame too large; Java does not support arrays longer than 2147483647 bytes.");
+                    payload = new byte[(int) length];  // Note that this can still throw an OutOfMem, as the max array size is JVM dependent.
+                    payloadBytesRead = 0;
+                }
+            }
+
+            Frame frame;
+            if (spooler != null) {
+                streamPayload(istream, masked, maskKey);
+                StreamedPayload streamedPayload = spooler.finish();
+                spooler = null;
+                frame = createStreamedFrame(previousDataFrameType, streamedPayload, headerSize);
+            }
+            else {
+                readPayload(istream, log);
+                if (masked)
+                    Masking.mask(payload, maskKey);
+                frame = createFrame(previousDataFrameType, webSocketInflater, currentMessageIsCompressed, headerSize + payload.length, log);
+            }
+            reset();
+            return frame;
+        }
+        catch (SocketTimeoutException timeout) {
+            // Keep state, so a next call will continue with the current frame.
+            if (headerBytesRead > 0)
+                log.debug("Read was interrupted by socket timeout; retaining partially read frame (" + (headerBytesRead + getPayloadBytesRead()) + " bytes read so far).");
+            throw timeout;
+        }
+        catch (IOException | RuntimeException error) {
+            // Stream is unusable; do not let the partial state influence whatever is read next.
+            reset();
+            throw error;
+        }
+    }
+
+    /**
+     * @return whether a frame is partially read (e.g. due to a timeout while reading)
+     */
+    boolean isDecoding() {
+        return headerBytesRead > 0;
+    }
+
+    void reset() {
+        headerBytesRead = 0;
+        payload = null;
+        payloadBytesRead = 0;
+        if (spooler != null) {
+            spooler.abort();
+            spooler = null;
+        }
+    }
+
+    private long getPayloadBytesRead() {
+        return spooler != null? spooler.getSize(): payloadBytesRead;
+    }
+
+    /**
+     * Only uncompressed data frames can be streamed, control frames are small and must be processed by the client and
+     * compressed frames can only be decompressed in memory.
+     */
+    private boolean isStreamable(boolean currentMessageIsCompressed) {
+        int opCode = header[0] & 0x0f;
+        boolean rsv1 = (header[0] & 0x40) != 0;
+        return ((opCode == OPCODE_TEXT || opCode == OPCODE_BINARY) && !rsv1)
+                || (opCode == OPCODE_CONT && !currentMessageIsCompressed);
+    }
+
+    private void readHeaderBytes(InputStream istream, int count) throws IOException {
+        while (headerBytesRead < count) {
+            int bytesRead = istream.read(header, headerBytesRead, count - headerBytesRead);
+            if (bytesRead < 0) {
+                if (headerBytesRead >= 2)
+                    throw new EndOfStreamException("WebSocket protocol error: expected header of " + count + " bytes, but can only read " + headerBytesRead + " bytes");
+                else
+                    throw new EndOfStreamException("end of stream");
+            }
+            headerBytesRead += bytesRead;
+        }
+    }
+
+    private long parseLength(int firstLengthByte, int nrOfLengthBytes) throws ProtocolException {
+        switch (nrOfLengthBytes) {
+            case 0:
+                return firstLengthByte;
+            case 2:
+                return ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+            default:
+                long length = 0;
+                for (int i = 2; i < 10; i++)
+                    length = (length << 8) | (header[i] & 0xff);
+                // RFC 6455: "the most significant bit MUST be 0"
+                if (length < 0)
+                    throw new ProtocolException("WebSocket protocol error: invalid payload length");
+                return length;
+        }
+    }
+
+    private void readPayload(InputStream istream, Logger log) throws IOException {
+        while (payloadBytesRead < payload.length) {
+            int bytesRead = istream.read(payload, payloadBytesRead, payload.length - payloadBytesRead);
+            if (bytesRead < 0) {
+                if (payloadBytesRead == 0)
+                    throw new EndOfStreamException("end of stream");
+                else
+                    throw new EndOfStreamException("WebSocket protocol error: expected payload of length " + payload.length + ", but can only read " + payloadBytesRead + " bytes");
+            }
+            if (bytesRead == 0) {
+                log.error("Blocking read fails with 0 bytes read.");
+                // According to the Javadoc this should not happen, but in reality, it sometimes does.
+                // Just block on a simple read of a single byte and continue the read loop.
+                int singleByte = istream.read();
+                if (singleByte == -1)
+                    throw new EndOfStreamException("WebSocket protocol error: expected payload of length " + payload.length + ", but can only read " + payloadBytesRead + " bytes");
+                payload[payloadBytesRead++] = (byte) singleByte;
+            }
+            else {
+                payloadBytesRead += bytesRead;
+            }
+        }
+    }
+
+    private void streamPayload(InputStream istream, boolean masked, int maskKey) throws IOException {
+        if (streamBuffer == null)
+            streamBuffer = new byte[STREAM_BUFFER_SIZE];
+        while (spooler.getSize() < streamedPayloadLength) {
+            int bytesRead = istream.read(streamBuffer, 0, (int) Math.min(streamBuffer.length, streamedPayloadLength - spooler.getSize()));
+            if (bytesRead < 0)
+                throw new EndOfStreamException("WebSocket protocol error: expected payload of length " + streamedPayloadLength + ", but can only read " + spooler.getSize() + " bytes");
+            if (masked)
+                Masking.mask(streamBuffer, 0, bytesRead, Masking.keyAtOffset(maskKey, spooler.getSize()));
+            spooler.write(streamBuffer, 0, bytesRead);
+        }
+    }
+
+    private Frame createStreamedFrame(DataFrameType previousDataFrameType, StreamedPayload streamedPayload, int headerSize) throws ProtocolException {
+        boolean fin = (header[0] & 0x80) != 0;
+        switch (header[0] & 0x0f) {
+            case OPCODE_CONT:
+                if (previousDataFrameType == DataFrameType.TEXT)
+                    return new TextContinuationFrame(fin, streamedPayload, headerSize);
+                else if (previousDataFrameType == DataFrameType.BIN)
+                    return new BinaryContinuationFrame(fin, streamedPayload, headerSize);
+                else
+                    throw new ProtocolException("no continuation frame expected");
+            case OPCODE_TEXT:
+                return new TextFrame(fin, streamedPayload, headerSize);
+            default:
+                return new BinaryFrame(fin, streamedPayload, headerSize);
+        }
+    }
+
+    private Frame createFrame(DataFrameType previousDataFrameType, WebSocketInflater webSocketInflater, boolean currentMessageIsCompressed, int frameSize, Logger log) throws IOException {
+        boolean fin = (header[0] & 0x80) != 0;
+        boolean rsv1 = (header[0] & 0x40) != 0; // RSV1 flag (bit 6) → 1 means compressed
+        int opCode = header[0] & 0x0f;
+        byte[] payload = this.payload;
+
+        boolean compressed = (rsv1 && (opCode == OPCODE_TEXT || opCode == OPCODE_BINARY))
+                || (currentMessageIsCompressed && opCode == OPCODE_CONT);
+        if (compressed) {
+            if (webSocketInflater == null)
+                throw new ProtocolException("WebSocket protocol error: received compressed frame, but compression was not negotiated");
+            // Each frame is decompressed as it arrives, so continuation frames carry their part of the decompressed message
+            payload = webSocketInflater.decompressFrame(payload, fin, log);
+        }
+
+        switch (opCode) {
+            case OPCODE_CONT:
+                if (previousDataFrameType == DataFrameType.TEXT)
+                    return new TextContinuationFrame(fin, payload, frameSize, compressed);
+                else if (previousDataFrameType == DataFrameType.BIN)
+                    return new BinaryContinuationFrame(fin, payload, frameSize, compressed);
+                else
+                    throw new ProtocolException("no continuation frame expected");
+            case OPCODE_TEXT:
+                return new TextFrame(fin, payload, frameSize, compressed);
+            case OPCODE_BINARY:
+                return new BinaryFrame(fin, payload, frameSize, compressed);
+            case OPCODE_CLOSE:
+                return new CloseFrame(payload, frameSize);
+            case OPCODE_PING:
+                return new PingFrame(payload, frameSize);
+            case OPCODE_PONG:
+                return new PongFrame(payload, frameSize);
+            default:
+                throw new RuntimeException("unsupported frame type: " + opCode);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static eu.luminis.websocket.Frame.FIN_BIT_ON;
+import static eu.luminis.websocket.Frame.MASK_BIT_MASKED;
+import static eu.luminis.websocket.Frame.RSV1_BIT_ON;
+
+/**
+ * Encodes frames into a reusable, connection owned buffer: header, mask key and payload are written straight into the
+ * buffer and the payload is masked in place, so sending a frame does not need any intermediate arrays. Text is encoded
+ * to UTF-8 only once, directly into the buffer.
+ * The buffer grows when needed, but buffers for exceptionally large frames are not retained, to avoid that one large
+ * message keeps memory occupied for the lifetime of the connection.
+ * An encoder is meant to be owned by one connection (and thus is not thread safe).
+ */
+class FrameEncoder {
+
+    static final int MAX_HEADER_SIZE = 2 + 8 + 4;
+    static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private final boolean direct;
+    private final MaskKeySource maskKeySource;
+    private final CharsetEncoder utf8Encoder = StandardCharsets.UTF_8.newEncoder()
+            // Same behaviour as String.getBytes: replace lone surrogates
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer;
+    private WebSocketDeflater deflater;
+
+    /**
+     * @param direct whether to use a direct buffer; this is only beneficial when the encoded frames are written to a channel.
+     */
+    FrameEncoder(boolean direct) {
+        this(direct, MaskKeySource.THREAD_LOCAL_RANDOM);
+    }
+
+    /**
+     * @param direct whether to use a direct buffer; this is only beneficial when the encoded frames are written to a channel.
+     * @param maskKeySource source of the mask keys
+     */
+    FrameEncoder(boolean direct, MaskKeySource maskKeySource) {
+        this.direct = direct;
+        this.maskKeySource = maskKeySource;
+        buffer = allocate(INITIAL_BUFFER_SIZE);
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    MaskKeySource getMaskKeySource() {
+        return maskKeySource;
+    }
+
+    /**
+     * Sets the deflater used to compress data frames (permessage-deflate); null (the default) disables compression.
+     */
+    void setDeflater(WebSocketDeflater deflater) {
+        this.deflater = deflater;
+    }
+
+    /**
+     * Encodes the given frame. The returned buffer is owned by the encoder and only valid until the next call.
+     * @return buffer containing the encoded frame between position and limit
+     */
+    ByteBuffer encode(Frame frame) {
+        ByteBuffer target = append(prepareBuffer(0), frame);
+        target.flip();
+        frame.setSize(target.remaining());
+        return target;
+    }
+
+    /**
+     * Encodes the given frames one after another into one buffer, so they can be sent with a single write. The
+     * returned buffer is owned by the encoder and only valid until the next call.
+     * @return buffer containing the encoded frames between position and limit
+     */
+    ByteBuffer encode(List<? extends Frame> frames) {
+        ByteBuffer target = prepareBuffer(0);
+        for (Frame frame: frames) {
+            int frameStart = target.position();
+            target = append(target, frame);
+            frame.setSize(target.position() - frameStart);
+        }
+        target.flip();
+        return target;
+    }
+
+    /**
+     * Encodes the frame at the position of the given buffer.
+     * @return the buffer containing the encoded frame, which is a new (larger) one when the given buffer was too small
+     */
+    private ByteBuffer append(ByteBuffer target, Frame frame) {
+        if (deflater != null && frame instanceof DataFrame) {
+            target = appendCompressed(target, (DataFrame) frame);
+        }
+        else if (frame instanceof TextFrame && !((TextFrame) frame).hasRawPayload()) {
+            String text = ((TextFrame) frame).getText();
+            int payloadLength = utf8Length(text);
+            target = ensureCapacity(target, MAX_HEADER_SIZE + payloadLength);
+            int maskKey = writeHeader(target, frame, payloadLength, false);
+            int payloadStart = target.position();
+            utf8Encoder.reset();
+            CoderResult result = utf8Encoder.encode(CharBuffer.wrap(text), target, true);
+            if (!result.isUnderflow())
+                throw new IllegalStateException("UTF-8 encoding did not fit the computed length");
+            utf8Encoder.flush(target);
+            Masking.mask(target, payloadStart, target.position(), maskKey);
+        }
+        else if (frame instanceof BinaryFrame && ((BinaryFrame) frame).getPayloadBuffer() != null) {
+            ByteBuffer payload = ((BinaryFrame) frame).getPayloadBuffer();
+            target = ensureCapacity(target, MAX_HEADER_SIZE + payload.remaining());
+            int maskKey = writeHeader(target, frame, payload.remaining(), false);
+            int payloadStart = target.position();
+            target.put(payload);
+            Masking.mask(target, payloadStart, target.position(), maskKey);
+        }
+        else {
+            byte[] payload = frame.getPayload();
+            target = ensureCapacity(target, MAX_HEADER_SIZE + payload.length);
+            int maskKey = writeHeader(target, frame, payload.length, false);
+            int payloadStart = target.position();
+            target.put(payload);
+            Masking.mask(target, payloadStart, target.position(), maskKey);
+        }
+        return target;
+    }
+
+    /**
+     * Encodes only the header of the given data frame, for a payload that is written separately (e.g. streamed from a
+     * file); the payload must be masked with the given key. The returned buffer is owned by the encoder and only valid
+     * until the next call.
+     * @return buffer containing the encoded header between position and limit
+     */
+    ByteBuffer encodeHeader(DataFrame frame, long payloadLength, int maskKey) {
+        ByteBuffer target = prepareBuffer(MAX_HEADER_SIZE);
+        writeHeader(target, frame, payloadLength, false, maskKey);
+        target.flip();
+        return target;
+    }
+
+    private ByteBuffer appendCompressed(ByteBuffer target, DataFrame frame) {
+        byte[] payload = frame.getPayload();
+        int compressedLength = deflater.compress(payload, 0, payload.length, frame.isFinalFragment());
+        target = ensureCapacity(target, MAX_HEADER_SIZE + compressedLength);
+        // RSV1 is only set on the first frame of a (fragmented) message
+        int maskKey = writeHeader(target, frame, compressedLength, !frame.isContinuationFrame());
+        int payloadStart = target.position();
+        target.put(deflater.getOutput(), 0, compressedLength);
+        Masking.mask(target, payloadStart, target.position(), maskKey);
+        return target;
+    }
+
+    private int writeHeader(ByteBuffer target, Frame frame, int payloadLength, boolean rsv1) {
+        int maskKey = maskKeySource.nextMaskKey();
+        writeHeader(target, frame, payloadLength, rsv1, maskKey);
+        return maskKey;
+    }
+
+    private void writeHeader(ByteBuffer target, Frame frame, long payloadLength, boolean rsv1, int maskKey) {
+        boolean fin = !(frame instanceof DataFrame) || ((DataFrame) frame).isFinalFragment();
+        target.put((byte) ((fin? FIN_BIT_ON: 0) | (rsv1? RSV1_BIT_ON: 0) | frame.getOpCode()));
+        if (payloadLength <= 125) {
+            target.put((byte) (MASK_BIT_MASKED | payloadLength));
+        }
+        else if (payloadLength < 65536) {  // 2 ^ 16 = 65536
+            target.put((byte) (MASK_BIT_MASKED | 126));
+            target.putShort((short) payloadLength);
+        }
+        else {
+            target.put((byte) (MASK_BIT_MASKED | 127));
+            target.putLong(payloadLength);
+        }
+        target.putInt(maskKey);
+    }
+
+    private ByteBuffer prepareBuffer(int requiredCapacity) {
+        buffer.clear();
+        return ensureCapacity(buffer, requiredCapacity);
+    }
+
+    /**
+     * Ensures the given buffer can hold the given number of bytes after its position; if not, a larger buffer is
+     * allocated (and retained, unless it is exceptionally large) and the content written so far is copied into it.
+     */
+    private ByteBuffer ensureCapacity(ByteBuffer target, int additionalBytes) {
+        long required = (long) target.position() + additionalBytes;
+        if (required <= target.capacity())
+            return target;
+        if (required > MAX_BUFFER_SIZE)
+            throw new IllegalArgumentException("Frames too large to be encoded in one buffer: " + required + " bytes");
+        int requiredCapacity = (int) required;
+        ByteBuffer larger;
+        if (requiredCapacity > MAX_RETAINED_BUFFER_SIZE) {
+            // When appending to a large buffer (i.e. a batch of frames), grow exponentially to avoid copying over and over.
+            larger = allocate(target.position() == 0? requiredCapacity: (int) Math.max(requiredCapacity, Math.min(2L * target.capacity(), MAX_BUFFER_SIZE)));
+        }
+        else {
+            larger = allocate(Math.min(Math.max(requiredCapacity, buffer.capacity() * 2), MAX_RETAINED_BUFFER_SIZE));
+            buffer = larger;
+        }
+        target.flip();
+        larger.put(target);
+        return larger;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct? ByteBuffer.allocateDirect(capacity): ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return the size of an encoded (masked) frame with the given payload length
+     */
+    static int encodedSize(int payloadLength) {
+        return 2 + (payloadLength <= 125? 0: payloadLength < 65536? 2: 8) + 4 + payloadLength;
+    }
+
+    /**
+     * Computes the number of bytes needed to encode the given text in UTF-8 (with lone surrogates replaced by a
+     * single byte, like String.getBytes does), without actually encoding it.
+     */
+    static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int byteCount = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    byteCount += 1;
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    // Surrogate pair: 2 chars, 4 bytes
+                    byteCount += 2;
+                    i++;
+                }
+                else if (!Character.isSurrogate(c)) {
+                    byteCount += 2;
+                }
+            }
+        }
+        return byteCount;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of (raw, i.e. "nowrap") Inflater instances together with their output buffer, shared by all connections
+ * that do not need to keep a decompression context between messages (server_no_context_takeover). Such connections only
+ * hold an inflater while a message is being decompressed, so idle connections do not occupy any native memory.
+ * Inflaters that do not fit in the pool are ended (which releases the native memory immediately).
+ */
+class InflaterPool {
+
+    static final int MAX_POOLED_INFLATERS = 256;
+    // zlib's inflate state plus a 32 KB window
+    static final int ESTIMATED_NATIVE_MEMORY_PER_INFLATER = 7 * 1024 + 32 * 1024;
+
+    private static final InflaterPool sharedPool = new InflaterPool(MAX_POOLED_INFLATERS);
+
+    private final ArrayBlockingQueue<Entry> pool;
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    InflaterPool(int capacity) {
+        pool = new ArrayBlockingQueue<>(capacity);
+    }
+
+    static InflaterPool getSharedPool() {
+        return sharedPool;
+    }
+
+    Entry borrow() {
+        borrowCount.incrementAndGet();
+        inUse.incrementAndGet();
+        Entry entry = pool.poll();
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry;
+        }
+        else
+            return new Entry(new Inflater(true));
+    }
+
+    /**
+     * Returns the inflater to the pool; the inflater is reset, so the next user will not use the decompression context.
+     */
+    void release(Entry entry) {
+        inUse.decrementAndGet();
+        entry.inflater.reset();
+        entry.trimOutput();
+        if (!pool.offer(entry))
+            entry.inflater.end();
+    }
+
+    int size() {
+        return pool.size();
+    }
+
+    int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * @return fraction of borrow requests that could be served by a pooled inflater
+     */
+    double getHitRate() {
+        long borrowed = borrowCount.get();
+        return borrowed > 0? (double) hitCount.get() / borrowed: 0;
+    }
+
+    /**
+     * @return (estimated) amount of native memory occupied by inflaters that are in use or pooled
+     */
+    long getNativeMemoryInUse() {
+        return (long) (inUse.get() + pool.size()) * ESTIMATED_NATIVE_MEMORY_PER_INFLATER;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d inflaters in use, %d pooled, hit rate %.1f%%, approx. %d KB native memory",
+                getInUse(), size(), getHitRate() * 100, getNativeMemoryInUse() / 1024);
+    }
+
+    /**
+     * An inflater with its (reusable) output buffer.
+     */
+    static class Entry {
+        static final int INITIAL_OUTPUT_SIZE = 4 * 1024;
+        static final int MAX_RETAINED_OUTPUT_SIZE = 1024 * 1024;
+
+        final Inflater inflater;
+        byte[] output = new byte[INITIAL_OUTPUT_SIZE];
+
+        Entry(Inflater inflater) {
+            this.inflater = inflater;
+        }
+
+        void trimOutput() {
+            if (output.length > MAX_RETAINED_OUTPUT_SIZE)
+                output = new byte[INITIAL_OUTPUT_SIZE];
+        }
+    }
+}
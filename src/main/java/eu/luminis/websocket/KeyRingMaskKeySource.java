@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mask key source that cycles through a ring of pre-generated keys, so generating a key costs no more than an array
+ * lookup. Meant for benchmark runs, where the randomness of the keys is not relevant.
+ * The keys can be shared by many connections, but the position in the ring is not: use {@link #forConnection()} to
+ * obtain a source for each connection (an instance is not thread safe).
+ */
+public class KeyRingMaskKeySource implements MaskKeySource {
+
+    private final int[] keys;
+    private int index;
+
+    public KeyRingMaskKeySource(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Key ring size must be positive");
+        keys = new int[size];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < size; i++)
+            keys[i] = random.nextInt();
+    }
+
+    private KeyRingMaskKeySource(int[] keys) {
+        this.keys = keys;
+        // Avoid that all connections use the same sequence of keys.
+        index = ThreadLocalRandom.current().nextInt(keys.length);
+    }
+
+    /**
+     * @return a new source that shares the keys with this one, but has its own position in the ring
+     */
+    public KeyRingMaskKeySource forConnection() {
+        return new KeyRingMaskKeySource(keys);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public int nextMaskKey() {
+        int key = keys[index];
+        if (++index == keys.length)
+            index = 0;
+        return key;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Determines how payloads of (very) large data frames are handled: instead of reading them into memory, payloads
+ * larger than the threshold are streamed to a (temporary) file or simply discarded. In both cases, the size and a
+ * digest of the payload are computed, see {@link StreamedPayload}.
+ * Note that compressed frames are never streamed, as they must be decompressed in memory anyway.
+ */
+public class LargePayloadPolicy {
+
+    public enum Mode {
+        /** Write payload to a temporary file, which is not deleted by the client. */
+        Spool,
+        /** Read and discard the payload, only compute size and digest. */
+        Discard
+    }
+
+    public static final String CRC32 = "CRC32";
+    public static final String SHA256 = "SHA-256";
+
+    private final long threshold;
+    private final Mode mode;
+    private final String digestAlgorithm;
+    private final File spoolDirectory;
+
+    /**
+     * @param threshold       payloads larger than this number of bytes are streamed
+     * @param mode            what to do with the payload
+     * @param digestAlgorithm "CRC32" or the name of a MessageDigest algorithm, e.g. "SHA-256"
+     * @param spoolDirectory  directory for the spool files, or null to use the default temporary-file directory
+     */
+    public LargePayloadPolicy(long threshold, Mode mode, String digestAlgorithm, File spoolDirectory) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Threshold must not be negative");
+        if (!CRC32.equalsIgnoreCase(digestAlgorithm)) {
+            try {
+                MessageDigest.getInstance(digestAlgorithm);
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unsupported digest algorithm: " + digestAlgorithm);
+            }
+        }
+        this.threshold = threshold;
+        this.mode = mode;
+        this.digestAlgorithm = digestAlgorithm;
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return mode + " payloads larger than " + threshold + " bytes (" + digestAlgorithm + ")";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of the random values a client needs: the masking keys for outgoing frames and the nonce that is sent as
+ * Sec-WebSocket-Key when connecting.
+ */
+public interface MaskKeySource {
+
+    /**
+     * Default source, based on {@link ThreadLocalRandom}: does not allocate and, as each thread has its own generator,
+     * there is no contention between (sampler) threads.
+     */
+    MaskKeySource THREAD_LOCAL_RANDOM = new MaskKeySource() {
+        @Override
+        public int nextMaskKey() {
+            return ThreadLocalRandom.current().nextInt();
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes) {
+            ThreadLocalRandom.current().nextBytes(bytes);
+        }
+    };
+
+    /**
+     * @return the mask key for the next frame
+     */
+    int nextMaskKey();
+
+    /**
+     * Fills the given array with random bytes, e.g. for the handshake nonce.
+     */
+    default void nextBytes(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i += 4) {
+            int key = nextMaskKey();
+            for (int j = i; j < Math.min(i + 4, bytes.length); j++, key >>>= 8)
+                bytes[j] = (byte) key;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Applies (or removes, which is the same operation) the WebSocket masking of RFC 6455 section 5.3.
+ * Instead of XOR-ing byte by byte with the key byte that is selected by a modulo 4 operation, the 4-byte key is widened
+ * to a long and the data is processed 8 bytes at a time; only the last (at most 7) bytes are processed one by one.
+ * Used by both the frame encoder and the frame decoder.
+ */
+final class Masking {
+
+    private Masking() {}
+
+    /**
+     * Masks (or unmasks) the bytes in the given range of the buffer in place. The first byte in the range is XOR-ed with
+     * the most significant byte of the mask key (which is the first key byte on the wire). The position and limit of
+     * the buffer are not changed.
+     * @param from  absolute index of the first byte to mask
+     * @param to    absolute index (exclusive) of the last byte to mask; must not exceed the limit of the buffer
+     */
+    static void mask(ByteBuffer buffer, int from, int to, int maskKey) {
+        if (buffer.order() != ByteOrder.nativeOrder() && to - from >= 16) {
+            // Word access in native order avoids a byte swap per word (on little endian platforms).
+            buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        }
+        long wideKey = ((long) maskKey << 32) | (maskKey & 0xffffffffL);
+        if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+            // Key bytes must be applied in wire order, which is the order of a big endian long
+            wideKey = Long.reverseBytes(wideKey);
+        }
+        int index = from;
+        int wordLimit = to - 7;
+        while (index < wordLimit) {
+            buffer.putLong(index, buffer.getLong(index) ^ wideKey);
+            index += 8;
+        }
+        // As words are 8 bytes (two keys), the key offset of the remaining bytes is still aligned with 'from'
+        int keyShift = 24;
+        while (index < to) {
+            buffer.put(index, (byte) (buffer.get(index) ^ (maskKey >>> keyShift)));
+            index++;
+            keyShift = (keyShift - 8) & 31;
+        }
+    }
+
+    /**
+     * Masks (or unmasks) the bytes in the given range of the array in place.
+     * @see #mask(ByteBuffer, int, int, int)
+     */
+    static void mask(byte[] data, int from, int to, int maskKey) {
+        mask(ByteBuffer.wrap(data).order(ByteOrder.nativeOrder()), from, to, maskKey);
+    }
+
+    /**
+     * Masks (or unmasks) the whole array in place.
+     */
+    static void mask(byte[] data, int maskKey) {
+        mask(data, 0, data.length, maskKey);
+    }
+
+    /**
+     * @return the mask key that must be used for masking data that starts at the given offset in a masked payload, e.g.
+     * when a payload is masked in chunks.
+     */
+    static int keyAtOffset(int maskKey, long offset) {
+        return Integer.rotateLeft(maskKey, 8 * (int) (offset & 3));
+    }
+
+    /**
+     * @return the mask key composed of the 4 bytes (in wire order) at the given offset
+     */
+    static int toMaskKey(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A (possibly fragmented) message, i.e. a data frame followed by its continuation frames, see
+ * {@link WebSocketClient#receiveMessage(int)}. The fragments are kept as received, so assembling the message does not
+ * copy any data; the payload can be accessed as a sequence of buffers or as a stream, or it can be copied (once) into
+ * one array when it is needed as a whole.
+ */
+public class Message {
+
+    private final List<DataFrame> fragments = new ArrayList<>();
+    private long[] receiveTimes = new long[4];
+    private byte[] data;
+
+    Message(DataFrame firstFragment, long receiveTime) {
+        if (firstFragment.isContinuationFrame())
+            throw new IllegalArgumentException("message cannot start with a continuation frame");
+        add(firstFragment, receiveTime);
+    }
+
+    void add(DataFrame fragment, long receiveTime) {
+        if (isComplete())
+            throw new IllegalStateException("message is already complete");
+        if (!fragments.isEmpty() && (!fragment.isContinuationFrame() || fragment.isText() != isText()))
+            throw new IllegalArgumentException("expected continuation frame, got " + fragment.getTypeAsString() + " frame");
+        if (fragments.size() == receiveTimes.length)
+            receiveTimes = Arrays.copyOf(receiveTimes, receiveTimes.length * 2);
+        receiveTimes[fragments.size()] = receiveTime;
+        fragments.add(fragment);
+    }
+
+    /**
+     * @return whether the final fragment of this message has been received
+     */
+    public boolean isComplete() {
+        return !fragments.isEmpty() && fragments.get(fragments.size() - 1).isFinalFragment();
+    }
+
+    public boolean isText() {
+        return fragments.get(0).isText();
+    }
+
+    public boolean isBinary() {
+        return fragments.get(0).isBinary();
+    }
+
+    public boolean isCompressed() {
+        return fragments.get(0).isCompressed();
+    }
+
+    /**
+     * @return whether the payload of one or more fragments was streamed (to file or discarded) instead of read into
+     * memory; if so, the payload of this message is not available, but the fragments describe their streamed payloads.
+     */
+    public boolean isStreamed() {
+        for (DataFrame fragment: fragments) {
+            if (fragment.isStreamed())
+                return true;
+        }
+        return false;
+    }
+
+    public int getFragmentCount() {
+        return fragments.size();
+    }
+
+    public List<DataFrame> getFragments() {
+        return Collections.unmodifiableList(fragments);
+    }
+
+    /**
+     * @return the time (as returned by System.currentTimeMillis) the fragment with the given index was received
+     */
+    public long getReceiveTime(int fragmentIndex) {
+        if (fragmentIndex < 0 || fragmentIndex >= fragments.size())
+            throw new IndexOutOfBoundsException("fragment index: " + fragmentIndex);
+        return receiveTimes[fragmentIndex];
+    }
+
+    public long getFirstFragmentTime() {
+        return receiveTimes[0];
+    }
+
+    public long getLastFragmentTime() {
+        return receiveTimes[fragments.size() - 1];
+    }
+
+    /**
+     * @return total size of all fragments (including headers), as received (thus compressed, when compression is used)
+     */
+    public long getSize() {
+        long size = 0;
+        for (DataFrame fragment: fragments)
+            size += fragment.getSizeAsLong();
+        return size;
+    }
+
+    /**
+     * @return total size of the (decompressed) payload of all fragments
+     */
+    public long getPayloadSize() {
+        long size = 0;
+        for (DataFrame fragment: fragments)
+            size += fragment.getPayloadSizeAsLong();
+        return size;
+    }
+
+    /**
+     * @return the payload of each fragment, as read-only buffers wrapping the fragment payloads (so nothing is copied);
+     * for text messages, the payload is the UTF-8 encoded text, which may be split halfway a multi-byte character.
+     */
+    public ByteBuffer[] getPayloadBuffers() {
+        checkNotStreamed();
+        ByteBuffer[] buffers = new ByteBuffer[fragments.size()];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = ByteBuffer.wrap(fragments.get(i).getPayload()).asReadOnlyBuffer();
+        return buffers;
+    }
+
+    /**
+     * @return a stream that reads the payload of all fragments in sequence, without copying them
+     */
+    public InputStream getPayloadStream() {
+        checkNotStreamed();
+        List<InputStream> streams = new ArrayList<>(fragments.size());
+        for (DataFrame fragment: fragments)
+            streams.add(new ByteArrayInputStream(fragment.getPayload()));
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * @return the complete payload; for a message with more than one fragment, the fragment payloads are copied (once)
+     * into an array of the exact message size. For text messages, this is the UTF-8 encoded text.
+     */
+    public byte[] getBinaryData() {
+        checkNotStreamed();
+        if (data == null) {
+            if (fragments.size() == 1) {
+                data = fragments.get(0).getPayload();
+            }
+            else {
+                long payloadSize = getPayloadSize();
+                if (payloadSize > Integer.MAX_VALUE)
+                    throw new RuntimeException("Message too large; Java does not support arrays longer than 2147483647 bytes.");
+                data = new byte[(int) payloadSize];
+                int offset = 0;
+                for (DataFrame fragment: fragments) {
+                    byte[] payload = fragment.getPayload();
+                    System.arraycopy(payload, 0, data, offset, payload.length);
+                    offset += payload.length;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @return the text of a text message; as fragments may end halfway a multi-byte character, the text is decoded
+     * from the complete payload.
+     */
+    public String getText() {
+        if (!isText())
+            throw new IllegalStateException("not a text message");
+        if (fragments.size() == 1)
+            return ((TextFrame) fragments.get(0)).getText();
+        return TextFrame.decode(getBinaryData());
+    }
+
+    /**
+     * Represents the complete message as one (final) frame, whose size is the total size of all fragments. For a
+     * message that consists of one fragment, this is the fragment itself. For a streamed message, the frame only
+     * describes the total payload size; the fragments describe where their payload is stored (if anywhere).
+     */
+    public DataFrame toFrame() {
+        if (fragments.size() == 1)
+            return fragments.get(0);
+        long size = getSize();
+        if (isStreamed()) {
+            StreamedPayload totalPayload = new StreamedPayload(getPayloadSize(), null, null, null);
+            int headerSize = (int) (size - getPayloadSize());
+            return isText()? new TextFrame(true, totalPayload, headerSize): new BinaryFrame(true, totalPayload, headerSize);
+        }
+        int frameSize = (int) Math.min(size, Integer.MAX_VALUE);
+        if (isText())
+            return new TextFrame(true, getBinaryData(), frameSize, isCompressed());
+        else
+            return new BinaryFrame(true, getBinaryData(), frameSize, isCompressed());
+    }
+
+    private void checkNotStreamed() {
+        if (isStreamed())
+            throw new IllegalStateException("payload of streamed fragments is not in memory");
+    }
+
+    @Override
+    public String toString() {
+        return (isText()? "Text": "Binary") + " message of " + getPayloadSize() + " bytes in " + fragments.size() + (fragments.size() == 1? " fragment": " fragments");
+    }
+}
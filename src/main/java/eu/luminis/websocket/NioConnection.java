@@ -0,0 +1,570 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.*;
+
+/**
+ * Connection over a non-blocking socket channel, whose socket I/O is performed by an event loop of a {@link NioEngine}.
+ * The event loop reads incoming data (and decrypts it, in case of TLS) into a connection-owned buffer, from which it
+ * can be read with the (blocking) input stream provided by this class; when the buffer is full, the event loop stops
+ * reading until the connection's user has consumed some data. Writes are performed directly by the writing thread;
+ * only when the channel cannot accept more data, the writer waits for the event loop to signal writability.
+ * TLS is implemented with an SSLEngine; the TLS handshake is performed while opening the connection.
+ */
+public class NioConnection implements Closeable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    static final int PLAIN_BUFFER_SIZE = 16 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine sslEngine;
+    private final NioEngine.EventLoop eventLoop;
+    private final InputStream inputStream = new ConnectionInputStream();
+    private final OutputStream outputStream = new ConnectionOutputStream();
+
+    // Only accessed on the event loop thread.
+    private SelectionKey selectionKey;
+
+    private final Object readLock = new Object();
+    // Guarded by readLock; buffers are always in "fill" mode.
+    private ByteBuffer appIn;
+    private ByteBuffer netIn;
+    private boolean endOfStream;
+    private IOException readError;
+    private boolean readSuspended;
+    private boolean unwrapPending;
+    private volatile boolean handshakeWrapPending;
+
+    private final Object writeLock = new Object();
+    // Guarded by writeLock
+    private ByteBuffer netOut;
+
+    private final Object writabilityMonitor = new Object();
+    // Guarded by writabilityMonitor
+    private boolean writable;
+
+    private volatile int readTimeout;
+    private volatile boolean closed;
+
+    /**
+     * Opens a connection over the given channel, which must already be connected (in blocking mode). When an
+     * SSLEngine is given, the TLS handshake is performed before this method returns.
+     * @param channel the connected channel
+     * @param sslEngine the engine to use for TLS, or null for a plain connection
+     * @param engine the engine whose event loop will perform the I/O for this connection
+     * @param readTimeout the read timeout (in milliseconds), also used during the TLS handshake
+     * @return the opened connection
+     * @throws IOException when the TLS handshake fails or the channel cannot be registered with the event loop
+     */
+    public static NioConnection open(SocketChannel channel, SSLEngine sslEngine, NioEngine engine, int readTimeout) throws IOException {
+        NioConnection connection = new NioConnection(channel, sslEngine, engine.nextEventLoop());
+        connection.setReadTimeout(readTimeout);
+        if (sslEngine != null) {
+            connection.performHandshake(readTimeout);
+        }
+        channel.configureBlocking(false);
+        connection.register();
+        return connection;
+    }
+
+    private NioConnection(SocketChannel channel, SSLEngine sslEngine, NioEngine.EventLoop eventLoop) {
+        this.channel = channel;
+        this.sslEngine = sslEngine;
+        this.eventLoop = eventLoop;
+        if (sslEngine != null) {
+            appIn = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+            netIn = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+        }
+        else {
+            appIn = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+        }
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public boolean isSecure() {
+        return sslEngine != null;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Writes all remaining bytes of the given buffer; blocks until all data is handed over to the socket.
+     */
+    public void write(ByteBuffer data) throws IOException {
+        synchronized (writeLock) {
+            if (closed)
+                throw new SocketException("Socket is closed");
+            if (sslEngine == null)
+                writeFully(data);
+            else
+                wrapAndWrite(data);
+        }
+    }
+
+    /**
+     * Writes the given region of the file directly to the socket channel, which (depending on the operating system)
+     * avoids copying the data to user space altogether; blocks until all data is handed over to the socket. Only
+     * supported for plain (non-TLS) connections.
+     */
+    public void transferFrom(FileChannel file, long position, long count) throws IOException {
+        if (sslEngine != null)
+            throw new IllegalStateException("Cannot transfer file data to a TLS connection");
+        synchronized (writeLock) {
+            if (closed)
+                throw new SocketException("Socket is closed");
+            long end = position + count;
+            while (position < end) {
+                long transferred = file.transferTo(position, end - position, channel);
+                if (transferred == 0) {
+                    // Either the socket buffer is full, or the file was truncated in the meantime
+                    if (position >= file.size())
+                        throw new EOFException("File is shorter than expected: " + file.size() + " bytes");
+                    awaitWritable();
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            channel.close();
+        }
+        catch (IOException closeFailed) {
+            log.debug("Closing channel failed", closeFailed);
+        }
+        // Let the event loop process the (implicit) cancellation of the selection key.
+        eventLoop.getSelector().wakeup();
+        synchronized (readLock) {
+            readLock.notifyAll();
+        }
+        synchronized (writabilityMonitor) {
+            writabilityMonitor.notifyAll();
+        }
+    }
+
+    private void register() {
+        eventLoop.execute(() -> {
+            try {
+                selectionKey = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+            }
+            catch (IOException registrationFailed) {
+                synchronized (readLock) {
+                    readError = registrationFailed;
+                    readLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by the event loop when the channel is ready for reading and/or writing.
+     */
+    void processReadyOps(SelectionKey key) {
+        try {
+            if (key.isWritable()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                synchronized (writabilityMonitor) {
+                    writable = true;
+                    writabilityMonitor.notifyAll();
+                }
+            }
+            if (key.isReadable()) {
+                readFromChannel(key);
+            }
+        }
+        catch (CancelledKeyException cancelled) {
+            // Connection is closed by its user while processing; nothing left to do.
+        }
+    }
+
+    private void readFromChannel(SelectionKey key) {
+        synchronized (readLock) {
+            try {
+                ByteBuffer readBuffer = sslEngine == null? appIn: netIn;
+                if (readBuffer.hasRemaining()) {
+                    if (channel.read(readBuffer) < 0) {
+                        endOfStream = true;
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    }
+                    if (sslEngine != null) {
+                        unwrap();
+                    }
+                }
+                if (!endOfStream && !(sslEngine == null? appIn: netIn).hasRemaining()) {
+                    // Buffer full: stop reading until the user has consumed (some of) the data.
+                    readSuspended = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+            catch (IOException ioError) {
+                readError = ioError;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            finally {
+                readLock.notifyAll();
+            }
+        }
+    }
+
+    // Must be called with readLock held.
+    private void resumeReading() {
+        if (readSuspended) {
+            readSuspended = false;
+            eventLoop.execute(() -> {
+                if (selectionKey != null && selectionKey.isValid()) {
+                    selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_READ);
+                }
+            });
+        }
+    }
+
+    private int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+
+        int timeout = readTimeout;
+        long deadline = System.nanoTime() + timeout * 1_000_000L;
+        while (true) {
+            if (handshakeWrapPending) {
+                // Must be done without holding the read lock, as writing may wait for the event loop.
+                performHandshakeWrap();
+            }
+            synchronized (readLock) {
+                while (!handshakeWrapPending) {
+                    if (appIn.position() == 0 && unwrapPending) {
+                        unwrap();
+                        resumeReading();
+                    }
+                    if (appIn.position() > 0) {
+                        appIn.flip();
+                        int count = Math.min(length, appIn.remaining());
+                        appIn.get(buffer, offset, count);
+                        appIn.compact();
+                        resumeReading();
+                        return count;
+                    }
+                    if (readError != null)
+                        throw readError;
+                    if (endOfStream)
+                        return -1;
+                    if (closed)
+                        throw new SocketException("Socket is closed");
+
+                    long waitTime = 0;
+                    if (timeout > 0) {
+                        waitTime = (deadline - System.nanoTime()) / 1_000_000;
+                        if (waitTime <= 0)
+                            throw new SocketTimeoutException("Read timed out");
+                    }
+                    try {
+                        readLock.wait(waitTime);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for data");
+                    }
+                }
+            }
+        }
+    }
+
+    // Must be called with readLock held.
+    private void unwrap() throws IOException {
+        unwrapPending = false;
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining()) {
+                SSLEngineResult result = sslEngine.unwrap(netIn, appIn);
+                processHandshakeStatus(result.getHandshakeStatus());
+                switch (result.getStatus()) {
+                    case OK:
+                        if (result.bytesConsumed() == 0 && result.bytesProduced() == 0)
+                            return;
+                        break;
+                    case BUFFER_OVERFLOW:
+                        if (appIn.position() == 0) {
+                            appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize());
+                            break;
+                        }
+                        unwrapPending = true;
+                        return;
+                    case BUFFER_UNDERFLOW:
+                        return;
+                    case CLOSED:
+                        endOfStream = true;
+                        return;
+                }
+            }
+        }
+        finally {
+            netIn.compact();
+            if (!netIn.hasRemaining() && !unwrapPending) {
+                // A record that does not fit the buffer
+                netIn = enlarge(netIn, sslEngine.getSession().getPacketBufferSize());
+            }
+        }
+    }
+
+    private void processHandshakeStatus(SSLEngineResult.HandshakeStatus status) {
+        if (status == NEED_TASK) {
+            runDelegatedTasks();
+        }
+        // When the peer has closed, a wrap would only answer its close_notify, which is left to closing the channel.
+        if (sslEngine.getHandshakeStatus() == NEED_WRAP && !sslEngine.isInboundDone()) {
+            handshakeWrapPending = true;
+        }
+    }
+
+    private void performHandshakeWrap() throws IOException {
+        synchronized (writeLock) {
+            handshakeWrapPending = false;
+            if (sslEngine.getHandshakeStatus() == NEED_WRAP) {
+                wrapAndWrite(EMPTY.duplicate());
+            }
+        }
+        synchronized (readLock) {
+            // Handshake messages might have been blocked by the missing wrap.
+            unwrapPending = netIn.position() > 0;
+        }
+    }
+
+    // Must be called with writeLock held.
+    private void wrapAndWrite(ByteBuffer data) throws IOException {
+        do {
+            SSLEngineResult result = sslEngine.wrap(data, netOut);
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    if (netOut.position() == 0) {
+                        netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+                    }
+                    break;
+                case CLOSED:
+                    throw new SocketException("TLS connection is closed");
+                default:
+                    break;
+            }
+            if (result.getHandshakeStatus() == NEED_TASK) {
+                runDelegatedTasks();
+            }
+            netOut.flip();
+            writeFully(netOut);
+            netOut.clear();
+        }
+        while (data.hasRemaining() || sslEngine.getHandshakeStatus() == NEED_WRAP);
+    }
+
+    // Must be called with writeLock held.
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (channel.write(data) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        // Only the event loop can signal writability, so waiting for it on the event loop thread would block forever
+        if (eventLoop.inEventLoop())
+            throw new IllegalStateException("Cannot block on a full socket buffer in the event loop thread");
+        synchronized (writabilityMonitor) {
+            writable = false;
+        }
+        eventLoop.execute(() -> {
+            if (selectionKey != null && selectionKey.isValid()) {
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+            }
+        });
+        synchronized (writabilityMonitor) {
+            while (!writable && !closed) {
+                try {
+                    writabilityMonitor.wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for socket to become writable");
+                }
+            }
+        }
+        if (closed)
+            throw new SocketException("Socket is closed");
+    }
+
+    /**
+     * Performs the TLS handshake with the channel still in blocking mode, so it can be done by the connecting thread
+     * without involving the event loop.
+     */
+    private void performHandshake(int readTimeout) throws IOException {
+        Socket socket = channel.socket();
+        socket.setSoTimeout(readTimeout);
+        // In blocking mode, the socket's input stream honours the socket timeout (which a plain channel read does not).
+        InputStream socketIn = socket.getInputStream();
+
+        log.debug("Starting TLS handshake.");
+        sslEngine.beginHandshake();
+        SSLEngineResult.HandshakeStatus status = sslEngine.getHandshakeStatus();
+        while (status != FINISHED && status != NOT_HANDSHAKING) {
+            switch (status) {
+                case NEED_WRAP:
+                    SSLEngineResult wrapResult = sslEngine.wrap(EMPTY.duplicate(), netOut);
+                    if (wrapResult.getStatus() == SSLEngineResult.Status.CLOSED)
+                        throw new SSLException("TLS connection closed during handshake");
+                    if (wrapResult.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+                        netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+                    netOut.flip();
+                    while (netOut.hasRemaining()) {
+                        channel.write(netOut);
+                    }
+                    netOut.clear();
+                    status = wrapResult.getHandshakeStatus();
+                    break;
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    status = sslEngine.getHandshakeStatus();
+                    break;
+                default:
+                    netIn.flip();
+                    SSLEngineResult unwrapResult = sslEngine.unwrap(netIn, appIn);
+                    netIn.compact();
+                    switch (unwrapResult.getStatus()) {
+                        case BUFFER_UNDERFLOW:
+                            if (!netIn.hasRemaining())
+                                netIn = enlarge(netIn, sslEngine.getSession().getPacketBufferSize());
+                            int bytesRead = socketIn.read(netIn.array(), netIn.arrayOffset() + netIn.position(), netIn.remaining());
+                            if (bytesRead < 0)
+                                throw new EOFException("Connection closed during TLS handshake");
+                            netIn.position(netIn.position() + bytesRead);
+                            break;
+                        case BUFFER_OVERFLOW:
+                            appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize());
+                            break;
+                        case CLOSED:
+                            throw new SSLException("TLS connection closed during handshake");
+                        default:
+                            break;
+                    }
+                    status = unwrapResult.getHandshakeStatus();
+                    break;
+            }
+        }
+        log.debug("TLS handshake finished, using " + sslEngine.getSession().getProtocol() + " with " + sslEngine.getSession().getCipherSuite());
+        // Data received with the last handshake record will be unwrapped on first read.
+        unwrapPending = netIn.position() > 0;
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minimumSize) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimumSize));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private class ConnectionInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            int result = NioConnection.this.read(singleByte, 0, 1);
+            return result < 0? -1: singleByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return NioConnection.this.read(buffer, offset, length);
+        }
+
+        @Override
+        public int available() {
+            synchronized (readLock) {
+                return appIn.position();
+            }
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+
+    private class ConnectionOutputStream extends OutputStream {
+
+        @Override
+        public void write(int value) throws IOException {
+            NioConnection.this.write(ByteBuffer.wrap(new byte[] { (byte) value }));
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            NioConnection.this.write(ByteBuffer.wrap(data, offset, length));
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small pool of event loop threads that perform the socket I/O for connections that are set up in non-blocking mode
+ * (see {@link NioConnection}). Each connection is assigned to one loop for its whole lifetime; the loop reads incoming
+ * data for all its connections and signals writers when a channel becomes writable again. Threads using a connection
+ * only wait on that connection's buffers, never on the socket itself.
+ */
+public class NioEngine {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger loopIndex = new AtomicInteger();
+
+    public NioEngine(int nrOfThreads) throws IOException {
+        if (nrOfThreads < 1)
+            throw new IllegalArgumentException("Number of event loop threads must be at least 1");
+        eventLoops = new EventLoop[nrOfThreads];
+        for (int i = 0; i < nrOfThreads; i++) {
+            eventLoops[i] = new EventLoop("WebSocket-NIO-" + (i + 1));
+        }
+        log.info("Started non-blocking websocket engine with " + nrOfThreads + " event loop thread(s)");
+    }
+
+    public int getThreadCount() {
+        return eventLoops.length;
+    }
+
+    public void shutdown() {
+        for (EventLoop loop: eventLoops) {
+            loop.shutdown();
+        }
+    }
+
+    EventLoop nextEventLoop() {
+        return eventLoops[(loopIndex.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    static class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        EventLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Selector getSelector() {
+            return selector;
+        }
+
+        boolean inEventLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        /**
+         * Schedules a task to be run on the event loop thread. Registration and interest changes of selection keys
+         * should always be done this way, as they may block when performed while the selector is selecting.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    runTasks();
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        if (key.isValid()) {
+                            ((NioConnection) key.attachment()).processReadyOps(key);
+                        }
+                    }
+                }
+                catch (ClosedSelectorException closed) {
+                    break;
+                }
+                catch (Throwable error) {
+                    // Never let the loop die, it serves other connections as well.
+                    log.error("Unexpected error in websocket event loop", error);
+                }
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException error) {
+                log.debug("Closing selector failed", error);
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                }
+                catch (RuntimeException error) {
+                    log.error("Websocket event loop task failed", error);
+                }
+            }
+        }
+    }
+}
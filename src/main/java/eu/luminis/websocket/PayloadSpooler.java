@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Consumes the payload of a large frame in chunks: computes size and digest and (depending on the policy) writes it
+ * to a temporary file.
+ */
+class PayloadSpooler {
+
+    private final String digestAlgorithm;
+    private final CRC32 crc;
+    private final MessageDigest messageDigest;
+    private final File file;
+    private OutputStream fileOutput;
+    private long size;
+
+    PayloadSpooler(LargePayloadPolicy policy) throws IOException {
+        digestAlgorithm = policy.getDigestAlgorithm();
+        if (LargePayloadPolicy.CRC32.equalsIgnoreCase(digestAlgorithm)) {
+            crc = new CRC32();
+            messageDigest = null;
+        }
+        else {
+            crc = null;
+            try {
+                messageDigest = MessageDigest.getInstance(digestAlgorithm);
+            }
+            catch (NoSuchAlgorithmException e) {
+                // Impossible, policy checks algorithm
+                throw new IllegalStateException(e);
+            }
+        }
+        if (policy.getMode() == LargePayloadPolicy.Mode.Spool) {
+            file = File.createTempFile("websocket-payload-", ".bin", policy.getSpoolDirectory());
+            fileOutput = new FileOutputStream(file);
+        }
+        else {
+            file = null;
+        }
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException {
+        if (crc != null)
+            crc.update(data, offset, length);
+        else
+            messageDigest.update(data, offset, length);
+        if (fileOutput != null)
+            fileOutput.write(data, offset, length);
+        size += length;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    StreamedPayload finish() throws IOException {
+        if (fileOutput != null) {
+            fileOutput.close();
+            fileOutput = null;
+        }
+        String digest = crc != null? String.format("%08x", crc.getValue()): toHex(messageDigest.digest());
+        return new StreamedPayload(size, digestAlgorithm, digest, file);
+    }
+
+    /**
+     * Abandons the payload: closes and deletes the spool file (if any).
+     */
+    void abort() {
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            }
+            catch (IOException e) {}
+            fileOutput = null;
+        }
+        if (file != null)
+            file.delete();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b: bytes)
+            hex.append(Character.forDigit((b >> 4) & 0x0f, 16)).append(Character.forDigit(b & 0x0f, 16));
+        return hex.toString();
+    }
+}
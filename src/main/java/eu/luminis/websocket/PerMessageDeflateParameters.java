@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Parameters of the permessage-deflate extension (RFC 7692), as negotiated by the server in the Sec-WebSocket-Extensions
+ * header of the upgrade response.
+ */
+class PerMessageDeflateParameters {
+
+    static final String EXTENSION_NAME = "permessage-deflate";
+    static final int MIN_WINDOW_BITS = 8;
+    static final int MAX_WINDOW_BITS = 15;
+
+    private boolean serverNoContextTakeover;
+    private boolean clientNoContextTakeover;
+    private int serverMaxWindowBits = MAX_WINDOW_BITS;
+    private int clientMaxWindowBits = MAX_WINDOW_BITS;
+
+    /**
+     * @param extensionsHeader value of a Sec-WebSocket-Extensions header (may be null)
+     * @return whether the header lists the permessage-deflate extension
+     */
+    static boolean isListed(String extensionsHeader) {
+        if (extensionsHeader != null) {
+            for (String extension: extensionsHeader.split(",")) {
+                if (extension.split(";")[0].trim().equalsIgnoreCase(EXTENSION_NAME))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the permessage-deflate extension parameters from the Sec-WebSocket-Extensions response header.
+     * @param extensionsHeader value of the Sec-WebSocket-Extensions response header (may be null)
+     * @return the negotiated parameters, or null if the server did not accept the extension
+     * @throws HttpProtocolException when the extension parameters are not valid (in which case RFC 7692 requires the
+     * client to fail the connection)
+     */
+    static PerMessageDeflateParameters parse(String extensionsHeader) throws HttpProtocolException {
+        if (extensionsHeader == null)
+            return null;
+
+        for (String extension: extensionsHeader.split(",")) {
+            String[] elements = extension.split(";");
+            if (elements[0].trim().equalsIgnoreCase(EXTENSION_NAME)) {
+                PerMessageDeflateParameters parameters = new PerMessageDeflateParameters();
+                Set<String> seen = new HashSet<>();
+                for (int i = 1; i < elements.length; i++) {
+                    String element = elements[i].trim();
+                    if (element.isEmpty())
+                        continue;
+                    int separator = element.indexOf('=');
+                    String name = (separator < 0? element: element.substring(0, separator)).trim().toLowerCase();
+                    String value = separator < 0? null: unquote(element.substring(separator + 1).trim());
+                    if (!seen.add(name))
+                        throw new HttpProtocolException("Invalid permessage-deflate extension response: duplicate parameter '" + name + "'");
+                    switch (name) {
+                        case "server_no_context_takeover":
+                            parameters.serverNoContextTakeover = checkNoValue(name, value);
+                            break;
+                        case "client_no_context_takeover":
+                            parameters.clientNoContextTakeover = checkNoValue(name, value);
+                            break;
+                        case "server_max_window_bits":
+                            parameters.serverMaxWindowBits = parseWindowBits(name, value);
+                            break;
+                        case "client_max_window_bits":
+                            parameters.clientMaxWindowBits = parseWindowBits(name, value);
+                            break;
+                        default:
+                            throw new HttpProtocolException("Invalid permessage-deflate extension response: unknown parameter '" + name + "'");
+                    }
+                }
+                return parameters;
+            }
+        }
+        return null;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            return value.substring(1, value.length() - 1);
+        else
+            return value;
+    }
+
+    private static boolean checkNoValue(String name, String value) throws HttpProtocolException {
+        if (value != null)
+            throw new HttpProtocolException("Invalid permessage-deflate extension response: parameter '" + name + "' must not have a value");
+        return true;
+    }
+
+    private static int parseWindowBits(String name, String value) throws HttpProtocolException {
+        try {
+            int bits = Integer.parseInt(value);
+            if (bits >= MIN_WINDOW_BITS && bits <= MAX_WINDOW_BITS)
+                return bits;
+        }
+        catch (NumberFormatException noNumber) {}
+        throw new HttpProtocolException("Invalid permessage-deflate extension response: invalid value for parameter '" + name + "': " + value);
+    }
+
+    boolean isServerNoContextTakeover() {
+        return serverNoContextTakeover;
+    }
+
+    boolean isClientNoContextTakeover() {
+        return clientNoContextTakeover;
+    }
+
+    int getServerMaxWindowBits() {
+        return serverMaxWindowBits;
+    }
+
+    int getClientMaxWindowBits() {
+        return clientMaxWindowBits;
+    }
+
+    /**
+     * Java's Deflater always uses the maximum window size (32 KB), so outgoing messages can only be compressed when
+     * the server did not restrict the client's window. As compression is optional for each message, messages can always
+     * be sent uncompressed.
+     */
+    boolean canCompressOutgoingMessages() {
+        return clientMaxWindowBits == MAX_WINDOW_BITS;
+    }
+
+    @Override
+    public String toString() {
+        return EXTENSION_NAME
+                + (serverNoContextTakeover? "; server_no_context_takeover": "")
+                + (clientNoContextTakeover? "; client_no_context_takeover": "")
+                + (serverMaxWindowBits != MAX_WINDOW_BITS? "; server_max_window_bits=" + serverMaxWindowBits: "")
+                + (clientMaxWindowBits != MAX_WINDOW_BITS? "; client_max_window_bits=" + clientMaxWindowBits: "");
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A data frame whose encoded (and masked) form is computed up front, for a pool of distinct mask keys, so a payload
+ * that is sent over and over again does not need to be encoded and masked each time: sending it is just writing one of
+ * the ready made byte sequences. Subsequent sends cycle through the pool; the larger the pool, the less predictable
+ * the mask keys are (RFC 6455 requires mask keys to be unpredictable, which a pool can only approximate).
+ * Encoded frames are stored in one array, so the memory used is (about) the pool size times the frame size.
+ * Like a {@link MaskKeySource}, an instance keeps a position and is not thread safe.
+ */
+public final class PreEncodedFrame {
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final DataFrame frame;
+    private final byte[] encodedFrames;
+    private final int frameSize;
+    private final int poolSize;
+    private int index;
+
+    /**
+     * @param frame the frame to encode; must be a text or binary frame that is not sent compressed.
+     * @param poolSize the number of distinct mask keys (and thus encoded copies of the frame)
+     * @throws IllegalArgumentException when the pool size is not positive, or the encoded frames do not fit in an array
+     */
+    public PreEncodedFrame(DataFrame frame, int poolSize) {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("Pool size must be positive");
+        if (requiredBytes(frame, poolSize) > MAX_ARRAY_SIZE)
+            throw new IllegalArgumentException("Pool size " + poolSize + " too large for frame with payload of " + frame.getPayloadSize() + " bytes");
+        this.frame = frame;
+        this.poolSize = poolSize;
+        FrameEncoder encoder = new FrameEncoder(false, new DistinctMaskKeySource());
+        ByteBuffer encoded = encoder.encode(frame);
+        frameSize = encoded.remaining();
+        encodedFrames = new byte[poolSize * frameSize];
+        encoded.get(encodedFrames, 0, frameSize);
+        for (int i = 1; i < poolSize; i++)
+            encoder.encode(frame).get(encodedFrames, i * frameSize, frameSize);
+        index = ThreadLocalRandom.current().nextInt(poolSize);
+    }
+
+    /**
+     * @return the number of bytes needed to pre-encode the given frame for the given pool size, which allows checking
+     * the memory cost before creating an instance
+     */
+    public static long requiredBytes(DataFrame frame, int poolSize) {
+        return (long) poolSize * FrameEncoder.encodedSize(frame.getPayloadSize());
+    }
+
+    /**
+     * @return the frame that is encoded; note that the same instance is returned by every send.
+     */
+    public DataFrame getFrame() {
+        return frame;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return size of one encoded frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    byte[] getEncodedFrames() {
+        return encodedFrames;
+    }
+
+    /**
+     * @return the offset (in {@link #getEncodedFrames()}) of the encoded frame to send next
+     */
+    int nextOffset() {
+        int offset = index * frameSize;
+        if (++index == poolSize)
+            index = 0;
+        return offset;
+    }
+
+    private static class DistinctMaskKeySource implements MaskKeySource {
+        private final Set<Integer> used = new HashSet<>();
+
+        @Override
+        public int nextMaskKey() {
+            int key;
+            do {
+                key = ThreadLocalRandom.current().nextInt();
+            }
+            while (!used.add(key));
+            return key;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import java.io.File;
+
+/**
+ * Describes the payload of a frame that was not read into memory, but streamed to a file or discarded, see
+ * {@link LargePayloadPolicy}, or the payload of a frame that was sent by streaming it from file, see
+ * {@link WebSocketClient#sendBinaryFile}.
+ */
+public class StreamedPayload {
+
+    private final long size;
+    private final String digestAlgorithm;
+    private final String digest;
+    private final File file;
+    private final boolean sent;
+
+    public StreamedPayload(long size, String digestAlgorithm, String digest, File file) {
+        this(size, digestAlgorithm, digest, file, false);
+    }
+
+    private StreamedPayload(long size, String digestAlgorithm, String digest, File file, boolean sent) {
+        this.size = size;
+        this.digestAlgorithm = digestAlgorithm;
+        this.digest = digest;
+        this.file = file;
+        this.sent = sent;
+    }
+
+    /**
+     * @return a description of a payload of the given size that was sent, which only states its size
+     */
+    public static StreamedPayload sent(long size) {
+        return new StreamedPayload(size, null, null, null, true);
+    }
+
+    /**
+     * @return the payload size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @return the digest of the payload, as (lowercase) hex string
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the file containing the (received) payload, or null when the payload was discarded or sent
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return whether this describes the payload of a sent frame, instead of a received one
+     */
+    public boolean isSent() {
+        return sent;
+    }
+
+    @Override
+    public String toString() {
+        if (sent)
+            return "Payload of " + size + " bytes";
+        return "Payload of " + size + " bytes" + (digest != null? ", " + digestAlgorithm + ": " + digest: "") + (file != null? ", stored in " + file.getAbsolutePath(): ", discarded");
+    }
+}
@@ -29,6 +29,10 @@ public class TextContinuationFrame extends TextFrame {
         super(fin, payload, size, compressed);
     }
 
+    public TextContinuationFrame(boolean fin, StreamedPayload streamedPayload, int headerSize) {
+        super(fin, streamedPayload, headerSize);
+    }
+
     @Override
     public String getTypeAsString() {
         if (isFinalFragment())
@@ -41,4 +45,9 @@ public class TextContinuationFrame extends TextFrame {
     public boolean isContinuationFrame() {
         return true;
     }
+
+    @Override
+    protected byte getOpCode() {
+        return OPCODE_CONT;
+    }
 }
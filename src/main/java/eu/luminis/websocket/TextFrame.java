@@ -19,36 +19,148 @@
 package eu.luminis.websocket;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+/**
+ * Text frame. A received text frame keeps the raw (UTF-8) payload and only decodes it into a String when the text is
+ * actually needed, so frames that are discarded (e.g. by a filter) are never decoded. Plain text comparisons are
+ * performed directly on the UTF-8 bytes.
+ */
 public class TextFrame extends DataFrame {
 
     private int payloadSize;
+    // Raw payload of a received frame; null once decoded (or when the frame was created from a String)
+    private byte[] utf8Payload;
     protected String text;
 
     public TextFrame(String text) {
         this.text = text;
-        payloadSize = text.getBytes().length;
+        payloadSize = -1;  // Computed when needed, the text is encoded when the frame is sent.
     }
 
     public TextFrame(boolean fin, byte[] payload, int size) {
         super(fin, size);
         payloadSize = payload.length;
-        text = new String(payload, StandardCharsets.UTF_8);
+        utf8Payload = payload;
     }
 
     public TextFrame(boolean fin, byte[] payload, int size, boolean compressed) {
         super(fin, size, compressed);
         payloadSize = payload.length;
-        text = new String(payload, StandardCharsets.UTF_8);
+        utf8Payload = payload;
+    }
+
+    public TextFrame(boolean fin, StreamedPayload streamedPayload, int headerSize) {
+        super(fin, streamedPayload, headerSize);
+        payloadSize = getStreamedPayloadSize();
+        text = "";
     }
 
     public String getText() {
+        if (text == null) {
+            text = decode(utf8Payload);
+            utf8Payload = null;
+        }
         return text;
     }
 
+    /**
+     * Encodes a value for the text comparison methods, so a value that is compared with many frames is encoded only
+     * once.
+     * @return the UTF-8 encoded value, or null if the value cannot be matched against the raw payload (because it
+     * contains the replacement character or lone surrogates), in which case the payload is decoded for comparing.
+     */
+    public static byte[] encodeForMatching(String value) {
+        return canMatchBytes(value)? value.getBytes(StandardCharsets.UTF_8): null;
+    }
+
+    /**
+     * @return whether the text contains the given value; for a received frame, this does not require decoding the payload
+     */
+    public boolean textContains(String value) {
+        return textContains(value, utf8Payload != null? encodeForMatching(value): null);
+    }
+
+    /**
+     * @param utf8Value the value as encoded by {@link #encodeForMatching(String)}
+     */
+    public boolean textContains(String value, byte[] utf8Value) {
+        byte[] raw = utf8Payload;
+        if (raw != null && utf8Value != null)
+            return indexOf(raw, utf8Value) >= 0;
+        return getText().contains(value);
+    }
+
+    /**
+     * @return whether the text starts with the given value; for a received frame, this does not require decoding the payload
+     */
+    public boolean textStartsWith(String value) {
+        return textStartsWith(value, utf8Payload != null? encodeForMatching(value): null);
+    }
+
+    /**
+     * @param utf8Value the value as encoded by {@link #encodeForMatching(String)}
+     */
+    public boolean textStartsWith(String value, byte[] utf8Value) {
+        byte[] raw = utf8Payload;
+        if (raw != null && utf8Value != null)
+            return regionMatches(raw, 0, utf8Value);
+        return getText().startsWith(value);
+    }
+
+    /**
+     * @return whether the text ends with the given value; for a received frame, this does not require decoding the payload
+     */
+    public boolean textEndsWith(String value) {
+        return textEndsWith(value, utf8Payload != null? encodeForMatching(value): null);
+    }
+
+    /**
+     * @param utf8Value the value as encoded by {@link #encodeForMatching(String)}
+     */
+    public boolean textEndsWith(String value, byte[] utf8Value) {
+        byte[] raw = utf8Payload;
+        if (raw != null && utf8Value != null)
+            return raw.length >= utf8Value.length && regionMatches(raw, raw.length - utf8Value.length, utf8Value);
+        return getText().endsWith(value);
+    }
+
+    /**
+     * @return whether the text equals the given value; for a received frame, this does not require decoding the payload
+     */
+    public boolean textEquals(String value) {
+        return textEquals(value, utf8Payload != null? encodeForMatching(value): null);
+    }
+
+    /**
+     * @param utf8Value the value as encoded by {@link #encodeForMatching(String)}
+     */
+    public boolean textEquals(String value, byte[] utf8Value) {
+        byte[] raw = utf8Payload;
+        if (raw != null && utf8Value != null)
+            return Arrays.equals(raw, utf8Value);
+        return getText().equals(value);
+    }
+
+    /**
+     * @return the UTF-8 encoded text; for a received frame, this is the raw payload, so it does not require decoding.
+     * Note that the raw payload is not validated: malformed sequences are only replaced (by U+FFFD) when decoding.
+     */
+    public byte[] getUtf8Text() {
+        return getPayload();
+    }
+
+    /**
+     * @return whether the frame holds the raw (UTF-8) payload, e.g. because it was received, or is a fragment of a
+     * message that is sent in fragments (which might end halfway a multi-byte character).
+     */
+    boolean hasRawPayload() {
+        return utf8Payload != null;
+    }
+
     @Override
     public Object getData() {
-        return text;
+        return getText();
     }
 
     @Override
@@ -58,12 +170,15 @@ public class TextFrame extends DataFrame {
 
     @Override
     public String toString() {
-        return "Text frame with text '" + text + "'";
+        if (isStreamed())
+            return "Text frame, streamed payload (" + streamedPayload + ")";
+        return "Text frame with text '" + getText() + "'";
     }
 
     @Override
     protected byte[] getPayload() {
-        return text.getBytes(StandardCharsets.UTF_8);
+        byte[] raw = utf8Payload;
+        return raw != null? raw: text.getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
@@ -81,7 +196,56 @@ public class TextFrame extends DataFrame {
 
     @Override
     public int getPayloadSize() {
+        if (payloadSize < 0)
+            payloadSize = FrameEncoder.utf8Length(text);
         return payloadSize;
     }
 
+    static String decode(byte[] utf8) {
+        for (byte b: utf8) {
+            if (b < 0)
+                return new String(utf8, StandardCharsets.UTF_8);
+        }
+        // Pure ASCII, which decodes the same in ISO-8859-1, which does not need any decoding logic.
+        return new String(utf8, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Byte comparison is equivalent to comparing the decoded text, except for values containing characters that UTF-8
+     * decoding or encoding may have substituted (lone surrogates or the replacement character itself).
+     */
+    private static boolean canMatchBytes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\uFFFD')
+                return false;
+            if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+                i++;
+            else if (Character.isSurrogate(c))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(byte[] data, int offset, byte[] value) {
+        if (offset + value.length > data.length)
+            return false;
+        for (int i = 0; i < value.length; i++) {
+            if (data[offset + i] != value[i])
+                return false;
+        }
+        return true;
+    }
+
+    static int indexOf(byte[] data, byte[] value) {
+        if (value.length == 0)
+            return 0;
+        byte first = value[0];
+        int last = data.length - value.length;
+        for (int i = 0; i <= last; i++) {
+            if (data[i] == first && regionMatches(data, i, value))
+                return i;
+        }
+        return -1;
+    }
 }
@@ -25,13 +25,22 @@ import org.apache.jmeter.util.SSLManager;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.Inflater;
@@ -43,6 +52,7 @@ public class WebSocketClient {
     private static final Pattern HTTP_STATUS_PATTERN = Pattern.compile("^HTTP/\\d\\.\\d (\\d{3}?)");
     public static final int DEFAULT_CONNECT_TIMEOUT = 20 * 1000;
     public static final int DEFAULT_READ_TIMEOUT = 6 * 1000;
+    static final int FILE_CHUNK_SIZE = 64 * 1024;
     public static Set<String> UPGRADE_HEADERS;
 
     static {
@@ -52,6 +62,7 @@ public class WebSocketClient {
 
     private DataFrameType lastDataFrameStatus = DataFrameType.NONE;
     private boolean lastFrameWasCompressed;
+    private Message partialMessage;
 
     enum WebSocketState {
         CLOSED,
@@ -69,7 +80,8 @@ public class WebSocketClient {
     private Socket wsSocket;
     private InputStream socketInputStream;
     private OutputStream socketOutputStream;
-    private Random randomGenerator = new Random();
+    private MaskKeySource maskKeySource = MaskKeySource.THREAD_LOCAL_RANDOM;
+    private LargePayloadPolicy largePayloadPolicy;
     private volatile WebSocketState state = WebSocketState.CLOSED;
     private Map<String, String> additionalHeaders;
     private boolean useProxy;
@@ -77,8 +89,15 @@ public class WebSocketClient {
     private int proxyPort;
     private String proxyUsername;
     private String proxyPassword;
+    private NioEngine nioEngine;
+    private NioConnection nioConnection;
 
     private WebSocketInflater webSocketInflater;
+    private WebSocketDeflater webSocketDeflater;
+    private PerMessageDeflateParameters negotiatedCompression;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private FrameEncoder frameEncoder = new FrameEncoder(false);
+    private ByteBuffer fileChunkBuffer;
 
     public WebSocketClient(URL wsURL) {
         connectUrl = correctUrl(wsURL);
@@ -100,6 +119,39 @@ public class WebSocketClient {
         proxyPassword = password;
     }
 
+    /**
+     * Let this client use non-blocking I/O, performed by the event loops of the given engine, instead of a classic
+     * (blocking) socket. Must be called before connecting.
+     * @param engine the engine to use, or null to use a blocking socket (the default)
+     */
+    public void useNioEngine(NioEngine engine) {
+        if (state != WebSocketState.CLOSED) {
+            throw new IllegalStateException("Cannot change I/O engine when state is " + state);
+        }
+        nioEngine = engine;
+    }
+
+    /**
+     * Sets the source of the mask keys (and the handshake nonce) used by this client; by default, keys are generated
+     * by a per-thread random generator.
+     */
+    public void setMaskKeySource(MaskKeySource source) {
+        maskKeySource = Objects.requireNonNull(source);
+        frameEncoder = new FrameEncoder(frameEncoder.isDirect(), source);
+    }
+
+    /**
+     * Sets the policy for handling large payloads of received frames.
+     * @param policy the policy, or null to read all payloads into memory (the default)
+     */
+    public void setLargePayloadPolicy(LargePayloadPolicy policy) {
+        largePayloadPolicy = policy;
+    }
+
+    public LargePayloadPolicy getLargePayloadPolicy() {
+        return largePayloadPolicy;
+    }
+
     public HttpResult connect() throws IOException, HttpException {
         return connect(Collections.emptyMap(), DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
     }
@@ -130,20 +182,32 @@ public class WebSocketClient {
             throw new IllegalStateException("Cannot connect when state is " + state);
         }
         state = WebSocketState.CONNECTING;
+        frameDecoder.reset();
+        // Writing a direct buffer to a plain channel avoids copying; in all other cases a heap buffer is more efficient.
+        boolean useDirectBuffer = nioEngine != null && !"https".equals(connectUrl.getProtocol());
+        if (frameEncoder.isDirect() != useDirectBuffer)
+            frameEncoder = new FrameEncoder(useDirectBuffer, maskKeySource);
 
         boolean connected = false;
         log.debug("Creating connection with " + connectUrl.getHost() + ":" + connectUrl.getPort());
         if (System.getProperty("socksProxyHost",null) != null)
             log.warn("Socks proxy host is set, but socks proxy is not officially supported.");
 
-        wsSocket = createSocket(connectUrl.getHost(), connectUrl.getPort(), connectTimeout, readTimeout);
+        if (nioEngine != null) {
+            wsSocket = null;
+            nioConnection = createNioConnection(connectUrl.getHost(), connectUrl.getPort(), connectTimeout, readTimeout);
+        }
+        else {
+            nioConnection = null;
+            wsSocket = createSocket(connectUrl.getHost(), connectUrl.getPort(), connectTimeout, readTimeout);
+        }
         Map<String, String> responseHeaders = null;
         CountingOutputStream outStream = null;
         CountingInputStream inStream = null;
         PrintWriter httpWriter = null;
         try {
-            wsSocket.setSoTimeout(readTimeout);
-            socketOutputStream = wsSocket.getOutputStream();
+            setReadTimeout(readTimeout);
+            socketOutputStream = nioConnection != null? nioConnection.getOutputStream(): wsSocket.getOutputStream();
 
             String path = connectUrl.getFile();  // getFile includes path and query string
             if (path == null || !path.trim().startsWith("/"))
@@ -155,9 +219,10 @@ public class WebSocketClient {
             log.debug(    ">> GET " + (useProxy? connectUrl.toString(): path) + " HTTP/1.1");
             httpWriter.print("Host: " + connectUrl.getHost() + ":" + connectUrl.getPort() + NEW_LINE);
             log.debug(    ">> Host: " + connectUrl.getHost() + ":" + connectUrl.getPort());
+            String requestedExtensions = null;
             for (Map.Entry<String, String> header : headers.entrySet()) {
-
-                initializeStreamingInflater(header);
+                if (header.getKey().equalsIgnoreCase("Sec-WebSocket-Extensions"))
+                    requestedExtensions = header.getValue();
 
                 if (! UPGRADE_HEADERS.contains(header.getKey())) {
                     String headerLine = header.getKey() + ": " + header.getValue();
@@ -178,7 +243,7 @@ public class WebSocketClient {
             httpWriter.print("Connection: Upgrade\r\n");
             log.debug(">> Connection: Upgrade");
             byte[] nonce = new byte[16];
-            randomGenerator.nextBytes(nonce);
+            maskKeySource.nextBytes(nonce);
             String encodeNonce = new String(Base64.getEncoder().encode(nonce));
             httpWriter.print("Sec-WebSocket-Key: " + encodeNonce + NEW_LINE);
             log.debug(">> Sec-WebSocket-Key: " + encodeNonce);
@@ -188,9 +253,10 @@ public class WebSocketClient {
             log.debug(">>");
             httpWriter.flush();
             
-            socketInputStream = new BufferedInputStream(wsSocket.getInputStream());
+            socketInputStream = new BufferedInputStream(nioConnection != null? nioConnection.getInputStream(): wsSocket.getInputStream());
             inStream = new CountingInputStream(socketInputStream);
             responseHeaders = checkServerResponse(inStream, encodeNonce);
+            negotiateCompression(requestedExtensions, responseHeaders.get("Sec-WebSocket-Extensions"));
             connected = true;
             state = WebSocketState.CONNECTED;
             return new HttpResult(responseHeaders, outStream.getCount(), inStream.getCount());
@@ -200,11 +266,10 @@ public class WebSocketClient {
             	IOUtils.closeQuietly(socketInputStream);
             	IOUtils.closeQuietly(socketOutputStream);
             	IOUtils.closeQuietly(wsSocket);
+            	IOUtils.closeQuietly(nioConnection);
             	IOUtils.closeQuietly(httpWriter);
 
-                if (webSocketInflater != null) {
-                    webSocketInflater.close();
-                }
+                closeCompression();
 
                 state = WebSocketState.CLOSED;
             }
@@ -241,6 +306,46 @@ public class WebSocketClient {
         }
     }
 
+    /**
+     * Creates a connection over a non-blocking socket channel, served by the event loops of the nio engine.
+     */
+    protected NioConnection createNioConnection(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            // Connect (and setup proxy tunnel) in blocking mode, the connection will switch to non-blocking when opened.
+            Socket socket = channel.socket();
+            if (useProxy) {
+                log.debug("Using http proxy " + proxyHost + ":" + proxyPort + " for " + connectUrl);
+                setupProxyConnection(socket, connectTimeout);
+            }
+            else
+                socket.connect(new InetSocketAddress(host, port), connectTimeout);
+
+            SSLEngine sslEngine = null;
+            if ("https".equals(connectUrl.getProtocol())) {
+                JsseSSLManager sslMgr = (JsseSSLManager) SSLManager.getInstance();
+                try {
+                    sslEngine = sslMgr.getContext().createSSLEngine(host, port);
+                    sslEngine.setUseClientMode(true);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+            }
+            return NioConnection.open(channel, sslEngine, nioEngine, readTimeout);
+        }
+        catch (IOException | RuntimeException error) {
+            IOUtils.closeQuietly(channel);
+            throw error;
+        }
+    }
+
+    private void setReadTimeout(int readTimeout) throws SocketException {
+        if (nioConnection != null)
+            nioConnection.setReadTimeout(readTimeout);
+        else
+            wsSocket.setSoTimeout(readTimeout);
+    }
+
     private void setupProxyConnection(Socket socket, int connectTimeout) throws IOException {
         try {
             socket.connect(new InetSocketAddress(proxyHost, proxyPort), connectTimeout);
@@ -290,10 +395,9 @@ public class WebSocketClient {
     	IOUtils.closeQuietly(socketInputStream);
     	IOUtils.closeQuietly(socketOutputStream);
     	IOUtils.closeQuietly(wsSocket);
+    	IOUtils.closeQuietly(nioConnection);
 
-        if (webSocketInflater != null) {
-            webSocketInflater.close();
-        }
+        closeCompression();
 
     	state = WebSocketState.CLOSED;
     }
@@ -334,7 +438,7 @@ public class WebSocketClient {
         }
 
         TextFrame frame = new TextFrame(requestData);
-        socketOutputStream.write(frame.getFrameBytes());
+        writeFrame(frame);
         return frame;
     }
 
@@ -344,10 +448,207 @@ public class WebSocketClient {
         }
 
         BinaryFrame frame = new BinaryFrame(requestData);
-        socketOutputStream.write(frame.getFrameBytes());
+        writeFrame(frame);
         return frame;
     }
 
+    /**
+     * Sends a binary frame with the content of the given buffer (between position and limit) as payload; the buffer
+     * itself is not modified. A large payload (e.g. a memory mapped file) is not copied as a whole, but written after
+     * the frame header in chunks of bounded size, each masked on the way. When compression is active, the payload must
+     * be compressed as a whole, so the frame is sent as usual.
+     */
+    public BinaryFrame sendBinaryFrame(ByteBuffer requestData) throws IOException {
+        if (state != WebSocketState.CONNECTED) {
+            throw new IllegalStateException("Cannot send data frame when state is " + state);
+        }
+
+        BinaryFrame frame = new BinaryFrame(requestData);
+        if (webSocketDeflater == null && requestData.remaining() > FILE_CHUNK_SIZE)
+            writeInChunks(frame, requestData.duplicate());
+        else
+            writeFrame(frame);
+        return frame;
+    }
+
+    /**
+     * Sends the given pre-encoded frame, using the next mask key from its pool. When compression is active, frames
+     * must be compressed as part of the connection's compression context, so then the frame is encoded as usual.
+     * @return the frame that is sent
+     */
+    public DataFrame sendPreEncodedFrame(PreEncodedFrame preEncodedFrame) throws IOException {
+        if (state != WebSocketState.CONNECTED) {
+            throw new IllegalStateException("Cannot send data frame when state is " + state);
+        }
+
+        if (webSocketDeflater != null) {
+            writeFrame(preEncodedFrame.getFrame());
+        }
+        else {
+            int offset = preEncodedFrame.nextOffset();
+            if (nioConnection != null)
+                nioConnection.write(ByteBuffer.wrap(preEncodedFrame.getEncodedFrames(), offset, preEncodedFrame.getFrameSize()));
+            else
+                socketOutputStream.write(preEncodedFrame.getEncodedFrames(), offset, preEncodedFrame.getFrameSize());
+        }
+        return preEncodedFrame.getFrame();
+    }
+
+    /**
+     * Sends the given frames with one write: the frames are encoded one after another into one buffer, so a batch of
+     * small frames does not cost a system call (and, with TLS, a record) for each frame. The size of each frame is set
+     * when it is encoded; the same frame instance may occur more than once.
+     * @return the total number of bytes sent
+     */
+    public long sendFrames(List<? extends Frame> frames) throws IOException {
+        if (state != WebSocketState.CONNECTED) {
+            throw new IllegalStateException("Cannot send data frame when state is " + state);
+        }
+        for (Frame frame: frames) {
+            if (frame.isClose())
+                throw new IllegalArgumentException("Close frame cannot be sent in a batch, use sendClose");
+        }
+
+        ByteBuffer encoded = frameEncoder.encode(frames);
+        long size = encoded.remaining();
+        write(encoded);
+        return size;
+    }
+
+    /**
+     * Sends the content of the given file as one binary frame, without reading the file into memory: after the frame
+     * header, the file is streamed to the connection, masked in chunks of bounded size. With an all-zero mask key,
+     * masking does not change the payload, so the file can be written as is; on plain (non-TLS) connections using the
+     * NIO engine, it is then transferred straight from file to socket (zero-copy). Note that RFC 6455 requires mask
+     * keys to be unpredictable, so an all-zero key should only be used with servers that tolerate it.
+     * When compression is active, the payload must be compressed as a whole, so the file is sent as usual.
+     * @return a frame describing the payload that is sent
+     */
+    public BinaryFrame sendBinaryFile(Path file, boolean zeroMaskKey) throws IOException {
+        if (state != WebSocketState.CONNECTED) {
+            throw new IllegalStateException("Cannot send data frame when state is " + state);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (webSocketDeflater != null) {
+                if (size > Integer.MAX_VALUE)
+                    throw new IOException("File too large to be sent compressed: " + size + " bytes");
+                BinaryFrame frame = new BinaryFrame(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                writeFrame(frame);
+                return frame;
+            }
+
+            int maskKey = zeroMaskKey? 0: maskKeySource.nextMaskKey();
+            ByteBuffer header = frameEncoder.encodeHeader(new BinaryFrame(new byte[0]), size, maskKey);
+            int headerSize = header.remaining();
+            write(header);
+            if (maskKey == 0)
+                transferUnmasked(channel, size);
+            else
+                transferMasked(channel, size, maskKey);
+            return new BinaryFrame(true, StreamedPayload.sent(size), headerSize);
+        }
+    }
+
+    private void transferUnmasked(FileChannel file, long size) throws IOException {
+        if (nioConnection != null && !nioConnection.isSecure()) {
+            nioConnection.transferFrom(file, 0, size);
+        }
+        else {
+            WritableByteChannel target = Channels.newChannel(socketOutputStream);
+            long position = 0;
+            while (position < size) {
+                long transferred = file.transferTo(position, size - position, target);
+                if (transferred == 0)
+                    throw new EOFException("File is shorter than expected: " + file.size() + " bytes");
+                position += transferred;
+            }
+        }
+    }
+
+    private void transferMasked(FileChannel file, long size, int maskKey) throws IOException {
+        ByteBuffer chunk = chunkBuffer();
+        long position = 0;
+        while (position < size) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), size - position));
+            while (chunk.hasRemaining()) {
+                if (file.read(chunk, position + chunk.position()) < 0)
+                    throw new EOFException("File is shorter than expected: " + file.size() + " bytes");
+            }
+            Masking.mask(chunk, 0, chunk.position(), Masking.keyAtOffset(maskKey, position));
+            chunk.flip();
+            position += chunk.remaining();
+            write(chunk);
+        }
+    }
+
+    private void writeInChunks(BinaryFrame frame, ByteBuffer payload) throws IOException {
+        int size = payload.remaining();
+        int maskKey = maskKeySource.nextMaskKey();
+        ByteBuffer header = frameEncoder.encodeHeader(frame, size, maskKey);
+        int headerSize = header.remaining();
+        write(header);
+        ByteBuffer chunk = chunkBuffer();
+        long position = 0;
+        while (payload.hasRemaining()) {
+            chunk.clear();
+            ByteBuffer part = payload.duplicate();
+            part.limit(part.position() + Math.min(chunk.capacity(), part.remaining()));
+            chunk.put(part);
+            payload.position(part.position());
+            Masking.mask(chunk, 0, chunk.position(), Masking.keyAtOffset(maskKey, position));
+            chunk.flip();
+            position += chunk.remaining();
+            write(chunk);
+        }
+        frame.setSize(headerSize + size);
+    }
+
+    private ByteBuffer chunkBuffer() {
+        if (fileChunkBuffer == null || fileChunkBuffer.isDirect() != frameEncoder.isDirect())
+            fileChunkBuffer = frameEncoder.isDirect()? ByteBuffer.allocateDirect(FILE_CHUNK_SIZE): ByteBuffer.allocate(FILE_CHUNK_SIZE);
+        return fileChunkBuffer;
+    }
+
+    /**
+     * Sends a message in fragments: the payload is read from the given stream and each fragmentSize bytes read are sent
+     * as a separate frame (a text or binary frame, followed by continuation frames), as soon as they are read. Hence,
+     * the message does not need to fit in memory. As the final bit must be set before it is known whether more data
+     * will follow, a message whose size is a multiple of the fragment size is ended by an empty continuation frame.
+     * For a text message, the stream must provide UTF-8; fragment boundaries may split characters (as RFC 6455 allows).
+     * @param fragmentListener called after each fragment is sent; may be null
+     * @return the number of fragments sent
+     */
+    public int sendFragmentedMessage(boolean text, InputStream payload, int fragmentSize, Consumer<DataFrame> fragmentListener) throws IOException {
+        if (state != WebSocketState.CONNECTED) {
+            throw new IllegalStateException("Cannot send data frame when state is " + state);
+        }
+        if (fragmentSize < 1)
+            throw new IllegalArgumentException("Fragment size must be positive");
+
+        byte[] buffer = new byte[fragmentSize];
+        int count = 0;
+        boolean fin;
+        do {
+            int read = IOUtils.read(payload, buffer);
+            fin = read < fragmentSize;
+            byte[] fragmentData = Arrays.copyOf(buffer, read);
+            DataFrame fragment;
+            if (count == 0)
+                fragment = text? new TextFrame(fin, fragmentData, 0): new BinaryFrame(fin, fragmentData, 0);
+            else
+                fragment = text? new TextContinuationFrame(fin, fragmentData, 0): new BinaryContinuationFrame(fin, fragmentData, 0);
+            writeFrame(fragment);
+            count++;
+            if (fragmentListener != null)
+                fragmentListener.accept(fragment);
+        }
+        while (!fin);
+        return count;
+    }
+
     public Frame sendPingFrame() throws IOException {
         return sendPingFrame(new byte[0]);
     }
@@ -358,7 +659,7 @@ public class WebSocketClient {
         }
 
         PingFrame ping = new PingFrame(applicationData);
-        socketOutputStream.write(ping.getFrameBytes());
+        writeFrame(ping);
         return ping;
     }
 
@@ -372,7 +673,7 @@ public class WebSocketClient {
         }
 
         PongFrame pongFrame = new PongFrame(applicationData);
-        socketOutputStream.write(pongFrame.getFrameBytes());
+        writeFrame(pongFrame);
         return pongFrame;
     }
 
@@ -381,7 +682,7 @@ public class WebSocketClient {
             throw new IllegalStateException("Cannot close when state is " + state);
         }
         CloseFrame closeFrame = new CloseFrame(closeStatus, reason);
-        socketOutputStream.write(closeFrame.getFrameBytes());
+        writeFrame(closeFrame);
 
         if (state == WebSocketState.CONNECTED)
             state = WebSocketState.CLOSED_CLIENT;
@@ -407,14 +708,25 @@ public class WebSocketClient {
             throw new UnexpectedFrameException(frame);
     }
 
+    private void writeFrame(Frame frame) throws IOException {
+        write(frameEncoder.encode(frame));
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        if (nioConnection != null)
+            nioConnection.write(data);
+        else
+            socketOutputStream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+    }
+
     public Frame receiveFrame(int readTimeout) throws IOException {
         if (state != WebSocketState.CONNECTED && state != WebSocketState.CLOSED_CLIENT) {
             throw new IllegalStateException("Cannot receive data frame when state is " + state);
         }
 
-        wsSocket.setSoTimeout(readTimeout);
+        setReadTimeout(readTimeout);
 
-        Frame receivedFrame = Frame.parseFrame(lastDataFrameStatus, socketInputStream, webSocketInflater, lastFrameWasCompressed, log);
+        Frame receivedFrame = frameDecoder.decode(socketInputStream, lastDataFrameStatus, webSocketInflater, lastFrameWasCompressed, largePayloadPolicy, log);
         lastFrameWasCompressed = receivedFrame.isData() && ((DataFrame) receivedFrame).isCompressed();
         if (lastDataFrameStatus == DataFrameType.NONE && receivedFrame.isData() && !((DataFrame) receivedFrame).isFinalFragment()) {
             lastDataFrameStatus = receivedFrame.isText()? DataFrameType.TEXT: DataFrameType.BIN;
@@ -463,11 +775,128 @@ public class WebSocketClient {
             throw new UnexpectedFrameException(frame);
     }
 
-    public void initializeStreamingInflater(Map.Entry<String, String> header) {
-        if (header.getKey().contains("Sec-WebSocket-Extensions") && header.getValue().contains("permessage-deflate")) {
-            boolean serverNoContextTakeover = header.getValue().contains("server_no_context_takeover");
-            webSocketInflater = new WebSocketInflater(!serverNoContextTakeover);
+    /**
+     * Receives a complete message: a data frame and, when it is not final, all its continuation frames. The fragments
+     * are collected without copying their payload. The read timeout applies to each fragment.
+     * When reading fails after the first fragment (e.g. due to a read timeout), the fragments received so far are kept
+     * and the next call continues the same message.
+     * @throws UnexpectedFrameException when a control frame is received, or when the first frame is a continuation frame
+     */
+    public Message receiveMessage(int readTimeout) throws IOException, UnexpectedFrameException {
+        return receiveMessage(() -> receiveFrame(readTimeout));
+    }
+
+    /**
+     * Receives a complete message, reading each frame with the given reader, e.g. one that discards control frames
+     * that are sent between the fragments of a message. When the reader fails (or returns a control frame) after the
+     * first fragment, the incomplete message is kept and the next call continues it.
+     * @throws UnexpectedFrameException when the reader returns a control frame, or when the first frame is a
+     * continuation frame
+     */
+    public Message receiveMessage(FrameReader frameReader) throws IOException, UnexpectedFrameException {
+        Message message = partialMessage;
+        partialMessage = null;
+        try {
+            while (message == null || !message.isComplete()) {
+                Frame frame = frameReader.readFrame();
+                if (!frame.isData())
+                    throw new UnexpectedFrameException(frame);
+                DataFrame dataFrame = (DataFrame) frame;
+                if (message == null) {
+                    if (dataFrame.isContinuationFrame())
+                        throw new UnexpectedFrameException(frame);
+                    message = new Message(dataFrame, System.currentTimeMillis());
+                }
+                else if (!dataFrame.isContinuationFrame()) {
+                    // Only possible when the rest of the incomplete message was read frame by frame in the meantime
+                    log.warn("Discarding incomplete message of " + message.getFragmentCount() + " fragments, as a new message has started");
+                    message = new Message(dataFrame, System.currentTimeMillis());
+                }
+                else {
+                    // receiveFrame already checked that the data frame is a continuation frame of the same type
+                    message.add(dataFrame, System.currentTimeMillis());
+                }
+            }
+            return message;
+        }
+        finally {
+            if (message != null && !message.isComplete())
+                partialMessage = message;
+        }
+    }
+
+    /**
+     * @return the number of fragments of the message that is currently being received, i.e. that will be continued
+     * by the next call to {@link #receiveMessage(FrameReader)}; 0 when there is no such message
+     */
+    public int getPartialMessageFragmentCount() {
+        return partialMessage != null? partialMessage.getFragmentCount(): 0;
+    }
+
+    /**
+     * Reads one frame, see {@link #receiveMessage(FrameReader)}.
+     */
+    @FunctionalInterface
+    public interface FrameReader {
+        Frame readFrame() throws IOException;
+    }
+
+    /**
+     * Creates the compression state (RFC 7692) when, and only when, the server accepted the permessage-deflate
+     * extension that was offered in the upgrade request, using the parameters from the server response.
+     * @param requestedExtensions value of the Sec-WebSocket-Extensions request header (may be null)
+     * @param acceptedExtensions value of the Sec-WebSocket-Extensions response header (may be null)
+     * @throws HttpProtocolException when the server response contains an extension that was not offered or invalid parameters
+     */
+    void negotiateCompression(String requestedExtensions, String acceptedExtensions) throws HttpProtocolException {
+        closeCompression();
+        PerMessageDeflateParameters parameters = PerMessageDeflateParameters.parse(acceptedExtensions);
+        if (parameters == null) {
+            if (PerMessageDeflateParameters.isListed(requestedExtensions))
+                log.debug("Server did not accept permessage-deflate extension; messages will not be compressed");
+            return;
+        }
+        if (!PerMessageDeflateParameters.isListed(requestedExtensions))
+            throw new HttpProtocolException("Server accepted permessage-deflate extension that was not requested");
+
+        log.debug("Negotiated " + parameters);
+        negotiatedCompression = parameters;
+        webSocketInflater = new WebSocketInflater(!parameters.isServerNoContextTakeover());
+        if (parameters.canCompressOutgoingMessages()) {
+            webSocketDeflater = new WebSocketDeflater(!parameters.isClientNoContextTakeover());
+            frameEncoder.setDeflater(webSocketDeflater);
+        }
+        else {
+            log.debug("Outgoing messages will not be compressed, because a window size of " + parameters.getClientMaxWindowBits() + " bits is not supported");
+        }
+    }
+
+    private void closeCompression() {
+        negotiatedCompression = null;
+        if (webSocketInflater != null) {
+            webSocketInflater.close();
+            webSocketInflater = null;
         }
+        if (webSocketDeflater != null) {
+            webSocketDeflater.close();
+            webSocketDeflater = null;
+            frameEncoder.setDeflater(null);
+        }
+    }
+
+    /**
+     * @return the negotiated permessage-deflate extension (with parameters), or null if compression was not negotiated
+     */
+    public String getNegotiatedCompression() {
+        return negotiatedCompression != null? negotiatedCompression.toString(): null;
+    }
+
+    /**
+     * @return compression statistics of the last compressed message that was sent, or null if outgoing messages are not
+     * compressed
+     */
+    public CompressionStatistics getLastCompressionStatistics() {
+        return webSocketDeflater != null? webSocketDeflater.getLastMessageStatistics(): null;
     }
 
     protected Map<String, String> checkServerResponse(InputStream inputStream, String nonce) throws IOException {
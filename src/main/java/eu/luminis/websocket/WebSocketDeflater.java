@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import eu.luminis.utils.WebSocketInflaterConstants;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses outgoing messages according to the permessage-deflate extension (RFC 7692). Messages can be compressed
+ * in fragments: each fragment is compressed (and flushed) as soon as it is passed, so it can be sent in its own frame.
+ * When context takeover is disabled (client_no_context_takeover), each message is compressed with a fresh compression
+ * context; in that case, the Deflater is only borrowed from the (shared) pool for the duration of one message, so
+ * idle connections do not hold on to a Deflater (and its native memory).
+ * A deflater is meant to be owned by one connection (and thus is not thread safe).
+ */
+public class WebSocketDeflater {
+
+    private static final int INITIAL_OUTPUT_SIZE = 1024;
+
+    private final boolean contextTakeover;
+    private final DeflaterPool pool;
+    private Deflater deflater;
+    private byte[] output = new byte[INITIAL_OUTPUT_SIZE];
+    private boolean inMessage;
+    private long messageUncompressedSize;
+    private long messageCompressedSize;
+    private long messageDeflateTime;
+    private CompressionStatistics lastMessageStatistics;
+
+    /**
+     * @param contextTakeover whether the compression context is kept between messages (i.e. the negotiated extension
+     *                        parameters do not include client_no_context_takeover)
+     */
+    public WebSocketDeflater(boolean contextTakeover) {
+        this(contextTakeover, DeflaterPool.getSharedPool());
+    }
+
+    WebSocketDeflater(boolean contextTakeover, DeflaterPool pool) {
+        this.contextTakeover = contextTakeover;
+        this.pool = pool;
+    }
+
+    public boolean isContextTakeover() {
+        return contextTakeover;
+    }
+
+    /**
+     * Compresses (the next part of) a message. The compressed data is available in {@link #getOutput()} until the next
+     * call. For the final fragment, the compressed data does not end with the empty deflate block (0x00 0x00 0xff 0xff),
+     * as required by RFC 7692 section 7.2.1.
+     * @param finalFragment whether this is the last part of the message
+     * @return the length of the compressed data
+     */
+    public int compress(byte[] data, int offset, int length, boolean finalFragment) {
+        long start = System.nanoTime();
+        if (!inMessage) {
+            inMessage = true;
+            messageUncompressedSize = 0;
+            messageCompressedSize = 0;
+            messageDeflateTime = 0;
+        }
+        if (deflater == null)
+            deflater = pool.borrow();
+
+        deflater.setInput(data, offset, length);
+        int outputLength = 0;
+        while (true) {
+            // With SYNC_FLUSH, all input is compressed and flushed when the output does not fill the available space.
+            outputLength += deflater.deflate(output, outputLength, output.length - outputLength, Deflater.SYNC_FLUSH);
+            if (outputLength < output.length)
+                break;
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+        if (finalFragment && endsWithEmptyBlock(outputLength))
+            outputLength -= WebSocketInflaterConstants.FRAME_TAIL.length;
+
+        messageUncompressedSize += length;
+        messageCompressedSize += outputLength;
+        messageDeflateTime += System.nanoTime() - start;
+        if (finalFragment) {
+            inMessage = false;
+            lastMessageStatistics = new CompressionStatistics(messageUncompressedSize, messageCompressedSize, messageDeflateTime);
+            if (!contextTakeover) {
+                pool.release(deflater);
+                deflater = null;
+            }
+        }
+        return outputLength;
+    }
+
+    /**
+     * @return the buffer containing the result of the last compress call
+     */
+    public byte[] getOutput() {
+        return output;
+    }
+
+    /**
+     * @return statistics of the last message that was compressed completely, or null if none
+     */
+    public CompressionStatistics getLastMessageStatistics() {
+        return lastMessageStatistics;
+    }
+
+    /**
+     * @return whether this deflater currently holds a Deflater instance
+     */
+    boolean holdsDeflater() {
+        return deflater != null;
+    }
+
+    /**
+     * Releases the resources held by this deflater.
+     */
+    public void close() {
+        if (deflater != null) {
+            pool.release(deflater);
+            deflater = null;
+        }
+        inMessage = false;
+    }
+
+    private boolean endsWithEmptyBlock(int length) {
+        byte[] tail = WebSocketInflaterConstants.FRAME_TAIL;
+        if (length < tail.length)
+            return false;
+        for (int i = 0; i < tail.length; i++)
+            if (output[length - tail.length + i] != tail[i])
+                return false;
+        return true;
+    }
+}
@@ -19,121 +19,141 @@ package eu.luminis.websocket;
 import eu.luminis.utils.WebSocketInflaterConstants;
 import org.apache.log.Logger;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 /**
  * Class with logic to decompress websocket messages.
+ * Each frame of a compressed message is inflated as soon as it arrives, into a reusable output buffer, so (continuation)
+ * frames carry their actual decompressed data and the compressed message never needs to be collected in memory.
+ * When no decompression context is kept between messages (server_no_context_takeover), the inflater and its output
+ * buffer are only borrowed from a (shared) pool for the duration of one message, so idle connections do not hold on to
+ * an Inflater (and its native memory).
+ * An inflater is meant to be owned by one connection (and thus is not thread safe).
  */
 public class WebSocketInflater {
 
-    private final Inflater inflater;
     private final boolean contextDecompressionEnabled;
-    private final ByteArrayOutputStream compressedMessageData;
-    private final ByteArrayOutputStream decompressedMessageData;
+    private final InflaterPool pool;
+    private InflaterPool.Entry entry;
 
     public WebSocketInflater(boolean contextDecompressionEnabled) {
+        this(contextDecompressionEnabled, InflaterPool.getSharedPool());
+    }
+
+    WebSocketInflater(boolean contextDecompressionEnabled, InflaterPool pool) {
         // Condition whether message compressed with context or not.
         this.contextDecompressionEnabled = contextDecompressionEnabled;
-
-        inflater = new Inflater(true);
-
-        this.compressedMessageData = new ByteArrayOutputStream();
-        this.decompressedMessageData = new ByteArrayOutputStream();
+        if (contextDecompressionEnabled) {
+            // Context is needed for the lifetime of the connection
+            this.pool = null;
+            this.entry = new InflaterPool.Entry(new Inflater(true));
+        }
+        else {
+            this.pool = pool;
+        }
     }
 
     // For testing purposes only
-    protected WebSocketInflater(Inflater inflater,
-                             boolean contextDecompressionEnabled,
-                             ByteArrayOutputStream compressedMessageData,
-                             ByteArrayOutputStream decompressedMessageData) {
-
-        this.inflater = inflater;
-
-        // Condition whether message compressed with context or not.
+    protected WebSocketInflater(Inflater inflater, boolean contextDecompressionEnabled) {
         this.contextDecompressionEnabled = contextDecompressionEnabled;
-
-        this.compressedMessageData = compressedMessageData;
-        this.decompressedMessageData = decompressedMessageData;
+        this.pool = null;
+        this.entry = new InflaterPool.Entry(inflater);
     }
 
     /**
-     * Append compressed data into dynamic output stream.
-     *
-     * @param compressedData - frame's compressed data.
-     * @param fin            - condition whether frame is final or not.
-     * @param logger         - logger to log information.
+     * @return statistics of the shared pool of inflaters used by connections without decompression context
      */
-    public void appendCompressedData(byte[] compressedData, boolean fin, Logger logger) {
-        try {
-            compressedMessageData.write(compressedData);
-
-            if (fin && contextDecompressionEnabled) {
-                //In case with compression within LZ77 Sliding window(without header "server_no_context_takeover")
-                //it is needed to append 4 octets(FRAME_TAIL) to the tail end of the payload of the message
-                //to correctly decompress the message.
-                compressedMessageData.write(WebSocketInflaterConstants.FRAME_TAIL);
-                logger.debug("compressed payload size: " + compressedMessageData.size());
-            }
-
-        } catch (IOException e) {
-            logger.info("Failed to write(collect) compressed data to output stream", e);
-            throw new RuntimeException(e);
-        }
+    public static String getPoolStatistics() {
+        return InflaterPool.getSharedPool().toString();
     }
 
     /**
-     * Decompress completed compressed frame's message data which was collected in output stream.
-     * In case with header "server_no_context_takeover" it is needed to reset inflater
-     * to correctly decompress each message without context.
+     * Decompresses the payload of the next frame of a compressed message.
      *
-     * @param logger - logger to log information.
-     * @return decompressed message.
+     * @param compressedData - frame's compressed data.
+     * @param fin            - condition whether frame is final or not.
+     * @param logger         - logger to log information.
+     * @return decompressed data of this frame.
      */
-    public byte[] decompressNextMessage(Logger logger) {
-        decompressedMessageData.reset();
-
-        inflater.setInput(compressedMessageData.toByteArray());
-
-        byte[] buffer = new byte[1024];
-
+    public byte[] decompressFrame(byte[] compressedData, boolean fin, Logger logger) {
+        if (entry == null)
+            entry = pool.borrow();
+        Inflater inflater = entry.inflater;
         try {
-            do {
-                int count = inflater.inflate(buffer);
-                decompressedMessageData.write(buffer, 0, count);
+            inflater.setInput(compressedData);
+            int length = inflateAvailableInput(0);
+            if (fin) {
+                // The sender removed the 4 octets (FRAME_TAIL) of the empty block that terminates the message (RFC 7692
+                // section 7.2.2); they must be appended to decompress the message completely.
+                inflater.setInput(WebSocketInflaterConstants.FRAME_TAIL);
+                length = inflateAvailableInput(length);
             }
-            while (inflater.getRemaining() > 0);
-
+            logger.debug("decompressed " + compressedData.length + " bytes of compressed payload into " + length + " bytes");
+            byte[] decompressed = Arrays.copyOf(entry.output, length);
+            if (fin)
+                endOfMessage();
+            else
+                entry.trimOutput();
+            return decompressed;
         }
         catch (DataFormatException e) {
             logger.info("Compressed data format is not valid", e);
             inflater.reset();
+            endOfMessage();
             throw new RuntimeException(e);
         }
+    }
 
-        if (!contextDecompressionEnabled) {
-            //In case without using LZ77 Sliding window compression(with header "server_no_context_takeover")
-            //it is needed to reset inflater to clean up previous message context.
-            inflater.reset();
+    private void endOfMessage() {
+        if (pool != null) {
+            pool.release(entry);
+            entry = null;
         }
+        else {
+            if (!contextDecompressionEnabled || entry.inflater.finished()) {
+                // In case without using LZ77 Sliding window compression(with header "server_no_context_takeover")
+                // it is needed to reset inflater to clean up previous message context.
+                entry.inflater.reset();
+            }
+            entry.trimOutput();
+        }
+    }
 
-        compressedMessageData.reset(); //Allow to overwrite previous compressed message data by new data
+    private int inflateAvailableInput(int length) throws DataFormatException {
+        while (true) {
+            if (length == entry.output.length)
+                entry.output = Arrays.copyOf(entry.output, entry.output.length * 2);
+            int count = entry.inflater.inflate(entry.output, length, entry.output.length - length);
+            length += count;
+            if (count == 0) {
+                // Output buffer has space left, so inflater cannot make progress without more input
+                if (entry.inflater.needsInput() || entry.inflater.finished())
+                    return length;
+                if (entry.inflater.needsDictionary())
+                    throw new DataFormatException("preset dictionary not supported");
+            }
+        }
+    }
 
-        return decompressedMessageData.toByteArray();
+    /**
+     * @return whether this inflater currently holds an Inflater instance
+     */
+    boolean holdsInflater() {
+        return entry != null;
     }
 
     /**
      * Close WebSocketInflater resources.
      */
     public void close() {
-        inflater.end();
-        try {
-            compressedMessageData.close();
-            decompressedMessageData.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if (entry != null) {
+            if (pool != null)
+                pool.release(entry);
+            else
+                entry.inflater.end();
+            entry = null;
         }
     }
 }
@@ -20,9 +20,12 @@ package eu.luminis.jmeter.assertions;
 
 import org.apache.jmeter.assertions.AssertionResult;
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.file.Files;
+
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -218,6 +221,77 @@ public class BinaryContentAssertionTest {
         assertFalse(assertion.getResult(sampleResult));
     }
 
+    @Test
+    public void responseMatchesPatternWithWildcardAndMask() {
+        BinaryContentAssertion assertion = new BinaryContentAssertion();
+        assertion.setComparisonType(BinaryContentAssertion.ComparisonType.StartsWith);
+        assertion.setComparisonValue("0xca ?? 0xb0&0xf0");
+
+        SampleResult sampleResult = mock(SampleResult.class);
+        when(sampleResult.getResponseData()).thenReturn(CAFE_BABE);
+
+        assertTrue(assertion.getResult(sampleResult));
+    }
+
+    @Test
+    public void responseDoesNotContainPattern() {
+        BinaryContentAssertion assertion = new BinaryContentAssertion();
+        assertion.setComparisonType(BinaryContentAssertion.ComparisonType.Contains);
+        assertion.setComparisonValue("0xfe [2]=0x0?");
+
+        SampleResult sampleResult = mock(SampleResult.class);
+        when(sampleResult.getResponseData()).thenReturn(CAFE_BABE);
+
+        AssertionResult result = assertion.getResult(sampleResult);
+        assertFalse(result);
+        Assert.assertTrue(result.getFailureMessage().startsWith("Response expected to contain pattern 0xfe [2]=0x0?"));
+    }
+
+    @Test
+    public void failureMessageOfLargeResponseIsCapped() throws Exception {
+        JMeterUtils.loadJMeterProperties(Files.createTempFile("empty", ".props").toString());
+        JMeterUtils.setProperty(BinaryContentAssertion.FAILURE_PREVIEW_SIZE_PROPERTY, "4");
+        try {
+            BinaryContentAssertion assertion = new BinaryContentAssertion();
+            assertion.setComparisonType(BinaryContentAssertion.ComparisonType.Contains);
+            assertion.setComparisonValue("0x01 0x02");
+
+            SampleResult sampleResult = mock(SampleResult.class);
+            when(sampleResult.getResponseData()).thenReturn(new byte[1024 * 1024]);
+
+            AssertionResult result = assertion.getResult(sampleResult);
+            Assert.assertEquals("Response expected to contain 0x01 0x02\nResponse was: 0x00 0x00 0x00 0x00 ... (1048576 bytes)", result.getFailureMessage());
+        }
+        finally {
+            JMeterUtils.getJMeterProperties().remove(BinaryContentAssertion.FAILURE_PREVIEW_SIZE_PROPERTY);
+        }
+    }
+
+    @Test
+    public void changedComparisonValueIsUsedForNextSample() {
+        BinaryContentAssertion assertion = new BinaryContentAssertion();
+        assertion.setComparisonType(BinaryContentAssertion.ComparisonType.StartsWith);
+        SampleResult sampleResult = mock(SampleResult.class);
+        when(sampleResult.getResponseData()).thenReturn(CAFE_BABE);
+
+        assertion.setComparisonValue("cafe");
+        assertTrue(assertion.getResult(sampleResult));
+        assertion.setComparisonValue("babe");
+        assertFalse(assertion.getResult(sampleResult));
+    }
+
+    @Test
+    public void valueLongerThanResponseDoesNotStartResponse() {
+        BinaryContentAssertion assertion = new BinaryContentAssertion();
+        assertion.setComparisonType(BinaryContentAssertion.ComparisonType.StartsWith);
+        assertion.setComparisonValue("cafebabe00");
+
+        SampleResult sampleResult = mock(SampleResult.class);
+        when(sampleResult.getResponseData()).thenReturn(CAFE_BABE);
+
+        assertFalse(assertion.getResult(sampleResult));
+    }
+
     private void assertTrue(AssertionResult assertionResult) {
         Assert.assertFalse(assertionResult.isFailure());
         Assert.assertFalse(assertionResult.isError());
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.assertions;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.Test;
+
+import static eu.luminis.jmeter.assertions.TextPatternsAssertion.ComparisonType.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TextPatternsAssertionTest {
+
+    @Test
+    public void responseContainingOneOfTheTextsPassesContainsAny() {
+        TextPatternsAssertion assertion = createAssertion(ContainsAny, "error\nquote\n");
+
+        assertFalse(assertion.getResult(textResult("{\"type\": \"quote\"}")).isFailure());
+    }
+
+    @Test
+    public void responseContainingNoneOfTheTextsFailsContainsAny() {
+        TextPatternsAssertion assertion = createAssertion(ContainsAny, "error\nquote");
+
+        AssertionResult result = assertion.getResult(textResult("{\"type\": \"ack\"}"));
+        assertTrue(result.isFailure());
+        assertEquals("Response expected to contain any of 'error', 'quote'", result.getFailureMessage());
+    }
+
+    @Test
+    public void failureOfContainsAllMentionsMissingTexts() {
+        TextPatternsAssertion assertion = createAssertion(ContainsAll, "id\nprice\nvolume");
+
+        AssertionResult result = assertion.getResult(textResult("{\"id\": 1, \"price\": 3.14}"));
+        assertTrue(result.isFailure());
+        assertEquals("Response expected to contain all of 'id', 'price', 'volume', but does not contain 'volume'", result.getFailureMessage());
+    }
+
+    @Test
+    public void responseContainingOneOfTheTextsFailsNotContainsAny() {
+        TextPatternsAssertion assertion = createAssertion(NotContainsAny, "error\nexception");
+
+        AssertionResult result = assertion.getResult(textResult("internal server error"));
+        assertTrue(result.isFailure());
+        assertEquals("Response expected not to contain any of 'error', 'exception', but contains 'error'", result.getFailureMessage());
+    }
+
+    @Test
+    public void responseMissingOneOfTheTextsPassesNotContainsAll() {
+        TextPatternsAssertion assertion = createAssertion(NotContainsAll, "a\nb");
+
+        assertFalse(assertion.getResult(textResult("only a")).isFailure());
+        assertTrue(assertion.getResult(textResult("a and b")).isFailure());
+    }
+
+    @Test
+    public void nonAsciiTextsAreFound() {
+        TextPatternsAssertion assertion = createAssertion(ContainsAll, "gr\u00f6\u00dfe\n\u20ac");
+
+        assertFalse(assertion.getResult(textResult("gr\u00f6\u00dfe: 3\u20ac")).isFailure());
+    }
+
+    @Test
+    public void hitCountsAreAvailablePerText() {
+        TextPatternsAssertion assertion = createAssertion(ContainsAll, "a\nb\nc");
+        assertion.getResult(textResult("a b"));
+        assertion.getResult(textResult("b c"));
+
+        assertArrayEquals(new long[] { 1, 2, 1 }, assertion.getPatternHitCounts());
+    }
+
+    @Test
+    public void hitCountsAreAvailableAsVariables() {
+        JMeterVariables variables = new JMeterVariables();
+        JMeterContextService.getContext().setVariables(variables);
+        TextPatternsAssertion assertion = createAssertion(ContainsAny, "a\nb");
+        assertion.setName("check");
+        assertion.getResult(textResult("b"));
+
+        assertEquals("0", variables.get("check_hits_1"));
+        assertEquals("1", variables.get("check_hits_2"));
+        assertEquals("'a': 0, 'b': 1", variables.get("check_hits"));
+    }
+
+    private static TextPatternsAssertion createAssertion(TextPatternsAssertion.ComparisonType type, String patterns) {
+        TextPatternsAssertion assertion = new TextPatternsAssertion();
+        assertion.setComparisonType(type);
+        assertion.setPatterns(patterns);
+        return assertion;
+    }
+
+    private static SampleResult textResult(String text) {
+        SampleResult result = new SampleResult();
+        result.setResponseData(text, "UTF-8");
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AhoCorasickMatcherTest {
+
+    @Test
+    public void findsPatternThatIsSuffixOfOtherPattern() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.forText(Arrays.asList("he", "she", "his", "hers"));
+
+        byte[] data = bytes("ushers");
+        boolean[] found = new boolean[4];
+        assertEquals(3, matcher.findAll(data, 0, data.length, found));
+        assertArrayEquals(new boolean[] { true, true, false, true }, found);
+    }
+
+    @Test
+    public void findAnyReturnsPatternThatEndsFirst() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.forText(Arrays.asList("world", "hello", "lo"));
+
+        byte[] data = bytes("hello world");
+        assertEquals(1, matcher.findAny(data, 0, data.length));
+        assertArrayEquals(new long[] { 0, 1, 0 }, matcher.getHitCounts());
+    }
+
+    @Test
+    public void findAnyReturnsMinusOneWhenNothingMatches() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.forText(Arrays.asList("abc", "bcd"));
+
+        byte[] data = bytes("abxbcxcd");
+        assertEquals(-1, matcher.findAny(data, 0, data.length));
+    }
+
+    @Test
+    public void searchIsLimitedToGivenRange() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.forText(Arrays.asList("abc"));
+
+        byte[] data = bytes("xabcx");
+        assertEquals(-1, matcher.findAny(data, 2, 3));
+        assertEquals(0, matcher.findAny(data, 1, 3));
+    }
+
+    @Test
+    public void hitCountsCountSearchesNotOccurrences() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.forText(Arrays.asList("a", "b"));
+
+        boolean[] found = new boolean[2];
+        matcher.findAll(bytes("aaaa"), 0, 4, found);
+        matcher.findAll(bytes("abab"), 0, 4, found);
+        assertArrayEquals(new long[] { 2, 1 }, matcher.getHitCounts());
+    }
+
+    @Test
+    public void patternWithLoneSurrogateNeverMatches() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.forText(Arrays.asList("a\uD83D", "b"));
+
+        byte[] data = "a\uD83D b".getBytes(StandardCharsets.UTF_8);
+        boolean[] found = new boolean[2];
+        assertEquals(1, matcher.findAll(data, 0, data.length, found));
+        assertFalse(found[0]);
+        assertTrue(found[1]);
+    }
+
+    @Test
+    public void parsePatternLinesIgnoresEmptyLines() {
+        assertEquals(Arrays.asList("one", "two"), AhoCorasickMatcher.parsePatternLines("one\r\n\ntwo\n"));
+    }
+
+    @Test
+    public void findAllGivesSameResultAsIndividualSearches() {
+        Random random = new Random(17);
+        for (int run = 0; run < 100; run++) {
+            byte[][] patterns = new byte[1 + random.nextInt(10)][];
+            for (int i = 0; i < patterns.length; i++)
+                patterns[i] = randomBytes(random, 1 + random.nextInt(4));
+            String[] names = new String[patterns.length];
+            Arrays.fill(names, "");
+            AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList(patterns), Arrays.asList(names));
+            byte[] data = randomBytes(random, random.nextInt(200));
+
+            boolean[] found = new boolean[patterns.length];
+            matcher.findAll(data, 0, data.length, found);
+            for (int i = 0; i < patterns.length; i++)
+                assertEquals(BinaryUtils.contains(data, patterns[i]), found[i]);
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) ('a' + random.nextInt(3));
+        return data;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.MockWebSocketClientCreator;
+import eu.luminis.websocket.WebSocketClient;
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchWriteWebSocketSamplerTest {
+
+    private MockWebSocketClientCreator mocker = new MockWebSocketClientCreator();
+
+    @Test
+    public void textFramesContainFrameNumber() {
+        ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        BatchWriteWebSocketSampler sampler = createSampler(outputBuffer);
+        sampler.setType(DataPayloadType.Text);
+        sampler.setRequestData("message {{frame}}");
+        sampler.setFrameCount("3");
+
+        SampleResult result = sampler.sample(null);
+        assertTrue(result.isSuccessful());
+        List<byte[]> payloads = readFrames(outputBuffer, 0x81);
+        assertThat(payloads).hasSize(3);
+        assertEquals("message 1", new String(payloads.get(0)));
+        assertEquals("message 3", new String(payloads.get(2)));
+        assertEquals(3 * (6 + 9), result.getSentBytes());
+        assertThat(result.getSamplerData()).contains("Sent 3 frames (45 bytes) with one write");
+    }
+
+    @Test
+    public void binaryDataIsSentInEachFrame() {
+        ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        BatchWriteWebSocketSampler sampler = createSampler(outputBuffer);
+        sampler.setType(DataPayloadType.Binary);
+        sampler.setRequestData("0xca 0xfe");
+        sampler.setFrameCount("2");
+
+        SampleResult result = sampler.sample(null);
+        assertTrue(result.isSuccessful());
+        List<byte[]> payloads = readFrames(outputBuffer, 0x82);
+        assertThat(payloads).hasSize(2);
+        assertArrayEquals(new byte[] { (byte) 0xca, (byte) 0xfe }, payloads.get(0));
+        assertArrayEquals(new byte[] { (byte) 0xca, (byte) 0xfe }, payloads.get(1));
+    }
+
+    @Test
+    public void invalidFrameCountShouldFailSample() {
+        BatchWriteWebSocketSampler sampler = new BatchWriteWebSocketSampler();
+        sampler.setRequestData("data");
+        sampler.setFrameCount("0");
+
+        SampleResult result = sampler.sample(null);
+        assertFalse(result.isSuccessful());
+        assertThat(result.getResponseMessage()).contains("Number of frames '0' is not valid");
+    }
+
+    @Test
+    public void batchLargerThanMaximumShouldFailSample() {
+        ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        BatchWriteWebSocketSampler sampler = createSampler(outputBuffer);
+        sampler.setType(DataPayloadType.Text);
+        sampler.setRequestData(new String(new char[3000]).replace('\0', 'x'));
+        sampler.setFrameCount("" + BatchWriteWebSocketSampler.MAX_FRAME_COUNT);
+
+        SampleResult result = sampler.sample(null);
+        assertFalse(result.isSuccessful());
+        assertEquals("Sampler Error", result.getResponseCode());
+        assertThat(result.getResponseMessage()).contains("Batch of 100000 frames is too large");
+    }
+
+    private BatchWriteWebSocketSampler createSampler(ByteArrayOutputStream outputBuffer) {
+        String serverResponse = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n\r\n";
+        BatchWriteWebSocketSampler sampler = new BatchWriteWebSocketSampler() {
+            @Override
+            protected WebSocketClient prepareWebSocketClient(SampleResult result) {
+                try {
+                    return mocker.createMockWebSocketClientWithResponse(outputBuffer, serverResponse.getBytes());
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException();
+                }
+            }
+        };
+        sampler.setCreateNewConnection(true);
+        return sampler;
+    }
+
+    /**
+     * Reads the (small, masked) frames written after the upgrade request.
+     */
+    private static List<byte[]> readFrames(ByteArrayOutputStream outputBuffer, int expectedFirstByte) {
+        String written = new String(outputBuffer.toByteArray(), StandardCharsets.ISO_8859_1);
+        ByteBuffer frames = ByteBuffer.wrap(outputBuffer.toByteArray());
+        frames.position(written.indexOf("\r\n\r\n") + 4);
+        List<byte[]> payloads = new ArrayList<>();
+        while (frames.hasRemaining()) {
+            assertEquals(expectedFirstByte, frames.get() & 0xff);
+            byte[] payload = new byte[frames.get() & 0x7f];
+            byte[] mask = new byte[4];
+            frames.get(mask);
+            frames.get(payload);
+            for (int i = 0; i < payload.length; i++)
+                payload[i] ^= mask[i % 4];
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BinaryDataCacheTest {
+
+    @Test
+    public void sameDataIsParsedOnlyOnce() {
+        BinaryDataCache cache = new BinaryDataCache();
+        byte[] first = cache.get("cafe babe");
+        byte[] second = cache.get(new String("cafe babe"));
+
+        assertArrayEquals(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe }, first);
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        BinaryDataCache cache = new BinaryDataCache();
+        byte[] first = cache.get("0x00");
+        byte[] second = cache.get("0x01");
+        for (int i = 2; i < BinaryDataCache.MAX_ENTRIES; i++)
+            cache.get(String.format("0x%02x", i));
+        cache.get("0x00");  // Now most recently used, so 0x01 is least recently used
+        cache.get("0xff");
+
+        assertEquals(BinaryDataCache.MAX_ENTRIES, cache.size());
+        assertThat(cache.get("0x00")).isSameAs(first);
+        assertThat(cache.get("0x01")).isNotSameAs(second);  // Was evicted, so parsed again
+    }
+
+    @Test
+    public void totalSizeOfCachedDataIsLimited() {
+        BinaryDataCache cache = new BinaryDataCache();
+        // Each entry takes (about) half the cache: n bytes, plus 2 * 2n bytes for the hex string key
+        int byteCount = BinaryDataCache.MAX_CACHED_BYTES / 10;
+        String data = hexString(byteCount);
+        cache.get(data);
+        cache.get(data + "00");
+        cache.get("0x01");
+
+        assertEquals(2, cache.size());
+        assertEquals((byteCount + 1) + 2 * (2 * byteCount + 2) + 1 + 2 * 4, cache.getCachedBytes());
+    }
+
+    @Test
+    public void sizeOfKeyCountsTowardsLimit() {
+        BinaryDataCache cache = new BinaryDataCache();
+        // Data itself is well below the limit, but its (spaced) hex string is not
+        cache.get(hexString(BinaryDataCache.MAX_CACHED_BYTES / 4).replace("ab", "ab "));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void dataLargerThanLimitIsNotCached() {
+        BinaryDataCache cache = new BinaryDataCache();
+        cache.get(hexString(BinaryDataCache.MAX_CACHED_BYTES + 1));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidDataIsNotCached() {
+        BinaryDataCache cache = new BinaryDataCache();
+        try {
+            cache.get("0xzz");
+        }
+        finally {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    private static String hexString(int byteCount) {
+        StringBuilder builder = new StringBuilder(byteCount * 2);
+        for (int i = 0; i < byteCount; i++)
+            builder.append("ab");
+        return builder.toString();
+    }
+}
@@ -21,6 +21,7 @@ package eu.luminis.jmeter.wssampler;
 
 import eu.luminis.websocket.BinaryFrame;
 import eu.luminis.websocket.EndOfStreamException;
+import eu.luminis.websocket.Frame;
 import eu.luminis.websocket.MockWebSocketClientCreator;
 import eu.luminis.websocket.WebSocketClient;
 import org.apache.jmeter.samplers.SampleResult;
@@ -354,4 +355,38 @@ public class BinaryFrameFilterTest {
         assertTrue(BinaryFrameFilter.equalBytes(new byte[] { 0x63, 0x5f, (byte) 0xa3, 0x00, 0x46 }, 1, new byte[] { 0x5f, (byte) 0xa3, 0x00, (byte) 0x86 }, 0, 3));
     }
 
+    @Test
+    public void patternFilterDiscardsFrameWithMaskedTypeFieldAndLength() throws IOException {
+        byte[] message = new byte[] { 0x01, 0x00, 0x00, 0x42, 0x00, 0x00, 0x00, 0x00, 0x50, (byte) 0xff, 0x00 };
+        byte[] otherType = new byte[] { 0x01, 0x00, 0x00, 0x52, 0x00, 0x00, 0x00, 0x00, 0x50, (byte) 0xff, 0x00 };
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] { new BinaryFrame(message), new BinaryFrame(otherType) });
+
+        BinaryFrameFilter binaryFrameFilter = new BinaryFrameFilter(StartsWith);
+        binaryFrameFilter.setMatchValue("0x01 ?? [3]=0x4? [8]=0x00ff&0x0fff");
+
+        assertArrayEquals(otherType, ((BinaryFrame) binaryFrameFilter.receiveFrame(wsClient, 1000, result)).getBinaryData());
+    }
+
+    @Test
+    public void patternFilterWithPositionOnlyMatchesAtThatPosition() throws IOException {
+        byte[] frame1 = new byte[] { 0x0a, 0x0b, 0x0c };
+        byte[] frame2 = new byte[] { 0x00, 0x0a, 0x0b };
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] { new BinaryFrame(frame1), new BinaryFrame(frame2) });
+
+        BinaryFrameFilter binaryFrameFilter = new BinaryFrameFilter(Contains);
+        binaryFrameFilter.setMatchValue("0x0a ??");
+        binaryFrameFilter.setMatchPosition("1");
+
+        assertArrayEquals(frame1, ((BinaryFrame) binaryFrameFilter.receiveFrame(wsClient, 1000, result)).getBinaryData());
+    }
+
+    @Test
+    public void invalidPatternFiltersNothing() throws IOException {
+        WebSocketClient wsClient = mocker.createSingleFrameClient(new BinaryFrame(new byte[] { 0x01, 0x02 }));
+
+        BinaryFrameFilter binaryFrameFilter = new BinaryFrameFilter(Contains);
+        binaryFrameFilter.setMatchValue("0x01 [x]=??");
+
+        assertTrue(binaryFrameFilter.receiveFrame(wsClient, 1000, result).isBinary());
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryPatternTest {
+
+    private static final byte[] DATA = new byte[] { 0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xab, (byte) 0xcd, (byte) 0xef };
+
+    @Test
+    public void literalPatternMatchesSameBytes() {
+        BinaryPattern pattern = BinaryPattern.compile("0x01 2345 0x67");
+
+        assertTrue(pattern.isLiteral());
+        assertEquals(4, pattern.length());
+        assertTrue(pattern.matchesStart(DATA));
+    }
+
+    @Test
+    public void wildcardMatchesAnyByte() {
+        BinaryPattern pattern = BinaryPattern.compile("0x01 ?? 0x45");
+
+        assertFalse(pattern.isLiteral());
+        assertTrue(pattern.matchesStart(DATA));
+        assertTrue(pattern.matchesStart(new byte[] { 0x01, 0x00, 0x45 }));
+        assertFalse(pattern.matchesStart(new byte[] { 0x01, 0x00, 0x46 }));
+    }
+
+    @Test
+    public void nibbleWildcardMatchesOnlyOtherNibble() {
+        assertTrue(BinaryPattern.compile("0x?3").matchesAt(DATA, 1));
+        assertTrue(BinaryPattern.compile("2?").matchesAt(DATA, 1));
+        assertFalse(BinaryPattern.compile("3?").matchesAt(DATA, 1));
+    }
+
+    @Test
+    public void maskIsAppliedBeforeComparing() {
+        BinaryPattern pattern = BinaryPattern.compile("0x0060&0x00f0");
+
+        assertTrue(pattern.matchesAt(DATA, 2));
+        assertFalse(pattern.matchesAt(DATA, 1));
+    }
+
+    @Test
+    public void offsetPositionsElementRelativeToStartOfPattern() {
+        BinaryPattern pattern = BinaryPattern.compile("0x01 [6]=0xcd 0xef");
+
+        assertEquals(8, pattern.length());
+        assertTrue(pattern.matchesExactly(DATA));
+        assertFalse(pattern.matchesExactly(new byte[] { 0x01, 0, 0, 0, 0, 0, (byte) 0xcd, 0x00 }));
+    }
+
+    @Test
+    public void indexOfFindsFirstMatch() {
+        BinaryPattern pattern = BinaryPattern.compile("?? 0x?b");
+
+        assertEquals(4, pattern.indexOf(DATA));
+        assertTrue(BinaryPattern.compile("0x?f").matchesEnd(DATA));
+        assertEquals(-1, BinaryPattern.compile("0x01 ?? 0x46").indexOf(DATA));
+    }
+
+    @Test
+    public void patternLongerThanDataDoesNotMatch() {
+        BinaryPattern pattern = BinaryPattern.compile("[10]=??");
+
+        assertFalse(pattern.matchesStart(DATA));
+        assertEquals(-1, pattern.indexOf(DATA));
+    }
+
+    @Test
+    public void indexOfFindsMatchAfterCandidatesThatDoNotMatch() {
+        byte[] data = new byte[] { 0x0a, 0x0b, 0x01, 0x0a, 0x0b, 0x02, 0x0a, 0x0b, 0x03, 0x0c };
+        BinaryPattern pattern = BinaryPattern.compile("0x0a0b ?? 0x0c");
+
+        assertEquals(6, pattern.indexOf(data));
+        assertEquals(-1, BinaryPattern.compile("0x0a0b [3]=0x0d").indexOf(data));
+        assertEquals(8, BinaryPattern.compile("?? 0x03 0x0c").indexOf(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x03, 0x0c }));
+    }
+
+    @Test
+    public void offsetWithLargePositionDoesNotMatch() {
+        BinaryPattern pattern = BinaryPattern.compile("[2147483646]=01");
+
+        assertFalse(pattern.matchesAt(DATA, 5));
+        assertEquals(-1, pattern.indexOf(DATA));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offsetWhoseEndOverflowsIsRejected() {
+        BinaryPattern.compile("[2147483647]=01");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offsetLargerThanIntIsRejected() {
+        BinaryPattern.compile("[99999999999999999999]=01");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maskMustHaveSameLengthAsValue() {
+        BinaryPattern.compile("0x0102&0xff");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidElementIsRejected() {
+        BinaryPattern.compile("0x01 [3]0x02");
+    }
+
+    @Test
+    public void plainValuesAreNotPatterns() {
+        assertFalse(BinaryPattern.isPattern("0xca 0xfe babe"));
+        assertTrue(BinaryPattern.isPattern("0xca ??"));
+        assertTrue(BinaryPattern.isPattern("[2]=0xba"));
+    }
+}
@@ -20,6 +20,8 @@ package eu.luminis.jmeter.wssampler;
 
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class BinaryUtilsTest {
@@ -180,6 +182,29 @@ public class BinaryUtilsTest {
                             + "0020  3e 3f 40 41 42 43 44 45  46 47 48 49              >?@ABCDE FGHI\n", formattedBin);
     }
 
+    @Test
+    public void testBinaryTableWithAsciiAndPartialRowOfEightBytes() {
+        byte[] data = new byte[24];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (0x41 + i);
+
+        String formattedBin = test.formatBinaryInTable(data, 16, true, true);
+        assertEquals("0000  41 42 43 44 45 46 47 48  49 4a 4b 4c 4d 4e 4f 50  ABCDEFGH IJKLMNOP\n"
+                + "0010  51 52 53 54 55 56 57 58                           QRSTUVWX\n", formattedBin);
+    }
+
+    @Test
+    public void binaryTableOfPartOfDataShowsAbsoluteAddresses() {
+        byte[] data = new byte[0x10020];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        StringBuilder builder = new StringBuilder();
+        test.appendBinaryTable(builder, data, 0xfff0, 0x20, 16, true, false);
+        assertEquals("fff0  f0 f1 f2 f3 f4 f5 f6 f7  f8 f9 fa fb fc fd fe ff\n"
+                + "10000  00 01 02 03 04 05 06 07  08 09 0a 0b 0c 0d 0e 0f\n", builder.toString());
+    }
+
     @Test
     public void testBinaryTableNoAddress() {
         byte[] data = new byte[36];
@@ -215,4 +240,80 @@ public class BinaryUtilsTest {
         assertFalse(test.contains(new byte[] { 0x01 }, new byte[0]));
     }
 
+    @Test
+    public void searcherFindsFirstOccurrence() {
+        BinaryUtils.Searcher searcher = BinaryUtils.compileSearch(new byte[] { 0x0a, 0x0b, 0x0a });
+
+        assertEquals(1, searcher.indexOf(new byte[] { 0x0b, 0x0a, 0x0b, 0x0a, 0x0b, 0x0a }));
+    }
+
+    @Test
+    public void searcherFindsValueAtStartAndEnd() {
+        BinaryUtils.Searcher searcher = BinaryUtils.compileSearch(new byte[] { (byte) 0xca, (byte) 0xfe });
+
+        assertEquals(0, searcher.indexOf(new byte[] { (byte) 0xca, (byte) 0xfe, 0x00 }));
+        assertEquals(1, searcher.indexOf(new byte[] { 0x00, (byte) 0xca, (byte) 0xfe }));
+        assertEquals(-1, searcher.indexOf(new byte[] { (byte) 0xca }));
+    }
+
+    @Test
+    public void searcherOnlySearchesGivenRange() {
+        BinaryUtils.Searcher searcher = BinaryUtils.compileSearch(new byte[] { 0x01, 0x02 });
+        byte[] data = new byte[] { 0x01, 0x02, 0x00, 0x01, 0x02 };
+
+        assertEquals(3, searcher.indexOf(data, 1, 5));
+        assertEquals(-1, searcher.indexOf(data, 1, 4));
+    }
+
+    @Test
+    public void searcherWithEmptyValueFindsNothing() {
+        assertEquals(-1, BinaryUtils.compileSearch(new byte[0]).indexOf(new byte[] { 0x01 }));
+    }
+
+    @Test
+    public void searcherGivesSameResultAsContains() {
+        Random random = new Random(3);
+        for (int run = 0; run < 1000; run++) {
+            byte[] data = new byte[random.nextInt(100)];
+            byte[] value = new byte[1 + random.nextInt(12)];
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte) random.nextInt(2);
+            for (int i = 0; i < value.length; i++)
+                value[i] = (byte) random.nextInt(2);
+
+            assertEquals(test.contains(data, value), BinaryUtils.compileSearch(value).isContainedIn(data));
+        }
+    }
+
+    @Test
+    public void parseBinaryStringAcceptsAnyWhitespaceAsSeparator() {
+        assertArrayEquals(new byte[] { 0x01, 0x02, 0x03, 0x04 }, test.parseBinaryString("  0x01\t0x02\n0304\r\n"));
+    }
+
+    @Test
+    public void parseHexNumberRetainsLowestByte() {
+        assertArrayEquals(new byte[] { 0x34, (byte) 0xff }, test.parseBinaryString("0x1234 0XFF"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseHexPrefixWithoutDigitsFails() {
+        test.parseBinaryString("0x01 0x");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseSignedHexFails() {
+        test.parseBinaryString("-1");
+    }
+
+    @Test
+    public void formatBinaryFormatsAllByteValues() {
+        byte[] data = new byte[256];
+        for (int i = 0; i < 256; i++)
+            data[i] = (byte) i;
+
+        String formatted = test.formatBinary(data);
+        for (int i = 0; i < 256; i++)
+            assertEquals(String.format("%#04x", i), formatted.substring(i * 5, i * 5 + 4));
+        assertArrayEquals(data, test.parseBinaryString(formatted));
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.*;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FilterChainTest {
+
+    MockWebSocketClientCreator mocker = new MockWebSocketClientCreator();
+
+    private SampleResult result;
+
+    @Before
+    public void setUp() throws IOException {
+        result = new SampleResult();
+        JMeterUtils.loadJMeterProperties(Files.createTempFile("empty", ".props").toString());
+        FrameFilter.initStaticFilterOptions();
+    }
+
+    @Test
+    public void frameDiscardedByAnyFilterIsSkipped() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame("first"), new TextFrame("second"), new TextFrame("third") });
+
+        FilterChain chain = FilterChain.compile(Arrays.asList(textFilter("first"), textFilter("second")));
+        Frame frame = chain.receiveFrame(wsClient, 1000, result);
+
+        assertEquals("third", ((TextFrame) frame).getText());
+        assertEquals(2, result.getSubResults().length);
+    }
+
+    @Test
+    public void lastFilterInListIsAppliedFirst() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] { new TextFrame("both"), new TextFrame("none") });
+        TextFrameFilter first = textFilter("both");
+        first.setName("first");
+        TextFrameFilter last = textFilter("both");
+        last.setName("last");
+
+        FilterChain.compile(Arrays.asList(first, last)).receiveFrame(wsClient, 1000, result);
+
+        assertEquals("Discarded text frame (by filter 'last')", result.getSubResults()[0].getSampleLabel());
+    }
+
+    @Test
+    public void compiledFilterIsReusedWhenPropertiesDoNotChange() {
+        TextFrameFilter filter = textFilter("abc");
+
+        assertSame(filter.compile(), filter.compile());
+    }
+
+    @Test
+    public void filterIsRecompiledWhenPropertiesChange() {
+        TextFrameFilter filter = textFilter("abc");
+        FrameFilter.CompiledFilter compiled = filter.compile();
+        assertTrue(compiled.matches(new TextFrame("xabcx")));
+
+        filter.setMatchValue("def");
+        FrameFilter.CompiledFilter recompiled = filter.compile();
+
+        assertNotSame(compiled, recompiled);
+        assertFalse(recompiled.matches(new TextFrame("xabcx")));
+        assertTrue(recompiled.matches(new TextFrame("xdefx")));
+    }
+
+    @Test
+    public void regexIsCompiledOnlyOnce() {
+        TextFrameFilter filter = new TextFrameFilter();
+        filter.setComparisonType(ComparisonType.ContainsRegex);
+        filter.setMatchValue("a+b");
+        FrameFilter.CompiledFilter compiled = filter.compile();
+
+        assertTrue(compiled.matches(new TextFrame("xaaab")));
+        assertFalse(compiled.matches(new TextFrame("xb")));
+        assertSame(compiled, filter.compile());
+    }
+
+    @Test
+    public void emptyChainReadsDirectlyFromClient() throws IOException {
+        WebSocketClient wsClient = mocker.createSingleFrameClient(new TextFrame("direct"));
+
+        Frame frame = FilterChain.compile(Arrays.asList()).receiveFrame(wsClient, 1000, result);
+
+        assertEquals("direct", ((TextFrame) frame).getText());
+        assertEquals(0, result.getSubResults().length);
+    }
+
+    @Test
+    public void fullReportingCreatesSubResultPerDiscardedFrame() throws IOException {
+        receiveAfterDiscarding(5, DiscardReporting.Full, null);
+
+        assertEquals(5, result.getSubResults().length);
+        assertEquals("ping 0", result.getSubResults()[0].getResponseDataAsString());
+    }
+
+    @Test
+    public void countsOnlyReportingCreatesOneSummarySubResult() throws IOException {
+        receiveAfterDiscarding(5, DiscardReporting.CountsOnly, null);
+
+        assertEquals(1, result.getSubResults().length);
+        SampleResult summary = result.getSubResults()[0];
+        assertEquals("Discarded 5 frames (by filter 'heartbeat')", summary.getSampleLabel());
+        assertEquals("Discarded 5 text frames (30 bytes)", summary.getResponseMessage());
+        assertEquals(30, summary.getBodySizeAsLong());
+        assertEquals(0, summary.getResponseData().length);
+    }
+
+    @Test
+    public void firstNReportingReportsFirstFramesAndCountsTheRest() throws IOException {
+        receiveAfterDiscarding(5, DiscardReporting.FirstN, "2");
+
+        assertEquals(3, result.getSubResults().length);
+        assertEquals("ping 1", result.getSubResults()[1].getResponseDataAsString());
+        assertEquals("Discarded 3 more frames (by filter 'heartbeat')", result.getSubResults()[2].getSampleLabel());
+    }
+
+    @Test
+    public void noReportingCreatesNoSubResults() throws IOException {
+        Frame frame = receiveAfterDiscarding(5, DiscardReporting.None, null);
+
+        assertEquals("data", ((TextFrame) frame).getText());
+        assertEquals(0, result.getSubResults().length);
+    }
+
+    @Test
+    public void countsAreResetForEachReceive() throws IOException {
+        TextFrameFilter filter = textFilter("ping");
+        filter.setDiscardReporting(DiscardReporting.CountsOnly);
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame("ping"), new TextFrame("data"), new TextFrame("ping"), new TextFrame("ping"), new TextFrame("data") });
+        FilterChain chain = FilterChain.compile(Arrays.asList(filter));
+
+        chain.receiveFrame(wsClient, 1000, result);
+        SampleResult secondResult = new SampleResult();
+        chain.receiveFrame(wsClient, 1000, secondResult);
+
+        assertEquals("Discarded 1 text frame (4 bytes)", result.getSubResults()[0].getResponseMessage());
+        assertEquals("Discarded 2 text frames (8 bytes)", secondResult.getSubResults()[0].getResponseMessage());
+    }
+
+    private Frame receiveAfterDiscarding(int discardCount, DiscardReporting reporting, String limit) throws IOException {
+        Frame[] frames = new Frame[discardCount + 1];
+        for (int i = 0; i < discardCount; i++)
+            frames[i] = new TextFrame("ping " + i);
+        frames[discardCount] = new TextFrame("data");
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(frames);
+
+        TextFrameFilter filter = textFilter("ping");
+        filter.setName("heartbeat");
+        filter.setDiscardReporting(reporting);
+        if (limit != null)
+            filter.setDiscardReportLimit(limit);
+        return FilterChain.compile(Arrays.asList(filter)).receiveFrame(wsClient, 1000, result);
+    }
+
+    private static TextFrameFilter textFilter(String contains) {
+        TextFrameFilter filter = new TextFrameFilter();
+        filter.setComparisonType(ComparisonType.Contains);
+        filter.setMatchValue(contains);
+        return filter;
+    }
+}
@@ -73,4 +73,19 @@ public class FrameFilterTest {
         Assert.assertTrue(duration >= readTimeout);
         Assert.assertTrue(duration - readTimeout < 50);  // Risky, but reasonable.
     }
+
+    @Test
+    public void compiledFilterIsReusedUntilPropertyChanges() {
+        PingFrameFilter filter = new PingFrameFilter();
+        filter.setFilterType(PingFrameFilter.PingFilterType.FilterPingOnly);
+        FrameFilter.CompiledFilter compiled = filter.compile();
+        Assert.assertSame(compiled, filter.compile());
+
+        filter.setFilterType(PingFrameFilter.PingFilterType.FilterPongOnly);
+        Assert.assertNotSame(compiled, filter.compile());
+
+        compiled = filter.compile();
+        filter.setReplyToPing(true);
+        Assert.assertNotSame(compiled, filter.compile());
+    }
 }
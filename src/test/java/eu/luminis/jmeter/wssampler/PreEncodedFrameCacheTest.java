@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import eu.luminis.websocket.PreEncodedFrame;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PreEncodedFrameCacheTest {
+
+    private PreEncodedFrameCache cache;
+
+    @Before
+    public void clearCache() {
+        cache = PreEncodedFrameCache.getThreadCache();
+        cache.clear();
+    }
+
+    @Test
+    public void sameTextReturnsSamePreEncodedFrame() {
+        PreEncodedFrame first = cache.getTextFrame("subscribe", 4);
+        assertThat(cache.getTextFrame("subscribe", 4)).isSameAs(first);
+        assertEquals(4, first.getPoolSize());
+        assertEquals(4 * first.getFrameSize(), cache.getCachedBytes());
+    }
+
+    @Test
+    public void textAndBinaryFramesAreCachedSeparately() {
+        PreEncodedFrame text = cache.getTextFrame("01 02", 1);
+        PreEncodedFrame binary = cache.getBinaryFrame("01 02", 1);
+
+        assertThat(binary).isNotSameAs(text);
+        assertThat(binary.getFrame().isBinary()).isTrue();
+        assertEquals(2, binary.getFrame().getPayloadSize());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void largePayloadIsNotPreEncoded() {
+        assertNull(cache.getBinaryFrame(repeat("00", PreEncodedFrameCache.MAX_PAYLOAD_SIZE + 1), 1));
+        assertNull(cache.getTextFrame(repeat("x", PreEncodedFrameCache.MAX_PAYLOAD_SIZE + 1), 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void numberOfCachedFramesIsLimited() {
+        for (int i = 0; i < PreEncodedFrameCache.MAX_ENTRIES + 5; i++)
+            cache.getTextFrame("message " + i, 2);
+        assertEquals(PreEncodedFrameCache.MAX_ENTRIES, cache.size());
+    }
+
+    @Test
+    public void poolThatDoesNotFitInCacheIsNotPreEncoded() {
+        assertNull(cache.getTextFrame("subscribe", Integer.MAX_VALUE));
+        assertNull(cache.getBinaryFrame(repeat("00", PreEncodedFrameCache.MAX_PAYLOAD_SIZE), 1000));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void totalSizeOfTextAndBinaryFramesIsLimited() {
+        int poolSize = PreEncodedFrameCache.MAX_CACHED_BYTES / 10000;
+        for (int i = 0; i < 2; i++)
+            cache.getTextFrame(repeat("x", 3000) + i, poolSize);
+        for (int i = 0; i < 2; i++)
+            cache.getBinaryFrame(repeat("01", 3000) + "0" + i, poolSize);
+
+        assertThat(cache.getCachedBytes()).isLessThanOrEqualTo(PreEncodedFrameCache.MAX_CACHED_BYTES);
+        assertThat(cache.getCachedBytes()).isGreaterThan(0);
+        assertThat(cache.getBinaryFrame(repeat("01", 3000) + "01", poolSize)).isNotNull();
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidBinaryDataThrows() {
+        cache.getBinaryFrame("no hex", 1);
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            builder.append(value);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.jmeter.wssampler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RequestDataFileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fileIsReadOnlyOnce() throws Exception {
+        File file = createFile("data", new byte[] { 1, 2, 3 });
+        RequestDataFileCache cache = new RequestDataFileCache(1024, 1024);
+
+        RequestDataFileCache.FileData first = cache.get(file.toPath());
+        RequestDataFileCache.FileData second = cache.get(file.toPath());
+
+        assertThat(second).isSameAs(first);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, second.getBytes());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getHeapBytes());
+    }
+
+    @Test
+    public void modifiedFileIsReloaded() throws Exception {
+        File file = createFile("data", "first version".getBytes());
+        RequestDataFileCache cache = new RequestDataFileCache(1024, 1024);
+        assertEquals("first version", cache.get(file.toPath()).getText());
+
+        Files.write(file.toPath(), "second version".getBytes());
+        assertEquals("second version", cache.get(file.toPath()).getText());
+        assertEquals(1, cache.size());
+        assertEquals("second version".length(), cache.getHeapBytes());
+    }
+
+    @Test
+    public void fileWithSameSizeButOtherModificationTimeIsReloaded() throws Exception {
+        File file = createFile("data", "abc".getBytes());
+        RequestDataFileCache cache = new RequestDataFileCache(1024, 1024);
+        cache.get(file.toPath());
+
+        Files.write(file.toPath(), "xyz".getBytes());
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 60000));
+        assertEquals("xyz", cache.get(file.toPath()).getText());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void largeFileIsMemoryMapped() throws Exception {
+        byte[] content = new byte[3000];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        File file = createFile("large", content);
+        RequestDataFileCache cache = new RequestDataFileCache(1024, 1024);
+
+        RequestDataFileCache.FileData data = cache.get(file.toPath());
+
+        assertThat(data.isMapped()).isTrue();
+        ByteBuffer buffer = data.getBuffer();
+        byte[] read = new byte[buffer.remaining()];
+        buffer.get(read);
+        assertArrayEquals(content, read);
+        assertArrayEquals(new byte[] { 0, 1, 2, 3 }, data.getHead(4));
+        assertEquals(0, cache.getHeapBytes());
+        assertEquals(3000, cache.getMappedBytes());
+        assertThat(cache.get(file.toPath())).isSameAs(data);
+    }
+
+    @Test
+    public void leastRecentlyUsedFileIsEvictedWhenMemoryLimitIsExceeded() throws Exception {
+        File first = createFile("first", new byte[400]);
+        File second = createFile("second", new byte[400]);
+        File third = createFile("third", new byte[400]);
+        RequestDataFileCache cache = new RequestDataFileCache(1000, 1000);
+
+        cache.get(first.toPath());
+        cache.get(second.toPath());
+        cache.get(first.toPath());
+        cache.get(third.toPath());
+
+        assertEquals(2, cache.size());
+        assertEquals(800, cache.getHeapBytes());
+        cache.get(first.toPath());
+        assertEquals(2, cache.getHitCount());
+        cache.get(second.toPath());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void fileLargerThanMemoryLimitIsNotCached() throws Exception {
+        File file = createFile("data", new byte[600]);
+        RequestDataFileCache cache = new RequestDataFileCache(500, 1000);
+
+        assertEquals(600, cache.get(file.toPath()).getBytes().length);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHeapBytes());
+    }
+
+    @Test
+    public void textIsDecodedAsUtf8() throws Exception {
+        String text = "Größe: 3€";
+        File file = createFile("text", text.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(text, new RequestDataFileCache(1024, 1024).get(file.toPath()).getText());
+        assertEquals(text, new RequestDataFileCache(1024, 4).get(file.toPath()).getText());
+    }
+
+    @Test
+    public void textOfMappedFileIsDecodedOnceAndCountedAsHeap() throws Exception {
+        File file = createFile("text", "mapped text".getBytes(StandardCharsets.UTF_8));
+        RequestDataFileCache cache = new RequestDataFileCache(1024, 4);
+
+        String first = cache.getText(file.toPath());
+        String second = cache.getText(file.toPath());
+
+        assertEquals("mapped text", first);
+        assertThat(second).isSameAs(first);
+        assertEquals(2 * "mapped text".length(), cache.getHeapBytes());
+        assertEquals("mapped text".length(), cache.getMappedBytes());
+    }
+
+    @Test
+    public void mappedFileWithTextIsEvictedWhenMemoryLimitIsExceeded() throws Exception {
+        File mapped = createFile("mapped", new byte[300]);
+        File other = createFile("other", new byte[200]);
+        RequestDataFileCache cache = new RequestDataFileCache(700, 250);
+
+        cache.getText(mapped.toPath());
+        assertEquals(600, cache.getHeapBytes());
+        cache.get(other.toPath());
+
+        assertEquals(1, cache.size());
+        assertEquals(200, cache.getHeapBytes());
+        assertEquals(0, cache.getMappedBytes());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void missingFileThrowsNoSuchFile() throws Exception {
+        new RequestDataFileCache(1024, 1024).get(new File(folder.getRoot(), "missing").toPath());
+    }
+
+    private File createFile(String name, byte[] content) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
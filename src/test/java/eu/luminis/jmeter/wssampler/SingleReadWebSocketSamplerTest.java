@@ -18,8 +18,13 @@
  */
 package eu.luminis.jmeter.wssampler;
 
+import eu.luminis.websocket.BinaryContinuationFrame;
+import eu.luminis.websocket.BinaryFrame;
 import eu.luminis.websocket.EndOfStreamException;
+import eu.luminis.websocket.Frame;
+import eu.luminis.websocket.LargePayloadPolicy;
 import eu.luminis.websocket.MockWebSocketClientCreator;
+import eu.luminis.websocket.StreamedPayload;
 import eu.luminis.websocket.WebSocketClient;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.threads.JMeterContextService;
@@ -30,6 +35,11 @@ import org.junit.Test;
 import java.net.SocketTimeoutException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -63,6 +73,80 @@ public class SingleReadWebSocketSamplerTest {
         assertFalse(result.getSamplerData().contains("ws-response-data"));
     }
 
+    @Test
+    public void streamedPayloadResultsInSizeAndDigestOnly() {
+        long payloadSize = 3L * 1024 * 1024 * 1024;
+        StreamedPayload streamedPayload = new StreamedPayload(payloadSize, LargePayloadPolicy.CRC32, "c0ffee42", null);
+        WebSocketClient mockClient = mocker.createSingleFrameClient(new BinaryFrame(true, streamedPayload, 10));
+        SingleReadWebSocketSampler sampler = new SingleReadWebSocketSampler() {
+            @Override
+            protected WebSocketClient prepareWebSocketClient(SampleResult result) {
+                return mockClient;
+            }
+        };
+        sampler.setDataType(SingleReadWebSocketSampler.DataType.Binary);
+        sampler.setLargePayloadThreshold("1048576");
+
+        SampleResult result = sampler.sample(null);
+        assertTrue(result.isSuccessful());
+        assertThat(result.getResponseDataAsString()).contains("3221225472 bytes").contains("CRC32: c0ffee42");
+        assertEquals(payloadSize, result.getBodySizeAsLong());
+        assertEquals(10, result.getHeadersSize());
+        verify(mockClient).setLargePayloadPolicy(argThat(policy -> policy.getThreshold() == 1048576));
+    }
+
+    @Test
+    public void largePayloadPolicyIsOnlyCreatedAgainWhenPropertiesChange() {
+        SingleReadWebSocketSampler sampler = new SingleReadWebSocketSampler();
+        sampler.setLargePayloadThreshold("1024");
+        sampler.setLargePayloadDigest(LargePayloadPolicy.SHA256);
+
+        LargePayloadPolicy policy = sampler.getLargePayloadPolicy();
+        assertThat(sampler.getLargePayloadPolicy()).isSameAs(policy);
+        sampler.setLargePayloadThreshold("2048");
+        assertThat(sampler.getLargePayloadPolicy()).isNotSameAs(policy);
+        assertEquals(2048, sampler.getLargePayloadPolicy().getThreshold());
+    }
+
+    @Test
+    public void unsupportedDigestAlgorithmShouldFailValidation() {
+        SingleReadWebSocketSampler sampler = new SingleReadWebSocketSampler();
+        sampler.setLargePayloadThreshold("1024");
+        sampler.setLargePayloadDigest("NO-SUCH-DIGEST");
+
+        SampleResult result = sampler.sample(null);
+        assertFalse(result.isSuccessful());
+        assertThat(result.getResponseMessage()).contains("Digest algorithm 'NO-SUCH-DIGEST' is not supported");
+    }
+
+    @Test
+    public void wholeMessageIsReadWithSubResultPerFragment() throws Exception {
+        WebSocketClient mockClient = mocker.createMultipleFrameClient(new Frame[] {
+                new BinaryFrame(false, new byte[] { 1, 2 }, 4),
+                new BinaryContinuationFrame(false, new byte[] { 3 }, 3),
+                new BinaryContinuationFrame(true, new byte[] { 4, 5 }, 4) });
+        when(mockClient.receiveMessage(any(WebSocketClient.FrameReader.class))).thenCallRealMethod();
+        SingleReadWebSocketSampler sampler = new SingleReadWebSocketSampler() {
+            @Override
+            protected WebSocketClient prepareWebSocketClient(SampleResult result) {
+                return mockClient;
+            }
+        };
+        sampler.setDataType(SingleReadWebSocketSampler.DataType.Binary);
+        sampler.setReadWholeMessage(true);
+
+        SampleResult result = sampler.sample(null);
+        assertTrue(result.isSuccessful());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, result.getResponseData());
+        assertEquals(5, result.getBodySizeAsLong());
+        assertEquals(6, result.getHeadersSize());
+        assertEquals(3, result.getSubResults().length);
+        assertThat(result.getSubResults()[2].getResponseMessage()).contains("final continuation");
+        assertThat(result.getLatency()).isBetween(0L, result.getTime());
+        assertThat(result.getSamplerData()).contains("Received message in 3 fragments");
+        assertEquals("true", JMeterContextService.getContext().getVariables().get("websocket.last_frame_final"));
+    }
+
     @Test
     public void readTimeoutLeadsToUnsccessfulResult() {
         SingleReadWebSocketSampler sampler = new SingleReadWebSocketSampler() {
@@ -23,6 +23,9 @@ import eu.luminis.websocket.WebSocketClient;
 import org.apache.jmeter.samplers.SampleResult;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.net.MalformedURLException;
+
 import static junit.framework.TestCase.assertFalse;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -97,4 +100,39 @@ public class SingleWriteWebSocketSamplerTest {
         assertEquals(0 + 6 + 7, result.getSentBytes());  // 0: no http header (because of mock); 6: frame overhead (client mask = 4 byte); 7: payload
     }
 
+    @Test
+    public void fragmentedWriteShouldReportEachFragment() {
+        String serverResponse = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n\r\n";
+        ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        SingleWriteWebSocketSampler sampler = new SingleWriteWebSocketSampler() {
+            @Override
+            protected WebSocketClient prepareWebSocketClient(SampleResult result) {
+                try {
+                    return mocker.createMockWebSocketClientWithResponse(outputBuffer, serverResponse.getBytes());
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException();
+                }
+            }
+        };
+        sampler.setCreateNewConnection(true);
+        sampler.setRequestData("0123456789");
+        sampler.setFragmentSize("4");
+
+        SampleResult result = sampler.sample(null);
+        assertTrue(result.isSuccessful());
+        assertEquals(3, result.getSubResults().length);
+        assertEquals(6 + 2, result.getSubResults()[2].getSentBytes());
+        assertTrue(result.getSamplerData().contains("Sent in 3 fragments of (at most) 4 bytes"));
+    }
+
+    @Test
+    public void invalidFragmentSizeShouldFailSample() {
+        SingleWriteWebSocketSampler sampler = new SingleWriteWebSocketSampler();
+        sampler.setRequestData("data");
+        sampler.setFragmentSize("0");
+
+        SampleResult result = sampler.sample(null);
+        assertFalse(result.isSuccessful());
+        assertTrue(result.getResponseMessage().contains("Fragment size '0' is not valid"));
+    }
 }
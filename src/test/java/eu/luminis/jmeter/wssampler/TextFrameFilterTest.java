@@ -20,6 +20,8 @@ package eu.luminis.jmeter.wssampler;
 
 import eu.luminis.websocket.*;
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
 import org.apache.jmeter.util.JMeterUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -360,4 +362,76 @@ public class TextFrameFilterTest {
         assertEquals(12, filterResult.getBytes());
         assertEquals(24, result.getBytes());  // Filtered frame _does_ count for main result.
     }
-}
\ No newline at end of file
+
+    @Test
+    public void filterContainsAnyShouldDiscardFrameContainingOneOfTheTexts() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame("{\"type\": \"heartbeat\"}"), new TextFrame("{\"type\": \"ack\"}"), new TextFrame("{\"type\": \"quote\"}") });
+
+        TextFrameFilter textFrameFilter = new TextFrameFilter();
+        textFrameFilter.setComparisonType(ComparisonType.ContainsAny);
+        textFrameFilter.setMatchValue("heartbeat\n\"ack\"\nkeepalive\n");
+
+        Frame frame = textFrameFilter.receiveFrame(wsClient, 1000, result);
+        assertEquals("{\"type\": \"quote\"}", ((TextFrame) frame).getText());
+        assertArrayEquals(new long[] { 1, 1, 0 }, textFrameFilter.getPatternHitCounts());
+    }
+
+    @Test
+    public void patternHitCountsAreAvailableAsVariables() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame("heartbeat"), new TextFrame("heartbeat"), new TextFrame("quote") });
+        JMeterVariables variables = new JMeterVariables();
+        JMeterContextService.getContext().setVariables(variables);
+
+        TextFrameFilter textFrameFilter = new TextFrameFilter();
+        textFrameFilter.setName("noise");
+        textFrameFilter.setComparisonType(ComparisonType.ContainsAny);
+        textFrameFilter.setMatchValue("heartbeat\nkeepalive");
+        textFrameFilter.receiveFrame(wsClient, 1000, result);
+
+        assertEquals("2", variables.get("noise_hits_1"));
+        assertEquals("0", variables.get("noise_hits_2"));
+        assertEquals("'heartbeat': 2, 'keepalive': 0", variables.get("noise_hits"));
+    }
+
+    @Test
+    public void filterContainsAllShouldOnlyDiscardFrameContainingAllTexts() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame("status ok, server 1"), new TextFrame("status failed, server 1") });
+
+        TextFrameFilter textFrameFilter = new TextFrameFilter();
+        textFrameFilter.setComparisonType(ComparisonType.ContainsAll);
+        textFrameFilter.setMatchValue("server\r\nstatus ok");
+
+        Frame frame = textFrameFilter.receiveFrame(wsClient, 1000, result);
+        assertEquals("status failed, server 1", ((TextFrame) frame).getText());
+        assertArrayEquals(new long[] { 2, 1 }, textFrameFilter.getPatternHitCounts());
+    }
+
+    @Test
+    public void filterNotContainsAnyShouldDiscardFrameContainingNoneOfTheTexts() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame("noise"), new TextFrame("gr\u00f6\u00dfe: 3\u20ac") });
+
+        TextFrameFilter textFrameFilter = new TextFrameFilter();
+        textFrameFilter.setComparisonType(ComparisonType.NotContainsAny);
+        textFrameFilter.setMatchValue("\u20ac\n$");
+
+        Frame frame = textFrameFilter.receiveFrame(wsClient, 1000, result);
+        assertEquals("gr\u00f6\u00dfe: 3\u20ac", ((TextFrame) frame).getText());
+    }
+
+    @Test
+    public void filterContainsAnyMatchesReplacementCharacterForMalformedUtf8() throws IOException {
+        WebSocketClient wsClient = mocker.createMultipleFrameClient(new Frame[] {
+                new TextFrame(true, new byte[] { 'a', (byte) 0xc3, 'b' }, 5), new TextFrame("ok") });
+
+        TextFrameFilter textFrameFilter = new TextFrameFilter();
+        textFrameFilter.setComparisonType(ComparisonType.ContainsAny);
+        textFrameFilter.setMatchValue("\uFFFD");
+
+        Frame frame = textFrameFilter.receiveFrame(wsClient, 1000, result);
+        assertEquals("ok", ((TextFrame) frame).getText());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+
+    private static Logger logger = LoggingManager.getLoggerForClass();
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void payloadBelowThresholdIsReadIntoMemory() throws IOException {
+        byte[] data = randomData(1000);
+        LargePayloadPolicy policy = new LargePayloadPolicy(1000, LargePayloadPolicy.Mode.Discard, LargePayloadPolicy.CRC32, null);
+
+        Frame frame = new FrameDecoder().decode(new ByteArrayInputStream(binaryFrame(data)), Frame.DataFrameType.NONE, null, false, policy, logger);
+
+        assertFalse(((DataFrame) frame).isStreamed());
+        assertArrayEquals(data, ((BinaryFrame) frame).getBinaryData());
+    }
+
+    @Test
+    public void largePayloadIsDiscardedWithCrc() throws IOException {
+        byte[] data = randomData(200_000);
+        LargePayloadPolicy policy = new LargePayloadPolicy(1000, LargePayloadPolicy.Mode.Discard, LargePayloadPolicy.CRC32, null);
+
+        Frame frame = new FrameDecoder().decode(new ByteArrayInputStream(binaryFrame(data)), Frame.DataFrameType.NONE, null, false, policy, logger);
+
+        assertTrue(((DataFrame) frame).isStreamed());
+        StreamedPayload payload = ((DataFrame) frame).getStreamedPayload();
+        assertEquals(200_000, payload.getSize());
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        assertEquals(String.format("%08x", crc.getValue()), payload.getDigest());
+        assertNull(payload.getFile());
+        assertEquals(0, ((BinaryFrame) frame).getBinaryData().length);
+        assertEquals(200_000, frame.getPayloadSizeAsLong());
+        assertEquals(2 + 8 + 200_000, frame.getSizeAsLong());
+    }
+
+    @Test
+    public void largePayloadIsSpooledToFileWithSha256() throws Exception {
+        byte[] data = randomData(300_000);
+        LargePayloadPolicy policy = new LargePayloadPolicy(1000, LargePayloadPolicy.Mode.Spool, LargePayloadPolicy.SHA256, tempFolder.getRoot());
+
+        Frame frame = new FrameDecoder().decode(new ByteArrayInputStream(binaryFrame(data)), Frame.DataFrameType.NONE, null, false, policy, logger);
+
+        StreamedPayload payload = ((DataFrame) frame).getStreamedPayload();
+        assertThat(payload.getFile()).exists().hasParent(tempFolder.getRoot());
+        assertArrayEquals(data, Files.readAllBytes(payload.getFile().toPath()));
+        assertEquals(toHex(MessageDigest.getInstance("SHA-256").digest(data)), payload.getDigest());
+    }
+
+    @Test
+    public void maskedLargePayloadIsUnmasked() throws Exception {
+        byte[] data = randomData(150_001);
+        byte[] frameBytes = new BinaryFrame(data).getFrameBytes();  // Client frame, so it's masked
+        LargePayloadPolicy policy = new LargePayloadPolicy(1000, LargePayloadPolicy.Mode.Spool, LargePayloadPolicy.CRC32, tempFolder.getRoot());
+
+        Frame frame = new FrameDecoder().decode(new ByteArrayInputStream(frameBytes), Frame.DataFrameType.NONE, null, false, policy, logger);
+
+        assertArrayEquals(data, Files.readAllBytes(((DataFrame) frame).getStreamedPayload().getFile().toPath()));
+        assertEquals(frameBytes.length, frame.getSizeAsLong());
+    }
+
+    @Test
+    public void streamingContinuesAfterTimeout() throws Exception {
+        byte[] data = randomData(100_000);
+        InputStream input = new FrameTest.SimulatedNetworkStreamWithTimeouts(binaryFrame(data), new Integer[] { 5, 70_000 });
+        LargePayloadPolicy policy = new LargePayloadPolicy(1000, LargePayloadPolicy.Mode.Spool, LargePayloadPolicy.CRC32, tempFolder.getRoot());
+        FrameDecoder decoder = new FrameDecoder();
+
+        int timeouts = 0;
+        Frame frame = null;
+        while (frame == null) {
+            try {
+                frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, policy, logger);
+            }
+            catch (SocketTimeoutException timeout) {
+                timeouts++;
+            }
+        }
+
+        assertEquals(2, timeouts);
+        assertArrayEquals(data, Files.readAllBytes(((DataFrame) frame).getStreamedPayload().getFile().toPath()));
+        assertThat(tempFolder.getRoot().listFiles()).hasSize(1);
+    }
+
+    @Test
+    public void spoolFileIsDeletedWhenStreamEndsPrematurely() throws Exception {
+        byte[] frameBytes = binaryFrame(randomData(100_000));
+        byte[] truncated = new byte[50_000];
+        System.arraycopy(frameBytes, 0, truncated, 0, truncated.length);
+        LargePayloadPolicy policy = new LargePayloadPolicy(1000, LargePayloadPolicy.Mode.Spool, LargePayloadPolicy.CRC32, tempFolder.getRoot());
+
+        try {
+            new FrameDecoder().decode(new ByteArrayInputStream(truncated), Frame.DataFrameType.NONE, null, false, policy, logger);
+            fail("expected end of stream");
+        }
+        catch (EndOfStreamException endOfStream) {
+            assertThat(tempFolder.getRoot().listFiles()).isEmpty();
+        }
+    }
+
+    @Test
+    public void payloadLargerThanMaxIntCanBeStreamed() throws IOException {
+        long length = Integer.MAX_VALUE + 10L;
+        InputStream input = new InputStream() {
+            long position = 0;
+            byte[] header = new byte[] { (byte) 0x82, 127, 0, 0, 0, 0, (byte) 0x80, 0, 0, 9 };
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) {
+                int bytesRead = 0;
+                while (bytesRead < count && position < header.length)
+                    buffer[offset + bytesRead++] = header[(int) position++];
+                if (bytesRead == 0) {
+                    bytesRead = (int) Math.min(count, header.length + length - position);
+                    position += bytesRead;
+                }
+                return bytesRead == 0? -1: bytesRead;
+            }
+        };
+        LargePayloadPolicy policy = new LargePayloadPolicy(1024 * 1024, LargePayloadPolicy.Mode.Discard, LargePayloadPolicy.CRC32, null);
+
+        Frame frame = new FrameDecoder().decode(input, Frame.DataFrameType.NONE, null, false, policy, logger);
+
+        assertEquals(length, frame.getPayloadSizeAsLong());
+        assertEquals(Integer.MAX_VALUE, frame.getPayloadSize());
+    }
+
+    @Test
+    public void controlFramesAreNeverStreamed() throws IOException {
+        byte[] frameBytes = new byte[] { (byte) 0x89, 4, 1, 2, 3, 4 };
+        LargePayloadPolicy policy = new LargePayloadPolicy(0, LargePayloadPolicy.Mode.Discard, LargePayloadPolicy.CRC32, null);
+
+        Frame frame = new FrameDecoder().decode(new ByteArrayInputStream(frameBytes), Frame.DataFrameType.NONE, null, false, policy, logger);
+
+        assertTrue(frame.isPing());
+        assertEquals(4, frame.getPayloadSize());
+    }
+
+    private static byte[] binaryFrame(byte[] payload) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(0x82);
+        if (payload.length < 65536) {
+            output.write(126);
+            output.write(payload.length >> 8);
+            output.write(payload.length);
+        }
+        else {
+            output.write(127);
+            for (int i = 7; i >= 0; i--)
+                output.write((int) ((long) payload.length >> (8 * i)));
+        }
+        output.write(payload);
+        return output.toByteArray();
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b: bytes)
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
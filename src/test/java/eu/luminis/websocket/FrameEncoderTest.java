@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FrameEncoderTest {
+
+    @Test
+    public void encodedTextFrameContainsUtf8EncodedMaskedText() {
+        String text = "Gr\u00f6\u00dfe: 3\u20ac \uD83D\uDE00";
+        ByteBuffer encoded = new FrameEncoder(false).encode(new TextFrame(text));
+
+        byte[] expectedPayload = text.getBytes(StandardCharsets.UTF_8);
+        assertEquals((byte) 0x81, encoded.get(0));
+        assertEquals(0x80 | expectedPayload.length, encoded.get(1) & 0xff);
+        assertArrayEquals(expectedPayload, unmask(encoded, 2));
+    }
+
+    @Test
+    public void textWithLoneSurrogateIsEncodedLikeStringGetBytes() {
+        String text = "ab\uD83Dcd";
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, FrameEncoder.utf8Length(text));
+        ByteBuffer encoded = new FrameEncoder(false).encode(new TextFrame(text));
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), unmask(encoded, 2));
+    }
+
+    @Test
+    public void payloadOf126BytesUsesTwoByteLength() {
+        ByteBuffer encoded = new FrameEncoder(false).encode(new BinaryFrame(new byte[126]));
+
+        assertEquals(0x80 | 126, encoded.get(1) & 0xff);
+        assertEquals(126, encoded.getShort(2));
+        assertEquals(2 + 2 + 4 + 126, encoded.remaining());
+    }
+
+    @Test
+    public void payloadOf64kUsesEightByteLength() {
+        byte[] data = new byte[65536];
+        new Random().nextBytes(data);
+        ByteBuffer encoded = new FrameEncoder(true).encode(new BinaryFrame(data));
+
+        assertEquals(0x80 | 127, encoded.get(1) & 0xff);
+        assertEquals(65536L, encoded.getLong(2));
+        assertArrayEquals(data, unmask(encoded, 10));
+    }
+
+    @Test
+    public void binaryFrameWithBufferPayloadIsEncodedWithoutModifyingBuffer() {
+        byte[] data = new byte[300];
+        new Random().nextBytes(data);
+        ByteBuffer payload = ByteBuffer.wrap(data.clone()).asReadOnlyBuffer();
+        ByteBuffer encoded = new FrameEncoder(false).encode(new BinaryFrame(payload));
+
+        assertEquals((byte) 0x82, encoded.get(0));
+        assertArrayEquals(data, unmask(encoded, 4));
+        assertEquals(300, payload.remaining());
+    }
+
+    @Test
+    public void continuationFramesHaveContinuationOpCode() {
+        FrameEncoder encoder = new FrameEncoder(false);
+        assertEquals(0x00, encoder.encode(new TextContinuationFrame(false, "abc".getBytes(), 0)).get(0));
+        assertEquals((byte) 0x80, encoder.encode(new BinaryContinuationFrame(true, new byte[] { 1 }, 0)).get(0));
+    }
+
+    @Test
+    public void sizeOfSentFrameIsSetByEncoder() {
+        BinaryFrame frame = new BinaryFrame(new byte[300]);
+        ByteBuffer encoded = new FrameEncoder(false).encode(frame);
+
+        assertEquals(encoded.remaining(), frame.getSize());
+        assertEquals(FrameEncoder.encodedSize(300), frame.getSize());
+    }
+
+    @Test
+    public void bufferIsReusedForSubsequentFrames() {
+        FrameEncoder encoder = new FrameEncoder(false);
+        ByteBuffer first = encoder.encode(new TextFrame("first"));
+        ByteBuffer second = encoder.encode(new TextFrame("second"));
+
+        assertThat(second).isSameAs(first);
+        assertArrayEquals("second".getBytes(), unmask(second, 2));
+    }
+
+    @Test
+    public void veryLargeFrameDoesNotReplaceRetainedBuffer() {
+        FrameEncoder encoder = new FrameEncoder(false);
+        ByteBuffer small = encoder.encode(new TextFrame("small"));
+        ByteBuffer large = encoder.encode(new BinaryFrame(new byte[FrameEncoder.MAX_RETAINED_BUFFER_SIZE + 1]));
+        ByteBuffer next = encoder.encode(new TextFrame("small again"));
+
+        assertThat(large).isNotSameAs(small);
+        assertThat(next).isSameAs(small);
+    }
+
+    @Test
+    public void batchOfFramesIsEncodedIntoOneBuffer() {
+        FrameEncoder encoder = new FrameEncoder(false);
+        TextFrame text = new TextFrame("text");
+        BinaryFrame binary = new BinaryFrame(new byte[300]);
+        PingFrame ping = new PingFrame(new byte[0]);
+        ByteBuffer encoded = encoder.encode(Arrays.asList(text, binary, ping));
+
+        assertEquals(2 + 4 + 4, text.getSize());
+        assertEquals(FrameEncoder.encodedSize(300), binary.getSize());
+        assertEquals(2 + 4, ping.getSize());
+        assertEquals(text.getSize() + binary.getSize() + ping.getSize(), encoded.remaining());
+        assertEquals((byte) 0x81, encoded.get(0));
+        assertEquals((byte) 0x82, encoded.get(text.getSize()));
+        assertEquals((byte) 0x89, encoded.get(text.getSize() + binary.getSize()));
+    }
+
+    @Test
+    public void batchLargerThanBufferKeepsFramesEncodedBeforeGrowing() {
+        FrameEncoder encoder = new FrameEncoder(false);
+        byte[] data = new byte[1000];
+        new Random().nextBytes(data);
+        List<BinaryFrame> frames = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            frames.add(new BinaryFrame(data));
+        ByteBuffer encoded = encoder.encode(frames);
+
+        int frameSize = FrameEncoder.encodedSize(1000);
+        assertThat(frameSize * 10).isGreaterThan(FrameEncoder.INITIAL_BUFFER_SIZE);
+        assertEquals(frameSize * 10, encoded.remaining());
+        for (int i = 0; i < 10; i++) {
+            ByteBuffer frame = encoded.duplicate();
+            frame.position(i * frameSize).limit((i + 1) * frameSize);
+            assertArrayEquals(data, unmask(frame.slice(), 4));
+        }
+    }
+
+    @Test
+    public void compressedMessageHasRsv1SetOnFirstFrameOnly() throws Exception {
+        FrameEncoder encoder = new FrameEncoder(false);
+        encoder.setDeflater(new WebSocketDeflater(true));
+        byte[] part1 = "compressed message, first part".getBytes();
+        byte[] part2 = "compressed message, second part".getBytes();
+
+        ByteBuffer first = encoder.encode(new TextFrame(false, part1, 0, false));
+        assertEquals(0x40, first.get(0) & 0xf0);
+        byte[] compressed1 = unmask(first, 2);
+        ByteBuffer second = encoder.encode(new TextContinuationFrame(true, part2, 0, false));
+        assertEquals(0x80, second.get(0) & 0xf0);
+        byte[] compressed2 = unmask(second, 2);
+
+        byte[] compressed = Arrays.copyOf(compressed1, compressed1.length + compressed2.length);
+        System.arraycopy(compressed2, 0, compressed, compressed1.length, compressed2.length);
+        assertEquals("compressed message, first partcompressed message, second part",
+                new String(WebSocketDeflaterTest.inflate(new Inflater(true), compressed)));
+    }
+
+    @Test
+    public void controlFramesAreNotCompressed() {
+        FrameEncoder encoder = new FrameEncoder(false);
+        encoder.setDeflater(new WebSocketDeflater(true));
+        ByteBuffer encoded = encoder.encode(new PingFrame("ping".getBytes()));
+
+        assertEquals(0x89, encoded.get(0) & 0xff);
+        assertArrayEquals("ping".getBytes(), unmask(encoded, 2));
+    }
+
+    private static byte[] unmask(ByteBuffer encoded, int maskOffset) {
+        byte[] mask = new byte[4];
+        for (int i = 0; i < 4; i++)
+            mask[i] = encoded.get(encoded.position() + maskOffset + i);
+        int payloadStart = encoded.position() + maskOffset + 4;
+        byte[] payload = new byte[encoded.limit() - payloadStart];
+        for (int i = 0; i < payload.length; i++)
+            payload[i] = (byte) (encoded.get(payloadStart + i) ^ mask[i % 4]);
+        return payload;
+    }
+}
@@ -35,7 +35,10 @@ import java.util.zip.Inflater;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.spy;
 
@@ -63,6 +66,25 @@ public class FrameTest {
         assertTrue(((TextFrame) frame).isFinalFragment());
     }
 
+    @Test
+    public void parseMaskedTextFrame() throws IOException {
+        // Example from RFC 6455 section 5.7: "A single-frame masked text message"
+        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, new ByteArrayInputStream(new byte[] { (byte) 0x81, (byte) 0x85, 0x37, (byte) 0xfa, 0x21, 0x3d, 0x7f, (byte) 0x9f, 0x4d, 0x51, 0x58 } ), logger);
+        assertTrue(frame.isText());
+        assertEquals("Hello", ((TextFrame) frame).getText());
+        assertEquals(11, frame.getSize());
+    }
+
+    @Test
+    public void encodedFrameCanBeParsed() throws IOException {
+        byte[] data = new byte[1021];
+        new java.util.Random().nextBytes(data);
+        byte[] encoded = new BinaryFrame(data).getFrameBytes();
+        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, new ByteArrayInputStream(encoded), logger);
+        assertArrayEquals(data, ((BinaryFrame) frame).getBinaryData());
+        assertEquals(encoded.length, frame.getSize());
+    }
+
     @Test
     public void parsePongFrame() throws IOException {
         Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, new ByteArrayInputStream(new byte[] { (byte) 0x8a, 0 } ), logger);
@@ -307,11 +329,12 @@ public class FrameTest {
                 new Integer[] { 8, 16 }
         );
 
-        InputStream input = (new BufferedInputStream(simulatedNetworkStream));
+        InputStream input = simulatedNetworkStream;
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
@@ -319,13 +342,13 @@ public class FrameTest {
         gotTimeout = false;
 
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertEquals("Hello, web-socket!", ((TextFrame) frame).getText());
         assertEquals((byte) 0xca, (byte) input.read());
@@ -338,17 +361,18 @@ public class FrameTest {
                 new Integer[] { 1 }
         );
 
-        InputStream input = (new BufferedInputStream(simulatedNetworkStream));
+        InputStream input = simulatedNetworkStream;
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertEquals("Hello", ((TextFrame) frame).getText());
     }
@@ -360,17 +384,18 @@ public class FrameTest {
                 new Integer[] { 2 }
         );
 
-        InputStream input = (new BufferedInputStream(simulatedNetworkStream));
+        InputStream input = simulatedNetworkStream;
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertEquals("Hello", ((TextFrame) frame).getText());
     }
@@ -382,17 +407,18 @@ public class FrameTest {
         rawData[204] = (byte) 0xca;
         InputStream simulatedNetworkStream = new SimulatedNetworkStreamWithTimeouts(rawData, new Integer[] { 3 });
 
-        InputStream input = (new BufferedInputStream(simulatedNetworkStream));
+        InputStream input = simulatedNetworkStream;
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertTrue(((TextFrame) frame).getText().startsWith("Hello"));
         assertEquals(200, frame.getPayloadSize());
@@ -404,20 +430,20 @@ public class FrameTest {
         byte[] rawData = new byte[4 + 65535 + 1];
         System.arraycopy(new byte[] { (byte) 0x81, 126, (byte) 0xff, (byte) 0xff, 0x48, 0x65, 0x6c, 0x6c, 0x6f }, 0, rawData, 0, 9);
         rawData[4 + 65535 + 1 - 1] = (byte) 0xca;
-        // This will test whether the markLimit is large enough
         InputStream simulatedNetworkStream = new SimulatedNetworkStreamWithTimeouts(rawData, new Integer[] { 65538 });
 
-        InputStream input = new BufferedInputStream(simulatedNetworkStream);
+        InputStream input = simulatedNetworkStream;
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertTrue(((TextFrame) frame).getText().startsWith("Hello"));
         assertEquals(65535, frame.getPayloadSize());
@@ -432,18 +458,18 @@ public class FrameTest {
         rawData[210] = (byte) 0xca;
         InputStream simulatedNetworkStream = new SimulatedNetworkStreamWithTimeouts(rawData, new Integer[] { 5 });
 
-        // BufferedInputStream's mark-limit is at least buffer size, so to test whether the markLimit is set correctly, a small buffer size is needed.
         InputStream input = new BufferedInputStream(simulatedNetworkStream, 8);
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertTrue(((TextFrame) frame).getText().startsWith("Hello"));
         assertEquals(200, frame.getPayloadSize());
@@ -460,21 +486,41 @@ public class FrameTest {
 
         InputStream input = new BufferedInputStream(simulatedNetworkStream, 8);
 
+        FrameDecoder decoder = new FrameDecoder();
         boolean gotTimeout = false;
         try {
-            Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         } catch (SocketTimeoutException e) {
             gotTimeout = true;
         }
         assertTrue(gotTimeout);
 
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.NONE, input, logger);
+        Frame frame = decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
         assertTrue(frame instanceof TextFrame);
         assertTrue(((TextFrame) frame).getText().startsWith("Hello"));
         assertEquals(200, frame.getPayloadSize());
         assertEquals((byte) 0xca, (byte) input.read());
     }
 
+    @Test
+    public void decoderRetainsPartialFrameOnTimeoutOnly() throws IOException {
+        FrameDecoder decoder = new FrameDecoder();
+        InputStream input = new SimulatedNetworkStreamWithTimeouts(new byte[] { (byte) 0x81, 5, 0x48, 0x65 }, new Integer[] { 3 });
+        try {
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
+            fail("expected timeout");
+        } catch (SocketTimeoutException e) {
+            assertTrue(decoder.isDecoding());
+        }
+
+        try {
+            decoder.decode(input, Frame.DataFrameType.NONE, null, false, logger);
+            fail("expected end of stream");
+        } catch (EndOfStreamException e) {
+            assertFalse(decoder.isDecoding());
+        }
+    }
+
     @Test
     public void otherIoExceptionDoesNotResetStreamToStartOfFrame() {
         ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[]{ (byte) 0x81, 127, 0, 0, 0, 0, 0, 0, 0, (byte) 200, 0x48, 0x65, 0x6c, 0x6c, 0x6f });
@@ -594,14 +640,17 @@ public class FrameTest {
     public void whenPreviousFrameWasCompressedContinuationFrameShouldHaveStatusCompressed() throws IOException {
         // Given
         boolean previousFrameWasCompressed = true;
-        ByteArrayInputStream data = new ByteArrayInputStream(new byte[]{ (byte) 0x00, 5, 0x66, 0x65, 0x64, 0x63, 0x62 });  // Arbitrary content: non-final continuation frame will not be decompressed on its own
+        ByteArrayInputStream data = new ByteArrayInputStream(new byte[]{ (byte) 0x00, 5, 0x66, 0x65, 0x64, 0x63, 0x62 });  // Arbitrary content: inflater is mocked
+        WebSocketInflater inflater = mock(WebSocketInflater.class);
+        when(inflater.decompressFrame(any(byte[].class), anyBoolean(), any(Logger.class))).thenReturn("decompressed".getBytes());
 
         // When
-        Frame frame = Frame.parseFrame(Frame.DataFrameType.TEXT, data, mock(WebSocketInflater.class), previousFrameWasCompressed, logger);
+        Frame frame = Frame.parseFrame(Frame.DataFrameType.TEXT, data, inflater, previousFrameWasCompressed, logger);
 
         // Then
         assertThat(frame).isInstanceOf(TextContinuationFrame.class);
         assertThat(((DataFrame) frame).isCompressed()).isTrue();
+        assertThat(((TextFrame) frame).getText()).isEqualTo("decompressed");
     }
 
     @Test
@@ -618,6 +667,28 @@ public class FrameTest {
         assertThat(((DataFrame) frame).isCompressed()).isFalse();
     }
 
+    @Test
+    public void fragmentsOfCompressedMessageCarryTheirDecompressedData() throws IOException {
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+        byte[] compressed1 = WebSocketDeflaterTest.compress(deflater, "Hello ".getBytes(), false);
+        byte[] compressed2 = WebSocketDeflaterTest.compress(deflater, "World".getBytes(), true);
+        WebSocketInflater inflater = createWebSocketInflater();
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(new byte[] { (byte) 0x41, (byte) compressed1.length });  // RSV1, non-final text frame
+        data.write(compressed1);
+        data.write(new byte[] { (byte) 0x80, (byte) compressed2.length });  // final continuation frame
+        data.write(compressed2);
+        InputStream stream = new ByteArrayInputStream(data.toByteArray());
+
+        Frame first = Frame.parseFrame(Frame.DataFrameType.NONE, stream, inflater, false, logger);
+        Frame second = Frame.parseFrame(Frame.DataFrameType.TEXT, stream, inflater, true, logger);
+
+        assertThat(((TextFrame) first).getText()).isEqualTo("Hello ");
+        assertThat(((TextFrame) second).getText()).isEqualTo("World");
+        assertThat(second).isInstanceOf(TextContinuationFrame.class);
+    }
+
     private WebSocketInflater createWebSocketInflater() {
         return new WebSocketInflater(true);
     }
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class KeyRingMaskKeySourceTest {
+
+    @Test
+    public void keysAreRepeatedAfterRingSize() {
+        KeyRingMaskKeySource source = new KeyRingMaskKeySource(3).forConnection();
+        int[] keys = new int[6];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = source.nextMaskKey();
+
+        assertEquals(keys[0], keys[3]);
+        assertEquals(keys[1], keys[4]);
+        assertEquals(keys[2], keys[5]);
+    }
+
+    @Test
+    public void connectionsShareKeys() {
+        KeyRingMaskKeySource ring = new KeyRingMaskKeySource(4);
+        Set<Integer> keys = new HashSet<>();
+        for (int i = 0; i < 4; i++)
+            keys.add(ring.nextMaskKey());
+
+        KeyRingMaskKeySource connectionSource = ring.forConnection();
+        for (int i = 0; i < 10; i++)
+            assertThat(keys).contains(connectionSource.nextMaskKey());
+    }
+
+    @Test
+    public void nonceIsFilledWithKeys() {
+        KeyRingMaskKeySource source = new KeyRingMaskKeySource(1);
+        int key = source.nextMaskKey();
+        byte[] nonce = new byte[16];
+        source.nextBytes(nonce);
+
+        ByteBuffer expected = ByteBuffer.allocate(16);
+        for (int i = 0; i < 4; i++)
+            expected.putInt(Integer.reverseBytes(key));
+        assertThat(nonce).isEqualTo(expected.array());
+    }
+
+    @Test
+    public void encoderUsesKeysFromSource() {
+        KeyRingMaskKeySource source = new KeyRingMaskKeySource(1);
+        int key = source.nextMaskKey();
+        ByteBuffer encoded = new FrameEncoder(false, source).encode(new TextFrame("masked"));
+
+        assertEquals(key, encoded.getInt(2));
+    }
+}
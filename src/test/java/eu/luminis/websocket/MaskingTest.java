@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MaskingTest {
+
+    private static final int MASK_KEY = 0x37fa213d;
+
+    @Test
+    public void maskingIsEqualToBytewiseXorForAllLengthsAndOffsets() {
+        Random random = new Random(42);
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length < 40; length++) {
+                byte[] data = new byte[offset + length + 3];
+                random.nextBytes(data);
+                byte[] expected = simpleMask(data, offset, offset + length, MASK_KEY);
+
+                Masking.mask(data, offset, offset + length, MASK_KEY);
+
+                assertArrayEquals("offset " + offset + ", length " + length, expected, data);
+            }
+        }
+    }
+
+    @Test
+    public void maskingBuffersIsIndependentOfByteOrder() {
+        byte[] data = new byte[77];
+        new Random().nextBytes(data);
+        byte[] expected = simpleMask(data, 3, 77, MASK_KEY);
+
+        for (ByteBuffer buffer: new ByteBuffer[] {
+                ByteBuffer.allocate(77).order(ByteOrder.BIG_ENDIAN),
+                ByteBuffer.allocate(77).order(ByteOrder.LITTLE_ENDIAN),
+                ByteBuffer.allocateDirect(77) }) {
+            buffer.put(data);
+            buffer.position(1);
+
+            Masking.mask(buffer, 3, 77, MASK_KEY);
+
+            byte[] masked = new byte[77];
+            for (int i = 0; i < 77; i++)
+                masked[i] = buffer.get(i);
+            assertArrayEquals(expected, masked);
+            assertEquals(1, buffer.position());
+            assertEquals(77, buffer.limit());
+        }
+    }
+
+    @Test
+    public void maskingTwiceRestoresOriginalData() {
+        byte[] original = new byte[1000];
+        new Random().nextBytes(original);
+        byte[] data = original.clone();
+
+        Masking.mask(data, MASK_KEY);
+        Masking.mask(data, MASK_KEY);
+
+        assertArrayEquals(original, data);
+    }
+
+    @Test
+    public void maskingInChunksIsEqualToMaskingAtOnce() {
+        byte[] data = new byte[100];
+        new Random().nextBytes(data);
+        byte[] expected = simpleMask(data, 0, 100, MASK_KEY);
+
+        Masking.mask(data, 0, 13, MASK_KEY);
+        Masking.mask(data, 13, 50, Masking.keyAtOffset(MASK_KEY, 13));
+        Masking.mask(data, 50, 100, Masking.keyAtOffset(MASK_KEY, 50));
+
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    public void maskKeyIsComposedInWireOrder() {
+        assertEquals(MASK_KEY, Masking.toMaskKey(new byte[] { 0, 0x37, (byte) 0xfa, 0x21, 0x3d }, 1));
+    }
+
+    private static byte[] simpleMask(byte[] data, int from, int to, int maskKey) {
+        byte[] key = new byte[] { (byte) (maskKey >>> 24), (byte) (maskKey >>> 16), (byte) (maskKey >>> 8), (byte) maskKey };
+        byte[] result = data.clone();
+        for (int i = from; i < to; i++)
+            result[i] ^= key[(i - from) % 4];
+        return result;
+    }
+}
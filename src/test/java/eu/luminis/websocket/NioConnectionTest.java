@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NioConnectionTest {
+
+    private static NioEngine engine;
+
+    private ServerSocket serverSocket;
+    private Socket serverSide;
+    private NioConnection connection;
+
+    @BeforeClass
+    public static void startEngine() throws IOException {
+        engine = new NioEngine(2);
+    }
+
+    @AfterClass
+    public static void stopEngine() {
+        engine.shutdown();
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void stopServer() {
+        IOUtils.closeQuietly(connection);
+        IOUtils.closeQuietly(serverSide);
+        IOUtils.closeQuietly(serverSocket);
+    }
+
+    @Test
+    public void dataSentByServerCanBeRead() throws IOException {
+        connect(1000);
+        serverSide.getOutputStream().write("hello".getBytes());
+
+        byte[] buffer = new byte[5];
+        int count = IOUtils.read(connection.getInputStream(), buffer);
+
+        assertEquals(5, count);
+        assertEquals("hello", new String(buffer));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void readTimesOutWhenServerSendsNothing() throws IOException {
+        connect(100);
+        connection.getInputStream().read();
+    }
+
+    @Test
+    public void readReturnsEndOfStreamWhenServerCloses() throws IOException {
+        connect(1000);
+        serverSide.close();
+
+        assertEquals(-1, connection.getInputStream().read());
+    }
+
+    @Test
+    public void largeWriteIsReceivedCompletely() throws Exception {
+        connect(1000);
+        byte[] data = randomData(8 * 1024 * 1024);
+        CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> readFully(serverSide, data.length));
+
+        connection.getOutputStream().write(data);
+
+        assertArrayEquals(data, received.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fileIsTransferredCompletely() throws Exception {
+        connect(1000);
+        byte[] data = randomData(8 * 1024 * 1024 + 3);
+        File file = File.createTempFile("transfer", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> readFully(serverSide, data.length - 100));
+
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            connection.transferFrom(channel, 100, data.length - 100);
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(data, 100, data.length), received.get(10, TimeUnit.SECONDS));
+        file.delete();
+    }
+
+    @Test
+    public void dataSentWhileNotReadingIsNotLost() throws Exception {
+        connect(1000);
+        byte[] data = randomData(NioConnection.PLAIN_BUFFER_SIZE * 64);
+        CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+            try {
+                serverSide.getOutputStream().write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // Give the event loop the opportunity to fill the connection buffer (and suspend reading)
+        Thread.sleep(100);
+
+        byte[] received = new byte[data.length];
+        IOUtils.readFully(connection.getInputStream(), received);
+        sent.get(1, TimeUnit.SECONDS);
+
+        assertArrayEquals(data, received);
+    }
+
+    @Test
+    public void webSocketClientCanUseNioEngine() throws Exception {
+        CompletableFuture<String> serverResult = CompletableFuture.supplyAsync(() -> runSingleFrameWebSocketServer());
+
+        WebSocketClient client = new WebSocketClient(new URL("http", "localhost", serverSocket.getLocalPort(), "/"));
+        client.useNioEngine(engine);
+        client.connect(1000, 1000);
+        TextFrame received = client.receiveText(1000);
+        client.sendTextFrame("Hello server");
+
+        assertThat(received.getText()).isEqualTo("Hello client");
+        assertThat(serverResult.get(1, TimeUnit.SECONDS)).isEqualTo("Hello server");
+        client.dispose();
+    }
+
+    private void connect(int readTimeout) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+        serverSide = serverSocket.accept();
+        connection = NioConnection.open(channel, null, engine, readTimeout);
+    }
+
+    private String runSingleFrameWebSocketServer() {
+        try {
+            serverSide = serverSocket.accept();
+            HttpLineReader requestReader = new HttpLineReader(serverSide.getInputStream());
+            String key = null;
+            String line;
+            while ((line = requestReader.readLine()) != null && !line.isEmpty()) {
+                if (line.startsWith("Sec-WebSocket-Key:"))
+                    key = line.substring(line.indexOf(':') + 1).trim();
+            }
+            String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes()));
+            OutputStream out = serverSide.getOutputStream();
+            out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes());
+            out.write(new byte[] { (byte) 0x81, 12 });
+            out.write("Hello client".getBytes());
+
+            byte[] header = readFully(serverSide, 2);
+            int length = header[1] & 0x7f;
+            byte[] mask = readFully(serverSide, 4);
+            byte[] payload = readFully(serverSide, length);
+            for (int i = 0; i < length; i++)
+                payload[i] ^= mask[i % 4];
+            return new String(payload);
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] readFully(Socket socket, int length) {
+        try {
+            byte[] data = new byte[length];
+            IOUtils.readFully(socket.getInputStream(), data);
+            return data;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
+}
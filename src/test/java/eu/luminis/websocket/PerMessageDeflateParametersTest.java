@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PerMessageDeflateParametersTest {
+
+    @Test
+    public void missingHeaderMeansNotAccepted() throws Exception {
+        assertThat(PerMessageDeflateParameters.parse(null)).isNull();
+        assertThat(PerMessageDeflateParameters.parse("x-webkit-deflate-frame")).isNull();
+    }
+
+    @Test
+    public void extensionWithoutParametersUsesDefaults() throws Exception {
+        PerMessageDeflateParameters parameters = PerMessageDeflateParameters.parse("permessage-deflate");
+
+        assertThat(parameters.isServerNoContextTakeover()).isFalse();
+        assertThat(parameters.isClientNoContextTakeover()).isFalse();
+        assertThat(parameters.getServerMaxWindowBits()).isEqualTo(15);
+        assertThat(parameters.getClientMaxWindowBits()).isEqualTo(15);
+        assertThat(parameters.canCompressOutgoingMessages()).isTrue();
+    }
+
+    @Test
+    public void allParametersAreParsed() throws Exception {
+        PerMessageDeflateParameters parameters = PerMessageDeflateParameters.parse(
+                "permessage-deflate; server_no_context_takeover; Client_No_Context_Takeover; server_max_window_bits=10; client_max_window_bits=\"12\"");
+
+        assertThat(parameters.isServerNoContextTakeover()).isTrue();
+        assertThat(parameters.isClientNoContextTakeover()).isTrue();
+        assertThat(parameters.getServerMaxWindowBits()).isEqualTo(10);
+        assertThat(parameters.getClientMaxWindowBits()).isEqualTo(12);
+        assertThat(parameters.canCompressOutgoingMessages()).isFalse();
+    }
+
+    @Test
+    public void permessageDeflateIsFoundAmongOtherExtensions() throws Exception {
+        PerMessageDeflateParameters parameters = PerMessageDeflateParameters.parse("foo; bar=1, permessage-deflate; server_no_context_takeover");
+
+        assertThat(parameters.isServerNoContextTakeover()).isTrue();
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void unknownParameterIsRejected() throws Exception {
+        PerMessageDeflateParameters.parse("permessage-deflate; compression_level=9");
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void windowBitsOutOfRangeIsRejected() throws Exception {
+        PerMessageDeflateParameters.parse("permessage-deflate; server_max_window_bits=16");
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void windowBitsWithoutValueIsRejectedInResponse() throws Exception {
+        PerMessageDeflateParameters.parse("permessage-deflate; client_max_window_bits");
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void duplicateParameterIsRejected() throws Exception {
+        PerMessageDeflateParameters.parse("permessage-deflate; server_no_context_takeover; server_no_context_takeover");
+    }
+
+    @Test
+    public void offeredExtensionIsRecognized() {
+        assertThat(PerMessageDeflateParameters.isListed("permessage-deflate; client_max_window_bits")).isTrue();
+        assertThat(PerMessageDeflateParameters.isListed("x-permessage-deflate-foo")).isFalse();
+        assertThat(PerMessageDeflateParameters.isListed(null)).isFalse();
+    }
+}
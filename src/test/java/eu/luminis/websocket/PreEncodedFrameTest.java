@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PreEncodedFrameTest {
+
+    @Test
+    public void everyEncodedFrameHasDistinctMaskKeyAndSamePayload() {
+        PreEncodedFrame frame = new PreEncodedFrame(new TextFrame("heartbeat"), 8);
+
+        Set<Integer> keys = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            ByteBuffer encoded = ByteBuffer.wrap(frame.getEncodedFrames(), i * frame.getFrameSize(), frame.getFrameSize());
+            assertEquals((byte) 0x81, encoded.get(encoded.position()));
+            keys.add(encoded.getInt(encoded.position() + 2));
+            assertArrayEquals("heartbeat".getBytes(), unmask(encoded));
+        }
+        assertThat(keys).hasSize(8);
+    }
+
+    @Test
+    public void sendsCycleThroughPool() {
+        PreEncodedFrame frame = new PreEncodedFrame(new BinaryFrame(new byte[] { 1, 2, 3 }), 3);
+
+        Set<Integer> offsets = new HashSet<>();
+        int first = frame.nextOffset();
+        offsets.add(first);
+        offsets.add(frame.nextOffset());
+        offsets.add(frame.nextOffset());
+
+        assertThat(offsets).containsOnly(0, frame.getFrameSize(), 2 * frame.getFrameSize());
+        assertEquals(first, frame.nextOffset());
+    }
+
+    @Test
+    public void frameSizeIsSizeOfEncodedFrame() {
+        PreEncodedFrame frame = new PreEncodedFrame(new BinaryFrame(new byte[200]), 2);
+
+        assertEquals(FrameEncoder.encodedSize(200), frame.getFrameSize());
+        assertEquals(frame.getFrameSize(), frame.getFrame().getSize());
+        assertEquals(2 * frame.getFrameSize(), frame.getEncodedFrames().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void poolSizeMustBePositive() {
+        new PreEncodedFrame(new TextFrame("text"), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void poolThatDoesNotFitInArrayIsRejected() {
+        new PreEncodedFrame(new BinaryFrame(new byte[100000]), 100000);
+    }
+
+    private static byte[] unmask(ByteBuffer encoded) {
+        int start = encoded.position();
+        int length = encoded.get(start + 1) & 0x7f;
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++)
+            payload[i] = (byte) (encoded.get(start + 6 + i) ^ encoded.get(start + 2 + i % 4));
+        return payload;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TextFrameTest {
+
+    @Test
+    public void receivedPayloadIsDecodedOnDemand() {
+        String text = "Größe: 3€ 😀";
+        TextFrame frame = received(text);
+
+        assertEquals(text, frame.getText());
+        assertSame(frame.getText(), frame.getText());
+    }
+
+    @Test
+    public void asciiPayloadIsDecoded() {
+        assertEquals("plain ascii text", received("plain ascii text").getText());
+    }
+
+    @Test
+    public void invalidUtf8IsDecodedWithReplacementCharacter() {
+        TextFrame frame = new TextFrame(true, new byte[] { 0x61, (byte) 0xc3, 0x62 }, 5);
+        assertEquals(new String(new byte[] { 0x61, (byte) 0xc3, 0x62 }, StandardCharsets.UTF_8), frame.getText());
+    }
+
+    @Test
+    public void plainComparisonsOnUndecodedPayload() {
+        String text = "{\"price\": 3€, \"symbol\": \"ÅBC\"}";
+
+        assertTrue(received(text).textContains("3€"));
+        assertFalse(received(text).textContains("4€"));
+        assertTrue(received(text).textStartsWith("{\"price\""));
+        assertFalse(received(text).textStartsWith("price"));
+        assertTrue(received(text).textEndsWith("ÅBC\"}"));
+        assertFalse(received(text).textEndsWith("ABC\"}"));
+        assertTrue(received(text).textEquals(text));
+        assertFalse(received(text).textEquals(text + " "));
+        assertTrue(received(text).textContains(""));
+        assertFalse(received("ab").textEndsWith("xab"));
+    }
+
+    @Test
+    public void comparisonsGiveSameResultAfterDecoding() {
+        TextFrame frame = received("hello world");
+        frame.getText();
+
+        assertTrue(frame.textContains("o w"));
+        assertTrue(frame.textStartsWith("hello"));
+        assertTrue(frame.textEndsWith("world"));
+        assertTrue(frame.textEquals("hello world"));
+    }
+
+    @Test
+    public void comparingWithReplacementCharacterMatchesDecodedText() {
+        TextFrame frame = new TextFrame(true, new byte[] { 0x61, (byte) 0xc3, 0x62 }, 5);
+
+        assertTrue(frame.textContains("a�b"));
+    }
+
+    @Test
+    public void comparisonsWithPreEncodedValue() {
+        String text = "{\"price\": 3€}";
+        byte[] value = TextFrame.encodeForMatching("3€");
+
+        assertTrue(received(text).textContains("3€", value));
+        assertTrue(received(text).textEndsWith("3€}", TextFrame.encodeForMatching("3€}")));
+        assertFalse(received(text).textStartsWith("3€", value));
+        assertFalse(received(text).textEquals("3€", value));
+        assertNull(TextFrame.encodeForMatching("a�b"));
+        assertTrue(new TextFrame(true, new byte[] { 0x61, (byte) 0xc3, 0x62 }, 5).textContains("a�b", null));
+    }
+
+    @Test
+    public void payloadOfReceivedFrameIsNotReEncoded() {
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+        assertSame(payload, new TextFrame(true, payload, 9).getPayload());
+    }
+
+    private static TextFrame received(String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        return new TextFrame(true, payload, payload.length + 2);
+    }
+}
@@ -18,22 +18,28 @@
  */
 package eu.luminis.websocket;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.*;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertNull;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -45,6 +51,9 @@ public class WebSocketClientTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private MockWebSocketClientCreator mocker = new MockWebSocketClientCreator();
 
     @Test
@@ -183,6 +192,312 @@ public class WebSocketClientTest {
         assertEquals(WebSocketClient.WebSocketState.CLOSED, getPrivateClientField(client, "state"));
     }
 
+    @Test
+    public void sendPreEncodedFrameWritesEncodedFrameAsIs() throws IOException {
+        WebSocketClient client = new WebSocketClient(new URL("http://nowhere"));
+        setPrivateClientField(client, "state", WebSocketClient.WebSocketState.CONNECTED);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+        setPrivateClientField(client, "socketOutputStream", outputStream);
+        PreEncodedFrame preEncodedFrame = new PreEncodedFrame(new TextFrame("subscribe"), 1);
+
+        Frame sent = client.sendPreEncodedFrame(preEncodedFrame);
+        client.sendPreEncodedFrame(preEncodedFrame);
+
+        assertEquals(preEncodedFrame.getFrameSize(), sent.getSize());
+        byte[] encoded = preEncodedFrame.getEncodedFrames();
+        byte[] expected = new byte[2 * encoded.length];
+        System.arraycopy(encoded, 0, expected, 0, encoded.length);
+        System.arraycopy(encoded, 0, expected, encoded.length, encoded.length);
+        assertArrayEquals(expected, outputStream.toByteArray());
+    }
+
+    @Test
+    public void sendBinaryFileStreamsMaskedFileContent() throws IOException {
+        byte[] content = new byte[WebSocketClient.FILE_CHUNK_SIZE * 2 + 1001];
+        new Random().nextBytes(content);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WebSocketClient client = createConnectedClient(outputStream);
+
+        BinaryFrame sent = client.sendBinaryFile(createFile(content).toPath(), false);
+
+        ByteBuffer written = ByteBuffer.wrap(outputStream.toByteArray());
+        assertEquals((byte) 0x82, written.get());
+        assertEquals((byte) (0x80 | 127), written.get());
+        assertEquals(content.length, written.getLong());
+        byte[] mask = new byte[4];
+        written.get(mask);
+        byte[] payload = new byte[written.remaining()];
+        written.get(payload);
+        for (int i = 0; i < payload.length; i++)
+            payload[i] ^= mask[i % 4];
+        assertArrayEquals(content, payload);
+        assertTrue(sent.isStreamed());
+        assertTrue(sent.getStreamedPayload().isSent());
+        assertNull(sent.getStreamedPayload().getFile());
+        assertEquals(content.length, sent.getPayloadSizeAsLong());
+        assertEquals(2 + 8 + 4 + content.length, sent.getSizeAsLong());
+    }
+
+    @Test
+    public void largeBinaryBufferIsSentMaskedInChunks() throws IOException {
+        byte[] content = new byte[WebSocketClient.FILE_CHUNK_SIZE * 2 + 1001];
+        new Random().nextBytes(content);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        buffer.position(7);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WebSocketClient client = createConnectedClient(outputStream);
+
+        BinaryFrame sent = client.sendBinaryFrame(buffer);
+
+        ByteBuffer written = ByteBuffer.wrap(outputStream.toByteArray());
+        assertEquals((byte) 0x82, written.get());
+        assertEquals((byte) (0x80 | 127), written.get());
+        assertEquals(content.length - 7, written.getLong());
+        byte[] mask = new byte[4];
+        written.get(mask);
+        byte[] payload = new byte[written.remaining()];
+        written.get(payload);
+        for (int i = 0; i < payload.length; i++)
+            payload[i] ^= mask[i % 4];
+        assertArrayEquals(Arrays.copyOfRange(content, 7, content.length), payload);
+        assertEquals(7, buffer.position());
+        assertEquals(2 + 8 + 4 + content.length - 7, sent.getSize());
+    }
+
+    @Test
+    public void sendBinaryFileWithZeroMaskKeyWritesFileContentAsIs() throws IOException {
+        byte[] content = new byte[300];
+        new Random().nextBytes(content);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WebSocketClient client = createConnectedClient(outputStream);
+
+        client.sendBinaryFile(createFile(content).toPath(), true);
+
+        byte[] written = outputStream.toByteArray();
+        assertArrayEquals(new byte[] { (byte) 0x82, (byte) (0x80 | 126), 0x01, 0x2c, 0, 0, 0, 0 }, Arrays.copyOf(written, 8));
+        assertArrayEquals(content, Arrays.copyOfRange(written, 8, written.length));
+    }
+
+    @Test
+    public void sendFragmentedMessageSendsFragmentsOfGivenSize() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WebSocketClient client = createConnectedClient(outputStream);
+        List<DataFrame> fragments = new ArrayList<>();
+
+        int count = client.sendFragmentedMessage(false, new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }), 4, fragments::add);
+
+        assertEquals(3, count);
+        ByteBuffer written = ByteBuffer.wrap(outputStream.toByteArray());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, readFrame(written, 0x02));
+        assertArrayEquals(new byte[] { 5, 6, 7, 8 }, readFrame(written, 0x00));
+        assertArrayEquals(new byte[] { 9, 10 }, readFrame(written, 0x80));
+        assertFalse(written.hasRemaining());
+        assertThat(fragments).extracting(DataFrame::isContinuationFrame).containsExactly(false, true, true);
+        assertThat(fragments).extracting(DataFrame::isFinalFragment).containsExactly(false, false, true);
+    }
+
+    @Test
+    public void fragmentedMessageWithSizeMultipleOfFragmentSizeEndsWithEmptyFrame() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WebSocketClient client = createConnectedClient(outputStream);
+
+        int count = client.sendFragmentedMessage(false, new ByteArrayInputStream(new byte[8]), 4, null);
+
+        assertEquals(3, count);
+        ByteBuffer written = ByteBuffer.wrap(outputStream.toByteArray());
+        readFrame(written, 0x02);
+        readFrame(written, 0x00);
+        assertArrayEquals(new byte[0], readFrame(written, 0x80));
+    }
+
+    @Test
+    public void fragmentsOfTextMessageMaySplitCharacters() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WebSocketClient client = createConnectedClient(outputStream);
+        String text = "\u20ac\u20ac";  // 3 bytes each in UTF-8
+
+        client.sendFragmentedMessage(true, new ByteArrayInputStream(text.getBytes("UTF-8")), 4, null);
+
+        ByteBuffer written = ByteBuffer.wrap(outputStream.toByteArray());
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        message.write(readFrame(written, 0x01));
+        message.write(readFrame(written, 0x80));
+        assertEquals(text, new String(message.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void batchOfFramesIsSentWithOneWrite() throws IOException {
+        List<Integer> writes = new ArrayList<>();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes.add(len);
+                super.write(b, off, len);
+            }
+        };
+        WebSocketClient client = createConnectedClient(outputStream);
+        List<Frame> frames = Arrays.asList(new TextFrame("first"), new TextFrame("second"), new BinaryFrame(new byte[] { 1, 2, 3 }));
+
+        long sent = client.sendFrames(frames);
+
+        assertThat(writes).containsExactly((int) sent);
+        assertEquals((6 + 5) + (6 + 6) + (6 + 3), sent);
+        ByteBuffer written = ByteBuffer.wrap(outputStream.toByteArray());
+        assertEquals("first", new String(readFrame(written, 0x81)));
+        assertEquals("second", new String(readFrame(written, 0x81)));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, readFrame(written, 0x82));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void closeFrameCannotBeSentInBatch() throws IOException {
+        WebSocketClient client = createConnectedClient(new ByteArrayOutputStream());
+        client.sendFrames(Arrays.asList(new TextFrame("bye"), new CloseFrame(1000, "")));
+    }
+
+    @Test
+    public void fragmentedMessageIsReceivedAsOneMessage() throws Exception {
+        byte[] utf8 = "Gr\u00f6\u00dfe: 3\u20ac".getBytes("UTF-8");
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(serverFrame(0x01, Arrays.copyOfRange(utf8, 0, 3)));  // Splits the first 2-byte character
+        frames.write(serverFrame(0x00, Arrays.copyOfRange(utf8, 3, 10)));
+        frames.write(serverFrame(0x80, Arrays.copyOfRange(utf8, 10, utf8.length)));
+        WebSocketClient client = createConnectedClient(new ByteArrayOutputStream());
+        setPrivateClientField(client, "wsSocket", new Socket());
+        setPrivateClientField(client, "socketInputStream", new ByteArrayInputStream(frames.toByteArray()));
+
+        Message message = client.receiveMessage(1000);
+
+        assertThat(message.isText()).isTrue();
+        assertEquals(3, message.getFragmentCount());
+        assertEquals(utf8.length, message.getPayloadSize());
+        assertEquals(utf8.length + 3 * 2, message.getSize());
+        assertEquals("Gr\u00f6\u00dfe: 3\u20ac", message.getText());
+        assertArrayEquals(utf8, IOUtils.toByteArray(message.getPayloadStream()));
+        assertThat(message.getPayloadBuffers()).hasSize(3);
+        assertThat(message.getLastFragmentTime()).isGreaterThanOrEqualTo(message.getFirstFragmentTime());
+        assertThat(((TextFrame) message.toFrame()).getText()).isEqualTo(message.getText());
+        assertThat(message.toFrame().isFinalFragment()).isTrue();
+    }
+
+    @Test
+    public void controlFramesBetweenFragmentsCanBeSkippedByFrameReader() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(serverFrame(0x02, new byte[] { 1, 2 }));
+        frames.write(serverFrame(0x89, new byte[0]));
+        frames.write(serverFrame(0x80, new byte[] { 3 }));
+        WebSocketClient client = createConnectedClient(new ByteArrayOutputStream());
+        setPrivateClientField(client, "wsSocket", new Socket());
+        setPrivateClientField(client, "socketInputStream", new ByteArrayInputStream(frames.toByteArray()));
+
+        Message message = client.receiveMessage(() -> {
+            Frame frame;
+            do {
+                frame = client.receiveFrame(1000);
+            } while (frame.isPing());
+            return frame;
+        });
+
+        assertThat(message.isBinary()).isTrue();
+        assertArrayEquals(new byte[] { 1, 2, 3 }, message.getBinaryData());
+    }
+
+    @Test(expected = UnexpectedFrameException.class)
+    public void controlFrameBetweenFragmentsIsUnexpectedWhenReceivingMessage() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(serverFrame(0x02, new byte[] { 1, 2 }));
+        frames.write(serverFrame(0x89, new byte[0]));
+        WebSocketClient client = createConnectedClient(new ByteArrayOutputStream());
+        setPrivateClientField(client, "wsSocket", new Socket());
+        setPrivateClientField(client, "socketInputStream", new ByteArrayInputStream(frames.toByteArray()));
+
+        client.receiveMessage(1000);
+    }
+
+    @Test
+    public void timeoutBetweenFragmentsDoesNotLoseReceivedFragments() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(serverFrame(0x02, new byte[] { 1, 2 }));
+        frames.write(serverFrame(0x00, new byte[] { 3, 4 }));
+        frames.write(serverFrame(0x80, new byte[] { 5, 6 }));
+        WebSocketClient client = createConnectedClient(new ByteArrayOutputStream());
+        setPrivateClientField(client, "wsSocket", new Socket());
+        // Time out after the first fragment and in the middle of the second one
+        setPrivateClientField(client, "socketInputStream", new FrameTest.SimulatedNetworkStreamWithTimeouts(frames.toByteArray(), new Integer[] { 4, 6, Integer.MAX_VALUE }));
+
+        int timeouts = 0;
+        Message message = null;
+        while (message == null) {
+            try {
+                message = client.receiveMessage(1000);
+            }
+            catch (SocketTimeoutException timeout) {
+                timeouts++;
+                assertThat(client.getPartialMessageFragmentCount()).isGreaterThan(0);
+            }
+        }
+
+        assertEquals(2, timeouts);
+        assertEquals(3, message.getFragmentCount());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, message.getBinaryData());
+        assertEquals(0, client.getPartialMessageFragmentCount());
+    }
+
+    @Test
+    public void messageIsContinuedAfterUnexpectedControlFrameBetweenFragments() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(serverFrame(0x01, "Hel".getBytes("UTF-8")));
+        frames.write(serverFrame(0x89, new byte[0]));
+        frames.write(serverFrame(0x80, "lo".getBytes("UTF-8")));
+        WebSocketClient client = createConnectedClient(new ByteArrayOutputStream());
+        setPrivateClientField(client, "wsSocket", new Socket());
+        setPrivateClientField(client, "socketInputStream", new ByteArrayInputStream(frames.toByteArray()));
+
+        try {
+            client.receiveMessage(1000);
+            throw new AssertionError("expected unexpected frame exception");
+        }
+        catch (UnexpectedFrameException unexpected) {
+            assertThat(unexpected.getReceivedFrame().isPing()).isTrue();
+        }
+        Message message = client.receiveMessage(1000);
+
+        assertEquals(2, message.getFragmentCount());
+        assertEquals("Hello", message.getText());
+    }
+
+    private static byte[] serverFrame(int firstByte, byte[] payload) {
+        byte[] frame = new byte[2 + payload.length];
+        frame[0] = (byte) firstByte;
+        frame[1] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 2, payload.length);
+        return frame;
+    }
+
+    private static byte[] readFrame(ByteBuffer written, int expectedFirstByte) {
+        assertEquals(expectedFirstByte, written.get() & 0xff);
+        int length = written.get() & 0x7f;
+        byte[] mask = new byte[4];
+        written.get(mask);
+        byte[] payload = new byte[length];
+        written.get(payload);
+        for (int i = 0; i < length; i++)
+            payload[i] ^= mask[i % 4];
+        return payload;
+    }
+
+    private WebSocketClient createConnectedClient(OutputStream outputStream) throws MalformedURLException {
+        WebSocketClient client = new WebSocketClient(new URL("http://nowhere"));
+        setPrivateClientField(client, "state", WebSocketClient.WebSocketState.CONNECTED);
+        setPrivateClientField(client, "socketOutputStream", outputStream);
+        return client;
+    }
+
+    private File createFile(byte[] content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
     @Test
     public void testProcessingHttpResponseDoesNotEatFrameBytes() throws IOException {
         String serverResponse = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n\r\nfirstframebytes";
@@ -547,17 +862,13 @@ public class WebSocketClientTest {
     }
 
     @Test
-    public void testInitializeWebSocketInflaterWithServerNoContextTakeover() throws MalformedURLException {
+    public void testInitializeWebSocketInflaterWithServerNoContextTakeover() throws Exception {
 
         //GIVEN
         WebSocketClient webSocketClient = new WebSocketClient(new URL("http://nowhere"));
 
-        Map.Entry<String, String> header =
-                new AbstractMap
-                        .SimpleEntry<>("Sec-WebSocket-Extensions", "permessage-deflate;server_no_context_takeover");
-
         //WHEN
-        webSocketClient.initializeStreamingInflater(header);
+        webSocketClient.negotiateCompression("permessage-deflate;server_no_context_takeover", "permessage-deflate;server_no_context_takeover");
 
         //THEN
         WebSocketInflater webSocketInflater =
@@ -570,16 +881,13 @@ public class WebSocketClientTest {
     }
 
     @Test
-    public void testInitializeWebSocketInflaterWithoutServerNoContextTakeover() throws MalformedURLException {
+    public void testInitializeWebSocketInflaterWithoutServerNoContextTakeover() throws Exception {
 
         //GIVEN
         WebSocketClient webSocketClient = new WebSocketClient(new URL("http://nowhere"));
 
-        Map.Entry<String, String> header =
-                new AbstractMap.SimpleEntry<>("Sec-WebSocket-Extensions", "permessage-deflate");
-
         //WHEN
-        webSocketClient.initializeStreamingInflater(header);
+        webSocketClient.negotiateCompression("permessage-deflate", "permessage-deflate");
 
         //THEN
         WebSocketInflater webSocketInflater =
@@ -592,15 +900,12 @@ public class WebSocketClientTest {
     }
 
     @Test
-    public void testInitializeWebSocketInflaterWithoutPerMessageDeflate() throws MalformedURLException {
+    public void testInitializeWebSocketInflaterWithoutPerMessageDeflate() throws Exception {
         //GIVEN
         WebSocketClient webSocketClient = new WebSocketClient(new URL("http://nowhere"));
 
-        Map.Entry<String, String> header =
-                new AbstractMap.SimpleEntry<>("Sec-WebSocket-Extensions", "");
-
         //WHEN
-        webSocketClient.initializeStreamingInflater(header);
+        webSocketClient.negotiateCompression("", null);
 
         //THEN
         WebSocketInflater webSocketInflater =
@@ -609,6 +914,42 @@ public class WebSocketClientTest {
         assertNull(webSocketInflater);
     }
 
+    @Test
+    public void noCompressionStateWhenServerDeclinesPerMessageDeflate() throws Exception {
+        WebSocketClient webSocketClient = new WebSocketClient(new URL("http://nowhere"));
+
+        webSocketClient.negotiateCompression("permessage-deflate; client_max_window_bits", null);
+
+        assertNull(getPrivateClientField(webSocketClient, "webSocketInflater"));
+        assertNull(getPrivateClientField(webSocketClient, "webSocketDeflater"));
+    }
+
+    @Test
+    public void serverResponseDeterminesContextTakeover() throws Exception {
+        WebSocketClient webSocketClient = new WebSocketClient(new URL("http://nowhere"));
+
+        // Request does not mention server_no_context_takeover, but server decides to use it anyway (which it may)
+        webSocketClient.negotiateCompression("permessage-deflate", "permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+
+        assertEquals(Boolean.FALSE, getPrivateStreamingInflaterField((WebSocketInflater) getPrivateClientField(webSocketClient, "webSocketInflater")));
+        assertFalse(((WebSocketDeflater) getPrivateClientField(webSocketClient, "webSocketDeflater")).isContextTakeover());
+    }
+
+    @Test
+    public void outgoingMessagesAreNotCompressedWhenClientWindowIsRestricted() throws Exception {
+        WebSocketClient webSocketClient = new WebSocketClient(new URL("http://nowhere"));
+
+        webSocketClient.negotiateCompression("permessage-deflate; client_max_window_bits", "permessage-deflate; client_max_window_bits=10");
+
+        assertNotNull(getPrivateClientField(webSocketClient, "webSocketInflater"));
+        assertNull(getPrivateClientField(webSocketClient, "webSocketDeflater"));
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void acceptedExtensionThatWasNotRequestedFailsConnection() throws Exception {
+        new WebSocketClient(new URL("http://nowhere")).negotiateCompression(null, "permessage-deflate");
+    }
+
     private Object getPrivateClientField(WebSocketClient client, String fieldName) {
         Field field;
         try {
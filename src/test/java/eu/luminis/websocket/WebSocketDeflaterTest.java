@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2016, 2017, 2018 Peter Doornbosch
+ *
+ * This file is part of JMeter-WebSocket-Samplers, a JMeter add-on for load-testing WebSocket applications.
+ *
+ * JMeter-WebSocket-Samplers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * JMeter-WebSocket-Samplers is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.luminis.websocket;
+
+import eu.luminis.utils.WebSocketInflaterConstants;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+
+public class WebSocketDeflaterTest {
+
+    @Test
+    public void compressedMessageCanBeInflated() throws Exception {
+        byte[] message = repeat("Hello WebSocket! ", 100);
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+
+        byte[] compressed = compress(deflater, message, true);
+
+        assertThat(compressed.length).isLessThan(message.length);
+        assertArrayEquals(message, inflate(new Inflater(true), compressed));
+    }
+
+    @Test
+    public void compressedMessageDoesNotEndWithEmptyBlock() {
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+        byte[] compressed = compress(deflater, repeat("abc", 10), true);
+
+        byte[] tail = Arrays.copyOfRange(compressed, compressed.length - 4, compressed.length);
+        assertThat(tail).isNotEqualTo(WebSocketInflaterConstants.FRAME_TAIL);
+    }
+
+    @Test
+    public void fragmentedMessageCanBeInflated() throws Exception {
+        byte[] part1 = repeat("first part ", 50);
+        byte[] part2 = repeat("second part ", 50);
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(compress(deflater, part1, false));
+        compressed.write(compress(deflater, part2, true));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(part1);
+        expected.write(part2);
+        assertArrayEquals(expected.toByteArray(), inflate(new Inflater(true), compressed.toByteArray()));
+    }
+
+    @Test
+    public void incompressibleDataLargerThanOutputBufferIsCompressedCompletely() throws Exception {
+        byte[] message = new byte[100_000];
+        new Random().nextBytes(message);
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+
+        assertArrayEquals(message, inflate(new Inflater(true), compress(deflater, message, true)));
+    }
+
+    @Test
+    public void withContextTakeoverSubsequentMessagesShareContext() throws Exception {
+        byte[] message = repeat("context takeover ", 20);
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+        Inflater inflater = new Inflater(true);
+
+        byte[] first = compress(deflater, message, true);
+        byte[] second = compress(deflater, message, true);
+
+        assertThat(second.length).isLessThan(first.length);
+        assertArrayEquals(message, inflate(inflater, first));
+        assertArrayEquals(message, inflate(inflater, second));
+    }
+
+    @Test
+    public void withoutContextTakeoverDeflaterIsReturnedToPoolAfterMessage() throws Exception {
+        DeflaterPool pool = new DeflaterPool(4);
+        WebSocketDeflater deflater = new WebSocketDeflater(false, pool);
+        byte[] message = repeat("no context takeover ", 20);
+
+        byte[] first = compress(deflater, message, false);
+        assertThat(deflater.holdsDeflater()).isTrue();
+        assertThat(pool.size()).isEqualTo(0);
+        compress(deflater, message, true);
+        assertThat(deflater.holdsDeflater()).isFalse();
+        assertThat(pool.size()).isEqualTo(1);
+
+        // Each message must be decompressible with a fresh inflater
+        byte[] next = compress(deflater, message, true);
+        assertArrayEquals(message, inflate(new Inflater(true), next));
+    }
+
+    @Test
+    public void closeReturnsDeflaterToPool() {
+        DeflaterPool pool = new DeflaterPool(4);
+        WebSocketDeflater deflater = new WebSocketDeflater(true, pool);
+        compress(deflater, repeat("x", 10), true);
+        assertThat(pool.size()).isEqualTo(0);
+
+        deflater.close();
+        assertThat(deflater.holdsDeflater()).isFalse();
+        assertThat(pool.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void statisticsCoverAllFragmentsOfMessage() {
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+        assertThat(deflater.getLastMessageStatistics()).isNull();
+
+        int compressedSize = compress(deflater, repeat("a", 1000), false).length;
+        compressedSize += compress(deflater, repeat("b", 1000), true).length;
+
+        CompressionStatistics statistics = deflater.getLastMessageStatistics();
+        assertThat(statistics.getUncompressedSize()).isEqualTo(2000);
+        assertThat(statistics.getCompressedSize()).isEqualTo(compressedSize);
+        assertThat(statistics.getCompressionRatio()).isLessThan(0.1);
+    }
+
+    static byte[] compress(WebSocketDeflater deflater, byte[] data, boolean finalFragment) {
+        int length = deflater.compress(data, 0, data.length, finalFragment);
+        return Arrays.copyOf(deflater.getOutput(), length);
+    }
+
+    static byte[] inflate(Inflater inflater, byte[] compressed) throws DataFormatException {
+        // RFC 7692 7.2.2: append the empty block that was removed by the sender
+        inflater.setInput(concat(compressed, WebSocketInflaterConstants.FRAME_TAIL));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = inflater.inflate(buffer)) > 0)
+            output.write(buffer, 0, count);
+        return output.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            builder.append(text);
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -16,167 +16,143 @@
  */
 package eu.luminis.websocket;
 
-import eu.luminis.utils.WebSocketInflaterConstants;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
-import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
-import static junit.framework.TestCase.assertEquals;
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.*;
 
-@RunWith(MockitoJUnitRunner.class)
 public class WebSocketInflaterTest {
 
     private static final Logger LOGGER = LoggingManager.getLoggerForClass();
 
-    private static final byte[] COMPRESSED_DATA = "compressedData".getBytes();
-    private static final byte[] DECOMPRESSED_DATA = "decompressedData".getBytes();
-
-    @Mock
-    Inflater inflater;
-
-    @Mock
-    ByteArrayOutputStream compressedData;
-
-    @Mock
-    ByteArrayOutputStream decompressedData;
-
-    WebSocketInflater webSocketInflaterWithContextDecompression;
-
-    WebSocketInflater webSocketInflaterWithoutContextDecompression;
+    @Test
+    public void decompressMessageWithContextDecompression() {
+        byte[] message = "Hello, compressed world!".getBytes(StandardCharsets.UTF_8);
+        WebSocketInflater webSocketInflater = new WebSocketInflater(true);
 
-    @Before
-    public void setUp() {
-        webSocketInflaterWithContextDecompression =
-                new WebSocketInflater(inflater, true, compressedData, decompressedData);
+        byte[] compressed = WebSocketDeflaterTest.compress(new WebSocketDeflater(true), message, true);
 
-        webSocketInflaterWithoutContextDecompression =
-                new WebSocketInflater(inflater, false, compressedData, decompressedData);
+        assertArrayEquals(message, webSocketInflater.decompressFrame(compressed, true, LOGGER));
     }
 
     @Test
-    public void appendCompressedDataWithContextDecompressionAndFinalFragment() throws IOException {
+    public void subsequentMessagesSharingContextAreDecompressed() {
+        byte[] message = "Hello, compressed world!".getBytes(StandardCharsets.UTF_8);
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+        WebSocketInflater webSocketInflater = new WebSocketInflater(true);
 
-        //GIVEN
-        doNothing().when(compressedData).write(any(byte[].class));
+        byte[] first = WebSocketDeflaterTest.compress(deflater, message, true);
+        byte[] second = WebSocketDeflaterTest.compress(deflater, message, true);
 
-        //WHEN
-        webSocketInflaterWithContextDecompression.appendCompressedData(COMPRESSED_DATA, true, LOGGER);
-
-        //THEN
-        verify(compressedData, times(2)).write(any(byte[].class));
-        verify(compressedData).write(COMPRESSED_DATA);
-        verify(compressedData).write(WebSocketInflaterConstants.FRAME_TAIL);
+        assertArrayEquals(message, webSocketInflater.decompressFrame(first, true, LOGGER));
+        assertArrayEquals(message, webSocketInflater.decompressFrame(second, true, LOGGER));
     }
 
     @Test
-    public void appendCompressedDataWithContextDecompressionAndNotFinalFragment() throws IOException {
-
-        //GIVEN
-        doNothing().when(compressedData).write(COMPRESSED_DATA);
-
-        //WHEN
-        webSocketInflaterWithContextDecompression.appendCompressedData(COMPRESSED_DATA, false, LOGGER);
+    public void messagesWithoutContextAreDecompressedWithFreshContext() throws DataFormatException {
+        byte[] message = "no context takeover".getBytes(StandardCharsets.UTF_8);
+        Inflater inflater = spy(new Inflater(true));
+        WebSocketInflater webSocketInflater = new WebSocketInflater(inflater, false);
 
-        //THEN
-        verify(compressedData).write(any(byte[].class));
-        verify(compressedData).write(COMPRESSED_DATA);
+        for (int i = 0; i < 3; i++) {
+            // Each message compressed with a new deflater, i.e. without context
+            byte[] compressed = WebSocketDeflaterTest.compress(new WebSocketDeflater(false, new DeflaterPool(1)), message, true);
+            assertArrayEquals(message, webSocketInflater.decompressFrame(compressed, true, LOGGER));
+        }
+        verify(inflater, times(3)).reset();
     }
 
     @Test
-    public void appendCompressedDataWithoutContextDecompressionAndFinalFragment() throws IOException {
+    public void withoutContextInflaterIsOnlyBorrowedFromPoolDuringMessage() {
+        InflaterPool pool = new InflaterPool(4);
+        WebSocketInflater webSocketInflater = new WebSocketInflater(false, pool);
+        assertThat(webSocketInflater.holdsInflater()).isFalse();
 
-        //GIVEN
-        doNothing().when(compressedData).write(COMPRESSED_DATA);
-
-        //WHEN
-        webSocketInflaterWithoutContextDecompression.appendCompressedData(COMPRESSED_DATA, true, LOGGER);
+        WebSocketDeflater deflater = new WebSocketDeflater(false, new DeflaterPool(1));
+        byte[] part1 = WebSocketDeflaterTest.compress(deflater, "first part, ".getBytes(), false);
+        byte[] part2 = WebSocketDeflaterTest.compress(deflater, "second part".getBytes(), true);
 
-        //THEN
-        verify(compressedData).write(any(byte[].class));
-        verify(compressedData).write(COMPRESSED_DATA);
+        assertArrayEquals("first part, ".getBytes(), webSocketInflater.decompressFrame(part1, false, LOGGER));
+        assertThat(webSocketInflater.holdsInflater()).isTrue();
+        assertThat(pool.getInUse()).isEqualTo(1);
+        assertArrayEquals("second part".getBytes(), webSocketInflater.decompressFrame(part2, true, LOGGER));
+        assertThat(webSocketInflater.holdsInflater()).isFalse();
+        assertThat(pool.getInUse()).isEqualTo(0);
+        assertThat(pool.size()).isEqualTo(1);
     }
 
     @Test
-    public void appendCompressedDataWithoutContextDecompressionAndNotFinalFragment() throws IOException {
-
-        //GIVEN
-        doNothing().when(compressedData).write(COMPRESSED_DATA);
-
-        //WHEN
-        webSocketInflaterWithoutContextDecompression.appendCompressedData(COMPRESSED_DATA, false, LOGGER);
+    public void pooledInflatersAreReusedByConnections() {
+        InflaterPool pool = new InflaterPool(4);
+        byte[] message = "pooled".getBytes();
+        for (int i = 0; i < 4; i++) {
+            WebSocketInflater webSocketInflater = new WebSocketInflater(false, pool);
+            byte[] compressed = WebSocketDeflaterTest.compress(new WebSocketDeflater(false, new DeflaterPool(1)), message, true);
+            assertArrayEquals(message, webSocketInflater.decompressFrame(compressed, true, LOGGER));
+            webSocketInflater.close();
+        }
 
-        //THEN
-        verify(compressedData).write(any(byte[].class));
-        verify(compressedData).write(COMPRESSED_DATA);
+        assertThat(pool.size()).isEqualTo(1);
+        assertThat(pool.getHitRate()).isEqualTo(0.75);
+        assertThat(pool.getNativeMemoryInUse()).isEqualTo(InflaterPool.ESTIMATED_NATIVE_MEMORY_PER_INFLATER);
+        assertThat(pool.toString()).contains("hit rate 75.0%");
     }
 
-    @Test(expected = RuntimeException.class)
-    public void appendCompressedDataThenThrowIOException() throws IOException {
-
-        //GIVEN
-        doThrow(IOException.class).when(compressedData).write(COMPRESSED_DATA);
+    @Test
+    public void invalidDataReturnsInflaterToPool() {
+        InflaterPool pool = new InflaterPool(4);
+        WebSocketInflater webSocketInflater = new WebSocketInflater(false, pool);
+        try {
+            webSocketInflater.decompressFrame(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x00 }, false, LOGGER);
+        }
+        catch (RuntimeException expected) {}
 
-        //WHEN
-        webSocketInflaterWithContextDecompression.appendCompressedData(COMPRESSED_DATA, true, LOGGER);
+        assertThat(webSocketInflater.holdsInflater()).isFalse();
+        assertThat(pool.getInUse()).isEqualTo(0);
     }
 
     @Test
-    public void decompressNextMessageWithDecompressionContext() throws DataFormatException {
-
-        //GIVEN
-        int decompressedByteArrayLength = DECOMPRESSED_DATA.length;
-
-        mockInflater(decompressedByteArrayLength);
+    public void eachFragmentIsDecompressedWhenItArrives() {
+        byte[] part1 = "first part of the message, ".getBytes(StandardCharsets.UTF_8);
+        byte[] part2 = "second part of the message".getBytes(StandardCharsets.UTF_8);
+        WebSocketDeflater deflater = new WebSocketDeflater(true);
+        WebSocketInflater webSocketInflater = new WebSocketInflater(true);
 
-        //WHEN
-        byte[] actualDecompressedData = webSocketInflaterWithContextDecompression.decompressNextMessage(LOGGER);
+        byte[] compressed1 = WebSocketDeflaterTest.compress(deflater, part1, false);
+        byte[] compressed2 = WebSocketDeflaterTest.compress(deflater, part2, true);
 
-        //THEN
-        verifyInflater(
-                actualDecompressedData,
-                decompressedByteArrayLength,
-                0,
-                1);
+        assertArrayEquals(part1, webSocketInflater.decompressFrame(compressed1, false, LOGGER));
+        assertArrayEquals(part2, webSocketInflater.decompressFrame(compressed2, true, LOGGER));
     }
 
     @Test
-    public void decompressNextMessageWithoutDecompressionContext() throws DataFormatException {
-
-        //GIVEN
-        int decompressedByteArrayLength = DECOMPRESSED_DATA.length;
-
-        mockInflater(decompressedByteArrayLength);
+    public void decompressedDataLargerThanOutputBufferIsReturnedCompletely() {
+        byte[] message = new byte[InflaterPool.Entry.MAX_RETAINED_OUTPUT_SIZE * 2];
+        Arrays.fill(message, (byte) 'x');
+        WebSocketInflater webSocketInflater = new WebSocketInflater(true);
 
-        //WHEN
-        byte[] actualDecompressedData = webSocketInflaterWithoutContextDecompression.decompressNextMessage(LOGGER);
+        byte[] compressed = WebSocketDeflaterTest.compress(new WebSocketDeflater(true), message, true);
 
-        //THEN
-        verifyInflater(
-                actualDecompressedData,
-                decompressedByteArrayLength,
-                1,
-                1);
+        assertArrayEquals(message, webSocketInflater.decompressFrame(compressed, true, LOGGER));
+        // And output buffer is not retained, but inflater still works
+        assertArrayEquals("x".getBytes(), webSocketInflater.decompressFrame(WebSocketDeflaterTest.compress(new WebSocketDeflater(true), "x".getBytes(), true), true, LOGGER));
     }
 
     @Test
-    public void decompressNextMessageIfNumberOfDecompressedBytesIsNull() throws DataFormatException {
+    public void decompressNextMessageIfNumberOfDecompressedBytesIsNull() {
         // Given
         WebSocketInflater webSocketInflater = new WebSocketInflater(true);
 
         // When
-        webSocketInflater.appendCompressedData(new byte[0], true, LOGGER);
-        byte[] actualDecompressedData = webSocketInflater.decompressNextMessage(LOGGER);
+        byte[] actualDecompressedData = webSocketInflater.decompressFrame(new byte[0], true, LOGGER);
 
         // Then
         assertThat(actualDecompressedData)
@@ -185,44 +161,21 @@ public class WebSocketInflaterTest {
     }
 
     @Test(expected = RuntimeException.class)
-    public void decompressNextMessageThenThrowDataFormatException() throws DataFormatException {
-
-        //GIVEN
-        when(compressedData.toByteArray()).thenReturn(COMPRESSED_DATA);
-
-        doNothing().when(inflater).setInput(COMPRESSED_DATA);
-        when(inflater.inflate(any(byte[].class))).thenThrow(DataFormatException.class);
-
-        //WHEN
-        webSocketInflaterWithContextDecompression.decompressNextMessage(LOGGER);
+    public void decompressNextMessageThenThrowDataFormatException() {
+        new WebSocketInflater(true).decompressFrame(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x00 }, true, LOGGER);
     }
 
     @Test
-    public void close() throws IOException {
-
+    public void close() {
         //GIVEN
+        Inflater inflater = mock(Inflater.class);
         doNothing().when(inflater).end();
-        doNothing().when(compressedData).close();
-        doNothing().when(decompressedData).close();
 
         //WHEN
-        webSocketInflaterWithContextDecompression.close();
+        new WebSocketInflater(inflater, true).close();
 
         //THEN
         verify(inflater).end();
-        verify(compressedData).close();
-        verify(decompressedData).close();
-    }
-
-    @Test(expected = RuntimeException.class)
-    public void closeThenThrowIOException() throws IOException {
-
-        //GIVEN
-        doNothing().when(inflater).end();
-        doThrow(IOException.class).when(compressedData).close();
-
-        //WHEN
-        webSocketInflaterWithContextDecompression.close();
     }
 
     @Test
@@ -249,11 +202,10 @@ public class WebSocketInflaterTest {
                 "d3c533bd6dfa21061c38745e5c1ff42a9900d087780252b137a0fdfb0c1537fecaabdf00");
 
         Inflater inflater = spy(new Inflater(true));
-        WebSocketInflater webSocketInflater = new WebSocketInflater(inflater, true, new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        WebSocketInflater webSocketInflater = new WebSocketInflater(inflater, true);
 
         // When
-        webSocketInflater.appendCompressedData(compressedData, true, LOGGER);
-        byte[] actualDecompressedData = webSocketInflater.decompressNextMessage(LOGGER);
+        byte[] actualDecompressedData = webSocketInflater.decompressFrame(compressedData, true, LOGGER);
 
         // Then
         assertThat(new String(actualDecompressedData))
@@ -264,41 +216,6 @@ public class WebSocketInflaterTest {
         verify(inflater, never()).end();
     }
 
-    private void mockInflater(int decompressedDataLength) throws DataFormatException {
-        when(compressedData.toByteArray()).thenReturn(COMPRESSED_DATA);
-        doNothing().when(compressedData).reset();
-
-        doNothing().when(inflater).setInput(COMPRESSED_DATA);
-        when(inflater.inflate(any(byte[].class))).thenReturn(decompressedDataLength);
-        doNothing().when(inflater).reset();
-
-        doNothing().when(decompressedData).write(any(byte[].class), eq(0), eq(decompressedDataLength));
-        doNothing().when(decompressedData).reset();
-        when(decompressedData.toByteArray()).thenReturn(DECOMPRESSED_DATA);
-    }
-
-    private void verifyInflater(byte[] actualDecompressedData,
-                                int decompressedDataLength,
-                                int numberOfInflaterResettingInvocations,
-                                int numberOfDecompressedDataResettingAndWritingInvocations) throws DataFormatException {
-
-        assertEquals(DECOMPRESSED_DATA, actualDecompressedData);
-
-        verify(compressedData).toByteArray();
-        verify(compressedData).reset();
-
-        verify(inflater).setInput(COMPRESSED_DATA);
-        verify(inflater).inflate(any(byte[].class));
-        verify(inflater, times(numberOfInflaterResettingInvocations)).reset();
-
-        verify(decompressedData, times(numberOfDecompressedDataResettingAndWritingInvocations)).reset();
-
-        verify(decompressedData, times(numberOfDecompressedDataResettingAndWritingInvocations))
-                .write(any(byte[].class), eq(0), eq(decompressedDataLength));
-
-        verify(decompressedData).toByteArray();
-    }
-
     public static byte[] hexStringToByteArray(String hex) {
         if (hex == null || hex.length() % 2 != 0) {
             throw new IllegalArgumentException("Hex string must be non-null and have even length.");